@@ -0,0 +1,86 @@
+/*
+ * Flat C interface to GeographicLib::Geodesic, called by the Java
+ * net.sf.geographiclib.ForeignGeodesic class through java.lang.foreign
+ * downcall handles. Unlike the JNI functions these take no JNIEnv and
+ * never call back into Java: all arguments are primitives or pointers to
+ * native memory. The Java side passes the GeographicLib::Geodesic objects
+ * created by the JNI functions, geodesic_c_new() is for C callers.
+ *
+ * The results are written to arrays of doubles in the same order as the
+ * Java DirectResult and InverseResult constructors:
+ *   direct:  lat2, lon2, azi2, m12, M12, M21, S12, a12, s12
+ *   inverse: s12, azi1, azi2, m12, M12, M21, S12, a12
+ * Quantities which aren't requested in outmask are set to 0.
+ */
+#ifndef _Included_geodesic_c
+#define _Included_geodesic_c
+
+#include <stdint.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+/* Number of doubles written per direct result. */
+#define GEODESIC_C_DIRECT_VALUES 9
+/* Number of doubles written per inverse result. */
+#define GEODESIC_C_INVERSE_VALUES 8
+
+/*
+ * Creates a GeographicLib::Geodesic, returns NULL if a or f are invalid.
+ */
+void* geodesic_c_new(double a, double f);
+
+/*
+ * Deletes a Geodesic created by geodesic_c_new(), NULL is ignored.
+ */
+void geodesic_c_delete(void* geodesic);
+
+/*
+ * Get the equatorial radius, flattening and total area of the ellipsoid.
+ */
+double geodesic_c_major_radius(const void* geodesic);
+double geodesic_c_flattening(const void* geodesic);
+double geodesic_c_ellipsoid_area(const void* geodesic);
+
+/*
+ * Solves the direct problem, writes GEODESIC_C_DIRECT_VALUES doubles to
+ * values and returns a12.
+ */
+double geodesic_c_gen_direct(const void* geodesic,
+                             double lat1, double lon1, double azi1,
+                             int32_t arcmode, double s12_a12,
+                             int64_t outmask, double* values);
+
+/*
+ * Solves the inverse problem, writes GEODESIC_C_INVERSE_VALUES doubles to
+ * values and returns a12.
+ */
+double geodesic_c_gen_inverse(const void* geodesic,
+                              double lat1, double lon1,
+                              double lat2, double lon2,
+                              int64_t outmask, double* values);
+
+/*
+ * Solves count direct problems. input holds records of 4 doubles
+ * (lat1, lon1, azi1, s12_a12) and output receives records of
+ * GEODESIC_C_DIRECT_VALUES doubles.
+ */
+void geodesic_c_gen_direct_batch(const void* geodesic,
+                                 int64_t count, int32_t arcmode,
+                                 int64_t outmask,
+                                 const double* input, double* output);
+
+/*
+ * Solves count inverse problems. input holds records of 4 doubles
+ * (lat1, lon1, lat2, lon2) and output receives records of
+ * GEODESIC_C_INVERSE_VALUES doubles.
+ */
+void geodesic_c_gen_inverse_batch(const void* geodesic,
+                                  int64_t count, int64_t outmask,
+                                  const double* input, double* output);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
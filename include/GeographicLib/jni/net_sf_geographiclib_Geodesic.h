@@ -67,14 +67,6 @@ JNIEXPORT jlong JNICALL Java_net_sf_geographiclib_Geodesic_newGeodesicCppObject
 JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_deleteGeodesicCppObject
   (JNIEnv *, jclass, jlong);
 
-/*
- * Class:     net_sf_geographiclib_Geodesic
- * Method:    newGeodesicWgs84Object
- * Signature: ()Lnet/sf/geographiclib/Geodesic;
- */
-JNIEXPORT jobject JNICALL Java_net_sf_geographiclib_Geodesic_newGeodesicWgs84Object
-  (JNIEnv *, jclass);
-
 /*
  * Class:     net_sf_geographiclib_Geodesic
  * Method:    nativeDirect
@@ -99,6 +91,22 @@ JNIEXPORT jobject JNICALL Java_net_sf_geographiclib_Geodesic_nativeArcDirect
 JNIEXPORT jobject JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenDirect
   (JNIEnv *, jclass, jobject, jlong, jdouble, jdouble, jdouble, jboolean, jdouble, jlong);
 
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenDirectInto
+ * Signature: (JDDDZDJ[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenDirectInto
+  (JNIEnv *, jclass, jlong, jdouble, jdouble, jdouble, jboolean, jdouble, jlong, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenDirectBatch
+ * Signature: (J[D[D[DDZ[DDIIJ[D[D[D[D[D[D[D[D[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenDirectBatch
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdouble, jboolean, jdoubleArray, jdouble, jint, jint, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray);
+
 /*
  * Class:     net_sf_geographiclib_Geodesic
  * Method:    nativeInverse
@@ -115,6 +123,102 @@ JNIEXPORT jobject JNICALL Java_net_sf_geographiclib_Geodesic_nativeInverse
 JNIEXPORT jobject JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenInverse
   (JNIEnv *, jclass, jobject, jlong, jdouble, jdouble, jdouble, jdouble, jlong);
 
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenInverseInto
+ * Signature: (JDDDDJ[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenInverseInto
+  (JNIEnv *, jclass, jlong, jdouble, jdouble, jdouble, jdouble, jlong, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenInverseBatch
+ * Signature: (J[D[D[D[DIIJ[D[D[D[D[D[D[D[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenInverseBatch
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jint, jint, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenInverseBuffers
+ * Signature: (JIJJIJIJIJIJIJIJIJIJIJIJIJI)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenInverseBuffers
+  (JNIEnv *, jclass, jlong, jint, jlong, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenDirectBuffers
+ * Signature: (JIZJJIJIJIJIJIJIJIJIJIJIJIJIJI)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeGenDirectBuffers
+  (JNIEnv *, jclass, jlong, jint, jboolean, jlong, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint, jlong, jint);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDistanceMatrix
+ * Signature: (J[D[D[D[DJ[D[D[DI)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeDistanceMatrix
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jint);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDistanceMatrixBuffers
+ * Signature: (J[D[D[D[DJJIJIJII)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeDistanceMatrixBuffers
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jlong, jlong, jint, jlong, jint, jlong, jint, jint);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeRangeRings
+ * Signature: (J[D[DII[DDIZ[D[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeRangeRings
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jint, jint, jdoubleArray, jdouble, jint, jboolean, jdoubleArray, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDirectBufferAddress
+ * Signature: (Ljava/nio/Buffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_net_sf_geographiclib_Geodesic_nativeDirectBufferAddress
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDistance
+ * Signature: (JDDDD)D
+ */
+JNIEXPORT jdouble JNICALL Java_net_sf_geographiclib_Geodesic_nativeDistance
+  (JNIEnv *, jclass, jlong, jdouble, jdouble, jdouble, jdouble);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeInitialAzimuth
+ * Signature: (JDDDD)D
+ */
+JNIEXPORT jdouble JNICALL Java_net_sf_geographiclib_Geodesic_nativeInitialAzimuth
+  (JNIEnv *, jclass, jlong, jdouble, jdouble, jdouble, jdouble);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeFinalAzimuth
+ * Signature: (JDDDD)D
+ */
+JNIEXPORT jdouble JNICALL Java_net_sf_geographiclib_Geodesic_nativeFinalAzimuth
+  (JNIEnv *, jclass, jlong, jdouble, jdouble, jdouble, jdouble);
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDestination
+ * Signature: (JDDDD[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_Geodesic_nativeDestination
+  (JNIEnv *, jclass, jlong, jdouble, jdouble, jdouble, jdouble, jdoubleArray);
+
 /*
  * Class:     net_sf_geographiclib_Geodesic
  * Method:    nativeMajorRadius
@@ -0,0 +1,69 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class net_sf_geographiclib_GeodesicLine */
+
+#ifndef _Included_net_sf_geographiclib_GeodesicLine
+#define _Included_net_sf_geographiclib_GeodesicLine
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeGenPositionInto
+ * Signature: (JZDJ[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_GeodesicLine_nativeGenPositionInto
+  (JNIEnv *, jclass, jlong, jboolean, jdouble, jlong, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeGenPositionBatch
+ * Signature: (JZ[DIIJ[D[D[D[D[D[D[D[D[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_GeodesicLine_nativeGenPositionBatch
+  (JNIEnv *, jclass, jlong, jboolean, jdoubleArray, jint, jint, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeDensifyLegs
+ * Signature: (J[D[DD[D[D[I)J
+ */
+JNIEXPORT jlong JNICALL Java_net_sf_geographiclib_GeodesicLine_nativeDensifyLegs
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jdouble, jdoubleArray, jdoubleArray, jintArray);
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeDensifyPoints
+ * Signature: (J[D[D[D[D[I[D[D[I)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_GeodesicLine_nativeDensifyPoints
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jintArray, jdoubleArray, jdoubleArray, jintArray);
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    newGeodesicLineCppObject
+ * Signature: (JDDDJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_sf_geographiclib_GeodesicLine_newGeodesicLineCppObject
+  (JNIEnv *, jclass, jlong, jdouble, jdouble, jdouble, jlong);
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    deleteGeodesicLineCppObject
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_GeodesicLine_deleteGeodesicLineCppObject
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeProperties
+ * Signature: (J[D)J
+ */
+JNIEXPORT jlong JNICALL Java_net_sf_geographiclib_GeodesicLine_nativeProperties
+  (JNIEnv *, jclass, jlong, jdoubleArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
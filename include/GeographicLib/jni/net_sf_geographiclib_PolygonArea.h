@@ -0,0 +1,69 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class net_sf_geographiclib_PolygonArea */
+
+#ifndef _Included_net_sf_geographiclib_PolygonArea
+#define _Included_net_sf_geographiclib_PolygonArea
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeClear
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_PolygonArea_nativeClear
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeAddPoint
+ * Signature: (JDD)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_PolygonArea_nativeAddPoint
+  (JNIEnv *, jclass, jlong, jdouble, jdouble);
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeAddEdge
+ * Signature: (JDD)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_PolygonArea_nativeAddEdge
+  (JNIEnv *, jclass, jlong, jdouble, jdouble);
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeCompute
+ * Signature: (JZZ[D)I
+ */
+JNIEXPORT jint JNICALL Java_net_sf_geographiclib_PolygonArea_nativeCompute
+  (JNIEnv *, jclass, jlong, jboolean, jboolean, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeComputeRings
+ * Signature: (J[D[D[IIIZZZ[D[D)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_PolygonArea_nativeComputeRings
+  (JNIEnv *, jclass, jlong, jdoubleArray, jdoubleArray, jintArray, jint, jint, jboolean, jboolean, jboolean, jdoubleArray, jdoubleArray);
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    newPolygonAreaCppObject
+ * Signature: (JZ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_sf_geographiclib_PolygonArea_newPolygonAreaCppObject
+  (JNIEnv *, jclass, jlong, jboolean);
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    deletePolygonAreaCppObject
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_geographiclib_PolygonArea_deletePolygonAreaCppObject
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
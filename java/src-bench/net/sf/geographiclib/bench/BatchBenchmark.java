@@ -0,0 +1,154 @@
+package net.sf.geographiclib.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.geographiclib.BufferColumn;
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicEngine;
+import net.sf.geographiclib.GeodesicExecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>BatchBenchmark</code> measures the batch functions over
+ * {@link BenchmarkInputs#SIZE} geodesics per invocation: the array and
+ * direct buffer batches, the fork/join executor and a 64 x 64 distance
+ * matrix. Scores are per geodesic, so they compare directly with
+ * {@link SingleCallBenchmark}.
+ *
+ * @version 1.29
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchBenchmark {
+
+  private static final int N = BenchmarkInputs.SIZE;
+  private static final int SIDE = 64;
+  private static final long OUTMASK =
+      Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH;
+
+  @Param({"NATIVE", "FOREIGN", "JAVA"})
+  public GeodesicEngine engine;
+
+  @Param({"SHORT", "LONG", "ANTIPODAL"})
+  public BenchmarkInputs.Geometry geometry;
+
+  private Geodesic geodesic;
+  private GeodesicExecutor executor;
+  private BenchmarkInputs in;
+
+  private final double[] s12 = new double[N];
+  private final double[] azi1 = new double[N];
+  private final double[] azi2 = new double[N];
+  private final double[] lat2 = new double[N];
+  private final double[] lon2 = new double[N];
+
+  private final double[] matrixLat1 = new double[SIDE];
+  private final double[] matrixLon1 = new double[SIDE];
+  private final double[] matrixLat2 = new double[SIDE];
+  private final double[] matrixLon2 = new double[SIDE];
+
+  private BufferColumn lat1Column;
+  private BufferColumn lon1Column;
+  private BufferColumn lat2Column;
+  private BufferColumn lon2Column;
+  private BufferColumn s12Column;
+  private BufferColumn azi1Column;
+  private BufferColumn azi2Column;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    geodesic = new Geodesic(6378137, 1 / 298.257223563, engine);
+    executor = new GeodesicExecutor(geodesic);
+    in = new BenchmarkInputs(geometry);
+    lat1Column = column(in.lat1);
+    lon1Column = column(in.lon1);
+    lat2Column = column(in.lat2);
+    lon2Column = column(in.lon2);
+    s12Column = column(null);
+    azi1Column = column(null);
+    azi2Column = column(null);
+    System.arraycopy(in.lat1, 0, matrixLat1, 0, SIDE);
+    System.arraycopy(in.lon1, 0, matrixLon1, 0, SIDE);
+    System.arraycopy(in.lat2, 0, matrixLat2, 0, SIDE);
+    System.arraycopy(in.lon2, 0, matrixLon2, 0, SIDE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    geodesic.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double[] genInverseArrays() {
+    geodesic.genInverse(in.lat1, in.lon1, in.lat2, in.lon2, 0, N, OUTMASK,
+                        s12, azi1, azi2, null, null, null, null, null);
+    return s12;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double[] genDirectArrays() {
+    geodesic.genDirect(in.lat1, in.lon1, in.azi1, false, in.s12, 0, N,
+                       Geodesic.MASK_LATITUDE | Geodesic.MASK_LONGITUDE,
+                       lat2, lon2, null, null, null, null, null, null, null);
+    return lat2;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public BufferColumn genInverseBuffers() {
+    geodesic.genInverse(lat1Column, lon1Column, lat2Column, lon2Column, N,
+                        OUTMASK, s12Column, azi1Column, azi2Column,
+                        null, null, null, null, null);
+    return s12Column;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public Object genInverseExecutor() {
+    return executor.genInverse(in.lat1, in.lon1, in.lat2, in.lon2, 0, N,
+                               OUTMASK, s12, azi1, azi2,
+                               null, null, null, null, null);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIDE * SIDE)
+  public double[] distanceMatrix() {
+    geodesic.distanceMatrix(matrixLat1, matrixLon1, matrixLat2, matrixLon2,
+                            Geodesic.MASK_DISTANCE, s12, null, null, 1);
+    return s12;
+  }
+
+  /**
+   * Copies a column to a direct buffer, or allocates an empty one.
+   */
+  private static BufferColumn column(final double[] values) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(N * 8)
+        .order(ByteOrder.nativeOrder());
+    if (values != null) {
+      buffer.asDoubleBuffer().put(values);
+    }
+    return BufferColumn.contiguous(buffer);
+  }
+}
@@ -0,0 +1,115 @@
+package net.sf.geographiclib.bench;
+
+import java.util.Random;
+
+import net.sf.geographiclib.Geodesic;
+
+/**
+ * <code>BenchmarkInputs</code>, reproducible input sets for the benchmarks.
+ *
+ * The cost of the inverse problem depends on the geometry: short lines
+ * converge in a couple of Newton iterations, long lines take a few more and
+ * nearly antipodal points need the most (and the bisection fallback), so
+ * every benchmark is run for each {@link Geometry}.
+ *
+ * @version 1.29
+ */
+public final class BenchmarkInputs {
+
+  /**
+   * Kinds of geodesics in an input set.
+   */
+  public enum Geometry {
+    /** Points up to about 10 km apart. */
+    SHORT,
+    /** Points anywhere on the ellipsoid, typically thousands of km apart. */
+    LONG,
+    /** Points within half a degree of being antipodal. */
+    ANTIPODAL
+  }
+
+  /**
+   * Number of entries of each input column, a power of two so benchmarks can
+   * cycle through them with a mask.
+   */
+  public static final int SIZE = 1 << 12;
+
+  private static final long SEED = 20131103L;
+
+  // one degree of arc in meters, close enough to size the direct problems
+  private static final double DEGREE = 111319.49;
+
+  public final double[] lat1 = new double[SIZE];
+  public final double[] lon1 = new double[SIZE];
+  public final double[] lat2 = new double[SIZE];
+  public final double[] lon2 = new double[SIZE];
+  public final double[] azi1 = new double[SIZE];
+  public final double[] s12 = new double[SIZE];
+  public final double[] a12 = new double[SIZE];
+
+  /**
+   * Creates a new <code>BenchmarkInputs</code> instance, the same geometry
+   * always gives the same inputs.
+   *
+   * @param geometry the kind of geodesics to generate.
+   */
+  public BenchmarkInputs(final Geometry geometry) {
+    Random random = new Random(SEED + geometry.ordinal());
+    for (int i = 0; i < SIZE; ++i) {
+      lat1[i] = uniform(random, -80, 80);
+      lon1[i] = uniform(random, -180, 180);
+      azi1[i] = uniform(random, -180, 180);
+      switch (geometry) {
+      case SHORT:
+        lat2[i] = lat1[i] + uniform(random, -0.05, 0.05);
+        lon2[i] = lon1[i] + uniform(random, -0.05, 0.05);
+        a12[i] = uniform(random, 0.001, 0.1);
+        break;
+      case LONG:
+        lat2[i] = uniform(random, -80, 80);
+        lon2[i] = uniform(random, -180, 180);
+        a12[i] = uniform(random, 10, 150);
+        break;
+      default:
+        lat2[i] = -lat1[i] + uniform(random, -0.5, 0.5);
+        lon2[i] = lon1[i] + 180 + uniform(random, -0.5, 0.5);
+        a12[i] = uniform(random, 179, 180);
+        break;
+      }
+      s12[i] = a12[i] * DEGREE;
+    }
+  }
+
+  /**
+   * Get the <code>Geodesic.MASK_*</code> combination for a benchmark
+   * parameter.
+   *
+   * @param name one of DISTANCE, AZIMUTH, DISTANCE_AZIMUTH, REDUCEDLENGTH,
+   *     GEODESICSCALE, AREA or ALL.
+   * @return a <code>long</code> value
+   */
+  public static long mask(final String name) {
+    if (name.equals("DISTANCE")) {
+      return Geodesic.MASK_DISTANCE;
+    } else if (name.equals("AZIMUTH")) {
+      return Geodesic.MASK_AZIMUTH;
+    } else if (name.equals("DISTANCE_AZIMUTH")) {
+      return Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH;
+    } else if (name.equals("REDUCEDLENGTH")) {
+      return Geodesic.MASK_DISTANCE | Geodesic.MASK_REDUCEDLENGTH;
+    } else if (name.equals("GEODESICSCALE")) {
+      return Geodesic.MASK_DISTANCE | Geodesic.MASK_GEODESICSCALE;
+    } else if (name.equals("AREA")) {
+      return Geodesic.MASK_DISTANCE | Geodesic.MASK_AREA;
+    } else if (name.equals("ALL")) {
+      return Geodesic.MASK_ALL;
+    }
+    throw new IllegalArgumentException("Unknown mask " + name);
+  }
+
+  private static double uniform(final Random random,
+                                final double min,
+                                final double max) {
+    return min + (max - min) * random.nextDouble();
+  }
+}
@@ -0,0 +1,84 @@
+package net.sf.geographiclib.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicEngine;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <code>BenchmarkMain</code> runs the benchmarks once per thread count, with
+ * the GC profiler so every score comes with its allocation rate, and writes
+ * one JSON result file per thread count.
+ *
+ * Usage: <code>BenchmarkMain [threads [include [resultDir [jvmArg...]]]]</code>
+ * where <code>threads</code> is a comma separated list (default
+ * <code>1,4</code>), <code>include</code> a regular expression selecting the
+ * benchmarks (default all) and <code>resultDir</code> the directory of the
+ * result files (default <code>bench-results</code>). The remaining arguments
+ * are passed to the forked JVMs, e.g.
+ * <code>-Djava.library.path=...</code>.
+ *
+ * The <code>engine</code> parameter of the benchmarks is restricted to the
+ * engines which can be constructed in this JVM, so that
+ * {@link GeodesicEngine#FOREIGN} is skipped when its classes or the JNI
+ * library are missing and {@link GeodesicEngine#NATIVE} when the library
+ * is. The forked JVMs must be started with the same library path and
+ * options.
+ *
+ * @version 1.29
+ */
+public final class BenchmarkMain {
+
+  private BenchmarkMain() {
+  }
+
+  /**
+   * The names of the engines instances can be constructed with.
+   */
+  static String[] availableEngines() {
+    List<String> engines = new ArrayList<String>();
+    for (GeodesicEngine engine : GeodesicEngine.values()) {
+      try {
+        new Geodesic(6378137, 1 / 298.257223563, engine).close();
+        engines.add(engine.name());
+      } catch (LinkageError e) {
+        System.err.println("Skipping the " + engine + " engine: " + e);
+      }
+    }
+    return engines.toArray(new String[engines.size()]);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    String threads = args.length > 0 ? args[0] : "1,4";
+    String include = args.length > 1 ? args[1] : ".*";
+    File resultDir = new File(args.length > 2 ? args[2] : "bench-results");
+    String[] jvmArgs = new String[Math.max(0, args.length - 3)];
+    System.arraycopy(args, Math.min(3, args.length), jvmArgs, 0, jvmArgs.length);
+
+    String[] engines = availableEngines();
+    resultDir.mkdirs();
+    for (String count : threads.split(",")) {
+      int n = Integer.parseInt(count.trim());
+      ChainedOptionsBuilder options = new OptionsBuilder()
+          .include(include)
+          .threads(n)
+          .param("engine", engines)
+          .addProfiler(GCProfiler.class)
+          .resultFormat(ResultFormatType.JSON)
+          .result(new File(resultDir, "threads-" + n + ".json").getPath());
+      if (jvmArgs.length > 0) {
+        options = options.jvmArgsAppend(jvmArgs);
+      }
+      new Runner(options.build()).run();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package net.sf.geographiclib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicEngine;
+import net.sf.geographiclib.GeodesicRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>LifecycleBenchmark</code> measures creating and closing
+ * <code>Geodesic</code> instances. Fresh ellipsoids allocate a C++ object,
+ * repeated ones only take a reference to the shared one.
+ *
+ * @version 1.29
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LifecycleBenchmark {
+
+  @Param({"NATIVE", "FOREIGN", "JAVA"})
+  public GeodesicEngine engine;
+
+  /**
+   * Gives every call of {@link #createCloseFresh(Counter)} a different
+   * ellipsoid.
+   */
+  @State(Scope.Thread)
+  public static class Counter {
+    private long count;
+
+    double next() {
+      return 6378137 + (++count % 1000000) * 1e-3;
+    }
+  }
+
+  @Benchmark
+  public double createClose() {
+    Geodesic geodesic = new Geodesic(6378137, 1 / 298.257223563, engine);
+    try {
+      return geodesic.getEllipsoidArea();
+    } finally {
+      geodesic.close();
+    }
+  }
+
+  @Benchmark
+  public double createCloseFresh(final Counter counter) {
+    Geodesic geodesic = new Geodesic(counter.next(), 1 / 298.257223563,
+                                     engine);
+    try {
+      return geodesic.getEllipsoidArea();
+    } finally {
+      geodesic.close();
+    }
+  }
+
+  @Benchmark
+  public Geodesic registry() {
+    return GeodesicRegistry.get(6378137, 1 / 298.257223563, engine);
+  }
+}
@@ -0,0 +1,93 @@
+package net.sf.geographiclib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>MaskBenchmark</code> measures <code>genDirect</code> and
+ * <code>genInverse</code>, allocating and into reused holders, for the
+ * <code>MASK_*</code> combinations: the reduced length, geodesic scales and
+ * area each add series evaluations to the distance and azimuths.
+ *
+ * @version 1.29
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MaskBenchmark {
+
+  @Param({"NATIVE", "FOREIGN", "JAVA"})
+  public GeodesicEngine engine;
+
+  @Param({"SHORT", "LONG", "ANTIPODAL"})
+  public BenchmarkInputs.Geometry geometry;
+
+  @Param({"DISTANCE", "DISTANCE_AZIMUTH", "REDUCEDLENGTH", "GEODESICSCALE",
+          "AREA", "ALL"})
+  public String mask;
+
+  private Geodesic geodesic;
+  private BenchmarkInputs in;
+  private long outmask;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    geodesic = new Geodesic(6378137, 1 / 298.257223563, engine);
+    in = new BenchmarkInputs(geometry);
+    outmask = BenchmarkInputs.mask(mask);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    geodesic.close();
+  }
+
+  @Benchmark
+  public Geodesic.DirectResult genDirect(final SingleCallBenchmark.Cursor c) {
+    int i = c.next();
+    return geodesic.genDirect(in.lat1[i], in.lon1[i], in.azi1[i], false,
+                              in.s12[i], Geodesic.MASK_LATITUDE
+                              | Geodesic.MASK_LONGITUDE | outmask);
+  }
+
+  @Benchmark
+  public Geodesic.InverseResult genInverse(final SingleCallBenchmark.Cursor c) {
+    int i = c.next();
+    return geodesic.genInverse(in.lat1[i], in.lon1[i], in.lat2[i], in.lon2[i],
+                               outmask);
+  }
+
+  @Benchmark
+  public Geodesic.MutableDirectResult genDirectHolder(final SingleCallBenchmark.Cursor c) {
+    int i = c.next();
+    return geodesic.genDirect(in.lat1[i], in.lon1[i], in.azi1[i], false,
+                              in.s12[i], Geodesic.MASK_LATITUDE
+                              | Geodesic.MASK_LONGITUDE | outmask, c.direct);
+  }
+
+  @Benchmark
+  public Geodesic.MutableInverseResult genInverseHolder(final SingleCallBenchmark.Cursor c) {
+    int i = c.next();
+    return geodesic.genInverse(in.lat1[i], in.lon1[i], in.lat2[i], in.lon2[i],
+                               outmask, c.inverse);
+  }
+}
@@ -0,0 +1,104 @@
+package net.sf.geographiclib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>SingleCallBenchmark</code> measures one geodesic per call through
+ * the object returning functions and the primitive fast paths, for each
+ * engine and geometry. {@link MaskBenchmark} covers the outmasks.
+ *
+ * @version 1.29
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SingleCallBenchmark {
+
+  @Param({"NATIVE", "FOREIGN", "JAVA"})
+  public GeodesicEngine engine;
+
+  @Param({"SHORT", "LONG", "ANTIPODAL"})
+  public BenchmarkInputs.Geometry geometry;
+
+  private Geodesic geodesic;
+  private BenchmarkInputs in;
+
+  /**
+   * The position of one benchmark thread in the inputs, and its reusable
+   * result holders.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int index;
+    final Geodesic.MutableDirectResult direct = new Geodesic.MutableDirectResult();
+    final Geodesic.MutableInverseResult inverse = new Geodesic.MutableInverseResult();
+    final double[] latLon = new double[2];
+
+    int next() {
+      index = (index + 1) & (BenchmarkInputs.SIZE - 1);
+      return index;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    geodesic = new Geodesic(6378137, 1 / 298.257223563, engine);
+    in = new BenchmarkInputs(geometry);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    geodesic.close();
+  }
+
+  @Benchmark
+  public Geodesic.DirectResult direct(final Cursor c) {
+    int i = c.next();
+    return geodesic.direct(in.lat1[i], in.lon1[i], in.azi1[i], in.s12[i]);
+  }
+
+  @Benchmark
+  public Geodesic.DirectResult arcDirect(final Cursor c) {
+    int i = c.next();
+    return geodesic.arcDirect(in.lat1[i], in.lon1[i], in.azi1[i], in.a12[i]);
+  }
+
+  @Benchmark
+  public Geodesic.InverseResult inverse(final Cursor c) {
+    int i = c.next();
+    return geodesic.inverse(in.lat1[i], in.lon1[i], in.lat2[i], in.lon2[i]);
+  }
+
+  @Benchmark
+  public double distance(final Cursor c) {
+    int i = c.next();
+    return geodesic.distance(in.lat1[i], in.lon1[i], in.lat2[i], in.lon2[i]);
+  }
+
+  @Benchmark
+  public double[] destination(final Cursor c) {
+    int i = c.next();
+    return geodesic.destination(in.lat1[i], in.lon1[i], in.azi1[i], in.s12[i],
+                                c.latLon);
+  }
+}
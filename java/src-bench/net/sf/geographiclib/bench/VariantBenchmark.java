@@ -0,0 +1,109 @@
+package net.sf.geographiclib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicEngine;
+import net.sf.geographiclib.LibraryLoader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <code>VariantBenchmark</code> measures the scalar and batch inverse
+ * calls of the native engine, to compare the variants of the JNI library,
+ * each linking its own copy of GeographicLib compiled for its x86-64 level.
+ * The variant is chosen once per JVM, so <code>ant bench.variants</code>
+ * runs this benchmark once per variant with
+ * {@link LibraryLoader#VARIANT_PROPERTY} set, and the setup fails if the
+ * JVM loaded another variant than the one requested.
+ *
+ * @version 1.29
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VariantBenchmark {
+
+  private static final int N = BenchmarkInputs.SIZE;
+  private static final int SIDE = 64;
+  private static final long OUTMASK =
+      Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH;
+
+  @Param({"SHORT", "LONG", "ANTIPODAL"})
+  public BenchmarkInputs.Geometry geometry;
+
+  private Geodesic geodesic;
+  private BenchmarkInputs in;
+  private int index;
+
+  private final double[] s12 = new double[N];
+  private final double[] azi1 = new double[N];
+  private final double[] azi2 = new double[N];
+
+  private final double[] matrixLat1 = new double[SIDE];
+  private final double[] matrixLon1 = new double[SIDE];
+  private final double[] matrixLat2 = new double[SIDE];
+  private final double[] matrixLon2 = new double[SIDE];
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    String requested = System.getProperty(LibraryLoader.VARIANT_PROPERTY);
+    if (requested != null
+        && !requested.equalsIgnoreCase(LibraryLoader.getVariant())) {
+      throw new IllegalStateException("variant " + requested
+                                      + " requested but "
+                                      + LibraryLoader.getVariant()
+                                      + " was loaded");
+    }
+    geodesic = new Geodesic(6378137, 1 / 298.257223563, GeodesicEngine.NATIVE);
+    in = new BenchmarkInputs(geometry);
+    System.arraycopy(in.lat1, 0, matrixLat1, 0, SIDE);
+    System.arraycopy(in.lon1, 0, matrixLon1, 0, SIDE);
+    System.arraycopy(in.lat2, 0, matrixLat2, 0, SIDE);
+    System.arraycopy(in.lon2, 0, matrixLon2, 0, SIDE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    geodesic.close();
+  }
+
+  @Benchmark
+  public double distance() {
+    index = (index + 1) & (N - 1);
+    return geodesic.distance(in.lat1[index], in.lon1[index],
+                             in.lat2[index], in.lon2[index]);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double[] genInverseArrays() {
+    geodesic.genInverse(in.lat1, in.lon1, in.lat2, in.lon2, 0, N, OUTMASK,
+                        s12, azi1, azi2, null, null, null, null, null);
+    return s12;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIDE * SIDE)
+  public double[] distanceMatrix() {
+    geodesic.distanceMatrix(matrixLat1, matrixLon1, matrixLat2, matrixLon2,
+                            Geodesic.MASK_DISTANCE, s12, null, null, 1);
+    return s12;
+  }
+}
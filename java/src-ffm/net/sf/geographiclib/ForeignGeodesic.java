@@ -0,0 +1,554 @@
+package net.sf.geographiclib;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * <code>ForeignGeodesic</code> wrapper for the C++ <a href="http://geographiclib.sourceforge.net/html/classGeographicLib_1_1Geodesic.html">GeographicLib::Geodesic</a> class
+ * which calls the flat C functions of <code>geodesic_c.h</code> through
+ * <code>java.lang.foreign</code> downcall handles instead of JNI.
+ *
+ * No <code>JNIEnv</code>, method lookup or constructor upcall is involved:
+ * arguments are primitives and results are written to native memory, either
+ * a per-thread scratch segment (single calls) or caller-owned segments
+ * (batch calls) laid out as {@link #DIRECT_INPUT}/{@link #DIRECT_OUTPUT} and
+ * {@link #INVERSE_INPUT}/{@link #INVERSE_OUTPUT} records.
+ *
+ * The C++ object is the one shared by the native {@link Geodesic} instances
+ * of the same ellipsoid, held through the same reference counted lease:
+ * {@link #close() close()} may be called while other threads use this
+ * instance, the calls already running complete, the last of them releases
+ * the object, and later calls fail with an
+ * <code>IllegalStateException</code> instead of touching freed memory.
+ * Instances which are never closed are released by a
+ * {@link java.lang.ref.Cleaner}.
+ *
+ * The same downcalls back the single calls of the
+ * {@link GeodesicEngine#FOREIGN} engine of {@link Geodesic}.
+ *
+ * This class is compiled by the <code>compile.ffm</code> Ant target since
+ * <code>java.lang.foreign</code> is a preview API of JDK 21 and final since
+ * JDK 22; it only uses the calls common to both. Run with
+ * <code>--enable-native-access=ALL-UNNAMED</code>, and also with
+ * <code>--enable-preview</code> on JDK 21.
+ *
+ * @version 1.29
+ */
+public final class ForeignGeodesic implements AutoCloseable {
+
+  /**
+   * Layout of one input record of the batch direct function.
+   */
+  public static final StructLayout DIRECT_INPUT = MemoryLayout.structLayout(
+      ValueLayout.JAVA_DOUBLE.withName("lat1"),
+      ValueLayout.JAVA_DOUBLE.withName("lon1"),
+      ValueLayout.JAVA_DOUBLE.withName("azi1"),
+      ValueLayout.JAVA_DOUBLE.withName("s12_a12"));
+
+  /**
+   * Layout of one output record of the batch direct function, the order of
+   * the {@link Geodesic.DirectResult} constructor arguments.
+   */
+  public static final StructLayout DIRECT_OUTPUT = MemoryLayout.structLayout(
+      ValueLayout.JAVA_DOUBLE.withName("lat2"),
+      ValueLayout.JAVA_DOUBLE.withName("lon2"),
+      ValueLayout.JAVA_DOUBLE.withName("azi2"),
+      ValueLayout.JAVA_DOUBLE.withName("m12"),
+      ValueLayout.JAVA_DOUBLE.withName("M12"),
+      ValueLayout.JAVA_DOUBLE.withName("M21"),
+      ValueLayout.JAVA_DOUBLE.withName("S12"),
+      ValueLayout.JAVA_DOUBLE.withName("a12"),
+      ValueLayout.JAVA_DOUBLE.withName("s12"));
+
+  /**
+   * Layout of one input record of the batch inverse function.
+   */
+  public static final StructLayout INVERSE_INPUT = MemoryLayout.structLayout(
+      ValueLayout.JAVA_DOUBLE.withName("lat1"),
+      ValueLayout.JAVA_DOUBLE.withName("lon1"),
+      ValueLayout.JAVA_DOUBLE.withName("lat2"),
+      ValueLayout.JAVA_DOUBLE.withName("lon2"));
+
+  /**
+   * Layout of one output record of the batch inverse function, the order of
+   * the {@link Geodesic.InverseResult} constructor arguments.
+   */
+  public static final StructLayout INVERSE_OUTPUT = MemoryLayout.structLayout(
+      ValueLayout.JAVA_DOUBLE.withName("s12"),
+      ValueLayout.JAVA_DOUBLE.withName("azi1"),
+      ValueLayout.JAVA_DOUBLE.withName("azi2"),
+      ValueLayout.JAVA_DOUBLE.withName("m12"),
+      ValueLayout.JAVA_DOUBLE.withName("M12"),
+      ValueLayout.JAVA_DOUBLE.withName("M21"),
+      ValueLayout.JAVA_DOUBLE.withName("S12"),
+      ValueLayout.JAVA_DOUBLE.withName("a12"));
+
+  private static final int DIRECT_VALUES = 9;
+  private static final int INVERSE_VALUES = 8;
+
+  private static final MethodHandle GEN_DIRECT;
+  private static final MethodHandle GEN_INVERSE;
+  private static final MethodHandle GEN_DIRECT_BATCH;
+  private static final MethodHandle GEN_INVERSE_BATCH;
+  // GEN_DIRECT and GEN_INVERSE discarding a12, for the calls which only
+  // read the values stored in the scratch segment
+  private static final MethodHandle GEN_DIRECT_VALUES;
+  private static final MethodHandle GEN_INVERSE_VALUES;
+
+  static {
+    // the C functions live in the same library as the JNI functions
+    LibraryLoader.load();
+    if (!LibraryLoader.isAvailable()) {
+      UnsatisfiedLinkError error =
+          new UnsatisfiedLinkError("GeographicJni library is not available");
+      error.initCause(LibraryLoader.getLoadError());
+      throw error;
+    }
+    Linker linker = Linker.nativeLinker();
+    SymbolLookup lookup = SymbolLookup.loaderLookup();
+    ValueLayout.OfDouble D = ValueLayout.JAVA_DOUBLE;
+    ValueLayout.OfInt I = ValueLayout.JAVA_INT;
+    ValueLayout.OfLong L = ValueLayout.JAVA_LONG;
+    ValueLayout P = ValueLayout.ADDRESS;
+    GEN_DIRECT = downcall(linker, lookup, "geodesic_c_gen_direct",
+                          FunctionDescriptor.of(D, P, D, D, D, I, D, L, P));
+    GEN_INVERSE = downcall(linker, lookup, "geodesic_c_gen_inverse",
+                           FunctionDescriptor.of(D, P, D, D, D, D, L, P));
+    GEN_DIRECT_BATCH = downcall(linker, lookup, "geodesic_c_gen_direct_batch",
+                                FunctionDescriptor.ofVoid(P, L, I, L, P, P));
+    GEN_INVERSE_BATCH = downcall(linker, lookup, "geodesic_c_gen_inverse_batch",
+                                 FunctionDescriptor.ofVoid(P, L, L, P, P));
+    GEN_DIRECT_VALUES =
+        GEN_DIRECT.asType(GEN_DIRECT.type().changeReturnType(void.class));
+    GEN_INVERSE_VALUES =
+        GEN_INVERSE.asType(GEN_INVERSE.type().changeReturnType(void.class));
+  }
+
+  /**
+   * Per-thread scratch memory receiving the results of the single calls,
+   * large enough for a direct result.
+   */
+  private static final ThreadLocal<MemorySegment> SCRATCH =
+      ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(
+          DIRECT_VALUES * ValueLayout.JAVA_DOUBLE.byteSize(),
+          ValueLayout.JAVA_DOUBLE.byteAlignment()));
+
+  /**
+   * The instance which holds the reference to the C++ object, it is never
+   * used for the calls.
+   */
+  private final Geodesic geodesic;
+
+  /**
+   * The lease of <code>geodesic</code>, every downcall is bracketed by its
+   * enter() and exit().
+   */
+  private final NativeHandle.Lease lease;
+
+  /**
+   * Creates a new <code>ForeignGeodesic</code> instance.
+   *
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid. Setting f = 0 gives a sphere.
+   *      Negative f gives a prolate ellipsoid. If f > 1, set flattening to 1/f.
+   * @exception IllegalArgumentException if a or the polar semi-axis isn't
+   *     positive.
+   */
+  public ForeignGeodesic(final double a, final double f) {
+    double b = a * (1 - (f > 1 ? 1 / f : f));
+    if (!(Double.isFinite(a) && a > 0 && Double.isFinite(b) && b > 0)) {
+      throw new IllegalArgumentException("Invalid ellipsoid a=" + a + ", f=" + f);
+    }
+    geodesic = new Geodesic(a, f, GeodesicEngine.FOREIGN);
+    lease = geodesic.getNativeLease();
+  }
+
+  /**
+   * Inherited from java.lang.AutoCloseable. <br>
+   * Used to release the underlying C++ object, which is deleted once no
+   * native <code>Geodesic</code> of the same ellipsoid uses it. Safe to call
+   * while other threads use this instance and more than once.
+   */
+  public void close() {
+    geodesic.close();
+  }
+
+  /**
+   * Same as {@link Geodesic#genDirect(double, double, double, boolean, double, long, Geodesic.MutableDirectResult)}.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param azi1 azimuth at point 1 (degrees).
+   * @param arcmode if true then <code>s12_a12</code> is an arc length
+   *     (degrees), otherwise a distance (meters).
+   * @param s12_a12 distance or arc length between point 1 and point 2.
+   * @param outmask a bitor'ed combination of the
+   *     <code>Geodesic.MASK_*</code> values specifying which outputs to
+   *     calculate.
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   * @exception IllegalStateException if this instance was closed.
+   */
+  public Geodesic.MutableDirectResult genDirect(final double lat1,
+                                                final double lon1,
+                                                final double azi1,
+                                                final boolean arcmode,
+                                                final double s12_a12,
+                                                final long outmask,
+                                                final Geodesic.MutableDirectResult result) {
+    long geodesicCppPtr = lease.enter();
+    try {
+      genDirect(geodesicCppPtr, lat1, lon1, azi1, arcmode, s12_a12, outmask,
+                result.values);
+    } finally {
+      lease.exit();
+    }
+    result.outmask = outmask;
+    return result;
+  }
+
+  /**
+   * Same as {@link Geodesic#genInverse(double, double, double, double, long, Geodesic.MutableInverseResult)}.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @param outmask a bitor'ed combination of the
+   *     <code>Geodesic.MASK_*</code> values specifying which outputs to
+   *     calculate.
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   * @exception IllegalStateException if this instance was closed.
+   */
+  public Geodesic.MutableInverseResult genInverse(final double lat1,
+                                                  final double lon1,
+                                                  final double lat2,
+                                                  final double lon2,
+                                                  final long outmask,
+                                                  final Geodesic.MutableInverseResult result) {
+    long geodesicCppPtr = lease.enter();
+    try {
+      genInverse(geodesicCppPtr, lat1, lon1, lat2, lon2, outmask,
+                 result.values);
+    } finally {
+      lease.exit();
+    }
+    result.outmask = outmask;
+    return result;
+  }
+
+  /**
+   * Computes the distance between two points.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return distance between point 1 and point 2 (meters).
+   * @exception IllegalStateException if this instance was closed.
+   */
+  public double distance(final double lat1,
+                         final double lon1,
+                         final double lat2,
+                         final double lon2) {
+    long geodesicCppPtr = lease.enter();
+    try {
+      return inverseValue(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                          Geodesic.MASK_DISTANCE, JavaGeodesic.INVERSE_s12);
+    } finally {
+      lease.exit();
+    }
+  }
+
+  /**
+   * Solves <code>count</code> direct problems in a single downcall. The
+   * segments are read and written in place, they may be allocated from any
+   * arena (or map a file) and may be accessed by the calling thread.
+   *
+   * @param input <code>count</code> {@link #DIRECT_INPUT} records.
+   * @param arcmode if true then the <code>s12_a12</code> fields are arc
+   *     lengths (degrees), otherwise distances (meters).
+   * @param count number of geodesics to process.
+   * @param outmask a bitor'ed combination of the
+   *     <code>Geodesic.MASK_*</code> values specifying which outputs to
+   *     calculate.
+   * @param output receives <code>count</code> {@link #DIRECT_OUTPUT} records.
+   * @exception IllegalArgumentException if <code>count</code> is negative or
+   *     a segment is too small.
+   * @exception IllegalStateException if this instance was closed.
+   */
+  public void genDirect(final MemorySegment input,
+                        final boolean arcmode,
+                        final long count,
+                        final long outmask,
+                        final MemorySegment output) {
+    checkSegment(input, "input", DIRECT_INPUT, count, false);
+    checkSegment(output, "output", DIRECT_OUTPUT, count, true);
+    long geodesicCppPtr = lease.enter();
+    try {
+      GEN_DIRECT_BATCH.invokeExact(MemorySegment.ofAddress(geodesicCppPtr),
+                                   count, arcmode ? 1 : 0, outmask,
+                                   input, output);
+    } catch (Throwable t) {
+      throw rethrow(t);
+    } finally {
+      lease.exit();
+    }
+  }
+
+  /**
+   * Solves <code>count</code> inverse problems in a single downcall. The
+   * segments are read and written in place, they may be allocated from any
+   * arena (or map a file) and may be accessed by the calling thread.
+   *
+   * @param input <code>count</code> {@link #INVERSE_INPUT} records.
+   * @param count number of pairs to process.
+   * @param outmask a bitor'ed combination of the
+   *     <code>Geodesic.MASK_*</code> values specifying which outputs to
+   *     calculate.
+   * @param output receives <code>count</code> {@link #INVERSE_OUTPUT} records.
+   * @exception IllegalArgumentException if <code>count</code> is negative or
+   *     a segment is too small.
+   * @exception IllegalStateException if this instance was closed.
+   */
+  public void genInverse(final MemorySegment input,
+                         final long count,
+                         final long outmask,
+                         final MemorySegment output) {
+    checkSegment(input, "input", INVERSE_INPUT, count, false);
+    checkSegment(output, "output", INVERSE_OUTPUT, count, true);
+    long geodesicCppPtr = lease.enter();
+    try {
+      GEN_INVERSE_BATCH.invokeExact(MemorySegment.ofAddress(geodesicCppPtr),
+                                    count, outmask, input, output);
+    } catch (Throwable t) {
+      throw rethrow(t);
+    } finally {
+      lease.exit();
+    }
+  }
+
+  /**
+   * Get the equatorial radius of the ellipsoid (meters).
+   * @return a <code>double</code> value
+   */
+  public double getMajorRadius() {
+    return geodesic.getMajorRadius();
+  }
+
+  /**
+   * Get the flattening of the ellipsoid.
+   * @return a <code>double</code> value
+   */
+  public double getFlattening() {
+    return geodesic.getFlattening();
+  }
+
+  /**
+   * Get the total area of the ellipsoid (meters<sup>2</sup>).
+   * @return a <code>double</code> value
+   */
+  public double getEllipsoidArea() {
+    return geodesic.getEllipsoidArea();
+  }
+
+  /**
+   * Solves one direct problem, see {@link ForeignEngine#genDirect}.
+   */
+  static double genDirect(final long geodesicCppPtr,
+                          final double lat1,
+                          final double lon1,
+                          final double azi1,
+                          final boolean arcmode,
+                          final double s12_a12,
+                          final long outmask,
+                          final double[] values) {
+    MemorySegment scratch = SCRATCH.get();
+    double a12;
+    try {
+      a12 = (double) GEN_DIRECT.invokeExact(MemorySegment.ofAddress(geodesicCppPtr),
+                                            lat1, lon1, azi1, arcmode ? 1 : 0,
+                                            s12_a12, outmask, scratch);
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+    MemorySegment.copy(scratch, ValueLayout.JAVA_DOUBLE, 0,
+                       values, 0, DIRECT_VALUES);
+    return a12;
+  }
+
+  /**
+   * Solves one inverse problem, see {@link ForeignEngine#genInverse}.
+   */
+  static double genInverse(final long geodesicCppPtr,
+                           final double lat1,
+                           final double lon1,
+                           final double lat2,
+                           final double lon2,
+                           final long outmask,
+                           final double[] values) {
+    MemorySegment scratch = SCRATCH.get();
+    double a12;
+    try {
+      a12 = (double) GEN_INVERSE.invokeExact(MemorySegment.ofAddress(geodesicCppPtr),
+                                             lat1, lon1, lat2, lon2, outmask,
+                                             scratch);
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+    MemorySegment.copy(scratch, ValueLayout.JAVA_DOUBLE, 0,
+                       values, 0, INVERSE_VALUES);
+    return a12;
+  }
+
+  /**
+   * Solves one inverse problem for one of its results, see
+   * {@link ForeignEngine#inverseValue}.
+   */
+  static double inverseValue(final long geodesicCppPtr,
+                             final double lat1,
+                             final double lon1,
+                             final double lat2,
+                             final double lon2,
+                             final long outmask,
+                             final int index) {
+    MemorySegment scratch = SCRATCH.get();
+    try {
+      GEN_INVERSE_VALUES.invokeExact(MemorySegment.ofAddress(geodesicCppPtr),
+                                     lat1, lon1, lat2, lon2, outmask, scratch);
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+    return scratch.getAtIndex(ValueLayout.JAVA_DOUBLE, index);
+  }
+
+  /**
+   * The {@link GeodesicEngine#FOREIGN} engine of {@link Geodesic}, created
+   * by name by {@link ForeignEngine}.
+   */
+  static final class Downcalls extends ForeignEngine {
+
+    double genDirect(final long geodesicCppPtr,
+                     final double lat1,
+                     final double lon1,
+                     final double azi1,
+                     final boolean arcmode,
+                     final double s12_a12,
+                     final long outmask,
+                     final double[] values) {
+      return ForeignGeodesic.genDirect(geodesicCppPtr, lat1, lon1, azi1,
+                                       arcmode, s12_a12, outmask, values);
+    }
+
+    double genInverse(final long geodesicCppPtr,
+                      final double lat1,
+                      final double lon1,
+                      final double lat2,
+                      final double lon2,
+                      final long outmask,
+                      final double[] values) {
+      return ForeignGeodesic.genInverse(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                                        outmask, values);
+    }
+
+    double inverseValue(final long geodesicCppPtr,
+                        final double lat1,
+                        final double lon1,
+                        final double lat2,
+                        final double lon2,
+                        final long outmask,
+                        final int index) {
+      return ForeignGeodesic.inverseValue(geodesicCppPtr, lat1, lon1, lat2,
+                                          lon2, outmask, index);
+    }
+
+    void destination(final long geodesicCppPtr,
+                     final double lat1,
+                     final double lon1,
+                     final double azi1,
+                     final double s12,
+                     final double[] latLonOut) {
+      MemorySegment scratch = SCRATCH.get();
+      try {
+        GEN_DIRECT_VALUES.invokeExact(MemorySegment.ofAddress(geodesicCppPtr),
+                                      lat1, lon1, azi1, 0, s12,
+                                      Geodesic.MASK_LATITUDE
+                                      | Geodesic.MASK_LONGITUDE, scratch);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      MemorySegment.copy(scratch, ValueLayout.JAVA_DOUBLE, 0, latLonOut, 0, 2);
+    }
+  }
+
+  /**
+   * Validates a segment of a batch call.
+   */
+  private static void checkSegment(final MemorySegment segment,
+                                   final String name,
+                                   final MemoryLayout record,
+                                   final long count,
+                                   final boolean writable) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count (" + count + ") must be non-negative");
+    }
+    if (segment == null) {
+      throw new IllegalArgumentException(name + " must not be null");
+    }
+    if (segment.byteSize() / record.byteSize() < count) {
+      throw new IllegalArgumentException(name + " has " + segment.byteSize()
+                                         + " bytes, need "
+                                         + count * record.byteSize());
+    }
+    if (writable && segment.isReadOnly()) {
+      throw new IllegalArgumentException(name + " must not be read-only");
+    }
+  }
+
+  /**
+   * Looks up a C function of the GeographicJni library.
+   */
+  private static MethodHandle downcall(final Linker linker,
+                                       final SymbolLookup lookup,
+                                       final String name,
+                                       final FunctionDescriptor descriptor) {
+    MemorySegment symbol = lookup.find(name).orElseThrow(
+        () -> new UnsatisfiedLinkError("GeographicJni has no symbol " + name));
+    return linker.downcallHandle(symbol, descriptor);
+  }
+
+  /**
+   * Rethrows what a method handle threw, unchecked.
+   */
+  private static RuntimeException rethrow(final Throwable t) {
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    throw new IllegalStateException(t);
+  }
+
+  /**
+   * Get a string representation of this object.
+   *
+   * @return a string representation of this object.
+   *
+   * @see java.lang.Object#toString
+   */
+  public String toString() {
+    return new StringBuffer("MajorRadius=" + getMajorRadius())
+        .append(", Flattening=" + getFlattening())
+        .append(", EllipsoidArea=" + getEllipsoidArea())
+        .toString();
+  }
+}
@@ -0,0 +1,219 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.pairs;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>CloseUnderLoadTest</code> closes instances of the
+ * {@link GeodesicEngine#NATIVE} and {@link GeodesicEngine#FOREIGN} engines
+ * while other threads keep calling them. Every call which completes must
+ * agree with {@link GeodesicEngine#JAVA}, every call after the close must
+ * throw an <code>IllegalStateException</code>, and the C++ object must be
+ * deleted exactly once, after the last call in flight. A
+ * <code>JAVA</code> instance has nothing to release, the calls racing its
+ * close must all complete. The tests are skipped when the engine can't be
+ * loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class CloseUnderLoadTest {
+
+  private static final int THREADS = 8;
+  private static final int ROUNDS = 50;
+  private static final int COUNT = 64;
+
+  /**
+   * An ellipsoid no other test uses, so the C++ object belongs to the
+   * instances of this test.
+   */
+  private static final double A = 6378500;
+  private static final double F = 1 / 293.0;
+
+  private final GeodesicEngine engine;
+  private ExecutorService executor;
+  private double[][] in;
+  private double[] expected;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public CloseUnderLoadTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    Geodesic javaGeodesic = new Geodesic(A, F, GeodesicEngine.JAVA);
+    in = pairs(javaGeodesic, new Random(18), COUNT, 1e5);
+    expected = new double[COUNT];
+    javaGeodesic.genInverse(in[0], in[1], in[2], in[3], 0, COUNT,
+                            Geodesic.MASK_DISTANCE,
+                            expected, null, null, null, null, null, null,
+                            null);
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (executor != null) {
+      executor.shutdownNow();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * Calls the single and batch functions of <code>geodesic</code> until
+   * one throws an <code>IllegalStateException</code> or <code>limit</code>
+   * calls completed, checking every result.
+   *
+   * @return the number of calls which completed
+   */
+  private Callable<Integer> caller(final Geodesic geodesic,
+                                   final CountDownLatch started,
+                                   final int limit) {
+    return new Callable<Integer>() {
+      public Integer call() {
+        double[] s12 = new double[COUNT];
+        int calls = 0;
+        try {
+          while (calls < limit) {
+            int i = calls % COUNT;
+            double distance =
+                geodesic.distance(in[0][i], in[1][i], in[2][i], in[3][i]);
+            assertEquals(expected[i], distance, 1e-8);
+            geodesic.genInverse(in[0], in[1], in[2], in[3], 0, COUNT,
+                                Geodesic.MASK_DISTANCE,
+                                s12, null, null, null, null, null, null,
+                                null);
+            for (int k = 0; k < COUNT; ++k) {
+              assertEquals(expected[k], s12[k], 1e-8);
+            }
+            if (++calls == 1) {
+              started.countDown();
+            }
+          }
+        } catch (IllegalStateException e) {
+          // closed
+        }
+        return calls;
+      }
+    };
+  }
+
+  @Test
+  public void callsRacingCloseFailCleanly() throws Exception {
+    assumeFalse("close does nothing", engine == GeodesicEngine.JAVA);
+    for (int round = 0; round < ROUNDS; ++round) {
+      NativeStats before = Geodesic.getNativeStats();
+      Geodesic geodesic = new Geodesic(A, F, engine);
+      assertTrue(geodesic.getNativeLease().isCreated());
+      CountDownLatch started = new CountDownLatch(THREADS);
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      for (int t = 0; t < THREADS; ++t) {
+        futures.add(executor.submit(caller(geodesic, started,
+                                                  Integer.MAX_VALUE)));
+      }
+      // close while every thread is calling, at varying points of the calls
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      Thread.sleep(round % 3);
+      geodesic.close();
+      for (Future<Integer> future : futures) {
+        assertTrue(future.get(10, TimeUnit.SECONDS) >= 1);
+      }
+      try {
+        geodesic.distance(0, 0, 10, 10);
+        fail("call after close");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      NativeStats after = Geodesic.getNativeStats();
+      assertEquals(before.getClosedHandles() + 1, after.getClosedHandles());
+      assertTrue(after.getFreedObjects() >= before.getFreedObjects() + 1);
+    }
+  }
+
+  @Test
+  public void concurrentClosesReleaseOnce() throws Exception {
+    assumeFalse("no native object", engine == GeodesicEngine.JAVA);
+    for (int round = 0; round < ROUNDS; ++round) {
+      NativeStats before = Geodesic.getNativeStats();
+      final Geodesic geodesic = new Geodesic(A, F, engine);
+      final CountDownLatch go = new CountDownLatch(1);
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      for (int t = 0; t < THREADS; ++t) {
+        futures.add(executor.submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+              go.await();
+              geodesic.close();
+              return 0;
+            }
+          }));
+      }
+      go.countDown();
+      for (Future<Integer> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+      NativeStats after = Geodesic.getNativeStats();
+      assertEquals(before.getClosedHandles() + 1, after.getClosedHandles());
+      // the object was deleted, the next instance creates a new one
+      Geodesic next = new Geodesic(A, F, engine);
+      try {
+        assertTrue(next.getNativeLease().isCreated());
+      } finally {
+        next.close();
+      }
+    }
+  }
+
+  @Test
+  public void javaInstanceStaysUsableAfterClose() throws Exception {
+    assumeTrue(engine == GeodesicEngine.JAVA);
+    int limit = 20;
+    NativeStats before = Geodesic.getNativeStats();
+    Geodesic geodesic = new Geodesic(A, F, engine);
+    assertNull(geodesic.getNativeLease());
+    CountDownLatch started = new CountDownLatch(THREADS);
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    for (int t = 0; t < THREADS; ++t) {
+      futures.add(executor.submit(caller(geodesic, started, limit)));
+    }
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    geodesic.close();
+    // nothing to release, every call completes
+    for (Future<Integer> future : futures) {
+      assertEquals(limit, (int) future.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(expected[0],
+                 geodesic.distance(in[0][0], in[1][0], in[2][0], in[3][0]),
+                 1e-8);
+    NativeStats after = Geodesic.getNativeStats();
+    assertEquals(before.getOpenedHandles(), after.getOpenedHandles());
+    assertEquals(before.getClosedHandles(), after.getClosedHandles());
+  }
+}
@@ -0,0 +1,191 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.pairs;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * <code>DistanceApproximationTest</code> checks the approximate and
+ * adaptive distances of {@link Geodesic} against {@link Geodesic#distance}:
+ * the relative errors stay within {@link Geodesic#getApproximationError}
+ * and the adaptive distances within their tolerance.
+ *
+ * @version 1.29
+ */
+public class DistanceApproximationTest {
+
+  private static final int COUNT = 5000;
+
+  /**
+   * The rounding error allowed besides the relative one (meters).
+   */
+  private static final double ROUNDING = 1e-6;
+
+  private final Geodesic geodesic = wgs84(GeodesicEngine.JAVA);
+
+  private static void assertWithinRelativeError(final Geodesic geodesic,
+                                                final DistanceMethod method) {
+    double bound = geodesic.getApproximationError(method);
+    double[][] pairs = pairs(geodesic, new Random(25), COUNT, 1e6);
+    for (int i = 0; i < COUNT; ++i) {
+      double s = geodesic.distance(pairs[0][i], pairs[1][i],
+                                   pairs[2][i], pairs[3][i]);
+      double d = geodesic.approximateDistance(method,
+                                              pairs[0][i], pairs[1][i],
+                                              pairs[2][i], pairs[3][i]);
+      assertEquals(method + " pair " + i, s, d, bound * s + ROUNDING);
+    }
+  }
+
+  @Test
+  public void relativeErrorBoundsForWgs84() {
+    double f = geodesic.getFlattening();
+    assertEquals(1.7 * f + 3 * f * f,
+                 geodesic.getApproximationError(DistanceMethod.SPHERICAL),
+                 1e-15);
+    assertEquals(160 * f * f,
+                 geodesic.getApproximationError(DistanceMethod.ANDOYER_LAMBERT),
+                 1e-15);
+  }
+
+  @Test
+  public void noRelativeErrorOutsideTheMeasuredFlattenings() {
+    for (double f : new double[] {1.0 / 100, -1.0 / 100, 0.5}) {
+      Geodesic other = new Geodesic(6.4e6, f, GeodesicEngine.JAVA);
+      for (DistanceMethod method : DistanceMethod.values()) {
+        assertEquals(Double.POSITIVE_INFINITY,
+                     other.getApproximationError(method), 0);
+      }
+    }
+  }
+
+  @Test
+  public void sphericalIsWithinItsBound() {
+    assertWithinRelativeError(geodesic, DistanceMethod.SPHERICAL);
+  }
+
+  @Test
+  public void andoyerLambertIsWithinItsBound() {
+    assertWithinRelativeError(geodesic, DistanceMethod.ANDOYER_LAMBERT);
+  }
+
+  @Test
+  public void boundsHoldForOblateAndProlateEllipsoids() {
+    for (double f : new double[] {1.0 / 150, -1.0 / 150}) {
+      Geodesic other = new Geodesic(6.4e6, f, GeodesicEngine.JAVA);
+      assertWithinRelativeError(other, DistanceMethod.SPHERICAL);
+      assertWithinRelativeError(other, DistanceMethod.ANDOYER_LAMBERT);
+    }
+  }
+
+  @Test
+  public void batchMatchesSingleCalls() {
+    double[][] pairs = pairs(geodesic, new Random(26), COUNT, 1e6);
+    for (DistanceMethod method : DistanceMethod.values()) {
+      double[] s12 = new double[COUNT + 3];
+      s12[0] = -1;
+      s12[COUNT + 2] = -1;
+      double[][] shifted = new double[4][COUNT + 3];
+      for (int k = 0; k < 4; ++k) {
+        System.arraycopy(pairs[k], 0, shifted[k], 1, COUNT);
+      }
+      geodesic.approximateDistance(method, shifted[0], shifted[1],
+                                   shifted[2], shifted[3], 1, COUNT, s12);
+      for (int i = 0; i < COUNT; ++i) {
+        double d = geodesic.approximateDistance(method,
+                                                pairs[0][i], pairs[1][i],
+                                                pairs[2][i], pairs[3][i]);
+        assertEquals(d, s12[i + 1], 1e-9 * d);
+      }
+      assertEquals(-1, s12[0], 0);
+      assertEquals(-1, s12[COUNT + 2], 0);
+    }
+  }
+
+  @Test
+  public void adaptiveDistanceIsWithinTolerance() {
+    for (double tolerance : new double[] {0, 1, 10, 1000}) {
+      double[][] pairs = pairs(geodesic, new Random(27), COUNT, 2e6);
+      double[] s12 = new double[COUNT];
+      for (DistanceMethod method : DistanceMethod.values()) {
+        int exact = geodesic.adaptiveDistance(method, tolerance,
+                                              pairs[0], pairs[1],
+                                              pairs[2], pairs[3],
+                                              0, COUNT, s12);
+        // at least the far pairs fall back to the exact distance
+        assertTrue(exact >= COUNT / 4);
+        for (int i = 0; i < COUNT; ++i) {
+          double s = geodesic.distance(pairs[0][i], pairs[1][i],
+                                       pairs[2][i], pairs[3][i]);
+          double d = geodesic.adaptiveDistance(method, tolerance,
+                                               pairs[0][i], pairs[1][i],
+                                               pairs[2][i], pairs[3][i]);
+          assertEquals(s, d, tolerance + ROUNDING);
+          assertEquals(d, s12[i], 1e-9 * d + ROUNDING);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void adaptiveDistanceKeepsShortApproximations() {
+    double[][] pairs = pairs(geodesic, new Random(28), COUNT, 1e6);
+    // only the pairs within 50 km
+    int count = 0;
+    double[][] near = new double[4][COUNT];
+    for (int i = 1; i < COUNT; i += 4) {
+      if (geodesic.distance(pairs[0][i], pairs[1][i],
+                            pairs[2][i], pairs[3][i]) < 50000) {
+        for (int k = 0; k < 4; ++k) {
+          near[k][count] = pairs[k][i];
+        }
+        ++count;
+      }
+    }
+    assertTrue(count > 0);
+    double[] s12 = new double[count];
+    assertEquals(0, geodesic.adaptiveDistance(DistanceMethod.ANDOYER_LAMBERT,
+                                              1, near[0], near[1], near[2],
+                                              near[3], 0, count, s12));
+  }
+
+  @Test
+  public void adaptiveDistanceIsRecordedOnce() {
+    GeodesicMetricsRecorder recorder = new GeodesicMetricsRecorder();
+    GeodesicInstrumentation.setMetrics(recorder);
+    GeodesicInstrumentation.setEnabled(true);
+    try {
+      // 1 km apart, then antipodal
+      geodesic.adaptiveDistance(DistanceMethod.ANDOYER_LAMBERT, 1,
+                                10, 20, 10.009, 20);
+      geodesic.adaptiveDistance(DistanceMethod.ANDOYER_LAMBERT, 1,
+                                10, 20, -10, -160);
+      assertEquals(1, recorder.getCalls(
+          GeodesicMetrics.Operation.APPROXIMATE_DISTANCE));
+      assertEquals(1, recorder.getCalls(GeodesicMetrics.Operation.DISTANCE));
+
+      double[][] pairs = pairs(geodesic, new Random(29), COUNT, 1e5);
+      double[] s12 = new double[COUNT];
+      int exact = geodesic.adaptiveDistance(DistanceMethod.ANDOYER_LAMBERT,
+                                            1, pairs[0], pairs[1], pairs[2],
+                                            pairs[3], 0, COUNT, s12);
+      assertEquals(1 + COUNT - exact, recorder.getGeodesics(
+          GeodesicMetrics.Operation.APPROXIMATE_DISTANCE));
+      assertEquals(exact, recorder.getGeodesics(
+          GeodesicMetrics.Operation.INVERSE_BATCH));
+    } finally {
+      GeodesicInstrumentation.setEnabled(false);
+      GeodesicInstrumentation.setMetrics(null);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANegativeTolerance() {
+    geodesic.adaptiveDistance(DistanceMethod.SPHERICAL, -1, 0, 0, 1, 1);
+  }
+}
@@ -0,0 +1,213 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assertInverseAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assertUntouchedOutside;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.random;
+import static net.sf.geographiclib.GeodesicFixtures.untouched;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>DistanceMatrixTest</code> compares the distance matrices computed
+ * by the native threads of the {@link GeodesicEngine#NATIVE} and
+ * {@link GeodesicEngine#FOREIGN} engines with those of
+ * {@link GeodesicEngine#JAVA}, for shapes on both sides of the tiles of
+ * 16 x 256 elements and of the bands of 2<sup>20</sup> elements the native
+ * code splits a matrix into, and for several thread counts. The outputs
+ * left untouched and the arguments rejected are checked for
+ * <code>JAVA</code> too. The tests are skipped when the engine can't be
+ * loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class DistanceMatrixTest {
+
+  /**
+   * Origins x destinations.
+   */
+  private static final int[][] SHAPES =
+      {{1, 1}, {1, 4097}, {4097, 1}, {16, 256}, {17, 257}, {33, 511}};
+
+  private static final int[] THREADS = {1, 2, 3, 8, 0};
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public DistanceMatrixTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  private static double[] latitudes(final Random random, final int length) {
+    double[] lat = new double[length];
+    for (int i = 0; i < length; ++i) {
+      lat[i] = latitude(random);
+    }
+    return lat;
+  }
+
+  /**
+   * Checks the matrices of s12, azi1 and azi2 of the engine against the
+   * Java engine for one shape and thread count.
+   */
+  private void assertMatrixAgrees(final int rows,
+                                  final int cols,
+                                  final int threads) {
+    Random random = new Random(rows * 10000 + cols);
+    double[] lat1 = latitudes(random, rows);
+    double[] lon1 = random(random, rows, 180);
+    double[] lat2 = latitudes(random, cols);
+    double[] lon2 = random(random, cols, 180);
+    int size = rows * cols;
+    long outmask = Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH;
+    // s12, azi1 and azi2 in the order of assertInverseAgrees
+    double[][] expected = new double[8][];
+    double[][] actual = new double[8][];
+    for (int k = 0; k < 3; ++k) {
+      expected[k] = new double[size];
+      // one more element, which must not be written
+      actual[k] = untouched(size + 1);
+    }
+    javaGeodesic.distanceMatrix(lat1, lon1, lat2, lon2, outmask,
+                                expected[0], expected[1], expected[2], 1);
+    geodesic.distanceMatrix(lat1, lon1, lat2, lon2, outmask,
+                            actual[0], actual[1], actual[2], threads);
+    for (int i = 0; i < size; ++i) {
+      assertInverseAgrees(expected, actual, i);
+    }
+    for (int k = 0; k < 3; ++k) {
+      assertUntouchedOutside(actual[k], 0, size);
+    }
+  }
+
+  @Test
+  public void matrixAgreesAcrossTiles() {
+    for (int[] shape : SHAPES) {
+      for (int threads : THREADS) {
+        assertMatrixAgrees(shape[0], shape[1], threads);
+      }
+    }
+  }
+
+  @Test
+  public void matrixAgreesAcrossBands() {
+    // bands of 1023 rows, the last one of 2 rows
+    assertMatrixAgrees(1025, 1025, 4);
+  }
+
+  @Test
+  public void distancesOnlyLeaveTheAzimuthsAlone() {
+    Random random = new Random(14);
+    double[] lat1 = latitudes(random, 20);
+    double[] lon1 = random(random, 20, 180);
+    double[] lat2 = latitudes(random, 300);
+    double[] lon2 = random(random, 300, 180);
+    double[] expected = new double[20 * 300];
+    double[] s12 = untouched(20 * 300);
+    double[] azi1 = untouched(20 * 300);
+    javaGeodesic.distanceMatrix(lat1, lon1, lat2, lon2,
+                                Geodesic.MASK_DISTANCE, expected, null, null,
+                                1);
+    geodesic.distanceMatrix(lat1, lon1, lat2, lon2, Geodesic.MASK_DISTANCE,
+                            s12, azi1, null, 3);
+    for (int i = 0; i < s12.length; ++i) {
+      assertEquals(expected[i], s12[i], 1e-8);
+    }
+    assertUntouchedOutside(azi1, 0, 0);
+  }
+
+  @Test
+  public void bufferMatrixAgrees() {
+    int rows = 17;
+    int cols = 257;
+    int size = rows * cols;
+    Random random = new Random(15);
+    double[] lat1 = latitudes(random, rows);
+    double[] lon1 = random(random, rows, 180);
+    double[] lat2 = latitudes(random, cols);
+    double[] lon2 = random(random, cols, 180);
+    double[] s12 = new double[size];
+    double[] azi1 = new double[size];
+    double[] azi2 = new double[size];
+    long outmask = Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH;
+    javaGeodesic.distanceMatrix(lat1, lon1, lat2, lon2, outmask,
+                                s12, azi1, azi2, 1);
+    // records of three doubles and one spare byte
+    int stride = 3 * 8 + 1;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(size * stride)
+        .order(ByteOrder.nativeOrder());
+    BufferColumn s12Column = new BufferColumn(buffer, 0, stride);
+    BufferColumn azi1Column = new BufferColumn(buffer, 8, stride);
+    BufferColumn azi2Column = new BufferColumn(buffer, 16, stride);
+    geodesic.distanceMatrix(lat1, lon1, lat2, lon2, outmask,
+                            s12Column, azi1Column, azi2Column, 4);
+    double[][] expected = {s12, azi1, azi2, null, null, null, null, null};
+    double[][] actual = new double[8][];
+    for (int k = 0; k < 3; ++k) {
+      actual[k] = new double[size];
+    }
+    for (int i = 0; i < size; ++i) {
+      actual[0][i] = s12Column.get(i);
+      actual[1][i] = azi1Column.get(i);
+      actual[2][i] = azi2Column.get(i);
+      assertInverseAgrees(expected, actual, i);
+    }
+  }
+
+  @Test
+  public void emptyMatrixIsNotComputed() {
+    double[] none = new double[0];
+    double[] one = {0};
+    geodesic.distanceMatrix(none, none, one, one, Geodesic.MASK_DISTANCE,
+                            none, null, null, 0);
+    geodesic.distanceMatrix(one, one, none, none, Geodesic.MASK_DISTANCE,
+                            none, null, null, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMismatchedCoordinates() {
+    geodesic.distanceMatrix(new double[3], new double[2], new double[2],
+                            new double[2], Geodesic.MASK_DISTANCE,
+                            new double[6], null, null, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAShortMatrix() {
+    geodesic.distanceMatrix(new double[3], new double[3], new double[2],
+                            new double[2], Geodesic.MASK_DISTANCE,
+                            new double[5], null, null, 0);
+  }
+}
@@ -0,0 +1,153 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.WGS84_A;
+import static net.sf.geographiclib.GeodesicFixtures.WGS84_F;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.isAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * <code>ForeignEngineTest</code> checks that the
+ * {@link GeodesicEngine#FOREIGN} downcalls give exactly the results of the
+ * JNI calls of {@link GeodesicEngine#NATIVE}, both calling the same C++
+ * functions with the same outmask, and how the engine is chosen when it
+ * isn't available. The comparisons are skipped when the engine can't be
+ * loaded; the other engines are compared with the Java one by the tests of
+ * each function.
+ *
+ * @version 1.29
+ */
+public class ForeignEngineTest {
+
+  private static final int COUNT = 2000;
+
+  @Test
+  public void singleCallsMatchNative() {
+    assumeAvailable(GeodesicEngine.FOREIGN);
+    Geodesic foreign = wgs84(GeodesicEngine.FOREIGN);
+    Geodesic jni = wgs84(GeodesicEngine.NATIVE);
+    try {
+      Random random = new Random(16);
+      Geodesic.MutableDirectResult direct = new Geodesic.MutableDirectResult();
+      Geodesic.MutableInverseResult inverse =
+          new Geodesic.MutableInverseResult();
+      double[] latLon = new double[2];
+      for (int i = 0; i < COUNT; ++i) {
+        double lat1 = latitude(random);
+        double lon1 = random.nextDouble() * 360 - 180;
+        double lat2 = latitude(random);
+        double lon2 = random.nextDouble() * 360 - 180;
+        double azi1 = random.nextDouble() * 360 - 180;
+        double s12 = random.nextDouble() * 2e7;
+        Geodesic.InverseResult expectedInverse =
+            jni.inverse(lat1, lon1, lat2, lon2);
+        Geodesic.InverseResult actualInverse =
+            foreign.inverse(lat1, lon1, lat2, lon2);
+        assertEquals(expectedInverse.gets12(), actualInverse.gets12(), 0);
+        assertEquals(expectedInverse.getAzi1(), actualInverse.getAzi1(), 0);
+        assertEquals(expectedInverse.getAzi2(), actualInverse.getAzi2(), 0);
+        assertEquals(expectedInverse.getS12(), actualInverse.getS12(), 0);
+        Geodesic.DirectResult expectedDirect =
+            jni.direct(lat1, lon1, azi1, s12);
+        Geodesic.DirectResult actualDirect =
+            foreign.direct(lat1, lon1, azi1, s12);
+        assertEquals(expectedDirect.getLat2(), actualDirect.getLat2(), 0);
+        assertEquals(expectedDirect.getLon2(), actualDirect.getLon2(), 0);
+        assertEquals(expectedDirect.getAzi2(), actualDirect.getAzi2(), 0);
+        assertEquals(expectedDirect.getm12(), actualDirect.getm12(), 0);
+        foreign.genInverse(lat1, lon1, lat2, lon2, Geodesic.MASK_ALL, inverse);
+        assertEquals(jni.genInverse(lat1, lon1, lat2, lon2,
+                                    Geodesic.MASK_ALL).gets12(),
+                     inverse.gets12(), 0);
+        foreign.genDirect(lat1, lon1, azi1, false, s12, Geodesic.MASK_ALL,
+                          direct);
+        assertEquals(jni.genDirect(lat1, lon1, azi1, false, s12,
+                                   Geodesic.MASK_ALL).getLat2(),
+                     direct.getLat2(), 0);
+        assertEquals(jni.distance(lat1, lon1, lat2, lon2),
+                     foreign.distance(lat1, lon1, lat2, lon2), 0);
+        assertEquals(jni.initialAzimuth(lat1, lon1, lat2, lon2),
+                     foreign.initialAzimuth(lat1, lon1, lat2, lon2), 0);
+        assertEquals(jni.finalAzimuth(lat1, lon1, lat2, lon2),
+                     foreign.finalAzimuth(lat1, lon1, lat2, lon2), 0);
+        foreign.destination(lat1, lon1, azi1, s12, latLon);
+        double[] expected = jni.destination(lat1, lon1, azi1, s12,
+                                            new double[2]);
+        assertEquals(expected[0], latLon[0], 0);
+        assertEquals(expected[1], latLon[1], 0);
+      }
+    } finally {
+      foreign.close();
+      jni.close();
+    }
+  }
+
+  @Test
+  public void sharesTheNativeObject() {
+    assumeAvailable(GeodesicEngine.FOREIGN);
+    NativeStats before = Geodesic.getNativeStats();
+    Geodesic jni = wgs84(GeodesicEngine.NATIVE);
+    Geodesic foreign = wgs84(GeodesicEngine.FOREIGN);
+    try {
+      assertEquals(GeodesicEngine.FOREIGN, foreign.getEngine());
+      assertEquals(jni, foreign);
+      // WGS84 may have a live object already, at most one more is created
+      assertTrue(Geodesic.getNativeStats().getLiveObjects()
+                 <= before.getLiveObjects() + 1);
+    } finally {
+      foreign.close();
+      jni.close();
+    }
+  }
+
+  @Test
+  public void unavailableEngineCantBeConstructed() {
+    assumeFalse(isAvailable(GeodesicEngine.FOREIGN));
+    try {
+      wgs84(GeodesicEngine.FOREIGN).close();
+      fail("FOREIGN engine constructed without its classes or library");
+    } catch (UnsatisfiedLinkError e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void defaultEngineFallsBack() {
+    String saved = System.getProperty(GeodesicEngine.PROPERTY);
+    try {
+      System.setProperty(GeodesicEngine.PROPERTY, "foreign");
+      GeodesicEngine expected = isAvailable(GeodesicEngine.FOREIGN)
+          ? GeodesicEngine.FOREIGN
+          : isAvailable(GeodesicEngine.NATIVE) ? GeodesicEngine.NATIVE
+          : GeodesicEngine.JAVA;
+      assertEquals(expected, GeodesicEngine.getDefault());
+      // and instances created without an engine work on the fallback
+      Geodesic geodesic = new Geodesic(WGS84_A, WGS84_F);
+      try {
+        assertEquals(expected, geodesic.getEngine());
+        assertEquals(wgs84(GeodesicEngine.JAVA).distance(40.6, -73.8,
+                                                         51.4, 0),
+                     geodesic.distance(40.6, -73.8, 51.4, 0), 1e-8);
+      } finally {
+        geodesic.close();
+      }
+      System.setProperty(GeodesicEngine.PROPERTY, " Java ");
+      assertEquals(GeodesicEngine.JAVA, GeodesicEngine.getDefault());
+    } finally {
+      if (saved == null) {
+        System.clearProperty(GeodesicEngine.PROPERTY);
+      } else {
+        System.setProperty(GeodesicEngine.PROPERTY, saved);
+      }
+    }
+  }
+}
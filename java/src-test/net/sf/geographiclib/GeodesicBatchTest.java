@@ -0,0 +1,356 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assertDirectAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assertInverseAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assertUntouchedOutside;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.random;
+import static net.sf.geographiclib.GeodesicFixtures.untouched;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>GeodesicBatchTest</code> compares the array batch functions of the
+ * {@link GeodesicEngine#NATIVE} and {@link GeodesicEngine#FOREIGN} engines
+ * with those of {@link GeodesicEngine#JAVA}, for every combination of
+ * per-element and shared azimuths and distances of the direct problem and
+ * in particular around the
+ * chunks of <code>BATCH_CHUNK_SIZE</code> elements the native code pins at
+ * a time. The argument checks, offsets and untouched outputs are checked
+ * for <code>JAVA</code> too. The tests are skipped when the engine can't be
+ * loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class GeodesicBatchTest {
+
+  /**
+   * <code>BATCH_CHUNK_SIZE</code> of <code>batch_output.hpp</code>.
+   */
+  private static final int CHUNK = 4096;
+
+  /**
+   * Batch lengths on both sides of the chunk boundaries.
+   */
+  private static final int[] LENGTHS =
+      {0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 2 * CHUNK + 1};
+
+  /**
+   * An odd offset, so that the chunks don't start at the array boundaries.
+   */
+  private static final int OFFSET = 3;
+
+  /**
+   * Elements after the batch in every array.
+   */
+  private static final int TAIL = 5;
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public GeodesicBatchTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  private static double[] latitudes(final Random random, final int length) {
+    double[] lat = new double[length];
+    for (int i = 0; i < length; ++i) {
+      lat[i] = latitude(random);
+    }
+    return lat;
+  }
+
+  private static double[][] untouchedOutputs(final int count,
+                                             final int size) {
+    double[][] outputs = new double[count][];
+    for (int k = 0; k < count; ++k) {
+      outputs[k] = untouched(size);
+    }
+    return outputs;
+  }
+
+  @Test
+  public void inverseAgreesAcrossChunks() {
+    for (int length : LENGTHS) {
+      int size = OFFSET + length + TAIL;
+      Random random = new Random(length);
+      double[] lat1 = latitudes(random, size);
+      double[] lon1 = random(random, size, 180);
+      double[] lat2 = latitudes(random, size);
+      double[] lon2 = random(random, size, 180);
+      double[][] expected = untouchedOutputs(8, size);
+      double[][] actual = untouchedOutputs(8, size);
+      javaGeodesic.genInverse(lat1, lon1, lat2, lon2, OFFSET, length,
+                              Geodesic.MASK_ALL,
+                              expected[0], expected[1], expected[2],
+                              expected[3], expected[4], expected[5],
+                              expected[6], expected[7]);
+      geodesic.genInverse(lat1, lon1, lat2, lon2, OFFSET, length,
+                          Geodesic.MASK_ALL,
+                          actual[0], actual[1], actual[2], actual[3],
+                          actual[4], actual[5], actual[6], actual[7]);
+      for (int i = OFFSET; i < OFFSET + length; ++i) {
+        assertInverseAgrees(expected, actual, i);
+      }
+      for (double[] output : actual) {
+        assertUntouchedOutside(output, OFFSET, length);
+      }
+    }
+  }
+
+  @Test
+  public void inverseWritesOnlyTheRequestedOutputs() {
+    int length = CHUNK + 1;
+    int size = OFFSET + length + TAIL;
+    Random random = new Random(1);
+    double[] lat1 = latitudes(random, size);
+    double[] lon1 = random(random, size, 180);
+    double[] lat2 = latitudes(random, size);
+    double[] lon2 = random(random, size, 180);
+    double[][] expected = untouchedOutputs(8, size);
+    double[][] actual = untouchedOutputs(8, size);
+    // no azimuths, scales or area, and no m12 array
+    long outmask = Geodesic.MASK_DISTANCE | Geodesic.MASK_REDUCEDLENGTH;
+    javaGeodesic.genInverse(lat1, lon1, lat2, lon2, OFFSET, length, outmask,
+                            expected[0], expected[1], expected[2], null,
+                            expected[4], expected[5], expected[6],
+                            expected[7]);
+    geodesic.genInverse(lat1, lon1, lat2, lon2, OFFSET, length, outmask,
+                        actual[0], actual[1], actual[2], null,
+                        actual[4], actual[5], actual[6], actual[7]);
+    for (int i = OFFSET; i < OFFSET + length; ++i) {
+      assertInverseAgrees(expected, actual, i);
+    }
+    assertUntouchedOutside(actual[0], OFFSET, length);
+    for (int k = 1; k < 7; ++k) {
+      // never written
+      assertUntouchedOutside(actual[k], 0, 0);
+    }
+    // a12 is always calculated
+    assertUntouchedOutside(actual[7], OFFSET, length);
+  }
+
+  @Test
+  public void inverseMatchesSingleCalls() {
+    int size = OFFSET + CHUNK + 1;
+    Random random = new Random(2);
+    double[] lat1 = latitudes(random, size);
+    double[] lon1 = random(random, size, 180);
+    double[] lat2 = latitudes(random, size);
+    double[] lon2 = random(random, size, 180);
+    double[] s12 = new double[size];
+    geodesic.genInverse(lat1, lon1, lat2, lon2, OFFSET, CHUNK + 1,
+                        Geodesic.MASK_DISTANCE, s12,
+                        null, null, null, null, null, null, null);
+    for (int i = OFFSET; i < size; ++i) {
+      // the same C++ function, one call per pair
+      assertEquals(geodesic.genInverse(lat1[i], lon1[i], lat2[i], lon2[i],
+                                       Geodesic.MASK_DISTANCE).gets12(),
+                   s12[i], 1e-9);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void inverseRejectsAShortOutput() {
+    double[] values = new double[10];
+    geodesic.genInverse(values, values, values, values, 3, 7,
+                        Geodesic.MASK_DISTANCE, new double[9],
+                        null, null, null, null, null, null, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void inverseRejectsANegativeOffset() {
+    double[] values = new double[10];
+    geodesic.genInverse(values, values, values, values, -1, 2,
+                        Geodesic.MASK_DISTANCE, values,
+                        null, null, null, null, null, null, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void inverseRejectsAMissingInput() {
+    double[] values = new double[10];
+    geodesic.genInverse(values, values, null, values, 0, 10,
+                        Geodesic.MASK_DISTANCE, values,
+                        null, null, null, null, null, null, null);
+  }
+
+  @Test
+  public void emptyInverseReadsNothing() {
+    // the arrays may be shorter than the offset when nothing is processed
+    double[] s12 = untouched(2);
+    geodesic.genInverse(new double[2], new double[2], new double[2],
+                        new double[2], 2, 0, Geodesic.MASK_ALL, s12,
+                        null, null, null, null, null, null, null);
+    assertUntouchedOutside(s12, 0, 0);
+  }
+
+  /**
+   * Solves the direct problems of the batch with the overload selected by
+   * <code>shared</code>: bit 0 shares the azimuth of element 0 and bit 1
+   * the distance or arc length of element 0.
+   */
+  private static void genDirect(final Geodesic geodesic,
+                                final int shared,
+                                final double[] lat1,
+                                final double[] lon1,
+                                final double[] azi1,
+                                final boolean arcmode,
+                                final double[] s12_a12,
+                                final int length,
+                                final double[][] out) {
+    switch (shared) {
+    case 0:
+      geodesic.genDirect(lat1, lon1, azi1, arcmode, s12_a12, OFFSET, length,
+                         Geodesic.MASK_ALL, out[0], out[1], out[2], out[3],
+                         out[4], out[5], out[6], out[7], out[8]);
+      break;
+    case 1:
+      geodesic.genDirect(lat1, lon1, azi1[0], arcmode, s12_a12, OFFSET,
+                         length, Geodesic.MASK_ALL, out[0], out[1], out[2],
+                         out[3], out[4], out[5], out[6], out[7], out[8]);
+      break;
+    case 2:
+      geodesic.genDirect(lat1, lon1, azi1, arcmode, s12_a12[0], OFFSET,
+                         length, Geodesic.MASK_ALL, out[0], out[1], out[2],
+                         out[3], out[4], out[5], out[6], out[7], out[8]);
+      break;
+    default:
+      geodesic.genDirect(lat1, lon1, azi1[0], arcmode, s12_a12[0], OFFSET,
+                         length, Geodesic.MASK_ALL, out[0], out[1], out[2],
+                         out[3], out[4], out[5], out[6], out[7], out[8]);
+      break;
+    }
+  }
+
+  private void assertDirectAgreesAcrossChunks(final boolean arcmode,
+                                              final double maxDistance) {
+    for (int length : LENGTHS) {
+      int size = OFFSET + length + TAIL;
+      Random random = new Random(length);
+      double[] lat1 = latitudes(random, size);
+      double[] lon1 = random(random, size, 180);
+      double[] azi1 = random(random, size, 180);
+      double[] s12_a12 = random(random, size, maxDistance);
+      for (int shared = 0; shared < 4; ++shared) {
+        double[][] expected = untouchedOutputs(9, size);
+        double[][] actual = untouchedOutputs(9, size);
+        genDirect(javaGeodesic, shared, lat1, lon1, azi1, arcmode, s12_a12,
+                  length, expected);
+        genDirect(geodesic, shared, lat1, lon1, azi1, arcmode, s12_a12,
+                  length, actual);
+        for (int i = OFFSET; i < OFFSET + length; ++i) {
+          assertDirectAgrees(expected, actual, i);
+        }
+        for (double[] output : actual) {
+          assertUntouchedOutside(output, OFFSET, length);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void directAgreesAcrossChunks() {
+    assertDirectAgreesAcrossChunks(false, 2e7);
+  }
+
+  @Test
+  public void arcDirectAgreesAcrossChunks() {
+    assertDirectAgreesAcrossChunks(true, 180);
+  }
+
+  @Test
+  public void directMatchesSingleCalls() {
+    int size = OFFSET + CHUNK + 1;
+    Random random = new Random(3);
+    double[] lat1 = latitudes(random, size);
+    double[] lon1 = random(random, size, 180);
+    double[] lat2 = new double[size];
+    double[] lon2 = new double[size];
+    // a shared azimuth and distance
+    geodesic.genDirect(lat1, lon1, 30, false, 1e6, OFFSET, CHUNK + 1,
+                       Geodesic.MASK_LATITUDE | Geodesic.MASK_LONGITUDE,
+                       lat2, lon2, null, null, null, null, null, null, null);
+    for (int i = OFFSET; i < size; ++i) {
+      Geodesic.DirectResult point = geodesic.direct(lat1[i], lon1[i], 30, 1e6);
+      assertEquals(point.getLat2(), lat2[i], 1e-13);
+      assertEquals(point.getLon2(), lon2[i], 1e-13);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void directRejectsAShortAzimuth() {
+    double[] values = new double[10];
+    geodesic.genDirect(values, values, new double[9], false, values, 3, 7,
+                       Geodesic.MASK_LATITUDE, values,
+                       null, null, null, null, null, null, null, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void directRejectsAShortOutput() {
+    double[] values = new double[10];
+    geodesic.genDirect(values, values, 30, false, 1e6, 3, 7,
+                       Geodesic.MASK_LONGITUDE, null, new double[9],
+                       null, null, null, null, null, null, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void directRejectsAMissingDistance() {
+    double[] values = new double[10];
+    geodesic.genDirect(values, values, 30, false, null, 0, 10,
+                       Geodesic.MASK_LATITUDE, values,
+                       null, null, null, null, null, null, null, null);
+  }
+
+  @Test
+  public void sharedDirectWritesOnlyTheRange() {
+    int size = OFFSET + 10 + TAIL;
+    double[] lat1 = random(new Random(4), size, 90);
+    double[] lon1 = random(new Random(5), size, 180);
+    double[][] out = untouchedOutputs(9, size);
+    geodesic.genDirect(lat1, lon1, -45, true, 10, OFFSET, 10,
+                       Geodesic.MASK_LATITUDE | Geodesic.MASK_LONGITUDE,
+                       out[0], out[1], out[2], out[3], out[4], out[5],
+                       out[6], out[7], out[8]);
+    assertUntouchedOutside(out[0], OFFSET, 10);
+    assertUntouchedOutside(out[1], OFFSET, 10);
+    for (int k = 2; k < 8; ++k) {
+      // not requested
+      assertUntouchedOutside(out[k], 0, 0);
+    }
+    for (int i = OFFSET; i < OFFSET + 10; ++i) {
+      // the arc length is given
+      assertEquals(10, out[8][i], 0);
+    }
+  }
+}
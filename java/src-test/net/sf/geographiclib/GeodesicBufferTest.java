@@ -0,0 +1,302 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assertDirectAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assertInverseAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>GeodesicBufferTest</code> compares the off-heap batch functions of
+ * the {@link GeodesicEngine#NATIVE} and {@link GeodesicEngine#FOREIGN}
+ * engines, which read and write {@link BufferColumn}s in place, with the
+ * array batch functions of {@link GeodesicEngine#JAVA}. The columns are
+ * interleaved in records of an odd number of bytes starting at odd offsets,
+ * so that no double is aligned. <code>JAVA</code> runs the same checks of
+ * the columns it leaves untouched and of the arguments it rejects. The
+ * tests are skipped when the engine can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class GeodesicBufferTest {
+
+  private static final int[] COUNTS = {0, 1, 4095, 4096, 4097};
+
+  /**
+   * The byte filling the buffers, to check which bytes were written.
+   */
+  private static final byte FILL = 0x5A;
+
+  /**
+   * Input records of three doubles and three spare bytes.
+   */
+  private static final int INPUT_STRIDE = 3 * 8 + 3;
+
+  /**
+   * Output records of nine doubles and one spare byte.
+   */
+  private static final int OUTPUT_STRIDE = 9 * 8 + 1;
+
+  /**
+   * The byte offset of the first field of the records.
+   */
+  private static final int FIRST_FIELD = 1;
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public GeodesicBufferTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  private static ByteBuffer allocate(final int bytes) {
+    ByteBuffer buffer =
+        ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    for (int i = 0; i < bytes; ++i) {
+      buffer.put(i, FILL);
+    }
+    return buffer;
+  }
+
+  /**
+   * Field <code>field</code> of the records of <code>stride</code> bytes.
+   */
+  private static BufferColumn field(final ByteBuffer buffer,
+                                    final int field,
+                                    final int stride) {
+    return new BufferColumn(buffer, FIRST_FIELD + 8 * field, stride);
+  }
+
+  /**
+   * Writes <code>values</code> into a column.
+   */
+  private static void fill(final BufferColumn column,
+                           final double[] values) {
+    for (int i = 0; i < values.length; ++i) {
+      column.put(i, values[i]);
+    }
+  }
+
+  /**
+   * Reads the first <code>count</code> elements of a column.
+   */
+  private static double[] read(final BufferColumn column, final int count) {
+    double[] values = new double[count];
+    for (int i = 0; i < count; ++i) {
+      values[i] = column.get(i);
+    }
+    return values;
+  }
+
+  /**
+   * Checks that the bytes of the records outside the first
+   * <code>fields</code> fields of the first <code>count</code> records
+   * still hold {@link #FILL}.
+   */
+  private static void assertFillOutside(final ByteBuffer buffer,
+                                        final int stride,
+                                        final int fields,
+                                        final int count) {
+    for (int i = 0; i < buffer.capacity(); ++i) {
+      int record = i / stride;
+      int offset = i % stride - FIRST_FIELD;
+      if (record >= count || offset < 0 || offset >= 8 * fields) {
+        assertEquals("byte " + i, FILL, buffer.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void inverseAgreesOverInterleavedRecords() {
+    for (int count : COUNTS) {
+      Random random = new Random(count);
+      double[][] in = new double[4][count];
+      for (int i = 0; i < count; ++i) {
+        in[0][i] = latitude(random);
+        in[1][i] = random.nextDouble() * 360 - 180;
+        in[2][i] = latitude(random);
+        in[3][i] = random.nextDouble() * 360 - 180;
+      }
+      // lat1, lon1 and lat2 interleaved, lon2 a contiguous column
+      ByteBuffer records = allocate(count * INPUT_STRIDE + 1);
+      ByteBuffer lon2 = allocate(count * 8);
+      BufferColumn lat1Column = field(records, 0, INPUT_STRIDE);
+      BufferColumn lon1Column = field(records, 1, INPUT_STRIDE);
+      BufferColumn lat2Column = field(records, 2, INPUT_STRIDE);
+      BufferColumn lon2Column = BufferColumn.contiguous(lon2);
+      fill(lat1Column, in[0]);
+      fill(lon1Column, in[1]);
+      fill(lat2Column, in[2]);
+      fill(lon2Column, in[3]);
+
+      ByteBuffer out = allocate(count * OUTPUT_STRIDE + 1);
+      BufferColumn[] columns = new BufferColumn[8];
+      for (int k = 0; k < columns.length; ++k) {
+        columns[k] = field(out, k, OUTPUT_STRIDE);
+      }
+      geodesic.genInverse(lat1Column, lon1Column, lat2Column, lon2Column,
+                          count, Geodesic.MASK_ALL,
+                          columns[0], columns[1], columns[2], columns[3],
+                          columns[4], columns[5], columns[6], columns[7]);
+
+      double[][] expected = new double[8][count];
+      javaGeodesic.genInverse(in[0], in[1], in[2], in[3], 0, count,
+                              Geodesic.MASK_ALL,
+                              expected[0], expected[1], expected[2],
+                              expected[3], expected[4], expected[5],
+                              expected[6], expected[7]);
+      double[][] actual = new double[8][];
+      for (int k = 0; k < actual.length; ++k) {
+        actual[k] = read(columns[k], count);
+      }
+      for (int i = 0; i < count; ++i) {
+        assertInverseAgrees(expected, actual, i);
+      }
+      // the spare bytes and the ninth field are never written
+      assertFillOutside(out, OUTPUT_STRIDE, 8, count);
+    }
+  }
+
+  @Test
+  public void directAgreesWithSharedColumns() {
+    for (int count : COUNTS) {
+      Random random = new Random(count);
+      double[][] in = new double[2][count];
+      for (int i = 0; i < count; ++i) {
+        in[0][i] = latitude(random);
+        in[1][i] = random.nextDouble() * 360 - 180;
+      }
+      ByteBuffer records = allocate(count * INPUT_STRIDE + 1);
+      BufferColumn lat1Column = field(records, 0, INPUT_STRIDE);
+      BufferColumn lon1Column = field(records, 1, INPUT_STRIDE);
+      fill(lat1Column, in[0]);
+      fill(lon1Column, in[1]);
+      // a stride of 0 shares one azimuth and one distance
+      ByteBuffer shared = allocate(2 * 8 + FIRST_FIELD);
+      BufferColumn azi1Column = field(shared, 0, 0);
+      BufferColumn s12Column = field(shared, 1, 0);
+      azi1Column.put(0, -37.5);
+      s12Column.put(0, 7.5e6);
+
+      ByteBuffer out = allocate(count * OUTPUT_STRIDE + 1);
+      BufferColumn[] columns = new BufferColumn[9];
+      for (int k = 0; k < columns.length; ++k) {
+        columns[k] = field(out, k, OUTPUT_STRIDE);
+      }
+      geodesic.genDirect(lat1Column, lon1Column, azi1Column, false, s12Column,
+                         count, Geodesic.MASK_ALL,
+                         columns[0], columns[1], columns[2], columns[3],
+                         columns[4], columns[5], columns[6], columns[7],
+                         columns[8]);
+
+      double[][] expected = new double[9][count];
+      javaGeodesic.genDirect(in[0], in[1], -37.5, false, 7.5e6, 0, count,
+                             Geodesic.MASK_ALL,
+                             expected[0], expected[1], expected[2],
+                             expected[3], expected[4], expected[5],
+                             expected[6], expected[7], expected[8]);
+      double[][] actual = new double[9][];
+      for (int k = 0; k < actual.length; ++k) {
+        actual[k] = read(columns[k], count);
+      }
+      for (int i = 0; i < count; ++i) {
+        assertDirectAgrees(expected, actual, i);
+      }
+      assertFillOutside(out, OUTPUT_STRIDE, 9, count);
+    }
+  }
+
+  @Test
+  public void readsReadOnlyInputs() {
+    int count = 100;
+    Random random = new Random(4);
+    ByteBuffer buffer = allocate(4 * 8 * count);
+    double[][] in = new double[4][count];
+    for (int k = 0; k < 4; ++k) {
+      BufferColumn column = BufferColumn.interleaved(buffer, k, 4);
+      for (int i = 0; i < count; ++i) {
+        in[k][i] = k % 2 == 0 ? latitude(random)
+            : random.nextDouble() * 360 - 180;
+        column.put(i, in[k][i]);
+      }
+    }
+    ByteBuffer readOnly =
+        buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    ByteBuffer out = allocate(8 * count);
+    BufferColumn s12 = BufferColumn.contiguous(out);
+    geodesic.genInverse(BufferColumn.interleaved(readOnly, 0, 4),
+                        BufferColumn.interleaved(readOnly, 1, 4),
+                        BufferColumn.interleaved(readOnly, 2, 4),
+                        BufferColumn.interleaved(readOnly, 3, 4),
+                        count, Geodesic.MASK_DISTANCE,
+                        s12, null, null, null, null, null, null, null);
+    for (int i = 0; i < count; ++i) {
+      assertEquals(javaGeodesic.distance(in[0][i], in[1][i],
+                                         in[2][i], in[3][i]),
+                   s12.get(i), 1e-8);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAReadOnlyOutput() {
+    ByteBuffer buffer = allocate(8 * 4);
+    BufferColumn column = BufferColumn.contiguous(buffer);
+    BufferColumn readOnly = BufferColumn.contiguous(
+        buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder()));
+    geodesic.genInverse(column, column, column, column, 4,
+                        Geodesic.MASK_DISTANCE,
+                        readOnly, null, null, null, null, null, null, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsATooSmallBuffer() {
+    // room for 4 records, the fifth is asked for
+    ByteBuffer buffer = allocate(4 * INPUT_STRIDE);
+    BufferColumn column = field(buffer, 2, INPUT_STRIDE);
+    geodesic.genInverse(column, column, column, column, 5,
+                        Geodesic.MASK_DISTANCE,
+                        null, null, null, null, null, null, null, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANegativeCount() {
+    BufferColumn column = BufferColumn.contiguous(allocate(8 * 4));
+    geodesic.genDirect(column, column, column, false, column, -1,
+                       Geodesic.MASK_LATITUDE,
+                       column, null, null, null, null, null, null, null,
+                       null);
+  }
+}
@@ -0,0 +1,138 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.azimuthDifference;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * <code>GeodesicCacheTest</code> checks the results served by
+ * {@link GeodesicCache}, in particular the (b, a) queries answered from the
+ * entry of (a, b), against {@link Geodesic#genInverse} called directly.
+ *
+ * The coordinates are multiples of the precision, a power of two, so that
+ * the cache solves the problem at exactly the coordinates given.
+ *
+ * @version 1.29
+ */
+public class GeodesicCacheTest {
+
+  private static final double PRECISION = 1.0 / 1024;
+
+  private final Geodesic geodesic = wgs84(GeodesicEngine.JAVA);
+
+  /**
+   * A random coordinate in [-range, range] on the grid of the precision.
+   */
+  private static double coordinate(final Random random, final double range) {
+    return Math.rint((random.nextDouble() * 2 - 1) * range / PRECISION)
+        * PRECISION;
+  }
+
+  private void assertSameResult(final Geodesic.InverseResult expected,
+                                final Geodesic.InverseResult actual) {
+    assertEquals(expected.gets12(), actual.gets12(), 1e-8);
+    assertEquals(0, azimuthDifference(expected.getAzi1(), actual.getAzi1()),
+                 1e-9);
+    assertEquals(0, azimuthDifference(expected.getAzi2(), actual.getAzi2()),
+                 1e-9);
+    assertEquals(expected.getm12(), actual.getm12(), 1e-8);
+    assertEquals(expected.getM12(), actual.getM12(), 1e-14);
+    assertEquals(expected.getM21(), actual.getM21(), 1e-14);
+    // the area is the difference of two large terms
+    assertEquals(expected.getS12(), actual.getS12(),
+                 1e-12 * geodesic.getEllipsoidArea());
+    assertEquals(expected.getA12(), actual.getA12(), 1e-12);
+  }
+
+  @Test
+  public void swappedQueriesMatchDirectCalls() {
+    GeodesicCache cache =
+        new GeodesicCache(geodesic, 1 << 12, PRECISION, true);
+    Random random = new Random(20);
+    for (int i = 0; i < 500; ++i) {
+      double lat1 = coordinate(random, 90);
+      double lon1 = coordinate(random, 180);
+      double lat2 = coordinate(random, 90);
+      double lon2 = coordinate(random, 180);
+      assertSameResult(geodesic.genInverse(lat1, lon1, lat2, lon2,
+                                           Geodesic.MASK_ALL),
+                       cache.genInverse(lat1, lon1, lat2, lon2,
+                                        Geodesic.MASK_ALL));
+      // one of the two orders is served from the entry of the other
+      assertSameResult(geodesic.genInverse(lat2, lon2, lat1, lon1,
+                                           Geodesic.MASK_ALL),
+                       cache.genInverse(lat2, lon2, lat1, lon1,
+                                        Geodesic.MASK_ALL));
+    }
+    GeodesicCache.CacheStats stats = cache.getStats();
+    assertEquals(500, stats.getMisses());
+    assertEquals(500, stats.getHits());
+  }
+
+  @Test
+  public void swappedQueryOfMutableResult() {
+    GeodesicCache cache =
+        new GeodesicCache(geodesic, 16, PRECISION, true);
+    // stored as (a, b), then asked for as (b, a)
+    Geodesic.InverseResult expected =
+        geodesic.genInverse(40.5, -73.75, -33.875, 151.25, Geodesic.MASK_ALL);
+    cache.genInverse(-33.875, 151.25, 40.5, -73.75, Geodesic.MASK_ALL);
+    Geodesic.MutableInverseResult result = new Geodesic.MutableInverseResult();
+    cache.genInverse(40.5, -73.75, -33.875, 151.25, Geodesic.MASK_ALL, result);
+    assertEquals(1, cache.getStats().getHits());
+    assertEquals(expected.gets12(), result.gets12(), 1e-8);
+    assertEquals(expected.getAzi1(), result.getAzi1(), 1e-9);
+    assertEquals(expected.getAzi2(), result.getAzi2(), 1e-9);
+    assertEquals(expected.getM12(), result.getM12(), 1e-14);
+    assertEquals(expected.getM21(), result.getM21(), 1e-14);
+    assertEquals(expected.getS12(), result.getS12(),
+                 1e-12 * geodesic.getEllipsoidArea());
+  }
+
+  @Test
+  public void swappedQueryLeavesUnrequestedOutputsAlone() {
+    GeodesicCache cache =
+        new GeodesicCache(geodesic, 16, PRECISION, true);
+    cache.distance(-33.875, 151.25, 40.5, -73.75);
+    long outmask = Geodesic.MASK_DISTANCE | Geodesic.MASK_REDUCEDLENGTH;
+    Geodesic.InverseResult expected =
+        geodesic.genInverse(40.5, -73.75, -33.875, 151.25, outmask);
+    Geodesic.InverseResult actual =
+        cache.genInverse(40.5, -73.75, -33.875, 151.25, outmask);
+    assertEquals(expected.gets12(), actual.gets12(), 1e-8);
+    assertEquals(expected.getm12(), actual.getm12(), 1e-8);
+    // not reversed or swapped, the unrequested outputs are the same
+    assertEquals(expected.getAzi1(), actual.getAzi1(), 0);
+    assertEquals(expected.getAzi2(), actual.getAzi2(), 0);
+    assertEquals(expected.getM12(), actual.getM12(), 0);
+    assertEquals(expected.getM21(), actual.getM21(), 0);
+    assertEquals(expected.getS12(), actual.getS12(), 0);
+  }
+
+  @Test
+  public void asymmetricCacheKeepsBothOrders() {
+    GeodesicCache cache =
+        new GeodesicCache(geodesic, 16, PRECISION, false);
+    cache.distance(10, 20, 30, 40);
+    cache.distance(30, 40, 10, 20);
+    assertEquals(2, cache.getStats().getMisses());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedEntry() {
+    GeodesicCache cache = new GeodesicCache(geodesic, 4, PRECISION, true);
+    for (int i = 0; i < 10; ++i) {
+      cache.distance(0, i, 1, i);
+    }
+    assertEquals(4, cache.size());
+    assertEquals(6, cache.getStats().getEvictions());
+    // the newest entry is still there
+    cache.distance(0, 9, 1, 9);
+    assertEquals(1, cache.getStats().getHits());
+  }
+}
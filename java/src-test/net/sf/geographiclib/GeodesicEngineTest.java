@@ -0,0 +1,136 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.azimuthDifference;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <code>GeodesicEngineTest</code> compares the {@link GeodesicEngine#JAVA}
+ * engine with the C++ library of {@link GeodesicEngine#NATIVE}. The Java
+ * engine is a port of the same algorithms, so the results agree to a few
+ * units in the last place; the tests are skipped when the JNI library can't
+ * be loaded.
+ *
+ * @version 1.29
+ */
+public class GeodesicEngineTest {
+
+  private static final int COUNT = 2000;
+
+  private Geodesic javaGeodesic;
+  private Geodesic nativeGeodesic;
+
+  @Before
+  public void setUp() {
+    assumeAvailable(GeodesicEngine.NATIVE);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    nativeGeodesic = wgs84(GeodesicEngine.NATIVE);
+  }
+
+  @After
+  public void tearDown() {
+    if (nativeGeodesic != null) {
+      nativeGeodesic.close();
+    }
+  }
+
+  @Test
+  public void inverseAgrees() {
+    Random random = new Random(8);
+    for (int i = 0; i < COUNT; ++i) {
+      double lat1 = random.nextDouble() * 180 - 90;
+      double lon1 = random.nextDouble() * 360 - 180;
+      double lat2 = random.nextDouble() * 180 - 90;
+      double lon2 = random.nextDouble() * 360 - 180;
+      Geodesic.InverseResult expected =
+          nativeGeodesic.genInverse(lat1, lon1, lat2, lon2, Geodesic.MASK_ALL);
+      Geodesic.InverseResult actual =
+          javaGeodesic.genInverse(lat1, lon1, lat2, lon2, Geodesic.MASK_ALL);
+      assertEquals(expected.gets12(), actual.gets12(), 1e-8);
+      assertEquals(0, azimuthDifference(expected.getAzi1(), actual.getAzi1()),
+                   1e-9);
+      assertEquals(0, azimuthDifference(expected.getAzi2(), actual.getAzi2()),
+                   1e-9);
+      assertEquals(expected.getm12(), actual.getm12(), 1e-8);
+      assertEquals(expected.getM12(), actual.getM12(), 1e-14);
+      assertEquals(expected.getM21(), actual.getM21(), 1e-14);
+      assertEquals(expected.getS12(), actual.getS12(), 0.1);
+      assertEquals(expected.getA12(), actual.getA12(), 1e-12);
+    }
+  }
+
+  @Test
+  public void directAgrees() {
+    Random random = new Random(9);
+    for (int i = 0; i < COUNT; ++i) {
+      double lat1 = random.nextDouble() * 180 - 90;
+      double lon1 = random.nextDouble() * 360 - 180;
+      double azi1 = random.nextDouble() * 360 - 180;
+      double s12 = random.nextDouble() * 2e7;
+      Geodesic.DirectResult expected =
+          nativeGeodesic.genDirect(lat1, lon1, azi1, false, s12,
+                                   Geodesic.MASK_ALL);
+      Geodesic.DirectResult actual =
+          javaGeodesic.genDirect(lat1, lon1, azi1, false, s12,
+                                 Geodesic.MASK_ALL);
+      assertEquals(expected.getLat2(), actual.getLat2(), 1e-12);
+      assertEquals(0, azimuthDifference(expected.getLon2(), actual.getLon2()),
+                   1e-12);
+      assertEquals(0, azimuthDifference(expected.getAzi2(), actual.getAzi2()),
+                   1e-12);
+      assertEquals(expected.getm12(), actual.getm12(), 1e-8);
+      assertEquals(expected.getM12(), actual.getM12(), 1e-14);
+      assertEquals(expected.getM21(), actual.getM21(), 1e-14);
+      assertEquals(expected.getS12(), actual.getS12(), 0.1);
+      assertEquals(expected.getA12(), actual.getA12(), 1e-12);
+    }
+  }
+
+  @Test
+  public void batchAgreesWithSingleCalls() {
+    Random random = new Random(10);
+    double[] lat1 = new double[COUNT];
+    double[] lon1 = new double[COUNT];
+    double[] lat2 = new double[COUNT];
+    double[] lon2 = new double[COUNT];
+    for (int i = 0; i < COUNT; ++i) {
+      lat1[i] = random.nextDouble() * 180 - 90;
+      lon1[i] = random.nextDouble() * 360 - 180;
+      lat2[i] = random.nextDouble() * 180 - 90;
+      lon2[i] = random.nextDouble() * 360 - 180;
+    }
+    double[] nativeS12 = new double[COUNT];
+    double[] javaS12 = new double[COUNT];
+    nativeGeodesic.genInverse(lat1, lon1, lat2, lon2, 0, COUNT,
+                              Geodesic.MASK_DISTANCE, nativeS12,
+                              null, null, null, null, null, null, null);
+    javaGeodesic.genInverse(lat1, lon1, lat2, lon2, 0, COUNT,
+                            Geodesic.MASK_DISTANCE, javaS12,
+                            null, null, null, null, null, null, null);
+    for (int i = 0; i < COUNT; ++i) {
+      assertEquals(nativeS12[i], javaS12[i], 1e-8);
+      assertEquals(javaGeodesic.distance(lat1[i], lon1[i], lat2[i], lon2[i]),
+                   javaS12[i], 0);
+    }
+  }
+
+  @Test
+  public void parametersAgree() {
+    assertEquals(nativeGeodesic.getMajorRadius(),
+                 javaGeodesic.getMajorRadius(), 0);
+    assertEquals(nativeGeodesic.getFlattening(),
+                 javaGeodesic.getFlattening(), 0);
+    assertEquals(nativeGeodesic.getEllipsoidArea(),
+                 javaGeodesic.getEllipsoidArea(),
+                 1e-14 * nativeGeodesic.getEllipsoidArea());
+    assertEquals(nativeGeodesic, javaGeodesic);
+    assertEquals(nativeGeodesic.hashCode(), javaGeodesic.hashCode());
+  }
+}
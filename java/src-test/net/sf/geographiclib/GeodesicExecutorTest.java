@@ -0,0 +1,149 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assertUntouchedOutside;
+import static net.sf.geographiclib.GeodesicFixtures.random;
+import static net.sf.geographiclib.GeodesicFixtures.untouched;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * <code>GeodesicExecutorTest</code> checks that the batches run by
+ * {@link GeodesicExecutor} give the results of the sequential batch calls
+ * of {@link Geodesic}, and how the batches are split into chunks.
+ *
+ * @version 1.29
+ */
+public class GeodesicExecutorTest {
+
+  private static final int COUNT = 1000;
+  private static final int OFFSET = 37;
+
+  private final Geodesic geodesic = wgs84(GeodesicEngine.JAVA);
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void inverseMatchesSequentialBatch() {
+    int size = OFFSET + COUNT + 11;
+    Random random = new Random(7);
+    double[] lat1 = random(random, size, 90);
+    double[] lon1 = random(random, size, 180);
+    double[] lat2 = random(random, size, 90);
+    double[] lon2 = random(random, size, 180);
+    double[][] expected = new double[8][];
+    double[][] actual = new double[8][];
+    for (int i = 0; i < expected.length; ++i) {
+      expected[i] = untouched(size);
+      actual[i] = untouched(size);
+    }
+    geodesic.genInverse(lat1, lon1, lat2, lon2, OFFSET, COUNT,
+                        Geodesic.MASK_ALL,
+                        expected[0], expected[1], expected[2], expected[3],
+                        expected[4], expected[5], expected[6], expected[7]);
+    GeodesicExecutor executor = new GeodesicExecutor(geodesic, pool, 100);
+    GeodesicExecutor.BatchStats stats =
+        executor.genInverse(lat1, lon1, lat2, lon2, OFFSET, COUNT,
+                            Geodesic.MASK_ALL,
+                            actual[0], actual[1], actual[2], actual[3],
+                            actual[4], actual[5], actual[6], actual[7]);
+    assertEquals(COUNT, stats.getLength());
+    assertEquals(8, stats.getChunks());
+    for (int i = 0; i < expected.length; ++i) {
+      // each element is solved by the same code whichever chunk it is in
+      assertTrue(Arrays.equals(expected[i], actual[i]));
+      assertUntouchedOutside(actual[i], OFFSET, COUNT);
+    }
+  }
+
+  @Test
+  public void directMatchesSequentialBatch() {
+    int size = OFFSET + COUNT + 11;
+    Random random = new Random(8);
+    double[] lat1 = random(random, size, 90);
+    double[] lon1 = random(random, size, 180);
+    double[] azi1 = random(random, size, 180);
+    double[] s12 = random(random, size, 2e7);
+    double[][] expected = new double[9][];
+    double[][] actual = new double[9][];
+    for (int i = 0; i < expected.length; ++i) {
+      expected[i] = untouched(size);
+      actual[i] = untouched(size);
+    }
+    geodesic.genDirect(lat1, lon1, azi1, false, s12, OFFSET, COUNT,
+                       Geodesic.MASK_ALL,
+                       expected[0], expected[1], expected[2], expected[3],
+                       expected[4], expected[5], expected[6], expected[7],
+                       expected[8]);
+    GeodesicExecutor executor = new GeodesicExecutor(geodesic, pool, 100);
+    GeodesicExecutor.BatchStats stats =
+        executor.genDirect(lat1, lon1, azi1, false, s12, OFFSET, COUNT,
+                           Geodesic.MASK_ALL,
+                           actual[0], actual[1], actual[2], actual[3],
+                           actual[4], actual[5], actual[6], actual[7],
+                           actual[8]);
+    assertEquals(8, stats.getChunks());
+    for (int i = 0; i < expected.length; ++i) {
+      assertTrue(Arrays.equals(expected[i], actual[i]));
+      assertUntouchedOutside(actual[i], OFFSET, COUNT);
+    }
+  }
+
+  /**
+   * The number of chunks a batch of the given length is split into.
+   */
+  private int chunks(final int length, final int sequentialCutoff) {
+    Random random = new Random(length);
+    double[] lat1 = random(random, length, 90);
+    double[] lon1 = random(random, length, 180);
+    double[] lat2 = random(random, length, 90);
+    double[] lon2 = random(random, length, 180);
+    double[] s12 = new double[length];
+    GeodesicExecutor executor =
+        new GeodesicExecutor(geodesic, pool, sequentialCutoff);
+    return executor.genInverse(lat1, lon1, lat2, lon2, 0, length,
+                               Geodesic.MASK_DISTANCE, s12,
+                               null, null, null, null, null, null, null)
+        .getChunks();
+  }
+
+  @Test
+  public void smallBatchesAreNotSplit() {
+    assertEquals(1, chunks(0, 100));
+    assertEquals(1, chunks(1, 100));
+    assertEquals(1, chunks(100, 100));
+    // two halves of 99 would be below the cutoff
+    assertEquals(1, chunks(199, 100));
+    assertEquals(2, chunks(200, 100));
+  }
+
+  @Test
+  public void noChunkIsSmallerThanTheCutoff() {
+    // 16 chunks are wanted from a pool of 4, at least 100 elements each
+    assertEquals(8, chunks(1000, 100));
+    assertEquals(2, chunks(1000, 300));
+    assertEquals(16, chunks(4000, 100));
+    for (int length = 100; length <= 2000; length += 97) {
+      int chunks = chunks(length, 100);
+      assertTrue(chunks >= 1);
+      assertTrue(chunks <= Math.max(1, length / 100));
+      assertTrue(chunks <= 16);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANonPositiveCutoff() {
+    new GeodesicExecutor(geodesic, pool, 0);
+  }
+}
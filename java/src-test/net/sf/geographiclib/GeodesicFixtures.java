@@ -0,0 +1,266 @@
+package net.sf.geographiclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <code>GeodesicFixtures</code>, the ellipsoid, the engines and the random
+ * inputs shared by the unit tests.
+ *
+ * The native engines are only available when the JNI library can be loaded
+ * (and, for {@link GeodesicEngine#FOREIGN}, when <code>compile.ffm</code>
+ * was run); the tests which need one are skipped otherwise.
+ *
+ * @version 1.29
+ */
+final class GeodesicFixtures {
+
+  /**
+   * The equatorial radius of WGS84 (meters).
+   */
+  static final double WGS84_A = 6378137;
+
+  /**
+   * The flattening of WGS84.
+   */
+  static final double WGS84_F = 1 / 298.257223563;
+
+  /**
+   * The value filling the outputs, to check which elements were written.
+   */
+  static final double UNTOUCHED = -12345;
+
+  private GeodesicFixtures() {
+  }
+
+  /**
+   * The WGS84 ellipsoid.
+   *
+   * @param engine the engine of the instance, which must be available.
+   * @return a new <code>Geodesic</code>, to be closed by the caller.
+   */
+  static Geodesic wgs84(final GeodesicEngine engine) {
+    return new Geodesic(WGS84_A, WGS84_F, engine);
+  }
+
+  /**
+   * Check if an engine can be used.
+   *
+   * @param engine the engine.
+   * @return true if instances of the engine can be constructed.
+   */
+  static boolean isAvailable(final GeodesicEngine engine) {
+    switch (engine) {
+    case NATIVE:
+      return LibraryLoader.isAvailable();
+    case FOREIGN:
+      // the downcalls are made on the objects created through JNI
+      return LibraryLoader.isAvailable() && ForeignEngine.isAvailable();
+    default:
+      return true;
+    }
+  }
+
+  /**
+   * Skips the calling test if an engine can't be used.
+   *
+   * @param engine the engine.
+   */
+  static void assumeAvailable(final GeodesicEngine engine) {
+    assumeTrue(engine + " engine not available", isAvailable(engine));
+  }
+
+  /**
+   * The engines which can be used, as the parameters of a
+   * <code>Parameterized</code> test.
+   *
+   * @return one array holding the engine per available engine.
+   */
+  static List<Object[]> engines() {
+    List<Object[]> engines = new ArrayList<Object[]>();
+    for (GeodesicEngine engine : GeodesicEngine.values()) {
+      if (isAvailable(engine)) {
+        engines.add(new Object[] {engine});
+      }
+    }
+    return engines;
+  }
+
+  /**
+   * Every engine, whether it can be used or not, for the tests which also
+   * check the behaviour of {@link GeodesicEngine#JAVA} on its own: argument
+   * validation, offsets and lengths and the outputs left untouched. The
+   * comparisons with the Java engine are then trivial for
+   * <code>JAVA</code>.
+   *
+   * @return one array holding the engine per engine.
+   */
+  static List<Object[]> allEngines() {
+    List<Object[]> engines = new ArrayList<Object[]>();
+    for (GeodesicEngine engine : GeodesicEngine.values()) {
+      engines.add(new Object[] {engine});
+    }
+    return engines;
+  }
+
+  /**
+   * Random values uniform in [-range, range).
+   */
+  static double[] random(final Random random,
+                         final int length,
+                         final double range) {
+    double[] values = new double[length];
+    for (int i = 0; i < length; ++i) {
+      values[i] = (random.nextDouble() * 2 - 1) * range;
+    }
+    return values;
+  }
+
+  /**
+   * A random latitude, uniform on the sphere so that the poles are as dense
+   * as the equator.
+   */
+  static double latitude(final Random random) {
+    return Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+  }
+
+  /**
+   * Random pairs of points: <code>pairs[0..3][i]</code> are lat1, lon1,
+   * lat2 and lon2. A quarter of the pairs are nearly antipodal, where the
+   * inverse problem is the hardest, and a quarter are within
+   * <code>maxDistance</code> meters.
+   */
+  static double[][] pairs(final Geodesic geodesic,
+                          final Random random,
+                          final int count,
+                          final double maxDistance) {
+    double[][] pairs = new double[4][count];
+    for (int i = 0; i < count; ++i) {
+      double lat1 = latitude(random);
+      double lon1 = random.nextDouble() * 360 - 180;
+      double lat2;
+      double lon2;
+      switch (i % 4) {
+      case 0:
+        lat2 = -lat1 + random.nextGaussian();
+        lon2 = lon1 + 180 + random.nextGaussian();
+        break;
+      case 1:
+        Geodesic.DirectResult point =
+            geodesic.direct(lat1, lon1, random.nextDouble() * 360,
+                            random.nextDouble() * maxDistance);
+        lat2 = point.getLat2();
+        lon2 = point.getLon2();
+        break;
+      default:
+        lat2 = latitude(random);
+        lon2 = random.nextDouble() * 360 - 180;
+        break;
+      }
+      pairs[0][i] = lat1;
+      pairs[1][i] = lon1;
+      pairs[2][i] = Math.max(-90, Math.min(90, lat2));
+      pairs[3][i] = lon2;
+    }
+    return pairs;
+  }
+
+  /**
+   * An output filled with {@link #UNTOUCHED}.
+   */
+  static double[] untouched(final int length) {
+    double[] values = new double[length];
+    Arrays.fill(values, UNTOUCHED);
+    return values;
+  }
+
+  /**
+   * Checks that only the elements [offset, offset + length) of an output
+   * were written.
+   */
+  static void assertUntouchedOutside(final double[] values,
+                                     final int offset,
+                                     final int length) {
+    for (int i = 0; i < values.length; ++i) {
+      if (i < offset || i >= offset + length) {
+        assertEquals("element " + i, UNTOUCHED, values[i], 0);
+      }
+    }
+  }
+
+  /**
+   * The difference of two azimuths, reduced to [-180, 180).
+   */
+  static double azimuthDifference(final double azi1, final double azi2) {
+    double d = (azi1 - azi2) % 360;
+    if (d >= 180) {
+      d -= 360;
+    } else if (d < -180) {
+      d += 360;
+    }
+    return d;
+  }
+
+  /**
+   * Checks element <code>i</code> of the outputs of two inverse batches,
+   * <code>outputs[0..7]</code> being s12, azi1, azi2, m12, M12, M21, S12
+   * and a12 in the order of the parameters of the batch functions. The Java
+   * engine is a port of the same algorithms as the C++ library, so the
+   * results agree to a few units in the last place; the area is the
+   * difference of two large terms. Null outputs are skipped.
+   */
+  static void assertInverseAgrees(final double[][] expected,
+                                  final double[][] actual,
+                                  final int i) {
+    assertAgrees("s12", expected[0], actual[0], i, 1e-8, false);
+    assertAgrees("azi1", expected[1], actual[1], i, 1e-9, true);
+    assertAgrees("azi2", expected[2], actual[2], i, 1e-9, true);
+    assertAgrees("m12", expected[3], actual[3], i, 1e-8, false);
+    assertAgrees("M12", expected[4], actual[4], i, 1e-14, false);
+    assertAgrees("M21", expected[5], actual[5], i, 1e-14, false);
+    assertAgrees("S12", expected[6], actual[6], i, 0.1, false);
+    assertAgrees("a12", expected[7], actual[7], i, 1e-12, false);
+  }
+
+  /**
+   * Checks element <code>i</code> of the outputs of two direct batches,
+   * <code>outputs[0..8]</code> being lat2, lon2, azi2, s12, m12, M12, M21,
+   * S12 and a12, like {@link #assertInverseAgrees}.
+   */
+  static void assertDirectAgrees(final double[][] expected,
+                                 final double[][] actual,
+                                 final int i) {
+    assertAgrees("lat2", expected[0], actual[0], i, 1e-12, false);
+    assertAgrees("lon2", expected[1], actual[1], i, 1e-12, true);
+    assertAgrees("azi2", expected[2], actual[2], i, 1e-12, true);
+    assertAgrees("s12", expected[3], actual[3], i, 1e-8, false);
+    assertAgrees("m12", expected[4], actual[4], i, 1e-8, false);
+    assertAgrees("M12", expected[5], actual[5], i, 1e-14, false);
+    assertAgrees("M21", expected[6], actual[6], i, 1e-14, false);
+    assertAgrees("S12", expected[7], actual[7], i, 0.1, false);
+    assertAgrees("a12", expected[8], actual[8], i, 1e-12, false);
+  }
+
+  private static void assertAgrees(final String name,
+                                   final double[] expected,
+                                   final double[] actual,
+                                   final int i,
+                                   final double tolerance,
+                                   final boolean angle) {
+    if (expected == null) {
+      return;
+    }
+    String message = name + " of element " + i;
+    if (angle && expected[i] != UNTOUCHED) {
+      assertEquals(message, 0, azimuthDifference(expected[i], actual[i]),
+                   tolerance);
+    } else {
+      assertEquals(message, expected[i], actual[i], tolerance);
+    }
+  }
+}
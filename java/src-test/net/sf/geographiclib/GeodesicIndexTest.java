@@ -0,0 +1,211 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>GeodesicIndexTest</code> checks the k-nearest-neighbour, radius and
+ * join queries of {@link GeodesicIndex} against the distances to every
+ * point computed by brute force, on every engine available.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class GeodesicIndexTest {
+
+  private static final int POINTS = 3000;
+  private static final int OFFSET = 50;
+  private static final int QUERIES = 60;
+
+  private final Geodesic geodesic;
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  private final double[] lat = new double[OFFSET + POINTS];
+  private final double[] lon = new double[OFFSET + POINTS];
+  private final double[] queryLat = new double[QUERIES];
+  private final double[] queryLon = new double[QUERIES];
+  private final GeodesicIndex index;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.engines();
+  }
+
+  public GeodesicIndexTest(final GeodesicEngine engine) {
+    geodesic = wgs84(engine);
+    Random random = new Random(21);
+    for (int i = 0; i < lat.length; ++i) {
+      if (i % 3 == 0) {
+        // a cluster around Europe, with duplicates
+        lat[i] = 45 + Math.rint(random.nextGaussian() * 500) / 100;
+        lon[i] = 10 + Math.rint(random.nextGaussian() * 500) / 100;
+      } else {
+        // uniform on the sphere, so the poles are as dense as the equator
+        lat[i] = latitude(random);
+        lon[i] = random.nextDouble() * 360 - 180;
+      }
+    }
+    lat[OFFSET] = 90;
+    lat[OFFSET + 1] = -90;
+    lon[OFFSET + 2] = 180;
+    for (int i = 0; i < QUERIES; ++i) {
+      queryLat[i] = latitude(random);
+      queryLon[i] = random.nextDouble() * 360 - 180;
+    }
+    // at a pole, across the antimeridian and antipodal to the cluster
+    queryLat[0] = 90;
+    queryLat[1] = -89.5;
+    queryLon[2] = 179.9;
+    queryLat[3] = -45;
+    queryLon[3] = -170;
+    queryLat[4] = 45;
+    queryLon[4] = 10;
+    index = new GeodesicIndex(geodesic, lat, lon, OFFSET, POINTS, 8);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+    geodesic.close();
+  }
+
+  /**
+   * The distances of the query point to every indexed point.
+   */
+  private double[] bruteForce(final double qlat, final double qlon) {
+    double[] distances = new double[lat.length];
+    for (int i = 0; i < lat.length; ++i) {
+      distances[i] = i < OFFSET ? Double.POSITIVE_INFINITY
+          : geodesic.distance(qlat, qlon, lat[i], lon[i]);
+    }
+    return distances;
+  }
+
+  @Test
+  public void nearestMatchesBruteForce() {
+    for (int q = 0; q < QUERIES; ++q) {
+      double[] distances = bruteForce(queryLat[q], queryLon[q]);
+      double[] sorted = distances.clone();
+      Arrays.sort(sorted);
+      for (int k : new int[] {1, 5, 40}) {
+        GeodesicIndex.Neighbors neighbors =
+            index.nearest(queryLat[q], queryLon[q], k);
+        assertEquals(k, neighbors.size());
+        for (int j = 0; j < k; ++j) {
+          // ties may be returned in any order, the distances may not
+          assertEquals(sorted[j], neighbors.getDistances()[j], 1e-8);
+          int found = neighbors.getIndices()[j];
+          assertTrue(found >= OFFSET && found < OFFSET + POINTS);
+          assertEquals(distances[found], neighbors.getDistances()[j], 1e-8);
+        }
+        int[] unique = neighbors.getIndices().clone();
+        Arrays.sort(unique);
+        for (int j = 1; j < k; ++j) {
+          assertTrue(unique[j] != unique[j - 1]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void nearestReturnsEveryPointOfASmallIndex() {
+    GeodesicIndex small =
+        new GeodesicIndex(geodesic, lat, lon, OFFSET, 10, 4);
+    GeodesicIndex.Neighbors neighbors = small.nearest(0, 0, 25);
+    assertEquals(10, neighbors.size());
+    int[] found = neighbors.getIndices().clone();
+    Arrays.sort(found);
+    for (int j = 0; j < 10; ++j) {
+      assertEquals(OFFSET + j, found[j]);
+    }
+  }
+
+  /**
+   * The indices of the points within the radius, in increasing order.
+   */
+  private static int[] within(final double[] distances, final double radius) {
+    int count = 0;
+    int[] found = new int[distances.length];
+    for (int i = 0; i < distances.length; ++i) {
+      if (distances[i] <= radius) {
+        found[count++] = i;
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  @Test
+  public void withinMatchesBruteForce() {
+    for (int q = 0; q < QUERIES; ++q) {
+      double[] distances = bruteForce(queryLat[q], queryLon[q]);
+      for (double radius : new double[] {0, 1e5, 1e6, 5e6, 2.1e7}) {
+        GeodesicIndex.Neighbors neighbors =
+            index.within(queryLat[q], queryLon[q], radius);
+        double[] got = neighbors.getDistances();
+        for (int j = 1; j < got.length; ++j) {
+          assertTrue(got[j - 1] <= got[j]);
+        }
+        int[] found = neighbors.getIndices().clone();
+        Arrays.sort(found);
+        assertArrayEquals(within(distances, radius), found);
+      }
+    }
+  }
+
+  @Test
+  public void joinMatchesWithin() {
+    double radius = 1.5e6;
+    GeodesicIndex.JoinResult join =
+        index.join(pool, queryLat, queryLon, 0, QUERIES, radius);
+    assertEquals(QUERIES, join.getCenterCount());
+    int[] offsets = join.getOffsets();
+    assertEquals(join.size(), offsets[QUERIES]);
+    for (int q = 0; q < QUERIES; ++q) {
+      GeodesicIndex.Neighbors expected =
+          index.within(queryLat[q], queryLon[q], radius);
+      assertArrayEquals(expected.getIndices(),
+                        Arrays.copyOfRange(join.getIndices(),
+                                           offsets[q], offsets[q + 1]));
+      assertArrayEquals(expected.getDistances(),
+                        Arrays.copyOfRange(join.getDistances(),
+                                           offsets[q], offsets[q + 1]),
+                        0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANonPositiveK() {
+    index.nearest(0, 0, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANegativeRadius() {
+    index.within(0, 0, -1);
+  }
+
+  @Test
+  public void rejectsArraysOfDifferentLengths() {
+    for (int extra : new int[] {-1, 1}) {
+      try {
+        new GeodesicIndex(geodesic, new double[5], new double[5 + extra]);
+        fail("lon of " + (5 + extra) + " points");
+      } catch (IllegalArgumentException e) {
+        assertEquals("lat and lon must have the same length", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,287 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.WGS84_A;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <code>GeodesicInstrumentationTest</code> checks what
+ * {@link GeodesicInstrumentation} reports of the calls and constructions of
+ * the {@link GeodesicEngine#JAVA} engine, to a
+ * {@link GeodesicMetricsRecorder} and as JDK Flight Recorder events read
+ * back from a dumped recording, and how the recorder buckets what it is
+ * given. It needs neither the JNI library nor the C++ results.
+ *
+ * @version 1.29
+ */
+public class GeodesicInstrumentationTest {
+
+  private static final String CALL_EVENT = "net.sf.geographiclib.GeodesicCall";
+  private static final String CONSTRUCTION_EVENT =
+      "net.sf.geographiclib.GeodesicConstruction";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Geodesic geodesic;
+  private GeodesicMetricsRecorder recorder;
+
+  @Before
+  public void setUp() {
+    geodesic = wgs84(GeodesicEngine.JAVA);
+    recorder = new GeodesicMetricsRecorder();
+    GeodesicInstrumentation.setMetrics(recorder);
+  }
+
+  @After
+  public void tearDown() {
+    GeodesicInstrumentation.setEnabled(false);
+    GeodesicInstrumentation.setSampleInterval(1);
+    GeodesicInstrumentation.setMetrics(null);
+  }
+
+  /**
+   * The total number of sampled calls of all the operations.
+   */
+  private long totalCalls() {
+    long total = 0;
+    for (GeodesicMetrics.Operation operation
+             : GeodesicMetrics.Operation.values()) {
+      total += recorder.getCalls(operation);
+    }
+    return total;
+  }
+
+  @Test
+  public void disabledRecordsNothing() {
+    assertFalse(GeodesicInstrumentation.isEnabled());
+    assertNull(GeodesicInstrumentation.sample());
+    assertNull(GeodesicInstrumentation.construction());
+    wgs84(GeodesicEngine.JAVA);
+    geodesic.inverse(10, 20, -30, 140);
+    geodesic.distance(10, 20, -30, 140);
+    geodesic.genInverse(new double[2], new double[2], new double[2],
+                        new double[2], 0, 2, Geodesic.MASK_DISTANCE,
+                        new double[2], null, null, null, null, null, null,
+                        null);
+    assertEquals(0, totalCalls());
+    assertEquals(0, recorder.getConstructions());
+    assertTrue(recorder.getOutmaskCounts().isEmpty());
+  }
+
+  @Test
+  public void intervalOfOneRecordsEveryCall() {
+    GeodesicInstrumentation.setSampleInterval(1);
+    GeodesicInstrumentation.setEnabled(true);
+    for (int i = 0; i < 100; ++i) {
+      geodesic.distance(10, 20, -30, 140 + i);
+    }
+    assertEquals(100, recorder.getCalls(GeodesicMetrics.Operation.DISTANCE));
+    assertEquals(100, totalCalls());
+  }
+
+  @Test
+  public void largeIntervalRecordsAlmostNothing() {
+    GeodesicInstrumentation.setSampleInterval(Integer.MAX_VALUE);
+    GeodesicInstrumentation.setEnabled(true);
+    for (int i = 0; i < 100; ++i) {
+      geodesic.distance(10, 20, -30, 140 + i);
+    }
+    // one call in 2^31 is sampled, the constructions never are
+    assertEquals(0, totalCalls());
+    wgs84(GeodesicEngine.JAVA);
+    assertEquals(1, recorder.getConstructions());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAnIntervalOfZero() {
+    GeodesicInstrumentation.setSampleInterval(0);
+  }
+
+  @Test
+  public void countsPerOperationAndOutmask() {
+    GeodesicInstrumentation.setEnabled(true);
+    geodesic.inverse(10, 20, -30, 140);
+    geodesic.inverse(10, 20, -30, 141);
+    geodesic.genInverse(10, 20, -30, 140, Geodesic.MASK_AZIMUTH);
+    geodesic.direct(10, 20, 30, 1e6);
+    geodesic.distance(10, 20, -30, 140);
+    assertEquals(2, recorder.getCalls(GeodesicMetrics.Operation.INVERSE));
+    assertEquals(1, recorder.getCalls(GeodesicMetrics.Operation.GEN_INVERSE));
+    assertEquals(1, recorder.getCalls(GeodesicMetrics.Operation.DIRECT));
+    assertEquals(1, recorder.getCalls(GeodesicMetrics.Operation.DISTANCE));
+    assertEquals(0, recorder.getCalls(GeodesicMetrics.Operation.ARC_DIRECT));
+    Map<Long, Long> outmasks = recorder.getOutmaskCounts();
+    assertEquals(Long.valueOf(3), outmasks.get(Geodesic.MASK_ALL));
+    assertEquals(Long.valueOf(1), outmasks.get(Geodesic.MASK_AZIMUTH));
+    assertEquals(Long.valueOf(1), outmasks.get(Geodesic.MASK_DISTANCE));
+    assertEquals(3, outmasks.size());
+    // one latency per call
+    long latencies = 0;
+    for (long count
+             : recorder.getLatencyHistogram(GeodesicMetrics.Operation.INVERSE)) {
+      latencies += count;
+    }
+    assertEquals(2, latencies);
+    // the Java engine reports the iterations of the four inverse problems,
+    // the distance included
+    long iterations = 0;
+    for (long count : recorder.getIterationHistogram()) {
+      iterations += count;
+    }
+    assertEquals(4, iterations);
+  }
+
+  @Test
+  public void batchesCountTheirGeodesics() {
+    GeodesicInstrumentation.setEnabled(true);
+    int size = 10;
+    double[] lat = new double[size];
+    double[] lon = new double[size];
+    for (int i = 0; i < size; ++i) {
+      lat[i] = i;
+      lon[i] = 10 * i;
+    }
+    double[] s12 = new double[size];
+    geodesic.genInverse(lat, lon, lon, lat, 2, 7, Geodesic.MASK_DISTANCE,
+                        s12, null, null, null, null, null, null, null);
+    geodesic.genInverse(lat, lon, lon, lat, 0, 3, Geodesic.MASK_DISTANCE,
+                        s12, null, null, null, null, null, null, null);
+    // an empty batch is no call at all
+    geodesic.genInverse(lat, lon, lon, lat, 0, 0, Geodesic.MASK_DISTANCE,
+                        s12, null, null, null, null, null, null, null);
+    assertEquals(2,
+                 recorder.getCalls(GeodesicMetrics.Operation.INVERSE_BATCH));
+    assertEquals(10,
+                 recorder.getGeodesics(GeodesicMetrics.Operation.INVERSE_BATCH));
+  }
+
+  @Test
+  public void histogramsBucketTheirValues() {
+    GeodesicMetrics.Operation op = GeodesicMetrics.Operation.GEN_DIRECT;
+    long[] nanos = {0, 1, 2, 3, 4, 1023, 1024, Long.MAX_VALUE};
+    int[] buckets = {0, 0, 1, 1, 2, 9, 10, 62};
+    int[] iterations = {-1, 0, 5, 31, 1000, 5, 5, 5};
+    for (long value : nanos) {
+      recorder.recordCall(op, GeodesicEngine.JAVA, Geodesic.MASK_ALL, 1, value,
+                          -1);
+    }
+    long[] expected = new long[GeodesicMetricsRecorder.LATENCY_BUCKETS];
+    for (int bucket : buckets) {
+      ++expected[bucket];
+    }
+    long[] latencies = recorder.getLatencyHistogram(op);
+    for (int i = 0; i < latencies.length; ++i) {
+      assertEquals("bucket " + i, expected[i], latencies[i]);
+    }
+    // the upper bounds of the buckets
+    assertEquals(1, recorder.getLatencyPercentile(op, 0));
+    assertEquals(1, recorder.getLatencyPercentile(op, 25));
+    assertEquals(3, recorder.getLatencyPercentile(op, 50));
+    assertEquals(2047, recorder.getLatencyPercentile(op, 87.5));
+    assertEquals((2L << 62) - 1, recorder.getLatencyPercentile(op, 100));
+    assertEquals(0, recorder.getLatencyPercentile(
+        GeodesicMetrics.Operation.DIRECT, 50));
+    for (int count : iterations) {
+      recorder.recordCall(GeodesicMetrics.Operation.INVERSE,
+                          GeodesicEngine.JAVA, Geodesic.MASK_ALL, 1, 0, count);
+    }
+    long[] histogram = recorder.getIterationHistogram();
+    assertEquals(1, histogram[0]);
+    assertEquals(4, histogram[5]);
+    // 31 and more share the last bucket, -1 isn't counted
+    assertEquals(2, histogram[GeodesicMetricsRecorder.ITERATION_BUCKETS - 1]);
+    long total = 0;
+    for (long count : histogram) {
+      total += count;
+    }
+    assertEquals(iterations.length - 1, total);
+  }
+
+  @Test
+  public void constructionsAreCounted() {
+    GeodesicInstrumentation.setEnabled(true);
+    wgs84(GeodesicEngine.JAVA);
+    new Geodesic(WGS84_A, 0, GeodesicEngine.JAVA);
+    GeodesicInstrumentation.setEnabled(false);
+    wgs84(GeodesicEngine.JAVA);
+    assertEquals(2, recorder.getConstructions());
+    // the Java engine allocates no C++ object
+    assertEquals(0, recorder.getNativeAllocations());
+  }
+
+  @Test
+  public void eventsCarryTheirFields() throws Exception {
+    File dump = new File(folder.getRoot(), "geodesic.jfr");
+    Recording recording = new Recording();
+    try {
+      recording.enable(CALL_EVENT).withoutThreshold();
+      recording.enable(CONSTRUCTION_EVENT).withoutThreshold();
+      recording.start();
+      GeodesicInstrumentation.setEnabled(true);
+      new Geodesic(WGS84_A, 0, GeodesicEngine.JAVA);
+      geodesic.genInverse(10, 20, -30, 140, Geodesic.MASK_DISTANCE);
+      double[] s12 = new double[4];
+      geodesic.genInverse(new double[4], new double[4], new double[4],
+                          new double[4], 1, 3, Geodesic.MASK_DISTANCE, s12,
+                          null, null, null, null, null, null, null);
+      GeodesicInstrumentation.setEnabled(false);
+      recording.stop();
+      recording.dump(dump.toPath());
+    } finally {
+      recording.close();
+    }
+    List<RecordedEvent> calls = new ArrayList<RecordedEvent>();
+    List<RecordedEvent> constructions = new ArrayList<RecordedEvent>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+      String name = event.getEventType().getName();
+      if (name.equals(CALL_EVENT)) {
+        calls.add(event);
+      } else if (name.equals(CONSTRUCTION_EVENT)) {
+        constructions.add(event);
+      }
+    }
+    assertEquals(1, constructions.size());
+    RecordedEvent construction = constructions.get(0);
+    assertEquals("JAVA", construction.getString("engine"));
+    assertEquals(WGS84_A, construction.getDouble("a"), 0);
+    assertEquals(0, construction.getDouble("f"), 0);
+    assertFalse(construction.getBoolean("nativeAllocated"));
+
+    assertEquals(2, calls.size());
+    RecordedEvent single = calls.get(0);
+    RecordedEvent batch = calls.get(1);
+    if (single.getString("operation").equals("INVERSE_BATCH")) {
+      RecordedEvent swap = single;
+      single = batch;
+      batch = swap;
+    }
+    assertEquals("GEN_INVERSE", single.getString("operation"));
+    assertEquals("JAVA", single.getString("engine"));
+    assertEquals(Geodesic.MASK_DISTANCE, single.getLong("outmask"));
+    assertEquals(1, single.getLong("count"));
+    assertTrue(single.getInt("iterations") >= 0);
+    assertEquals("INVERSE_BATCH", batch.getString("operation"));
+    assertEquals(Geodesic.MASK_DISTANCE, batch.getLong("outmask"));
+    assertEquals(3, batch.getLong("count"));
+    assertEquals(-1, batch.getInt("iterations"));
+  }
+}
@@ -0,0 +1,295 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assertDirectAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assertUntouchedOutside;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.azimuthDifference;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.untouched;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>GeodesicLineTest</code> compares the positions computed along a
+ * {@link GeodesicLine} and the routes of
+ * {@link GeodesicLine#densify(Geodesic, double[], double[], double)} by
+ * each engine with those of {@link GeodesicEngine#JAVA}, for batches and
+ * routes on both sides of the chunks of 4096 elements the native code works
+ * in. The Java engine itself runs the checks of the ranges, the untouched
+ * outputs and the argument validation. The tests are skipped when the
+ * engine can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class GeodesicLineTest {
+
+  private static final int[] LENGTHS = {0, 1, 4095, 4096, 4097};
+
+  /**
+   * Elements before the range of a batch and after it, never written.
+   */
+  private static final int OFFSET = 3;
+  private static final int TAIL = 5;
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public GeodesicLineTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  /**
+   * The outputs of a direct result, in the order of
+   * {@link GeodesicFixtures#assertDirectAgrees}.
+   */
+  private static double[][] outputs(final Geodesic.DirectResult r) {
+    return new double[][] {{r.getLat2()}, {r.getLon2()}, {r.getAzi2()},
+                           {r.gets12()}, {r.getm12()}, {r.getM12()},
+                           {r.getM21()}, {r.getS12()}, {r.getA12()}};
+  }
+
+  @Test
+  public void positionsAgree() {
+    Random random = new Random(22);
+    for (int i = 0; i < 200; ++i) {
+      double lat1 = latitude(random);
+      double lon1 = random.nextDouble() * 360 - 180;
+      double azi1 = random.nextDouble() * 360 - 180;
+      GeodesicLine expected = javaGeodesic.line(lat1, lon1, azi1);
+      GeodesicLine actual = geodesic.line(lat1, lon1, azi1);
+      try {
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        assertEquals(expected.getAzimuth(), actual.getAzimuth(), 0);
+        assertEquals(expected.getCapabilities(), actual.getCapabilities());
+        for (int k = 0; k < 10; ++k) {
+          double s12 = random.nextDouble() * 4e7 - 2e7;
+          assertDirectAgrees(outputs(expected.position(s12)),
+                             outputs(actual.position(s12)), 0);
+          double a12 = random.nextDouble() * 360 - 180;
+          assertDirectAgrees(outputs(expected.arcPosition(a12)),
+                             outputs(actual.arcPosition(a12)), 0);
+        }
+      } finally {
+        actual.close();
+      }
+    }
+  }
+
+  /**
+   * Checks a batch of positions against the Java engine, for the outputs
+   * selected by <code>outmask</code>.
+   */
+  private void assertBatchAgrees(final GeodesicLine expectedLine,
+                                 final GeodesicLine actualLine,
+                                 final boolean arcmode,
+                                 final int length,
+                                 final long outmask) {
+    Random random = new Random(length);
+    int size = OFFSET + length + TAIL;
+    double[] s12_a12 = new double[size];
+    for (int i = 0; i < size; ++i) {
+      s12_a12[i] = arcmode ? random.nextDouble() * 720 - 360
+          : random.nextDouble() * 8e7 - 4e7;
+    }
+    double[][] expected = new double[9][size];
+    double[][] actual = new double[9][];
+    for (int k = 0; k < actual.length; ++k) {
+      actual[k] = untouched(size);
+    }
+    expectedLine.genPosition(arcmode, s12_a12, OFFSET, length, outmask,
+                             expected[0], expected[1], expected[2],
+                             expected[3], expected[4], expected[5],
+                             expected[6], expected[7], expected[8]);
+    actualLine.genPosition(arcmode, s12_a12, OFFSET, length, outmask,
+                           actual[0], actual[1], actual[2], actual[3],
+                           actual[4], actual[5], actual[6], actual[7],
+                           actual[8]);
+    for (int i = OFFSET; i < OFFSET + length; ++i) {
+      assertDirectAgrees(expected, actual, i);
+    }
+    for (int k = 0; k < actual.length; ++k) {
+      assertUntouchedOutside(actual[k], OFFSET, length);
+    }
+  }
+
+  @Test
+  public void batchPositionsAgreeAcrossChunks() {
+    GeodesicLine expected = javaGeodesic.line(-33.9, 151.2, -120);
+    GeodesicLine actual = geodesic.line(-33.9, 151.2, -120);
+    try {
+      for (int length : LENGTHS) {
+        assertBatchAgrees(expected, actual, false, length, Geodesic.MASK_ALL);
+        assertBatchAgrees(expected, actual, true, length, Geodesic.MASK_ALL);
+      }
+    } finally {
+      actual.close();
+    }
+  }
+
+  @Test
+  public void batchWritesOnlyTheRequestedOutputs() {
+    long caps = Geodesic.MASK_LATITUDE | Geodesic.MASK_LONGITUDE
+        | Geodesic.MASK_DISTANCE_IN;
+    GeodesicLine expected = javaGeodesic.line(40.6, -73.8, 51.4, caps);
+    GeodesicLine actual = geodesic.line(40.6, -73.8, 51.4, caps);
+    try {
+      assertEquals(expected.getCapabilities(), actual.getCapabilities());
+      // asks for more than the line can compute, the outputs left alone by
+      // the Java engine must be left alone too
+      long outmask = Geodesic.MASK_LATITUDE | Geodesic.MASK_AZIMUTH;
+      int length = 4097;
+      int size = OFFSET + length + TAIL;
+      double[] s12 = new double[size];
+      for (int i = 0; i < size; ++i) {
+        s12[i] = i * 1e3;
+      }
+      double[][] javaValues = new double[9][];
+      double[][] values = new double[9][];
+      for (int k = 0; k < values.length; ++k) {
+        javaValues[k] = untouched(size);
+        values[k] = untouched(size);
+      }
+      expected.genPosition(false, s12, OFFSET, length, outmask,
+                           javaValues[0], javaValues[1], javaValues[2],
+                           javaValues[3], javaValues[4], javaValues[5],
+                           javaValues[6], javaValues[7], javaValues[8]);
+      actual.genPosition(false, s12, OFFSET, length, outmask,
+                         values[0], values[1], values[2], values[3],
+                         values[4], values[5], values[6], values[7],
+                         values[8]);
+      for (int i = 0; i < size; ++i) {
+        assertDirectAgrees(javaValues, values, i);
+      }
+      assertUntouchedOutside(values[0], OFFSET, length);
+    } finally {
+      actual.close();
+    }
+  }
+
+  /**
+   * Checks the densified route of the engine against the Java engine.
+   */
+  private void assertRouteAgrees(final double[] lat,
+                                 final double[] lon,
+                                 final double maxSegmentLength) {
+    GeodesicLine.Route expected =
+        GeodesicLine.densify(javaGeodesic, lat, lon, maxSegmentLength);
+    GeodesicLine.Route actual =
+        GeodesicLine.densify(geodesic, lat, lon, maxSegmentLength);
+    assertEquals(expected.size(), actual.size());
+    assertArrayEquals(expected.getVertexIndices(), actual.getVertexIndices());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertEquals("point " + i, expected.getLatitudes()[i],
+                   actual.getLatitudes()[i], 1e-12);
+      assertEquals("point " + i, 0,
+                   azimuthDifference(expected.getLongitudes()[i],
+                                     actual.getLongitudes()[i]), 1e-12);
+    }
+    // the vertices are kept as given
+    for (int v = 0; v < lat.length; ++v) {
+      int i = actual.getVertexIndices()[v];
+      assertEquals(lat[v], actual.getLatitudes()[i], 0);
+      assertEquals(lon[v], actual.getLongitudes()[i], 0);
+    }
+    for (int i = 1; i < actual.size(); ++i) {
+      double s12 = javaGeodesic.distance(actual.getLatitudes()[i - 1],
+                                         actual.getLongitudes()[i - 1],
+                                         actual.getLatitudes()[i],
+                                         actual.getLongitudes()[i]);
+      assertTrue("segment " + i + " of " + s12 + " m",
+                 s12 <= maxSegmentLength * (1 + 1e-9));
+    }
+  }
+
+  @Test
+  public void shortRoutesAreCopied() {
+    assertRouteAgrees(new double[0], new double[0], 1e3);
+    assertRouteAgrees(new double[] {10}, new double[] {20}, 1e3);
+    assertRouteAgrees(new double[] {10, 10}, new double[] {20, 20}, 1e3);
+  }
+
+  @Test
+  public void legLongerThanAChunkAgrees() {
+    // 4096, 4097 and 8193 segments on a single leg
+    for (double segments : new double[] {4095.5, 4096.5, 8192.5}) {
+      double s12 = javaGeodesic.distance(10, 20, -30, 140);
+      assertRouteAgrees(new double[] {10, -30}, new double[] {20, 140},
+                        s12 / segments);
+    }
+  }
+
+  @Test
+  public void manyLegsAgreeAcrossChunks() {
+    Random random = new Random(23);
+    for (int legs : LENGTHS) {
+      double[] lat = new double[legs + 1];
+      double[] lon = new double[legs + 1];
+      lat[0] = latitude(random);
+      lon[0] = random.nextDouble() * 360 - 180;
+      for (int i = 1; i <= legs; ++i) {
+        Geodesic.DirectResult next =
+            javaGeodesic.direct(lat[i - 1], lon[i - 1],
+                                random.nextDouble() * 360 - 180,
+                                random.nextDouble() * 5e4);
+        lat[i] = next.getLat2();
+        lon[i] = next.getLon2();
+      }
+      assertRouteAgrees(lat, lon, 1e4);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void closedLineCantBeUsed() {
+    assumeFalse("close does nothing", engine == GeodesicEngine.JAVA);
+    GeodesicLine line = geodesic.line(0, 0, 45);
+    line.close();
+    line.close();
+    line.position(1e6);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void batchRejectsAShortOutput() {
+    GeodesicLine line = geodesic.line(0, 0, 45);
+    try {
+      line.genPosition(false, new double[OFFSET + 2], OFFSET, 2,
+                       Geodesic.MASK_LATITUDE, new double[OFFSET + 1], null,
+                       null, null, null, null, null, null, null);
+    } finally {
+      line.close();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.WGS84_A;
+import static net.sf.geographiclib.GeodesicFixtures.WGS84_F;
+import static net.sf.geographiclib.GeodesicFixtures.assertInverseAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.pairs;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>GeodesicRegistryTest</code> compares the instances interned by
+ * {@link GeodesicRegistry} for the {@link GeodesicEngine#NATIVE} and
+ * {@link GeodesicEngine#FOREIGN} engines with {@link GeodesicEngine#JAVA},
+ * and checks that native instances of one ellipsoid share a single C++
+ * object. The interning and the shared instances closed by mistake are
+ * checked for <code>JAVA</code> too. Each test uses its own ellipsoid, so
+ * that the instances of the other tests don't change what is shared. The
+ * tests are skipped when the engine can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class GeodesicRegistryTest {
+
+  private static final int COUNT = 1000;
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public GeodesicRegistryTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+  }
+
+  @Test
+  public void sharedInstanceAgreesWithJava() {
+    Geodesic geodesic = GeodesicRegistry.get(WGS84_A, WGS84_F, engine);
+    assertSame(geodesic, GeodesicRegistry.get(WGS84_A, WGS84_F, engine));
+    // a flattening greater than 1 is the reciprocal
+    assertSame(geodesic, GeodesicRegistry.get(WGS84_A, 1 / WGS84_F, engine));
+    if (engine != GeodesicEngine.JAVA) {
+      assertNotSame(geodesic, GeodesicRegistry.get(WGS84_A, WGS84_F,
+                                                   GeodesicEngine.JAVA));
+    }
+    assertEquals(engine, geodesic.getEngine());
+    assertEquals(javaGeodesic.getMajorRadius(), geodesic.getMajorRadius(), 0);
+    assertEquals(javaGeodesic.getFlattening(), geodesic.getFlattening(), 0);
+    assertEquals(javaGeodesic.getEllipsoidArea(),
+                 geodesic.getEllipsoidArea(),
+                 javaGeodesic.getEllipsoidArea() * 1e-14);
+    double[][] in = pairs(javaGeodesic, new Random(17), COUNT, 1e5);
+    double[][] expected = new double[8][COUNT];
+    double[][] actual = new double[8][COUNT];
+    javaGeodesic.genInverse(in[0], in[1], in[2], in[3], 0, COUNT,
+                            Geodesic.MASK_ALL,
+                            expected[0], expected[1], expected[2],
+                            expected[3], expected[4], expected[5],
+                            expected[6], expected[7]);
+    geodesic.genInverse(in[0], in[1], in[2], in[3], 0, COUNT,
+                        Geodesic.MASK_ALL,
+                        actual[0], actual[1], actual[2], actual[3],
+                        actual[4], actual[5], actual[6], actual[7]);
+    for (int i = 0; i < COUNT; ++i) {
+      assertInverseAgrees(expected, actual, i);
+    }
+  }
+
+  @Test
+  public void closeLeavesTheSharedInstanceAlone() {
+    Geodesic geodesic = GeodesicRegistry.get(6378000, 1 / 297.0, engine);
+    double s12 = geodesic.distance(10, 20, -30, 140);
+    long closed = Geodesic.getNativeStats().getClosedHandles();
+    geodesic.close();
+    assertEquals(closed, Geodesic.getNativeStats().getClosedHandles());
+    assertEquals(s12, geodesic.distance(10, 20, -30, 140), 0);
+    assertSame(geodesic, GeodesicRegistry.get(6378000, 1 / 297.0, engine));
+  }
+
+  @Test
+  public void instancesShareOneNativeObject() {
+    assumeFalse("no native object", engine == GeodesicEngine.JAVA);
+    double a = 6378100;
+    double f = 1 / 299.0;
+    Geodesic first = new Geodesic(a, f, engine);
+    Geodesic second = new Geodesic(a, 1 / f, engine);
+    try {
+      assertTrue(first.getNativeLease().isCreated());
+      assertSame(first.getNativeLease().getHandle(),
+                 second.getNativeLease().getHandle());
+      assertEquals(first.distance(10, 20, -30, 140),
+                   second.distance(10, 20, -30, 140), 0);
+    } finally {
+      first.close();
+    }
+    // the object stays alive for the second instance
+    Geodesic third = new Geodesic(a, f, engine);
+    try {
+      assertSame(second.getNativeLease().getHandle(),
+                 third.getNativeLease().getHandle());
+    } finally {
+      second.close();
+      third.close();
+    }
+    // and is deleted with the last one, the next instance creates another
+    Geodesic fourth = new Geodesic(a, f, engine);
+    try {
+      assertTrue(fourth.getNativeLease().isCreated());
+    } finally {
+      fourth.close();
+    }
+  }
+
+  @Test
+  public void concurrentGetsInternOneInstance() throws Exception {
+    final int threads = 8;
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Geodesic>> futures = new ArrayList<Future<Geodesic>>();
+      for (int i = 0; i < threads; ++i) {
+        futures.add(executor.submit(new Callable<Geodesic>() {
+            public Geodesic call() throws Exception {
+              barrier.await();
+              return GeodesicRegistry.get(6378200, 1 / 296.0, engine);
+            }
+          }));
+      }
+      Geodesic geodesic = futures.get(0).get();
+      for (Future<Geodesic> future : futures) {
+        assertSame(geodesic, future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,361 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * <code>GeofenceEngineTest</code> checks the enter, exit and dwell events of
+ * {@link GeofenceEngine} against the containment of every position in every
+ * fence decided by brute force, including positions a millimeter from the
+ * boundaries where the bounds of the engine can't decide.
+ *
+ * @version 1.29
+ */
+public class GeofenceEngineTest {
+
+  private static final long DWELL_TIME = 5;
+
+  private final Geodesic geodesic = wgs84(GeodesicEngine.JAVA);
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  /**
+   * Whether a position is in a fence, with the definitions of the engine
+   * but without its bounds: within the radius of a circle, or around which
+   * the vertices of a polygon wind.
+   */
+  private boolean contains(final Geofence fence,
+                           final double lat,
+                           final double lon) {
+    if (!fence.isPolygon()) {
+      return geodesic.distance(lat, lon, fence.getLatitude(),
+                               fence.getLongitude()) <= fence.getRadius();
+    }
+    int n = fence.getVertexCount();
+    double[] azimuths = new double[n];
+    for (int k = 0; k < n; ++k) {
+      azimuths[k] = geodesic.initialAzimuth(lat, lon,
+                                            fence.getVertexLatitude(k),
+                                            fence.getVertexLongitude(k));
+    }
+    double winding = 0;
+    for (int k = 0; k < n; ++k) {
+      winding += GeoMath.angNormalize(azimuths[(k + 1) % n] - azimuths[k]);
+    }
+    return Math.abs(winding) > 180;
+  }
+
+  /**
+   * The events of the positions replayed one by one against the fences.
+   */
+  private static final class Reference {
+    private final Geofence[] fences;
+    private final Map<Long, long[]> entered =
+        new HashMap<Long, long[]>();
+    private final Map<Long, boolean[]> dwelt =
+        new HashMap<Long, boolean[]>();
+
+    Reference(final Geofence[] fences) {
+      this.fences = fences;
+    }
+
+    void add(final List<String> events,
+             final long objectId,
+             final long time,
+             final int position,
+             final boolean[] inside) {
+      long[] since = entered.get(objectId);
+      boolean[] done = dwelt.get(objectId);
+      if (since == null) {
+        since = new long[fences.length];
+        Arrays.fill(since, -1);
+        done = new boolean[fences.length];
+        entered.put(objectId, since);
+        dwelt.put(objectId, done);
+      }
+      for (int f = 0; f < fences.length; ++f) {
+        if (since[f] >= 0 && !inside[f]) {
+          events.add(event(GeofenceEvent.Type.EXIT, objectId, f, time,
+                           position));
+          since[f] = -1;
+        } else if (since[f] < 0 && inside[f]) {
+          events.add(event(GeofenceEvent.Type.ENTER, objectId, f, time,
+                           position));
+          since[f] = time;
+          done[f] = false;
+        }
+        if (since[f] >= 0 && !done[f] && time - since[f] >= DWELL_TIME) {
+          events.add(event(GeofenceEvent.Type.DWELL, objectId, f, time,
+                           position));
+          done[f] = true;
+        }
+      }
+    }
+  }
+
+  private static String event(final GeofenceEvent.Type type,
+                              final long objectId,
+                              final int fence,
+                              final long time,
+                              final int position) {
+    return type + " object " + objectId + " fence " + fence + " time " + time
+        + " position " + position;
+  }
+
+  private static List<String> toStrings(final List<GeofenceEvent> events) {
+    List<String> strings = new ArrayList<String>();
+    for (GeofenceEvent e : events) {
+      strings.add(event(e.getType(), e.getObjectId(), e.getFence(),
+                        e.getTime(), e.getPosition()));
+    }
+    return strings;
+  }
+
+  @Test
+  public void singleObjectEntersDwellsAndExits() {
+    Geofence[] fences = {
+      Geofence.circle(0, 0, 10000),
+      Geofence.polygon(new double[] {-0.05, -0.05, 0.05, 0.05},
+                       new double[] {-0.05, 0.05, 0.05, -0.05}),
+    };
+    GeofenceEngine engine =
+        new GeofenceEngine(geodesic, fences, DWELL_TIME, pool, 2, 1);
+    long[] ids = {42, 42, 42, 42, 42, 42};
+    long[] times = {0, 1, 2, 7, 8, 9};
+    double[] lat = {0.5, 0.08, 0, 0, 0.07, 1};
+    double[] lon = {0.5, 0, 0, 0, 0, 1};
+    List<String> expected = new ArrayList<String>();
+    expected.add(event(GeofenceEvent.Type.ENTER, 42, 0, 1, 1));
+    expected.add(event(GeofenceEvent.Type.ENTER, 42, 1, 2, 2));
+    expected.add(event(GeofenceEvent.Type.DWELL, 42, 0, 7, 3));
+    expected.add(event(GeofenceEvent.Type.DWELL, 42, 1, 7, 3));
+    expected.add(event(GeofenceEvent.Type.EXIT, 42, 1, 8, 4));
+    expected.add(event(GeofenceEvent.Type.EXIT, 42, 0, 9, 5));
+    // the state of the object is kept between the batches
+    List<String> actual = new ArrayList<String>();
+    actual.addAll(toStrings(engine.update(ids, times, lat, lon, 0, 3)));
+    actual.addAll(toStrings(engine.update(ids, times, lat, lon, 3, 3)));
+    assertEquals(expected, actual);
+    assertEquals(0, engine.getObjectCount());
+  }
+
+  @Test
+  public void decidesPositionsNearTheBoundaries() {
+    Geofence circle = Geofence.circle(30, 179.95, 20000);
+    Geofence polygon = Geofence.polygon(new double[] {10, 10.2, 10.4, 10.1},
+                                        new double[] {20, 20.5, 20.1, 19.8});
+    Geofence[] fences = {circle, polygon};
+    GeofenceEngine engine =
+        new GeofenceEngine(geodesic, fences, Long.MAX_VALUE, pool, 3, 0.5);
+    List<double[]> positions = new ArrayList<double[]>();
+    for (int k = 0; k < 36; ++k) {
+      for (double offset : new double[] {-0.001, 0.001}) {
+        Geodesic.DirectResult point =
+            geodesic.direct(circle.getLatitude(), circle.getLongitude(),
+                            10 * k, circle.getRadius() + offset);
+        positions.add(new double[] {point.getLat2(), point.getLon2()});
+      }
+    }
+    int n = polygon.getVertexCount();
+    for (int k = 0; k < n; ++k) {
+      Geodesic.InverseResult edge =
+          geodesic.inverse(polygon.getVertexLatitude(k),
+                           polygon.getVertexLongitude(k),
+                           polygon.getVertexLatitude((k + 1) % n),
+                           polygon.getVertexLongitude((k + 1) % n));
+      for (double fraction : new double[] {0.1, 0.5, 0.9}) {
+        Geodesic.DirectResult point =
+            geodesic.direct(polygon.getVertexLatitude(k),
+                            polygon.getVertexLongitude(k), edge.getAzi1(),
+                            edge.gets12() * fraction);
+        for (double side : new double[] {-90, 90}) {
+          Geodesic.DirectResult off =
+              geodesic.direct(point.getLat2(), point.getLon2(),
+                              point.getAzi2() + side, 0.001);
+          positions.add(new double[] {off.getLat2(), off.getLon2()});
+        }
+      }
+    }
+
+    // every position is a new object, entering the fences it is in
+    int count = positions.size();
+    long[] ids = new long[count];
+    long[] times = new long[count];
+    double[] lat = new double[count];
+    double[] lon = new double[count];
+    List<String> expected = new ArrayList<String>();
+    Reference reference = new Reference(fences);
+    for (int i = 0; i < count; ++i) {
+      ids[i] = i;
+      lat[i] = positions.get(i)[0];
+      lon[i] = positions.get(i)[1];
+      boolean[] inside = new boolean[fences.length];
+      for (int f = 0; f < fences.length; ++f) {
+        inside[f] = contains(fences[f], lat[i], lon[i]);
+      }
+      reference.add(expected, ids[i], times[i], i, inside);
+    }
+    // half of them are inside
+    assertEquals(count / 2, expected.size());
+    assertEquals(expected, toStrings(engine.update(ids, times, lat, lon,
+                                                   0, count)));
+    // those outside, at least, are closer than the chord bound can tell
+    assertTrue(engine.getExactCount() >= count / 2);
+  }
+
+  @Test
+  public void longHighLatitudeEdgesMatchBruteForce() {
+    // edges of 500 to 1700 km, far from the plane sections through their
+    // vertices, one polygon across the antimeridian; both are in the north,
+    // the brute force winding can't tell the antipodes of a polygon from
+    // its inside
+    Geofence[] fences = {
+      Geofence.polygon(new double[] {75, 75, 84, 84},
+                       new double[] {150, -150, -140, 160}),
+      Geofence.polygon(new double[] {72, 80, 86, 78},
+                       new double[] {30, 100, 60, -10}),
+    };
+    GeofenceEngine engine =
+        new GeofenceEngine(geodesic, fences, Long.MAX_VALUE, pool, 2, 2);
+    Random random = new Random(23);
+    List<double[]> positions = new ArrayList<double[]>();
+    for (Geofence polygon : fences) {
+      int n = polygon.getVertexCount();
+      for (int k = 0; k < n; ++k) {
+        Geodesic.InverseResult edge =
+            geodesic.inverse(polygon.getVertexLatitude(k),
+                             polygon.getVertexLongitude(k),
+                             polygon.getVertexLatitude((k + 1) % n),
+                             polygon.getVertexLongitude((k + 1) % n));
+        for (int j = 1; j < 40; ++j) {
+          Geodesic.DirectResult point =
+              geodesic.direct(polygon.getVertexLatitude(k),
+                              polygon.getVertexLongitude(k), edge.getAzi1(),
+                              edge.gets12() * j / 40);
+          for (double offset : new double[] {1e-3, 1, 30, 300, 3000}) {
+            for (double side : new double[] {-90, 90}) {
+              Geodesic.DirectResult off =
+                  geodesic.direct(point.getLat2(), point.getLon2(),
+                                  point.getAzi2() + side,
+                                  offset * (0.5 + random.nextDouble()));
+              positions.add(new double[] {off.getLat2(), off.getLon2()});
+            }
+          }
+        }
+      }
+    }
+
+    int count = positions.size();
+    long[] ids = new long[count];
+    long[] times = new long[count];
+    double[] lat = new double[count];
+    double[] lon = new double[count];
+    List<String> expected = new ArrayList<String>();
+    Reference reference = new Reference(fences);
+    for (int i = 0; i < count; ++i) {
+      ids[i] = i;
+      lat[i] = positions.get(i)[0];
+      lon[i] = positions.get(i)[1];
+      boolean[] inside = new boolean[fences.length];
+      for (int f = 0; f < fences.length; ++f) {
+        inside[f] = contains(fences[f], lat[i], lon[i]);
+      }
+      reference.add(expected, ids[i], times[i], i, inside);
+    }
+    // half of them are inside
+    assertEquals(count / 2, expected.size());
+    assertEquals(expected, toStrings(engine.update(ids, times, lat, lon,
+                                                   0, count)));
+    // the bounds still decide the positions far from the edges
+    assertTrue(engine.getExactCount() < count);
+  }
+
+  @Test
+  public void randomWalksMatchBruteForce() {
+    Random random = new Random(22);
+    Geofence[] fences = new Geofence[12];
+    for (int f = 0; f < fences.length; ++f) {
+      double clat = 50 + random.nextDouble();
+      double clon = 179.5 + random.nextDouble();
+      if (f % 2 == 0) {
+        fences[f] = Geofence.circle(clat, clon, 5000 + random.nextDouble() * 20000);
+      } else {
+        // a quadrilateral, the vertices in order around the center
+        double[] vlat = new double[4];
+        double[] vlon = new double[4];
+        for (int k = 0; k < 4; ++k) {
+          double azimuth = 90 * k + random.nextDouble() * 60;
+          Geodesic.DirectResult vertex =
+              geodesic.direct(clat, clon, azimuth,
+                              5000 + random.nextDouble() * 20000);
+          vlat[k] = vertex.getLat2();
+          vlon[k] = vertex.getLon2();
+        }
+        fences[f] = Geofence.polygon(vlat, vlon);
+      }
+    }
+    GeofenceEngine engine =
+        new GeofenceEngine(geodesic, fences, DWELL_TIME, pool, 4, 0.25);
+    Reference reference = new Reference(fences);
+
+    int objects = 30;
+    double[] objectLat = new double[objects];
+    double[] objectLon = new double[objects];
+    for (int o = 0; o < objects; ++o) {
+      objectLat[o] = 50 + random.nextDouble();
+      objectLon[o] = 179.5 + random.nextDouble();
+    }
+    int steps = 60;
+    int count = objects * steps;
+    long[] ids = new long[count];
+    long[] times = new long[count];
+    double[] lat = new double[count];
+    double[] lon = new double[count];
+    List<String> expected = new ArrayList<String>();
+    for (int s = 0, i = 0; s < steps; ++s) {
+      for (int o = 0; o < objects; ++o, ++i) {
+        Geodesic.DirectResult step =
+            geodesic.direct(objectLat[o], objectLon[o],
+                            random.nextDouble() * 360,
+                            random.nextDouble() * 5000);
+        objectLat[o] = step.getLat2();
+        objectLon[o] = step.getLon2();
+        ids[i] = 1000L * o - 7;
+        times[i] = s;
+        lat[i] = objectLat[o];
+        lon[i] = objectLon[o];
+        boolean[] inside = new boolean[fences.length];
+        for (int f = 0; f < fences.length; ++f) {
+          inside[f] = contains(fences[f], lat[i], lon[i]);
+        }
+        reference.add(expected, ids[i], times[i], i, inside);
+      }
+    }
+    // micro-batches of varying sizes
+    List<String> actual = new ArrayList<String>();
+    for (int offset = 0; offset < count; ) {
+      int length = Math.min(count - offset, 1 + random.nextInt(3 * objects));
+      actual.addAll(toStrings(engine.update(ids, times, lat, lon,
+                                            offset, length)));
+      offset += length;
+    }
+    assertEquals(expected, actual);
+    assertEquals(count, engine.getPositionCount());
+  }
+}
@@ -0,0 +1,219 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.azimuthDifference;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <code>JavaGeodesicTest</code> checks the {@link GeodesicEngine#JAVA}
+ * engine on its own against reference geodesics on WGS84, in the format
+ * of GeographicLib's GeodTest data: lat1, lon1, azi1, lat2, lon2, azi2,
+ * s12, a12, m12 and S12. It needs neither the JNI library nor the C++
+ * results.
+ * <p>
+ * The cases below are the hard ones of GeodTest, nearly antipodal,
+ * meridional, equatorial and polar geodesics, with the reference values
+ * printed by GeographicLib-Java 2.0, which is checked against GeodTest
+ * upstream. {@link #agreesWithGeodTest} also reads the published file,
+ * <code>GeodTest.dat</code> or <code>GeodTest-short.dat</code>, gzipped
+ * or not, from the <code>geographiclib.geodtest</code> system property,
+ * see <code>ant test.fetch.geodtest</code>; it is skipped when the file
+ * isn't there. The tolerances are those of the upstream tests: 15 nm for
+ * the distances and 1e-13 degrees for the angles, or for the azimuths of
+ * nearly antipodal points the 15 nm they move the other end by. S12 isn't
+ * checked, the areas of the nearly antipodal cases printed by
+ * GeographicLib-Java 1.49 and 2.0 already differ by more than the
+ * 0.1 m<sup>2</sup> of the upstream tests.
+ *
+ * @version 1.29
+ */
+public class JavaGeodesicTest {
+
+  private static final double DISTANCE_TOLERANCE = 15e-9;
+  private static final double ANGLE_TOLERANCE = 1e-13;
+
+  /**
+   * The system property naming the GeodTest file.
+   */
+  private static final String GEODTEST_PROPERTY = "geographiclib.geodtest";
+
+  private static final double[][] NEARLY_ANTIPODAL = {
+    {-30, 0, 161.89052473632697, 29.9, 179.8, 18.090737245739508,
+     1.998983282760953E7, 179.8949713881555, 57277.37689301771,
+     -1.0179074471322052E14},
+    {0.5, 0, 55.96970412004376, -0.5, 179.5, 124.03029587995624,
+     1.9980861908890963E7, 180, 21057.66005843986, 4.804753219859554E13},
+    {41.9, 0, 2.9480508314906992, -41.8, 179.97, 177.0565410034651,
+     1.9992760395900395E7, 179.89990514212397, 48380.271954331765,
+     1.2333235706926164E14},
+    {-1.0E-4, 0, 179.9524988523225, 0, 179.9995, 0.04750114767743034,
+     2.0003920378125466E7, 179.99990033524682, 67136.6237085178,
+     -1.2744880278053934E14},
+    {10, 0, 179.0669233401469, -10.02, 179.99, 0.9331337825793719,
+     2.0001710374842867E7, 179.98006037956435, 67305.91031039011,
+     -1.2618860774476255E14},
+    {-60.5, 0, 168.55354816114738, 60.4, 179.9, 11.410851908853708,
+     1.9992241927704412E7, 179.8978014318364, 27133.45964551595,
+     -1.1130651369123123E14}
+  };
+
+  private static final double[][] MERIDIONAL = {
+    {-20, 0, 0, 70, 0, 0, 9981346.981941829, 89.87631177052093,
+     6367310.1562095955, 0},
+    {10, 0, 180, -80, 0, 180, 9990994.705171246, 89.93418679444476,
+     6372377.0690640835, 0},
+    // over the poles
+    {80, 0, 0, 85, 180, 180, 1675281.4460223264, 15.049693282037092,
+     1656211.4750911456, 1.2751640543102211E14},
+    {-45, 0, 180, -45.5, 180, 0, 9978474.371131131, 89.69241246689374,
+     6394669.810514367, -1.2751640543102211E14}
+  };
+
+  private static final double[][] EQUATORIAL = {
+    {0, 0, 90, 0, 90, 90, 1.0018754171394622E7, 90.30276808388787,
+     6356663.562029597, 0},
+    {0, 0, 90, 0, 179, 90, 1.992618885199597E7, 179.60217207795478,
+     44137.16447585455, 0},
+    // past (1 - f) 180 degrees, the shortest path leaves the equator
+    {0, 0, 55.966495140158635, 0, 179.5, 124.03350485984137,
+     1.9980861908890963E7, 180, 21062.746405317906, 4.805205851606535E13},
+    {0, 0, 90, 0, 1.0E-7, 90, 0.011131949079327358, 1.0033640898209764E-7,
+     0.011131949079327358, 0}
+  };
+
+  private static final double[][] POLAR = {
+    {90, 0, 135, -30, 45, 180, 1.3322079127253104E7, 119.91674771323609,
+     5528256.639292835, 3.1879101357755535E13},
+    {-90, 0, 120, 89.99, 120, 0, 2.000281451882997E7, 179.98996635910248,
+     1116.9397898065388, -8.501093695401475E13},
+    {89.999, 0, 90.24999472014528, -89.999, 179.5, 90.24999472014528,
+     2.0003930483924985E7, 179.99999124420924, 0.9746901706378795, 0},
+    {89.5, 0, 0, 89.5, 180, 180, 111693.95089655284, 1.0033639181674372,
+     111688.28033081275, 1.2751640543102211E14},
+    {-89.9, 0, -99.96477245394345, 20, -100, -0.10512381175684778,
+     1.2216268148029419E7, 109.95562884893396, 5995187.464103464,
+     7.074272499485177E13}
+  };
+
+  private Geodesic geodesic;
+
+  @Before
+  public void setUp() {
+    geodesic = wgs84(GeodesicEngine.JAVA);
+  }
+
+  /**
+   * Checks an azimuth of a geodesic of reduced length <code>m12</code>.
+   * The azimuths of nearly antipodal points are ill-conditioned, their
+   * error is then checked as the error of the position it leads to.
+   */
+  private static void assertAzimuth(final String message,
+                                    final double expected,
+                                    final double actual,
+                                    final double m12) {
+    double error = Math.abs(azimuthDifference(expected, actual));
+    if (error > ANGLE_TOLERANCE) {
+      assertEquals(message, 0, Math.toRadians(error) * Math.abs(m12),
+                   DISTANCE_TOLERANCE);
+    }
+  }
+
+  /**
+   * Solves the inverse problem between the points of a reference line and
+   * the direct problem from its first point, azimuth and distance.
+   */
+  private void assertAgrees(final String message, final double[] line) {
+    double lat1 = line[0];
+    double lon1 = line[1];
+    double azi1 = line[2];
+    double lat2 = line[3];
+    double lon2 = line[4];
+    double azi2 = line[5];
+    double s12 = line[6];
+    double a12 = line[7];
+    double m12 = line[8];
+    Geodesic.InverseResult inverse =
+        geodesic.genInverse(lat1, lon1, lat2, lon2, Geodesic.MASK_ALL);
+    assertEquals(message, s12, inverse.gets12(), DISTANCE_TOLERANCE);
+    assertAzimuth(message, azi1, inverse.getAzi1(), m12);
+    assertAzimuth(message, azi2, inverse.getAzi2(), m12);
+    assertEquals(message, a12, inverse.getA12(), ANGLE_TOLERANCE);
+    assertEquals(message, m12, inverse.getm12(), DISTANCE_TOLERANCE);
+    Geodesic.DirectResult direct =
+        geodesic.genDirect(lat1, lon1, azi1, false, s12, Geodesic.MASK_ALL);
+    assertEquals(message, lat2, direct.getLat2(), ANGLE_TOLERANCE);
+    // the error of the position, the longitudes converge at the poles
+    assertEquals(message, 0, azimuthDifference(lon2, direct.getLon2())
+                 * Math.cos(Math.toRadians(lat2)), ANGLE_TOLERANCE);
+    assertAzimuth(message, azi2, direct.getAzi2(), m12);
+    assertEquals(message, a12, direct.getA12(), ANGLE_TOLERANCE);
+    assertEquals(message, m12, direct.getm12(), DISTANCE_TOLERANCE);
+  }
+
+  private void assertAllAgree(final String name, final double[][] lines) {
+    for (int i = 0; i < lines.length; ++i) {
+      assertAgrees(name + " " + i, lines[i]);
+    }
+  }
+
+  @Test
+  public void nearlyAntipodalAgree() {
+    assertAllAgree("nearly antipodal", NEARLY_ANTIPODAL);
+  }
+
+  @Test
+  public void meridionalAgree() {
+    assertAllAgree("meridional", MERIDIONAL);
+  }
+
+  @Test
+  public void equatorialAgree() {
+    assertAllAgree("equatorial", EQUATORIAL);
+  }
+
+  @Test
+  public void polarAgree() {
+    assertAllAgree("polar", POLAR);
+  }
+
+  @Test
+  public void agreesWithGeodTest() throws Exception {
+    String path = System.getProperty(GEODTEST_PROPERTY);
+    File file = path != null ? new File(path) : null;
+    assumeTrue("no GeodTest file, set " + GEODTEST_PROPERTY,
+               file != null && file.isFile());
+    InputStream in = new FileInputStream(file);
+    if (file.getName().endsWith(".gz")) {
+      in = new GZIPInputStream(in);
+    }
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(in, StandardCharsets.US_ASCII));
+    try {
+      int count = 0;
+      double[] line = new double[10];
+      for (String text; (text = reader.readLine()) != null;) {
+        String[] fields = text.trim().split("\\s+");
+        for (int k = 0; k < line.length; ++k) {
+          line[k] = Double.parseDouble(fields[k]);
+        }
+        assertAgrees("line " + ++count, line);
+      }
+      assertTrue(file + " is empty", count > 0);
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package net.sf.geographiclib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <code>LibraryLoaderTest</code> checks how {@link LibraryLoader} names the
+ * platforms, picks the variants of the library a CPU can run and extracts
+ * the library embedded in a jar to its cache, using a jar of random bytes
+ * in place of the library so that it runs without the native build.
+ *
+ * @version 1.29
+ */
+public class LibraryLoaderTest {
+
+  private static final String FILE_NAME = "libGeographicJniTest.so";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] library;
+  private URL url;
+  private Path cache;
+
+  @Before
+  public void setUp() throws Exception {
+    library = new byte[100000 + 7];
+    new Random(24).nextBytes(library);
+    File jar = folder.newFile("natives.jar");
+    JarOutputStream out =
+        new JarOutputStream(Files.newOutputStream(jar.toPath()));
+    try {
+      out.putNextEntry(new JarEntry("native/test/" + FILE_NAME));
+      out.write(library);
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+    url = URI.create("jar:" + jar.toURI() + "!/native/test/" + FILE_NAME)
+        .toURL();
+    cache = folder.newFolder("cache").toPath();
+  }
+
+  /**
+   * The names of the files of a directory.
+   */
+  private static List<String> list(final Path dir) throws Exception {
+    List<String> names = new ArrayList<String>();
+    DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+    try {
+      for (Path path : stream) {
+        names.add(path.getFileName().toString());
+      }
+    } finally {
+      stream.close();
+    }
+    return names;
+  }
+
+  @Test
+  public void extractsOnceIntoTheCache() throws Exception {
+    File file = LibraryLoader.extract(url, cache, FILE_NAME);
+    assertArrayEquals(library, Files.readAllBytes(file.toPath()));
+    assertEquals(FILE_NAME, file.getName());
+    // the directory is named after the checksum of the library
+    CRC32 crc = new CRC32();
+    crc.update(library);
+    String dir = file.getParentFile().getName();
+    assertTrue(dir, dir.endsWith("-" + LibraryLoader.getPlatform() + "-"
+                                 + Long.toHexString(crc.getValue())));
+    assertEquals(1, list(cache).size());
+    assertEquals(1, list(file.getParentFile().toPath()).size());
+    // a later start finds the file and leaves it alone
+    FileTime old = FileTime.fromMillis(1000000000000L);
+    Files.setLastModifiedTime(file.toPath(), old);
+    assertEquals(file, LibraryLoader.extract(url, cache, FILE_NAME));
+    assertEquals(old, Files.getLastModifiedTime(file.toPath()));
+  }
+
+  @Test
+  public void aLibraryOutsideAJarGoesToTheSameDirectory() throws Exception {
+    File plain = folder.newFile(FILE_NAME);
+    Files.write(plain.toPath(), library);
+    File fromJar = LibraryLoader.extract(url, cache, FILE_NAME);
+    File fromFile = LibraryLoader.extract(plain.toURI().toURL(), cache,
+                                          FILE_NAME);
+    assertEquals(fromJar, fromFile);
+  }
+
+  @Test
+  public void replacesATruncatedCopy() throws Exception {
+    File file = LibraryLoader.extract(url, cache, FILE_NAME);
+    OutputStream out = Files.newOutputStream(file.toPath());
+    try {
+      out.write(library, 0, library.length / 2);
+    } finally {
+      out.close();
+    }
+    assertEquals(file, LibraryLoader.extract(url, cache, FILE_NAME));
+    assertArrayEquals(library, Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  public void concurrentExtractionsAgree() throws Exception {
+    final int threads = 8;
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<File>> futures = new ArrayList<Future<File>>();
+      for (int i = 0; i < threads; ++i) {
+        futures.add(executor.submit(new Callable<File>() {
+            public File call() throws Exception {
+              barrier.await();
+              return LibraryLoader.extract(url, cache, FILE_NAME);
+            }
+          }));
+      }
+      File file = futures.get(0).get();
+      for (Future<File> future : futures) {
+        assertEquals(file, future.get());
+      }
+      assertArrayEquals(library, Files.readAllBytes(file.toPath()));
+      // no temporary copy is left behind
+      assertEquals(1, list(file.getParentFile().toPath()).size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void platformNamesAreNormalized() {
+    String os = System.getProperty("os.name");
+    String arch = System.getProperty("os.arch");
+    try {
+      System.setProperty("os.name", "Mac OS X");
+      System.setProperty("os.arch", "arm64");
+      assertEquals("macos-aarch64", LibraryLoader.getPlatform());
+      System.setProperty("os.name", "Windows 11");
+      System.setProperty("os.arch", "amd64");
+      assertEquals("windows-x86_64", LibraryLoader.getPlatform());
+      System.setProperty("os.name", "Linux");
+      System.setProperty("os.arch", "i686");
+      assertEquals("linux-x86", LibraryLoader.getPlatform());
+    } finally {
+      System.setProperty("os.name", os);
+      System.setProperty("os.arch", arch);
+    }
+  }
+
+  /**
+   * The /proc/cpuinfo flags of an x86-64-v3 CPU.
+   */
+  private static final List<String> V3_FLAGS = Arrays.asList(
+      "fpu", "sse2", "cx16", "lahf_lm", "popcnt", "pni", "sse4_1", "sse4_2",
+      "ssse3", "avx", "avx2", "bmi1", "bmi2", "f16c", "fma", "abm", "movbe",
+      "xsave");
+
+  private static List<String> v4Flags() {
+    List<String> flags = new ArrayList<String>(V3_FLAGS);
+    flags.addAll(Arrays.asList("avx512f", "avx512bw", "avx512cd", "avx512dq",
+                               "avx512vl"));
+    return flags;
+  }
+
+  @Test
+  public void variantsFollowTheCpuFlags() {
+    assertArrayEquals(new String[] {"avx512", "avx2", "baseline"},
+                      LibraryLoader.supportedVariants("linux-x86_64",
+                                                      v4Flags(), null));
+    assertArrayEquals(new String[] {"avx2", "baseline"},
+                      LibraryLoader.supportedVariants("linux-x86_64",
+                                                      V3_FLAGS, null));
+    // AVX2 without FMA isn't x86-64-v3, AVX-512 alone is nothing
+    List<String> noFma = new ArrayList<String>(v4Flags());
+    noFma.remove("fma");
+    assertArrayEquals(new String[] {"baseline"},
+                      LibraryLoader.supportedVariants("linux-x86_64", noFma,
+                                                      null));
+    assertArrayEquals(new String[] {"baseline"},
+                      LibraryLoader.supportedVariants(
+                          "linux-x86_64", Collections.<String>emptyList(),
+                          null));
+    // the variants are x86-64 only
+    assertArrayEquals(new String[] {"baseline"},
+                      LibraryLoader.supportedVariants("linux-aarch64",
+                                                      v4Flags(), null));
+  }
+
+  @Test
+  public void variantPropertyCapsTheChoice() {
+    assertArrayEquals(new String[] {"avx2", "baseline"},
+                      LibraryLoader.supportedVariants("linux-x86_64",
+                                                      v4Flags(), " AVX2 "));
+    assertArrayEquals(new String[] {"baseline"},
+                      LibraryLoader.supportedVariants("linux-x86_64",
+                                                      v4Flags(), "baseline"));
+    // a variant the CPU can't run, or an unknown one, caps nothing
+    assertArrayEquals(new String[] {"avx2", "baseline"},
+                      LibraryLoader.supportedVariants("linux-x86_64",
+                                                      V3_FLAGS, "avx512"));
+    assertArrayEquals(new String[] {"avx2", "baseline"},
+                      LibraryLoader.supportedVariants("linux-x86_64",
+                                                      V3_FLAGS, "sse"));
+  }
+
+  @Test
+  public void variantsNameTheirLibraries() {
+    assertEquals("GeographicJni", LibraryLoader.libraryName("baseline"));
+    assertEquals("GeographicJni-avx2", LibraryLoader.libraryName("avx2"));
+    assertEquals("GeographicJni-avx512", LibraryLoader.libraryName("avx512"));
+    String[] variants = LibraryLoader.getSupportedVariants();
+    assertEquals("baseline", variants[variants.length - 1]);
+  }
+}
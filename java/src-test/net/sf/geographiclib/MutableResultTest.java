@@ -0,0 +1,194 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assertDirectAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assertInverseAgrees;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>MutableResultTest</code> compares the results the
+ * {@link GeodesicEngine#NATIVE} and {@link GeodesicEngine#FOREIGN} engines
+ * store into a reused {@link Geodesic.MutableDirectResult} or
+ * {@link Geodesic.MutableInverseResult} with the results of
+ * {@link GeodesicEngine#JAVA}, and with the results every engine
+ * allocates for the same calls. The tests are skipped when the engine
+ * can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class MutableResultTest {
+
+  private static final int COUNT = 1000;
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public MutableResultTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  /**
+   * The outputs of a direct result, in the order of
+   * {@link GeodesicFixtures#assertDirectAgrees}.
+   */
+  private static double[][] outputs(final Geodesic.DirectResult r) {
+    return new double[][] {{r.getLat2()}, {r.getLon2()}, {r.getAzi2()},
+                           {r.gets12()}, {r.getm12()}, {r.getM12()},
+                           {r.getM21()}, {r.getS12()}, {r.getA12()}};
+  }
+
+  private static double[][] outputs(final Geodesic.MutableDirectResult r) {
+    return new double[][] {{r.getLat2()}, {r.getLon2()}, {r.getAzi2()},
+                           {r.gets12()}, {r.getm12()}, {r.getM12()},
+                           {r.getM21()}, {r.getS12()}, {r.getA12()}};
+  }
+
+  /**
+   * The outputs of an inverse result, in the order of
+   * {@link GeodesicFixtures#assertInverseAgrees}.
+   */
+  private static double[][] outputs(final Geodesic.InverseResult r) {
+    return new double[][] {{r.gets12()}, {r.getAzi1()}, {r.getAzi2()},
+                           {r.getm12()}, {r.getM12()}, {r.getM21()},
+                           {r.getS12()}, {r.getA12()}};
+  }
+
+  private static double[][] outputs(final Geodesic.MutableInverseResult r) {
+    return new double[][] {{r.gets12()}, {r.getAzi1()}, {r.getAzi2()},
+                           {r.getm12()}, {r.getM12()}, {r.getM21()},
+                           {r.getS12()}, {r.getA12()}};
+  }
+
+  @Test
+  public void directHolderAgrees() {
+    Random random = new Random(5);
+    Geodesic.MutableDirectResult result = new Geodesic.MutableDirectResult();
+    for (int i = 0; i < COUNT; ++i) {
+      double lat1 = latitude(random);
+      double lon1 = random.nextDouble() * 360 - 180;
+      double azi1 = random.nextDouble() * 360 - 180;
+      boolean arcmode = i % 2 == 1;
+      double s12_a12 = random.nextDouble() * (arcmode ? 180 : 2e7);
+      assertSame(result, geodesic.genDirect(lat1, lon1, azi1, arcmode, s12_a12,
+                                            Geodesic.MASK_ALL, result));
+      assertEquals(Geodesic.MASK_ALL, result.getOutmask());
+      assertDirectAgrees(outputs(javaGeodesic.genDirect(lat1, lon1, azi1,
+                                                        arcmode, s12_a12,
+                                                        Geodesic.MASK_ALL)),
+                         outputs(result), 0);
+    }
+  }
+
+  @Test
+  public void directAndArcDirectFillTheHolder() {
+    Geodesic.MutableDirectResult result = new Geodesic.MutableDirectResult();
+    geodesic.direct(40.6, -73.8, 51.4, 5.5e6, result);
+    assertDirectAgrees(outputs(javaGeodesic.direct(40.6, -73.8, 51.4, 5.5e6)),
+                       outputs(result), 0);
+    geodesic.arcDirect(-33.9, 151.2, -120, 65, result);
+    assertDirectAgrees(outputs(javaGeodesic.arcDirect(-33.9, 151.2, -120, 65)),
+                       outputs(result), 0);
+  }
+
+  @Test
+  public void inverseHolderAgrees() {
+    Random random = new Random(6);
+    Geodesic.MutableInverseResult result = new Geodesic.MutableInverseResult();
+    for (int i = 0; i < COUNT; ++i) {
+      double lat1 = latitude(random);
+      double lon1 = random.nextDouble() * 360 - 180;
+      double lat2 = latitude(random);
+      double lon2 = random.nextDouble() * 360 - 180;
+      assertSame(result, geodesic.genInverse(lat1, lon1, lat2, lon2,
+                                             Geodesic.MASK_ALL, result));
+      assertEquals(Geodesic.MASK_ALL, result.getOutmask());
+      assertInverseAgrees(outputs(javaGeodesic.genInverse(lat1, lon1,
+                                                          lat2, lon2,
+                                                          Geodesic.MASK_ALL)),
+                          outputs(result), 0);
+    }
+  }
+
+  @Test
+  public void holderKeepsTheOutmaskOfTheLastCall() {
+    Geodesic.MutableInverseResult result = new Geodesic.MutableInverseResult();
+    geodesic.inverse(10, 20, -30, 140, result);
+    assertEquals(Geodesic.MASK_ALL, result.getOutmask());
+    long outmask = Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH;
+    geodesic.genInverse(-5, 0, 60, 90, outmask, result);
+    assertEquals(outmask, result.getOutmask());
+    Geodesic.InverseResult expected =
+        javaGeodesic.genInverse(-5, 0, 60, 90, outmask);
+    assertEquals(expected.gets12(), result.gets12(), 1e-8);
+    assertEquals(expected.getAzi1(), result.getAzi1(), 1e-9);
+    assertEquals(expected.getAzi2(), result.getAzi2(), 1e-9);
+    assertEquals(expected.getA12(), result.getA12(), 1e-12);
+  }
+
+  @Test
+  public void reusedHolderMatchesTheAllocatingCalls() {
+    Random random = new Random(7);
+    Geodesic.MutableDirectResult direct = new Geodesic.MutableDirectResult();
+    Geodesic.MutableInverseResult inverse =
+        new Geodesic.MutableInverseResult();
+    for (int i = 0; i < COUNT; ++i) {
+      double lat1 = latitude(random);
+      double lon1 = random.nextDouble() * 360 - 180;
+      double lat2 = latitude(random);
+      double lon2 = random.nextDouble() * 360 - 180;
+      // alternate the full and a narrower outmask on the same holders
+      long outmask = i % 2 == 0 ? Geodesic.MASK_ALL
+          : Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH;
+      Geodesic.InverseResult expected =
+          geodesic.genInverse(lat1, lon1, lat2, lon2, outmask);
+      geodesic.genInverse(lat1, lon1, lat2, lon2, outmask, inverse);
+      assertEquals(expected.gets12(), inverse.gets12(), 0);
+      assertEquals(expected.getAzi1(), inverse.getAzi1(), 0);
+      assertEquals(expected.getAzi2(), inverse.getAzi2(), 0);
+      assertEquals(expected.getA12(), inverse.getA12(), 0);
+      Geodesic.DirectResult point =
+          geodesic.genDirect(lat1, lon1, expected.getAzi1(), false,
+                             expected.gets12(), outmask);
+      geodesic.genDirect(lat1, lon1, expected.getAzi1(), false,
+                         expected.gets12(), outmask, direct);
+      assertEquals(outmask, direct.getOutmask());
+      assertEquals(point.getLat2(), direct.getLat2(), 0);
+      assertEquals(point.getLon2(), direct.getLon2(), 0);
+      assertEquals(point.getAzi2(), direct.getAzi2(), 0);
+      assertEquals(point.getA12(), direct.getA12(), 0);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>NativeStatsTest</code> checks the counters of {@link NativeStats} as
+ * instances of the {@link GeodesicEngine#NATIVE} and
+ * {@link GeodesicEngine#FOREIGN} engines are closed or dropped without being
+ * closed, and that an instance left to the cleaner computes the results of
+ * {@link GeodesicEngine#JAVA} until then. The counters are global, so only
+ * the counts the cleaner can't change concurrently are compared exactly.
+ * <code>JAVA</code> instances must leave the counters alone. The tests are
+ * skipped when the engine can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class NativeStatsTest {
+
+  /**
+   * How long to wait for the cleaner (milliseconds).
+   */
+  private static final long TIMEOUT = 10000;
+
+  private final GeodesicEngine engine;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public NativeStatsTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+  }
+
+  @Test
+  public void closeReleasesTheHandleOnce() {
+    // the Java engine has no handle, its instances count nothing
+    int handles = engine == GeodesicEngine.JAVA ? 0 : 1;
+    NativeStats before = Geodesic.getNativeStats();
+    // an ellipsoid of its own, so this instance creates the C++ object
+    Geodesic geodesic = new Geodesic(6378300, 1 / 295.0, engine);
+    NativeStats open = Geodesic.getNativeStats();
+    assertEquals(before.getOpenedHandles() + handles,
+                 open.getOpenedHandles());
+    assertEquals(before.getAllocatedObjects() + handles,
+                 open.getAllocatedObjects());
+    geodesic.close();
+    geodesic.close();
+    NativeStats closed = Geodesic.getNativeStats();
+    assertEquals(before.getClosedHandles() + handles,
+                 closed.getClosedHandles());
+    assertEquals(open.getOpenedHandles(), closed.getOpenedHandles());
+    assertTrue(closed.getFreedObjects() >= open.getFreedObjects() + handles);
+  }
+
+  /**
+   * Creates an instance of its own ellipsoid, checks it against the Java
+   * engine and drops it without closing it.
+   *
+   * @return the lease of the instance, which doesn't refer to it
+   */
+  private NativeHandle.Lease abandon(final double a, final double f) {
+    Geodesic geodesic = new Geodesic(a, f, engine);
+    Geodesic expected = new Geodesic(a, f, GeodesicEngine.JAVA);
+    assertEquals(expected.distance(10, 20, -30, 140),
+                 geodesic.distance(10, 20, -30, 140), 1e-8);
+    assertEquals(expected.getEllipsoidArea(), geodesic.getEllipsoidArea(),
+                 expected.getEllipsoidArea() * 1e-14);
+    return geodesic.getNativeLease();
+  }
+
+  private static boolean isClosed(final NativeHandle.Lease lease) {
+    try {
+      lease.enter();
+    } catch (IllegalStateException e) {
+      return true;
+    }
+    lease.exit();
+    return false;
+  }
+
+  @Test
+  public void cleanerReleasesAnUnclosedInstance() throws Exception {
+    assumeFalse("no native object", engine == GeodesicEngine.JAVA);
+    double a = 6378400;
+    double f = 1 / 294.0;
+    NativeStats before = Geodesic.getNativeStats();
+    NativeHandle.Lease lease = abandon(a, f);
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!isClosed(lease)) {
+      assertTrue("instance not cleaned after " + TIMEOUT + " ms",
+                 System.currentTimeMillis() < deadline);
+      System.gc();
+      Thread.sleep(10);
+    }
+    NativeStats after = Geodesic.getNativeStats();
+    assertTrue(after.getCleanedHandles() >= before.getCleanedHandles() + 1);
+    assertEquals(before.getClosedHandles(), after.getClosedHandles());
+    // the C++ object of the ellipsoid was deleted with the handle
+    Geodesic geodesic = new Geodesic(a, f, engine);
+    try {
+      assertTrue(geodesic.getNativeLease().isCreated());
+    } finally {
+      geodesic.close();
+    }
+  }
+
+  @Test
+  public void liveCountsAreTheDifferences() {
+    NativeStats stats = new NativeStats(10, 4, 25, 12, 3);
+    assertEquals(6, stats.getLiveObjects());
+    assertEquals(10, stats.getLiveHandles());
+    NativeStats now = Geodesic.getNativeStats();
+    assertTrue(now.getLiveObjects() >= 0);
+    assertTrue(now.getLiveHandles() >= 0);
+  }
+}
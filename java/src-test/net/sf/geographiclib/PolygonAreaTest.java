@@ -0,0 +1,263 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.UNTOUCHED;
+import static net.sf.geographiclib.GeodesicFixtures.assertUntouchedOutside;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.untouched;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>PolygonAreaTest</code> compares the perimeters and areas computed
+ * by {@link PolygonArea} with each engine with those of
+ * {@link GeodesicEngine#JAVA}, vertex by vertex and in bulk for rings on
+ * both sides of the chunks of 4096 vertices the native code pins the arrays
+ * for. The Java engine itself runs the checks of the ranges, the untouched
+ * outputs and the argument validation. The tests are skipped when the
+ * engine can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class PolygonAreaTest {
+
+  /**
+   * Vertices of the rings of the bulk tests, a chunk ends once it reaches
+   * 4096 vertices counting one more per ring.
+   */
+  private static final int[] RING_SIZES =
+      {0, 3, 1, 2, 4095, 4096, 4097, 5, 0, 4094, 10};
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public PolygonAreaTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  /**
+   * Vertices of <code>n</code> points around a random center, clockwise or
+   * counter-clockwise.
+   */
+  private double[][] ring(final Random random, final int n) {
+    double lat0 = random.nextDouble() * 120 - 60;
+    double lon0 = random.nextDouble() * 360 - 180;
+    double radius = Math.exp(random.nextDouble() * Math.log(1e4)) * 1e2;
+    double direction = random.nextBoolean() ? 1 : -1;
+    double[][] ring = new double[2][n];
+    for (int i = 0; i < n; ++i) {
+      Geodesic.DirectResult vertex =
+          javaGeodesic.direct(lat0, lon0, direction * i * 360.0 / n,
+                              radius * (1 + 0.2 * random.nextDouble()));
+      ring[0][i] = vertex.getLat2();
+      ring[1][i] = vertex.getLon2();
+    }
+    return ring;
+  }
+
+  private static void assertResultAgrees(
+      final String message,
+      final PolygonArea.PolygonResult expected,
+      final PolygonArea.PolygonResult actual) {
+    assertEquals(message, expected.getNumberOfPoints(),
+                 actual.getNumberOfPoints());
+    assertEquals(message, expected.getPerimeter(), actual.getPerimeter(),
+                 1e-8 + Math.abs(expected.getPerimeter()) * 1e-14);
+    assertAreaAgrees(message, expected.getArea(), actual.getArea());
+  }
+
+  private static void assertAreaAgrees(final String message,
+                                       final double expected,
+                                       final double actual) {
+    if (Double.isNaN(expected)) {
+      assertTrue(message, Double.isNaN(actual));
+    } else {
+      assertEquals(message, expected, actual,
+                   0.1 + Math.abs(expected) * 1e-12);
+    }
+  }
+
+  @Test
+  public void incrementalAgrees() {
+    Random random = new Random(19);
+    PolygonArea expected = new PolygonArea(javaGeodesic);
+    PolygonArea actual = new PolygonArea(geodesic);
+    try {
+      assertEquals(engine == GeodesicEngine.JAVA ? GeodesicEngine.JAVA
+                   : GeodesicEngine.NATIVE, actual.getEngine());
+      for (int r = 0; r < 200; ++r) {
+        double[][] ring = ring(random, 3 + random.nextInt(50));
+        expected.clear();
+        actual.clear();
+        for (int i = 0; i < ring[0].length; ++i) {
+          expected.addPoint(ring[0][i], ring[1][i]);
+          actual.addPoint(ring[0][i], ring[1][i]);
+        }
+        // an edge leaving the last vertex
+        double azi = random.nextDouble() * 360 - 180;
+        double s = random.nextDouble() * 1e5;
+        expected.addEdge(azi, s);
+        actual.addEdge(azi, s);
+        for (int k = 0; k < 4; ++k) {
+          boolean reverse = (k & 1) != 0;
+          boolean sign = (k & 2) != 0;
+          assertResultAgrees("ring " + r,
+                             expected.compute(reverse, sign),
+                             actual.compute(reverse, sign));
+        }
+      }
+    } finally {
+      actual.close();
+    }
+  }
+
+  @Test
+  public void polylineAgrees() {
+    Random random = new Random(20);
+    PolygonArea expected = new PolygonArea(javaGeodesic, true);
+    PolygonArea actual = new PolygonArea(geodesic, true);
+    try {
+      assertTrue(actual.isPolyline());
+      double[][] ring = ring(random, 100);
+      for (int i = 0; i < ring[0].length; ++i) {
+        expected.addPoint(ring[0][i], ring[1][i]);
+        actual.addPoint(ring[0][i], ring[1][i]);
+      }
+      assertResultAgrees("polyline", expected.compute(), actual.compute());
+      assertTrue(Double.isNaN(actual.compute().getArea()));
+    } finally {
+      actual.close();
+    }
+  }
+
+  /**
+   * Checks the bulk function of the engine against the Java engine and
+   * against adding the vertices one by one, for the rings of
+   * {@link #RING_SIZES} from <code>offset</code> on.
+   */
+  private void assertRingsAgree(final boolean polyline,
+                                final boolean reverse,
+                                final boolean sign,
+                                final int offset,
+                                final int length) {
+    Random random = new Random(21);
+    int rings = RING_SIZES.length;
+    int[] ringOffsets = new int[rings + 1];
+    for (int r = 0; r < rings; ++r) {
+      ringOffsets[r + 1] = ringOffsets[r] + RING_SIZES[r];
+    }
+    double[] lat = new double[ringOffsets[rings]];
+    double[] lon = new double[ringOffsets[rings]];
+    for (int r = 0; r < rings; ++r) {
+      double[][] ring = ring(random, RING_SIZES[r]);
+      System.arraycopy(ring[0], 0, lat, ringOffsets[r], RING_SIZES[r]);
+      System.arraycopy(ring[1], 0, lon, ringOffsets[r], RING_SIZES[r]);
+    }
+    double[] expectedPerimeter = new double[rings];
+    double[] expectedArea = new double[rings];
+    PolygonArea.compute(javaGeodesic, lat, lon, ringOffsets, offset, length,
+                        polyline, reverse, sign,
+                        expectedPerimeter, expectedArea);
+    double[] perimeter = untouched(rings);
+    double[] area = untouched(rings);
+    PolygonArea.compute(geodesic, lat, lon, ringOffsets, offset, length,
+                        polyline, reverse, sign, perimeter, area);
+    PolygonArea polygon = new PolygonArea(geodesic, polyline);
+    try {
+      for (int r = offset; r < offset + length; ++r) {
+        String message = "ring " + r;
+        assertEquals(message, expectedPerimeter[r], perimeter[r],
+                     1e-8 + expectedPerimeter[r] * 1e-14);
+        polygon.clear();
+        for (int j = ringOffsets[r]; j < ringOffsets[r + 1]; ++j) {
+          polygon.addPoint(lat[j], lon[j]);
+        }
+        PolygonArea.PolygonResult single = polygon.compute(reverse, sign);
+        assertEquals(message, single.getPerimeter(), perimeter[r], 0);
+        if (polyline) {
+          assertEquals(message, UNTOUCHED, area[r], 0);
+        } else {
+          assertAreaAgrees(message, expectedArea[r], area[r]);
+          assertEquals(message, single.getArea(), area[r], 0);
+        }
+      }
+    } finally {
+      polygon.close();
+    }
+    assertUntouchedOutside(perimeter, offset, length);
+    assertUntouchedOutside(area, offset, polyline ? 0 : length);
+  }
+
+  @Test
+  public void ringsAgreeAcrossChunks() {
+    for (int k = 0; k < 4; ++k) {
+      assertRingsAgree(false, (k & 1) != 0, (k & 2) != 0,
+                       0, RING_SIZES.length);
+    }
+    assertRingsAgree(true, false, true, 0, RING_SIZES.length);
+  }
+
+  @Test
+  public void ringsAgreeInARange() {
+    assertRingsAgree(false, false, true, 0, 0);
+    assertRingsAgree(false, false, true, 4, 1);
+    assertRingsAgree(false, true, false, 3, 5);
+    assertRingsAgree(true, false, true, 5, 6);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void closedPolygonCantBeUsed() {
+    assumeFalse("close does nothing", engine == GeodesicEngine.JAVA);
+    PolygonArea polygon = new PolygonArea(geodesic);
+    polygon.addPoint(0, 0);
+    polygon.close();
+    polygon.close();
+    polygon.addPoint(0, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRingOffsetsOutOfOrder() {
+    PolygonArea.compute(geodesic, new double[4], new double[4],
+                        new int[] {0, 3, 2}, 0, 2, false, false, true,
+                        new double[2], new double[2]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooFewRingOffsets() {
+    // ring 2 of the range has no end
+    PolygonArea.compute(geodesic, new double[4], new double[4],
+                        new int[] {0, 2, 4}, 1, 2, false, false, true,
+                        new double[3], new double[3]);
+  }
+}
@@ -0,0 +1,171 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.assertUntouchedOutside;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.azimuthDifference;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.untouched;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>RangeRingsTest</code> compares the rings generated by
+ * {@link Geodesic#rangeRings} with each engine with those of
+ * {@link GeodesicEngine#JAVA}, for numbers of centers on both sides of the
+ * chunks of 4096 vertices the native code pins the arrays for and for
+ * azimuth steps which don't divide 360. The Java engine itself runs the
+ * checks of the ranges, the untouched outputs and the argument validation.
+ * The tests are skipped when the engine can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class RangeRingsTest {
+
+  private static final int[] LENGTHS = {0, 1, 4095, 4096, 4097};
+
+  /**
+   * Centers before the range of the call, never read.
+   */
+  private static final int OFFSET = 3;
+
+  /**
+   * Vertices after the last ring, never written.
+   */
+  private static final int TAIL = 7;
+
+  private static final double[] RADII = {1e3, 2.5e5, 1.9e7};
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public RangeRingsTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  /**
+   * Checks the rings of <code>length</code> random centers against the Java
+   * engine.
+   */
+  private void assertRingsAgree(final int length,
+                                final double azimuthStep,
+                                final boolean closed) {
+    Random random = new Random(length);
+    int size = OFFSET + length;
+    double[] lat = new double[size];
+    double[] lon = new double[size];
+    for (int i = 0; i < size; ++i) {
+      lat[i] = latitude(random);
+      lon[i] = random.nextDouble() * 360 - 180;
+    }
+    int vertices = Geodesic.rangeRingVertexCount(azimuthStep, closed);
+    int rings = length * RADII.length;
+    int total = rings * vertices;
+    double[] expectedLat = new double[total];
+    double[] expectedLon = new double[total];
+    int[] expectedOffsets = new int[rings + 1];
+    javaGeodesic.rangeRings(lat, lon, OFFSET, length, RADII, azimuthStep,
+                            closed, expectedLat, expectedLon,
+                            expectedOffsets);
+    double[] latOut = untouched(total + TAIL);
+    double[] lonOut = untouched(total + TAIL);
+    int[] ringOffsets = new int[rings + 1];
+    geodesic.rangeRings(lat, lon, OFFSET, length, RADII, azimuthStep, closed,
+                        latOut, lonOut, ringOffsets);
+    assertArrayEquals(expectedOffsets, ringOffsets);
+    for (int i = 0; i < total; ++i) {
+      String message = "vertex " + i;
+      assertEquals(message, expectedLat[i], latOut[i], 1e-12);
+      assertEquals(message, 0, azimuthDifference(expectedLon[i], lonOut[i]),
+                   1e-12);
+    }
+    if (closed) {
+      for (int ring = 0; ring < rings; ++ring) {
+        int first = ringOffsets[ring];
+        int last = ringOffsets[ring + 1] - 1;
+        assertEquals(latOut[first], latOut[last], 0);
+        assertEquals(lonOut[first], lonOut[last], 0);
+      }
+    }
+    assertUntouchedOutside(latOut, 0, total);
+    assertUntouchedOutside(lonOut, 0, total);
+  }
+
+  @Test
+  public void ringsAgreeAcrossChunks() {
+    for (int length : LENGTHS) {
+      assertRingsAgree(length, 30, true);
+    }
+  }
+
+  @Test
+  public void ringsAgreeForUnevenSteps() {
+    // 8 azimuths, the last step of 10 degrees
+    assertRingsAgree(17, 50, false);
+    assertRingsAgree(17, 360.0 / 7, true);
+    assertRingsAgree(5, 360, true);
+    // rings of 3601 vertices, more than a chunk for two radii
+    assertRingsAgree(2, 0.1, true);
+  }
+
+  @Test
+  public void firstVertexIsDueNorth() {
+    double[] latOut = new double[4];
+    double[] lonOut = new double[4];
+    geodesic.rangeRings(new double[] {-33.9}, new double[] {151.2}, 0, 1,
+                        new double[] {1e5}, 90, false, latOut, lonOut, null);
+    for (int k = 0; k < 4; ++k) {
+      Geodesic.DirectResult vertex =
+          javaGeodesic.direct(-33.9, 151.2, -90 * k, 1e5);
+      assertEquals(vertex.getLat2(), latOut[k], 1e-12);
+      assertEquals(0, azimuthDifference(vertex.getLon2(), lonOut[k]), 1e-12);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAShortOutput() {
+    int vertices = Geodesic.rangeRingVertexCount(30, true);
+    geodesic.rangeRings(new double[2], new double[2], 0, 2, RADII, 30, true,
+                        new double[2 * RADII.length * vertices - 1],
+                        new double[2 * RADII.length * vertices], null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooFewRingOffsets() {
+    int vertices = Geodesic.rangeRingVertexCount(30, true);
+    geodesic.rangeRings(new double[2], new double[2], 0, 2, RADII, 30, true,
+                        new double[2 * RADII.length * vertices],
+                        new double[2 * RADII.length * vertices],
+                        new int[2 * RADII.length]);
+  }
+}
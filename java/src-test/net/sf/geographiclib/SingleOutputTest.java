@@ -0,0 +1,170 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.UNTOUCHED;
+import static net.sf.geographiclib.GeodesicFixtures.assumeAvailable;
+import static net.sf.geographiclib.GeodesicFixtures.azimuthDifference;
+import static net.sf.geographiclib.GeodesicFixtures.latitude;
+import static net.sf.geographiclib.GeodesicFixtures.pairs;
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>SingleOutputTest</code> compares the single output functions
+ * {@link Geodesic#distance}, {@link Geodesic#initialAzimuth},
+ * {@link Geodesic#finalAzimuth} and {@link Geodesic#destination} of the
+ * {@link GeodesicEngine#NATIVE} and {@link GeodesicEngine#FOREIGN} engines
+ * with {@link GeodesicEngine#JAVA}, including nearly antipodal and
+ * coincident points and the poles, and with the full results of the same
+ * engine, <code>JAVA</code> included. The tests are skipped when the
+ * engine can't be loaded.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class SingleOutputTest {
+
+  private static final int COUNT = 2000;
+
+  private final GeodesicEngine engine;
+  private Geodesic javaGeodesic;
+  private Geodesic geodesic;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.allEngines();
+  }
+
+  public SingleOutputTest(final GeodesicEngine engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() {
+    assumeAvailable(engine);
+    javaGeodesic = wgs84(GeodesicEngine.JAVA);
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    if (geodesic != null) {
+      geodesic.close();
+    }
+  }
+
+  /**
+   * The random pairs followed by coincident points, points at the poles and
+   * exactly antipodal points.
+   */
+  private double[][] pairsAndSpecialCases() {
+    double[][] random = pairs(javaGeodesic, new Random(12), COUNT, 1e5);
+    double[][] special = {
+      {10, 20, 10, 20},
+      {90, 0, -90, 0},
+      {90, 30, 45, -60},
+      {-45, 10, -90, 0},
+      {0, 0, 0, 180},
+      {30, 0, -30, 180},
+      {0, -179.9, 0.1, 179.9}
+    };
+    double[][] pairs = new double[4][COUNT + special.length];
+    for (int k = 0; k < 4; ++k) {
+      System.arraycopy(random[k], 0, pairs[k], 0, COUNT);
+      for (int i = 0; i < special.length; ++i) {
+        pairs[k][COUNT + i] = special[i][k];
+      }
+    }
+    return pairs;
+  }
+
+  @Test
+  public void distanceAgrees() {
+    double[][] pairs = pairsAndSpecialCases();
+    for (int i = 0; i < pairs[0].length; ++i) {
+      double lat1 = pairs[0][i];
+      double lon1 = pairs[1][i];
+      double lat2 = pairs[2][i];
+      double lon2 = pairs[3][i];
+      double s12 = geodesic.distance(lat1, lon1, lat2, lon2);
+      assertEquals("pair " + i,
+                   javaGeodesic.distance(lat1, lon1, lat2, lon2), s12, 1e-8);
+      assertEquals("pair " + i,
+                   geodesic.inverse(lat1, lon1, lat2, lon2).gets12(), s12,
+                   1e-8);
+    }
+  }
+
+  @Test
+  public void azimuthsAgree() {
+    double[][] pairs = pairsAndSpecialCases();
+    for (int i = 0; i < pairs[0].length; ++i) {
+      double lat1 = pairs[0][i];
+      double lon1 = pairs[1][i];
+      double lat2 = pairs[2][i];
+      double lon2 = pairs[3][i];
+      Geodesic.InverseResult expected =
+          javaGeodesic.inverse(lat1, lon1, lat2, lon2);
+      assertEquals("pair " + i, 0,
+                   azimuthDifference(expected.getAzi1(),
+                                     geodesic.initialAzimuth(lat1, lon1,
+                                                             lat2, lon2)),
+                   1e-9);
+      assertEquals("pair " + i, 0,
+                   azimuthDifference(expected.getAzi2(),
+                                     geodesic.finalAzimuth(lat1, lon1,
+                                                           lat2, lon2)),
+                   1e-9);
+      // the fast paths of an engine give its own full results
+      Geodesic.InverseResult full = geodesic.inverse(lat1, lon1, lat2, lon2);
+      assertEquals("pair " + i, 0,
+                   azimuthDifference(full.getAzi1(),
+                                     geodesic.initialAzimuth(lat1, lon1,
+                                                             lat2, lon2)),
+                   1e-12);
+      assertEquals("pair " + i, 0,
+                   azimuthDifference(full.getAzi2(),
+                                     geodesic.finalAzimuth(lat1, lon1,
+                                                           lat2, lon2)),
+                   1e-12);
+    }
+  }
+
+  @Test
+  public void destinationAgrees() {
+    Random random = new Random(13);
+    double[] latLon = {UNTOUCHED, UNTOUCHED, UNTOUCHED};
+    for (int i = 0; i < COUNT; ++i) {
+      double lat1 = i == 0 ? 90 : i == 1 ? -90 : latitude(random);
+      double lon1 = random.nextDouble() * 360 - 180;
+      double azi1 = random.nextDouble() * 360 - 180;
+      double s12 = i == 2 ? 0 : random.nextDouble() * 4e7 - 2e7;
+      Geodesic.DirectResult expected =
+          javaGeodesic.direct(lat1, lon1, azi1, s12);
+      geodesic.destination(lat1, lon1, azi1, s12, latLon);
+      assertEquals("point " + i, expected.getLat2(), latLon[0], 1e-12);
+      assertEquals("point " + i, 0,
+                   azimuthDifference(expected.getLon2(), latLon[1]), 1e-12);
+      // only the first two elements are written
+      assertEquals(UNTOUCHED, latLon[2], 0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void destinationRejectsAShortOutput() {
+    geodesic.destination(0, 0, 45, 1e6, new double[1]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void destinationRejectsAMissingOutput() {
+    geodesic.destination(0, 0, 45, 1e6, null);
+  }
+}
@@ -0,0 +1,185 @@
+package net.sf.geographiclib;
+
+import static net.sf.geographiclib.GeodesicFixtures.wgs84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * <code>TrackProcessorTest</code> checks the output of
+ * {@link TrackProcessor} against the segments of the tracks solved one by
+ * one, in particular the lengths of the tracks carried across chunks, on
+ * every engine available.
+ *
+ * @version 1.29
+ */
+@RunWith(Parameterized.class)
+public class TrackProcessorTest {
+
+  /**
+   * Number of fixes of each track, with chunks of 5 records: the second
+   * track spans four chunks and fills the second one, the last one ends
+   * the file in the middle of a chunk.
+   */
+  private static final int[] TRACK_FIXES = {1, 13, 4, 5, 2, 1, 9};
+
+  private static final int CHUNK_RECORDS = 5;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final Geodesic geodesic;
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  private double[] latitudes;
+  private double[] longitudes;
+  private long[] trackIds;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> engines() {
+    return GeodesicFixtures.engines();
+  }
+
+  public TrackProcessorTest(final GeodesicEngine engine) {
+    geodesic = wgs84(engine);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+    geodesic.close();
+  }
+
+  /**
+   * Writes the tracks in the layout, each a random walk of steps of up to
+   * about 100 km.
+   */
+  private File writeTracks(final TrackProcessor.Layout layout)
+      throws IOException {
+    int records = 0;
+    for (int fixes : TRACK_FIXES) {
+      records += fixes;
+    }
+    latitudes = new double[records];
+    longitudes = new double[records];
+    trackIds = new long[records];
+    Random random = new Random(19);
+    ByteBuffer buffer = ByteBuffer.allocate(records * layout.getRecordBytes())
+        .order(layout.getOrder());
+    int i = 0;
+    for (int track = 0; track < TRACK_FIXES.length; ++track) {
+      double lat = random.nextDouble() * 120 - 60;
+      double lon = random.nextDouble() * 360 - 180;
+      for (int fix = 0; fix < TRACK_FIXES[track]; ++fix, ++i) {
+        lat = Math.max(-89, Math.min(89, lat + random.nextDouble() * 2 - 1));
+        lon += random.nextDouble() * 2 - 1;
+        latitudes[i] = lat;
+        longitudes[i] = lon;
+        // not in order, only consecutive
+        trackIds[i] = 1000 - 7 * track;
+        int record = i * layout.getRecordBytes();
+        buffer.putLong(record + layout.getTrackIdOffset(), trackIds[i]);
+        buffer.putDouble(record + layout.getLatitudeOffset(), lat);
+        buffer.putDouble(record + layout.getLongitudeOffset(), lon);
+      }
+    }
+    File input = folder.newFile();
+    Files.write(input.toPath(), buffer.array());
+    return input;
+  }
+
+  private void assertProcessed(final TrackProcessor.Layout layout,
+                               final int chunkRecords) throws IOException {
+    File input = writeTracks(layout);
+    File output = folder.newFile();
+    TrackProcessor processor =
+        new TrackProcessor(geodesic, pool, layout, chunkRecords);
+    TrackProcessor.Summary summary =
+        processor.process(input.toPath(), output.toPath());
+
+    int records = latitudes.length;
+    assertEquals(records, summary.getRecords());
+    assertEquals(TRACK_FIXES.length, summary.getTracks());
+    assertEquals((records + chunkRecords - 1) / chunkRecords,
+                 summary.getChunks());
+    ByteBuffer out = ByteBuffer.wrap(Files.readAllBytes(output.toPath()))
+        .order(ByteOrder.nativeOrder());
+    assertEquals(records * TrackProcessor.OUTPUT_RECORD_BYTES, out.capacity());
+
+    double length = 0;
+    double totalLength = 0;
+    for (int i = 0; i < records; ++i) {
+      int record = i * TrackProcessor.OUTPUT_RECORD_BYTES;
+      double distance =
+          out.getDouble(record + TrackProcessor.OUTPUT_DISTANCE_OFFSET);
+      double azimuth =
+          out.getDouble(record + TrackProcessor.OUTPUT_AZIMUTH_OFFSET);
+      if (i == 0 || trackIds[i] != trackIds[i - 1]) {
+        assertEquals(0, distance, 0);
+        assertTrue(Double.isNaN(azimuth));
+        length = 0;
+      } else {
+        Geodesic.InverseResult segment =
+            geodesic.genInverse(latitudes[i - 1], longitudes[i - 1],
+                                latitudes[i], longitudes[i],
+                                Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH);
+        assertEquals(segment.gets12(), distance, 1e-8);
+        assertEquals(segment.getAzi1(), azimuth, 1e-9);
+        length += segment.gets12();
+        totalLength += segment.gets12();
+      }
+      // the lengths of a chunk are summed from its start, then carried
+      assertEquals("length of record " + i, length,
+                   out.getDouble(record + TrackProcessor.OUTPUT_LENGTH_OFFSET),
+                   1e-6);
+    }
+    assertEquals(totalLength, summary.getTotalLength(), 1e-6);
+  }
+
+  @Test
+  public void carriesLengthsAcrossChunks() throws IOException {
+    assertProcessed(TrackProcessor.Layout.DEFAULT, CHUNK_RECORDS);
+  }
+
+  @Test
+  public void carriesLengthsAcrossSingleRecordChunks() throws IOException {
+    assertProcessed(TrackProcessor.Layout.DEFAULT, 1);
+  }
+
+  @Test
+  public void singleChunkMatchesTheTracks() throws IOException {
+    assertProcessed(TrackProcessor.Layout.DEFAULT, 1000);
+  }
+
+  @Test
+  public void copiesInputInTheOtherByteOrder() throws IOException {
+    ByteOrder other = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+        ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    assertProcessed(new TrackProcessor.Layout(40, 32, 8, 16, other),
+                    CHUNK_RECORDS);
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsATruncatedRecord() throws IOException {
+    File input = folder.newFile();
+    Files.write(input.toPath(), new byte[33]);
+    new TrackProcessor(geodesic, pool, TrackProcessor.Layout.DEFAULT,
+                       CHUNK_RECORDS)
+        .process(input.toPath(), folder.newFile().toPath());
+  }
+}
@@ -0,0 +1,185 @@
+package net.sf.geographiclib;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <code>BufferColumn</code> describes a column of <code>double</code> values
+ * stored in a direct {@link java.nio.ByteBuffer}, for use with the off-heap
+ * batch functions of {@link Geodesic}.
+ *
+ * Element <code>i</code> of the column is the native byte order double stored
+ * at <code>byteOffset + i * byteStride</code> bytes from the start of the
+ * buffer. This covers both column layouts (a stride of 8 bytes) and
+ * interleaved records (a stride of the record size), e.g. the lat/lon pairs
+ * of a memory-mapped file. A stride of 0 repeats the same value for every
+ * element. The native code reads and writes the buffer in place, so no data
+ * is copied onto the Java heap.
+ *
+ * @version 1.29
+ */
+public final class BufferColumn {
+
+  /**
+   * Size of a double in bytes.
+   */
+  private static final int DOUBLE_BYTES = 8;
+
+  private final ByteBuffer buffer;
+  private final long address;
+  private final int byteOffset;
+  private final int byteStride;
+
+  /**
+   * Creates a new <code>BufferColumn</code> instance.
+   *
+   * @param buffer a direct buffer in the native byte order.
+   * @param byteOffset offset of the first element in bytes.
+   * @param byteStride distance between consecutive elements in bytes.
+   * @exception IllegalArgumentException if the buffer isn't direct, isn't in
+   *     the native byte order or the offset or stride is negative.
+   */
+  public BufferColumn(final ByteBuffer buffer,
+                      final int byteOffset,
+                      final int byteStride) {
+    if (buffer == null || !buffer.isDirect()) {
+      throw new IllegalArgumentException("buffer must be a direct ByteBuffer");
+    }
+    if (buffer.order() != ByteOrder.nativeOrder()) {
+      throw new IllegalArgumentException("buffer must use the native byte order "
+                                         + ByteOrder.nativeOrder());
+    }
+    if (byteOffset < 0 || byteStride < 0) {
+      throw new IllegalArgumentException("byteOffset (" + byteOffset
+                                         + ") and byteStride (" + byteStride
+                                         + ") must be non-negative");
+    }
+    this.buffer = buffer;
+    this.address = Geodesic.directBufferAddress(buffer);
+    this.byteOffset = byteOffset;
+    this.byteStride = byteStride;
+  }
+
+  /**
+   * Creates a column of consecutive doubles starting at the beginning of
+   * <code>buffer</code>.
+   *
+   * @param buffer a direct buffer in the native byte order.
+   * @return a <code>BufferColumn</code> value
+   */
+  public static BufferColumn contiguous(final ByteBuffer buffer) {
+    return new BufferColumn(buffer, 0, DOUBLE_BYTES);
+  }
+
+  /**
+   * Creates a column for one field of records made of
+   * <code>fieldCount</code> consecutive doubles, e.g. field 1 of 2 for the
+   * longitudes of interleaved (lat, lon) pairs.
+   *
+   * @param buffer a direct buffer in the native byte order.
+   * @param field index of the field within a record.
+   * @param fieldCount number of doubles in a record.
+   * @return a <code>BufferColumn</code> value
+   */
+  public static BufferColumn interleaved(final ByteBuffer buffer,
+                                         final int field,
+                                         final int fieldCount) {
+    if (field < 0 || field >= fieldCount) {
+      throw new IllegalArgumentException("field " + field + " out of range [0, "
+                                         + fieldCount + ")");
+    }
+    return new BufferColumn(buffer, field * DOUBLE_BYTES,
+                            fieldCount * DOUBLE_BYTES);
+  }
+
+  /**
+   * Get the buffer backing this column.
+   * @return a <code>ByteBuffer</code> value
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Get the offset of the first element in bytes.
+   * @return an <code>int</code> value
+   */
+  public int getByteOffset() {
+    return byteOffset;
+  }
+
+  /**
+   * Get the distance between consecutive elements in bytes.
+   * @return an <code>int</code> value
+   */
+  public int getByteStride() {
+    return byteStride;
+  }
+
+  /**
+   * Get the native address of the first element.
+   */
+  long address() {
+    return address + byteOffset;
+  }
+
+  /**
+   * Reads element <code>i</code> of the column through the buffer, used by
+   * the pure Java engine which has no use for the native address.
+   */
+  double get(final int i) {
+    return buffer.getDouble((int) (byteOffset + (long) i * byteStride));
+  }
+
+  /**
+   * Writes element <code>i</code> of the column through the buffer.
+   */
+  void put(final int i, final double value) {
+    buffer.putDouble((int) (byteOffset + (long) i * byteStride), value);
+  }
+
+  /**
+   * Checks that the buffer holds at least <code>count</code> elements.
+   *
+   * @param name name of the column used in the exception message.
+   * @param count number of elements that will be accessed.
+   * @exception IllegalArgumentException if the buffer is too small.
+   */
+  void checkCapacity(final String name, final int count) {
+    if (count == 0) {
+      return;
+    }
+    long end = byteOffset + (long) (count - 1) * byteStride + DOUBLE_BYTES;
+    if (end > buffer.capacity()) {
+      throw new IllegalArgumentException(name + " needs " + end
+                                         + " bytes but buffer capacity is "
+                                         + buffer.capacity());
+    }
+  }
+
+  /**
+   * Checks that the buffer can be written to.
+   *
+   * @param name name of the column used in the exception message.
+   * @exception IllegalArgumentException if the buffer is read-only.
+   */
+  void checkWritable(final String name) {
+    if (buffer.isReadOnly()) {
+      throw new IllegalArgumentException(name + " must not be read-only");
+    }
+  }
+
+  /**
+   * Get a string representation of this object.
+   *
+   * @return a string representation of this object.
+   *
+   * @see java.lang.Object#toString
+   */
+  public String toString() {
+    return new StringBuffer("byteOffset=" + byteOffset)
+        .append(", byteStride=" + byteStride)
+        .append(", capacity=" + buffer.capacity())
+        .toString();
+  }
+}
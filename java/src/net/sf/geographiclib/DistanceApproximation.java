@@ -0,0 +1,322 @@
+package net.sf.geographiclib;
+
+import java.util.Arrays;
+
+/**
+ * <code>DistanceApproximation</code>, the closed form approximations of the
+ * geodesic distance selected by {@link DistanceMethod}, and a bound of
+ * their error for each pair of points.
+ *
+ * The bound brackets the geodesic distance s between the length c of the
+ * chord joining the points, and the length of the circular arc of radius
+ * rho with the same chord, where rho = min(a, b)<sup>2</sup> / max(a, b) is
+ * the smallest radius of curvature of the ellipsoid: by Schur's comparison
+ * theorem a curve whose curvature doesn't exceed 1 / rho is at most as long
+ * as that arc, provided s doesn't exceed pi rho. The arc is only used for
+ * c &lt;= rho and |f| &lt;= 0.2, where s is well below pi rho; the error of
+ * an approximation d is then at most max(d - c, arc - d), a bound which is
+ * tight for short distances (the bracket is about c<sup>3</sup> / (24
+ * rho<sup>2</sup>) wide) and infinite otherwise.
+ *
+ * The array functions work on blocks of {@link #BLOCK} pairs in passes, so
+ * that the passes doing only arithmetic and square roots can be vectorized
+ * by the JIT, while the trigonometric functions are kept in passes of their
+ * own. Instances are immutable and thread-safe.
+ *
+ * @version 1.29
+ */
+final class DistanceApproximation {
+
+  /**
+   * Number of pairs processed per pass by the array functions.
+   */
+  static final int BLOCK = 256;
+
+  private static final double DEGREE = Math.PI / 180;
+  // margins absorbing the rounding of the chord and of the approximation
+  private static final double LOWER_BOUND_SCALE = 1 - 1e-9;
+  private static final double UPPER_BOUND_SCALE = 1 + 1e-9;
+  private static final double ROUNDOFF = 1e-6;
+  private static final double FLATTENING_LIMIT = 0.2;
+  // largest |f| over which the relative errors were measured
+  private static final double MEASURED_FLATTENING = 1.0 / 150;
+  private static final double TINY = Double.MIN_NORMAL;
+
+  private final double a;
+  private final double f;
+  private final double fm1sq;
+  private final double e2;
+  private final double sphereRadius;
+  private final double rho;
+  private final boolean bounded;
+
+  /**
+   * Creates a new <code>DistanceApproximation</code> instance.
+   *
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid.
+   */
+  DistanceApproximation(final double a, final double f) {
+    double b = a * (1 - f);
+    this.a = a;
+    this.f = f;
+    this.fm1sq = (1 - f) * (1 - f);
+    this.e2 = f * (2 - f);
+    this.sphereRadius = (2 * a + b) / 3;
+    this.rho = Math.min(a, b) * Math.min(a, b) / Math.max(a, b);
+    this.bounded = Math.abs(f) <= FLATTENING_LIMIT;
+  }
+
+  /**
+   * Get the relative error of a method over every pair of points, as
+   * measured for |f| &lt;= 1/150; it isn't a proven bound.
+   *
+   * @param method the approximation.
+   * @return a <code>double</code> value, infinite for a flattening outside
+   *     the measured range
+   */
+  double relativeError(final DistanceMethod method) {
+    if (!(Math.abs(f) <= MEASURED_FLATTENING)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return method == DistanceMethod.SPHERICAL
+        ? 1.7 * Math.abs(f) + 3 * f * f
+        : 160 * f * f;
+  }
+
+  /**
+   * Approximates the distance between two points.
+   *
+   * @return a <code>double</code> value (meters)
+   */
+  double distance(final DistanceMethod method,
+                  final double lat1,
+                  final double lon1,
+                  final double lat2,
+                  final double lon2) {
+    double p1 = (Math.abs(lat1) <= 90 ? lat1 : Double.NaN) * DEGREE;
+    double p2 = (Math.abs(lat2) <= 90 ? lat2 : Double.NaN) * DEGREE;
+    double dl = (lon2 - lon1) * DEGREE;
+    double s1 = Math.sin(p1);
+    double c1 = Math.cos(p1);
+    double s2 = Math.sin(p2);
+    double c2 = Math.cos(p2);
+    double sl = Math.sin(dl);
+    double cl = Math.cos(dl);
+    if (method == DistanceMethod.SPHERICAL) {
+      double dx = c2 * cl - c1;
+      double dy = c2 * sl;
+      double dz = s2 - s1;
+      double ex = c2 * cl + c1;
+      double ez = s2 + s1;
+      double sh = 0.5 * Math.sqrt(dx * dx + dy * dy + dz * dz);
+      double sk = 0.5 * Math.sqrt(ex * ex + dy * dy + ez * ez);
+      return sphereRadius * (2 * Math.atan2(sh, sk));
+    }
+    double n1 = 1 / Math.sqrt(c1 * c1 + fm1sq * s1 * s1);
+    double n2 = 1 / Math.sqrt(c2 * c2 + fm1sq * s2 * s2);
+    double sb1 = (1 - f) * s1 * n1;
+    double cb1 = c1 * n1;
+    double sb2 = (1 - f) * s2 * n2;
+    double cb2 = c2 * n2;
+    double dx = cb2 * cl - cb1;
+    double dy = cb2 * sl;
+    double dz = sb2 - sb1;
+    double ex = cb2 * cl + cb1;
+    double ez = sb2 + sb1;
+    double sh = 0.5 * Math.sqrt(dx * dx + dy * dy + dz * dz);
+    double sk = 0.5 * Math.sqrt(ex * ex + dy * dy + ez * ez);
+    double u = 0.5 * ez;
+    double v = 0.5 * dz;
+    return lambert(2 * Math.atan2(sh, sk), sh, sk, u * u, v * v);
+  }
+
+  /**
+   * Bounds the error of an approximation of the distance between two
+   * points.
+   *
+   * @param d the approximation (meters).
+   * @return a <code>double</code> value (meters), infinite when the points
+   *     are too far apart for the bound
+   */
+  double error(final double lat1,
+               final double lon1,
+               final double lat2,
+               final double lon2,
+               final double d) {
+    double p1 = (Math.abs(lat1) <= 90 ? lat1 : Double.NaN) * DEGREE;
+    double p2 = (Math.abs(lat2) <= 90 ? lat2 : Double.NaN) * DEGREE;
+    double dl = (lon2 - lon1) * DEGREE;
+    return error(Math.sin(p1), Math.cos(p1), Math.sin(p2), Math.cos(p2),
+                 Math.sin(dl), Math.cos(dl), d);
+  }
+
+  /**
+   * Approximates the distances between the pairs of points
+   * <code>offset</code> to <code>offset + length - 1</code>, writing them to
+   * <code>s12</code> at the same indices. If <code>tolerance</code> isn't
+   * NaN, the indices of the pairs whose error can't be shown to be within
+   * it are collected in the returned array.
+   *
+   * @return the indices, null if there are none or
+   *     <code>tolerance</code> is NaN
+   */
+  int[] distance(final DistanceMethod method,
+                 final double[] lat1,
+                 final double[] lon1,
+                 final double[] lat2,
+                 final double[] lon2,
+                 final int offset,
+                 final int length,
+                 final double[] s12,
+                 final double tolerance) {
+    boolean spherical = method == DistanceMethod.SPHERICAL;
+    boolean adaptive = !Double.isNaN(tolerance);
+    int block = Math.min(length, BLOCK);
+    double[] s1 = new double[block];
+    double[] c1 = new double[block];
+    double[] s2 = new double[block];
+    double[] c2 = new double[block];
+    double[] sl = new double[block];
+    double[] cl = new double[block];
+    double[] sh = new double[block];
+    double[] sk = new double[block];
+    double[] uu = new double[block];
+    double[] vv = new double[block];
+    double[] sig = new double[block];
+    int[] fallback = null;
+    int fallbacks = 0;
+    for (int start = offset, end = offset + length; start < end; start += block) {
+      int n = Math.min(block, end - start);
+
+      // trigonometric functions of the coordinates
+      for (int j = 0; j < n; ++j) {
+        int i = start + j;
+        double p1 = (Math.abs(lat1[i]) <= 90 ? lat1[i] : Double.NaN) * DEGREE;
+        double p2 = (Math.abs(lat2[i]) <= 90 ? lat2[i] : Double.NaN) * DEGREE;
+        double dl = (lon2[i] - lon1[i]) * DEGREE;
+        s1[j] = Math.sin(p1);
+        c1[j] = Math.cos(p1);
+        s2[j] = Math.sin(p2);
+        c2[j] = Math.cos(p2);
+        sl[j] = Math.sin(dl);
+        cl[j] = Math.cos(dl);
+      }
+
+      // half the chord and half the sum of the unit vectors, on the sphere
+      // of the geodetic or of the reduced latitudes
+      if (spherical) {
+        for (int j = 0; j < n; ++j) {
+          double dx = c2[j] * cl[j] - c1[j];
+          double dy = c2[j] * sl[j];
+          double dz = s2[j] - s1[j];
+          double ex = c2[j] * cl[j] + c1[j];
+          double ez = s2[j] + s1[j];
+          sh[j] = 0.5 * Math.sqrt(dx * dx + dy * dy + dz * dz);
+          sk[j] = 0.5 * Math.sqrt(ex * ex + dy * dy + ez * ez);
+        }
+      } else {
+        for (int j = 0; j < n; ++j) {
+          double n1 = 1 / Math.sqrt(c1[j] * c1[j] + fm1sq * s1[j] * s1[j]);
+          double n2 = 1 / Math.sqrt(c2[j] * c2[j] + fm1sq * s2[j] * s2[j]);
+          double sb1 = (1 - f) * s1[j] * n1;
+          double cb1 = c1[j] * n1;
+          double sb2 = (1 - f) * s2[j] * n2;
+          double cb2 = c2[j] * n2;
+          double dx = cb2 * cl[j] - cb1;
+          double dy = cb2 * sl[j];
+          double dz = sb2 - sb1;
+          double ex = cb2 * cl[j] + cb1;
+          double ez = sb2 + sb1;
+          sh[j] = 0.5 * Math.sqrt(dx * dx + dy * dy + dz * dz);
+          sk[j] = 0.5 * Math.sqrt(ex * ex + dy * dy + ez * ez);
+          uu[j] = 0.25 * ez * ez;
+          vv[j] = 0.25 * dz * dz;
+        }
+      }
+
+      // central angles
+      for (int j = 0; j < n; ++j) {
+        sig[j] = 2 * Math.atan2(sh[j], sk[j]);
+      }
+
+      if (spherical) {
+        for (int j = 0; j < n; ++j) {
+          s12[start + j] = sphereRadius * sig[j];
+        }
+      } else {
+        for (int j = 0; j < n; ++j) {
+          s12[start + j] = lambert(sig[j], sh[j], sk[j], uu[j], vv[j]);
+        }
+      }
+
+      if (adaptive) {
+        // the errors overwrite the central angles, then the pairs out of
+        // tolerance are collected
+        for (int j = 0; j < n; ++j) {
+          sig[j] = error(s1[j], c1[j], s2[j], c2[j], sl[j], cl[j],
+                         s12[start + j]);
+        }
+        for (int j = 0; j < n; ++j) {
+          if (!(sig[j] <= tolerance)) {
+            if (fallback == null) {
+              fallback = new int[Math.min(length, 16)];
+            } else if (fallbacks == fallback.length) {
+              int[] grown = new int[Math.min(length, 2 * fallbacks)];
+              System.arraycopy(fallback, 0, grown, 0, fallbacks);
+              fallback = grown;
+            }
+            fallback[fallbacks++] = start + j;
+          }
+        }
+      }
+    }
+    return fallback == null || fallbacks == fallback.length
+        ? fallback : Arrays.copyOf(fallback, fallbacks);
+  }
+
+  /**
+   * Lambert's formula, from the central angle <code>sig</code> between the
+   * reduced latitudes, its half sine <code>sh</code> and half cosine
+   * <code>sk</code>, and the squares of sin(P) cos(Q) and cos(P) sin(Q)
+   * where P and Q are the half sum and half difference of the reduced
+   * latitudes. The denominators are kept positive so that coincident and
+   * antipodal points don't give NaN.
+   */
+  private double lambert(final double sig,
+                         final double sh,
+                         final double sk,
+                         final double u,
+                         final double v) {
+    double ssig = 2 * sh * sk;
+    double x = (sig - ssig) * u / Math.max(sk * sk, TINY);
+    double y = (sig + ssig) * v / Math.max(sh * sh, TINY);
+    return a * (sig - 0.5 * f * (x + y));
+  }
+
+  /**
+   * Bounds the error of <code>d</code> with the chord and the arc, from the
+   * sines and cosines of the latitudes and of the longitude difference.
+   */
+  private double error(final double s1,
+                       final double c1,
+                       final double s2,
+                       final double c2,
+                       final double sl,
+                       final double cl,
+                       final double d) {
+    double n1 = a / Math.sqrt(1 - e2 * s1 * s1);
+    double n2 = a / Math.sqrt(1 - e2 * s2 * s2);
+    double dx = n2 * c2 * cl - n1 * c1;
+    double dy = n2 * c2 * sl;
+    double dz = (1 - e2) * (n2 * s2 - n1 * s1);
+    double chord = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    // asin(x) <= x + x^3/6 + x^5/10 for 0 <= x <= 1/2
+    double x = chord / (2 * rho);
+    double x2 = x * x;
+    double arc = 2 * rho * x * (1 + x2 * (1.0 / 6 + x2 * 0.1));
+    double upper = bounded && chord <= rho
+        ? arc * UPPER_BOUND_SCALE : Double.POSITIVE_INFINITY;
+    return Math.max(d - chord * LOWER_BOUND_SCALE, upper - d) + ROUNDOFF;
+  }
+} // end DistanceApproximation
@@ -0,0 +1,32 @@
+package net.sf.geographiclib;
+
+/**
+ * <code>DistanceMethod</code> selects the closed form approximation of the
+ * geodesic distance used by {@link Geodesic#approximateDistance} and
+ * {@link Geodesic#adaptiveDistance}.
+ *
+ * Both methods cost a handful of trigonometric functions per pair of points
+ * instead of the series and iterations of the inverse problem. The errors
+ * quoted are those of {@link Geodesic#getApproximationError} for WGS84,
+ * measured rather than guaranteed.
+ *
+ * @version 1.29
+ */
+public enum DistanceMethod {
+
+  /**
+   * The great circle distance on the sphere of radius (2a + b) / 3 through
+   * the geodetic latitudes. The relative error was measured below 1.7 |f|
+   * + 3 f<sup>2</sup>, 0.57% for WGS84, at every distance.
+   */
+  SPHERICAL,
+
+  /**
+   * Lambert's first order correction in the flattening of the great circle
+   * distance between the reduced latitudes (Andoyer-Lambert). The error is
+   * about 3 m per 1000 km up to 10000 km for WGS84, growing to tens of km
+   * for nearly antipodal points; the relative error was measured below 160
+   * f<sup>2</sup>, 0.18% for WGS84.
+   */
+  ANDOYER_LAMBERT
+}
@@ -0,0 +1,147 @@
+package net.sf.geographiclib;
+
+/**
+ * <code>ForeignEngine</code>, the single direct and inverse calls of the
+ * {@link GeodesicEngine#FOREIGN} engine: <code>java.lang.foreign</code>
+ * downcalls to the flat C functions of <code>geodesic_c.h</code> on the
+ * C++ object of a {@link NativeHandle}.
+ *
+ * The implementation is nested in <code>ForeignGeodesic</code>, which is
+ * compiled separately by the <code>compile.ffm</code> Ant target. It is
+ * looked up by name the first time the engine is needed, so the rest of the
+ * library needs neither those classes nor a JDK with
+ * <code>java.lang.foreign</code>.
+ *
+ * Every call takes the pointer returned by {@link NativeHandle.Lease#enter()}
+ * and must be made before the matching <code>exit()</code>.
+ *
+ * @version 1.29
+ */
+abstract class ForeignEngine {
+
+  private static final String OWNER = "net.sf.geographiclib.ForeignGeodesic";
+  private static final String IMPLEMENTATION = OWNER + "$Downcalls";
+
+  /**
+   * Holds the outcome of loading the implementation; the JVM initializes
+   * it exactly once and on the first call which needs it.
+   */
+  private static final class Holder {
+    /**
+     * The implementation, null if it couldn't be loaded.
+     */
+    static final ForeignEngine ENGINE;
+    /**
+     * The error thrown while loading it, null if it was loaded.
+     */
+    static final Throwable LOAD_ERROR;
+
+    static {
+      ForeignEngine engine = null;
+      Throwable error = null;
+      try {
+        // initializing the owner links the downcall handles
+        ClassLoader loader = ForeignEngine.class.getClassLoader();
+        Class.forName(OWNER, true, loader);
+        engine = (ForeignEngine) Class.forName(IMPLEMENTATION, true, loader)
+            .getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException e) {
+        // compile.ffm wasn't run
+        error = e;
+      } catch (LinkageError e) {
+        // compiled for another JDK, preview features not enabled or no JNI
+        // library
+        error = e;
+      } catch (SecurityException e) {
+        error = e;
+      }
+      ENGINE = engine;
+      LOAD_ERROR = error;
+    }
+  }
+
+  /**
+   * Check if the engine can be used, loading it if that wasn't tried yet.
+   *
+   * @return true if the downcalls can be made.
+   */
+  static boolean isAvailable() {
+    return Holder.LOAD_ERROR == null;
+  }
+
+  /**
+   * Get the implementation.
+   *
+   * @return a <code>ForeignEngine</code> value
+   * @exception UnsatisfiedLinkError if it couldn't be loaded, with the
+   *     reason as its cause.
+   */
+  static ForeignEngine get() {
+    if (Holder.ENGINE == null) {
+      UnsatisfiedLinkError error =
+          new UnsatisfiedLinkError("java.lang.foreign engine is not available");
+      error.initCause(Holder.LOAD_ERROR);
+      throw error;
+    }
+    return Holder.ENGINE;
+  }
+
+  /**
+   * Solves the direct problem.
+   *
+   * @param values receives the results, indexed by the
+   *     <code>JavaGeodesic.DIRECT_*</code> constants.
+   * @return the arc length a12 (degrees).
+   */
+  abstract double genDirect(long geodesicCppPtr,
+                            double lat1,
+                            double lon1,
+                            double azi1,
+                            boolean arcmode,
+                            double s12_a12,
+                            long outmask,
+                            double[] values);
+
+  /**
+   * Solves the inverse problem.
+   *
+   * @param values receives the results, indexed by the
+   *     <code>JavaGeodesic.INVERSE_*</code> constants.
+   * @return the arc length a12 (degrees).
+   */
+  abstract double genInverse(long geodesicCppPtr,
+                             double lat1,
+                             double lon1,
+                             double lat2,
+                             double lon2,
+                             long outmask,
+                             double[] values);
+
+  /**
+   * Solves the inverse problem for one of its results.
+   *
+   * @param index the <code>JavaGeodesic.INVERSE_*</code> index of the
+   *     result.
+   * @return the result.
+   */
+  abstract double inverseValue(long geodesicCppPtr,
+                               double lat1,
+                               double lon1,
+                               double lat2,
+                               double lon2,
+                               long outmask,
+                               int index);
+
+  /**
+   * Solves the direct problem for the position of point 2.
+   *
+   * @param latLonOut receives the latitude (index 0) and longitude (index
+   *     1) of point 2 (degrees).
+   */
+  abstract void destination(long geodesicCppPtr,
+                            double lat1,
+                            double lon1,
+                            double azi1,
+                            double s12,
+                            double[] latLonOut);
+} // end ForeignEngine
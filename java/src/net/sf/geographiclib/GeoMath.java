@@ -0,0 +1,201 @@
+package net.sf.geographiclib;
+
+/**
+ * <code>GeoMath</code>, mathematical helper functions used by the pure Java
+ * geodesic engine. These mirror the C++
+ * <a href="http://geographiclib.sourceforge.net/html/classGeographicLib_1_1Math.html">GeographicLib::Math</a>
+ * functions of the same names.
+ *
+ * @version 1.29
+ */
+final class GeoMath {
+
+  /**
+   * The number of bits of precision in a double.
+   */
+  static final int DIGITS = 53;
+  /**
+   * Equivalent to C++'s <code>numeric_limits&lt;double&gt;::epsilon()</code>.
+   */
+  static final double EPSILON = Math.ulp(1.0);
+  /**
+   * Equivalent to C++'s <code>numeric_limits&lt;double&gt;::min()</code>.
+   */
+  static final double MIN = Double.MIN_NORMAL;
+
+  // not instantiable
+  private GeoMath() {}
+
+  /**
+   * <code>Pair</code>, a mutable pair of doubles used to return two values
+   * (e.g. a sine and a cosine) from the functions below.
+   */
+  static final class Pair {
+    double first;
+    double second;
+  }
+
+  /**
+   * Square a number.
+   */
+  static double sq(final double x) {
+    return x * x;
+  }
+
+  /**
+   * The hypotenuse function avoiding underflow and overflow. Cheaper than
+   * {@link java.lang.Math#hypot(double, double)} which is accurate to 1 ulp.
+   */
+  static double hypot(double x, double y) {
+    x = Math.abs(x);
+    y = Math.abs(y);
+    double a = Math.max(x, y);
+    double b = Math.min(x, y) / (a != 0 ? a : 1);
+    return a * Math.sqrt(1 + b * b);
+  }
+
+  /**
+   * The inverse hyperbolic tangent function.
+   */
+  static double atanh(final double x) {
+    double y = Math.abs(x);
+    y = Math.log1p(2 * y / (1 - y)) / 2;
+    return x < 0 ? -y : y;
+  }
+
+  /**
+   * Normalize a sine cosine pair.
+   */
+  static void norm(final Pair p, final double sinx, final double cosx) {
+    double r = hypot(sinx, cosx);
+    p.first = sinx / r;
+    p.second = cosx / r;
+  }
+
+  /**
+   * The error-free sum of two numbers, p.first = round(u + v) and
+   * p.second = u + v - round(u + v).
+   */
+  static void sum(final Pair p, final double u, final double v) {
+    double s = u + v;
+    double up = s - v;
+    double vpp = s - up;
+    up -= u;
+    vpp -= v;
+    p.first = s;
+    p.second = -(up + vpp);
+  }
+
+  /**
+   * Evaluate the polynomial of order n with coefficients p[s], p[s+1], ...
+   * (highest order first) at x using Horner's method.
+   */
+  static double polyval(int n, final double[] p, int s, final double x) {
+    double y = n < 0 ? 0 : p[s++];
+    while (--n >= 0) {
+      y = y * x + p[s++];
+    }
+    return y;
+  }
+
+  /**
+   * Coarsen a value close to zero so that small angles are exactly
+   * representable, which avoids problems with underflow near the equator.
+   */
+  static double angRound(final double x) {
+    final double z = 1 / 16.0;
+    if (x == 0) {
+      return 0;
+    }
+    double y = Math.abs(x);
+    // The compiler mustn't "simplify" z - (z - y) to y
+    y = y < z ? z - (z - y) : y;
+    return x < 0 ? -y : y;
+  }
+
+  /**
+   * Normalize an angle (degrees) to the range [-180, 180].
+   */
+  static double angNormalize(double x) {
+    x = x % 360.0;
+    return x <= -180 ? x + 360 : (x <= 180 ? x : x - 360);
+  }
+
+  /**
+   * Replace latitudes outside [-90, 90] by NaN.
+   */
+  static double latFix(final double x) {
+    return Math.abs(x) > 90 ? Double.NaN : x;
+  }
+
+  /**
+   * The exact difference of two angles reduced to (-180, 180], returned as
+   * p.first with the rounding error in p.second.
+   */
+  static void angDiff(final Pair p, final double x, final double y) {
+    sum(p, angNormalize(-x), angNormalize(y));
+    double d = angNormalize(p.first);
+    double t = p.second;
+    sum(p, d == 180 && t > 0 ? -180 : d, t);
+  }
+
+  /**
+   * Evaluate the sine and cosine of an angle (degrees) with exact results
+   * for multiples of 90 degrees.
+   */
+  static void sincosd(final Pair p, final double x) {
+    double r = x % 360.0;
+    int q = (int) Math.round(r / 90); // If r is NaN this returns 0
+    r -= 90 * q;
+    r = Math.toRadians(r);
+    double s = Math.sin(r);
+    double c = Math.cos(r);
+    double sinx;
+    double cosx;
+    switch (q & 3) {
+      case 0:  sinx =  s; cosx =  c; break;
+      case 1:  sinx =  c; cosx = -s; break;
+      case 2:  sinx = -s; cosx = -c; break;
+      default: sinx = -c; cosx =  s; break; // case 3
+    }
+    if (x != 0) {
+      // convert -0 to 0
+      sinx += 0.0;
+      cosx += 0.0;
+    }
+    p.first = sinx;
+    p.second = cosx;
+  }
+
+  /**
+   * Evaluate atan2(y, x) in degrees, with the result in [-180, 180].
+   */
+  static double atan2d(double y, double x) {
+    int q = 0;
+    if (Math.abs(y) > Math.abs(x)) {
+      double t = x;
+      x = y;
+      y = t;
+      q = 2;
+    }
+    if (x < 0) {
+      x = -x;
+      ++q;
+    }
+    double ang = Math.toDegrees(Math.atan2(y, x));
+    switch (q) {
+      case 1: ang = (y >= 0 ? 180 : -180) - ang; break;
+      case 2: ang =  90 - ang; break;
+      case 3: ang = -90 + ang; break;
+      default: break;
+    }
+    return ang;
+  }
+
+  /**
+   * Test for finiteness.
+   */
+  static boolean isFinite(final double x) {
+    return Math.abs(x) <= Double.MAX_VALUE;
+  }
+}
@@ -1,31 +1,41 @@
 package net.sf.geographiclib;
 
 import java.io.Closeable;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.nio.Buffer;
 
 /**
  * <code>Geodesic</code> wrapper for the C++ <a href="http://geographiclib.sourceforge.net/html/classGeographicLib_1_1Geodesic.html">GeographicLib::Geodesic</a> class.
  *
  * This object managers resources internally, however since Java lacks a
- * destructor the {@link #finalize() finalize()} method is relied in.
- * Finalize is only guaranteed to be called when the garbage collector destroys
- * this object, however when that will happen is unspecified.
+ * destructor a {@link java.lang.ref.Cleaner} is relied in as a safety net.
+ * The cleaner only runs after the garbage collector found this object
+ * unreachable, however when that will happen is unspecified; the counts of
+ * {@link #getNativeStats()} show how many instances were never closed.
  * If one wishes to dispose of the resources more promptly one can call
  * the {@link #close() close()} method which will clean up all of
  * this classes resources. In Java 7 one can also use this class in a
  * <a href="http://docs.oracle.com/javase/tutorial/essential/exceptions/tryResourceClose.html">"try-with-resources" statement</a> since <code>Geodesic</code> implements {@link java.io.Closeable}
  *
+ * Every instance uses one {@link GeodesicEngine}: the C++ library through
+ * JNI, the same library with the single calls made through
+ * <code>java.lang.foreign</code>, or a pure Java port of it, chosen when the
+ * instance is created. The Java engine holds no native resources and is used
+ * automatically when the JNI library can't be loaded. See
+ * {@link GeodesicEngine#getDefault()}.
+ *
+ * Native instances of the same ellipsoid share one reference counted C++
+ * object, and {@link GeodesicRegistry} interns whole instances. The
+ * parameters of the ellipsoid are kept in Java, so the accessors,
+ * <code>hashCode</code>, <code>equals</code> and <code>toString</code> never
+ * call the engine.
+ *
  * @author <a href="mailto:nmaludy@gmail.com">Nick Maludy</a>
  * @version 1.29
  */
 public class Geodesic implements Closeable {
 
-  static {
-    // force the GeographicLib JNI library to be loaded before anything below
-    // is executed
-    LibraryLoader.load();
-    staticInit();
-  }
-
   private static final long CAP_NONE = 0;
   private static final long CAP_C1   = 1 << 0;
   private static final long CAP_C1p  = 1 << 1;
@@ -81,15 +91,96 @@ public class Geodesic implements Closeable {
   public static final long MASK_ALL           = OUT_ALL | CAP_ALL;
   /**
    * A global instantiation of Geodesic with the parameters for the
-   * WGS84 ellipsoid.
+   * WGS84 ellipsoid. It uses the engine of {@link GeodesicEngine#getDefault()},
+   * chosen on its first call rather than when this class is loaded, so
+   * neither the JNI library nor a C++ object is loaded before it's used.
+   * {@link #close()} does nothing.
    **********************************************************************/
-  public static final Geodesic WGS84 = newGeodesicWgs84Object();
+  public static final Geodesic WGS84 = new Geodesic(6378137, 1 / 298.257223563,
+                                                    true);
+
+  /**
+   * Holds the instance whose engine {@link #WGS84} uses, created by the JVM
+   * on the first call which needs it.
+   */
+  private static final class Wgs84Engine {
+    static final Geodesic GEODESIC =
+        GeodesicRegistry.get(WGS84.getMajorRadius(), WGS84.getFlattening());
+  }
+
+  /**
+   * Caches the classes and constructors used by the native functions; the
+   * JVM runs it once, before the first native instance is created.
+   */
+  private static final class NativeInit {
+    static {
+      staticInit();
+    }
+
+    static void ensure() {
+    }
+  }
+
+  /**
+   * Per-thread array receiving the results of the single Java and foreign
+   * engine calls which return one or two values or a new result object, so
+   * that they don't allocate it.
+   */
+  private static final ThreadLocal<double[]> SCRATCH =
+      new ThreadLocal<double[]>() {
+        protected double[] initialValue() {
+          return new double[JavaGeodesic.DIRECT_COUNT];
+        }
+      };
+
+  /**
+   * <code>javaGeodesic</code> implements every function when the engine is
+   * {@link GeodesicEngine#JAVA}, null for the native engine.
+   */
+  private final JavaGeodesic javaGeodesic;
+
+  /**
+   * <code>nativeLease</code> owns the reference to the C++ object shared
+   * with the other native instances of the same ellipsoid, null for the Java
+   * engine. <code>cleanable</code> releases it either on {@link #close()}
+   * or once this instance is unreachable.
+   */
+  private final NativeHandle.Lease nativeLease;
+  private final Cleaner.Cleanable cleanable;
+
+  /**
+   * <code>foreignEngine</code> makes the single calls of the
+   * {@link GeodesicEngine#FOREIGN} engine on the C++ object of
+   * <code>nativeLease</code>, null for the other engines.
+   */
+  private final ForeignEngine foreignEngine;
+
+  /**
+   * The parameters of the ellipsoid, read once at construction so that the
+   * accessors, {@link #hashCode()}, {@link #equals(Object)} and
+   * {@link #toString()} never call the engine.
+   */
+  private final double majorRadius;
+  private final double flattening;
+  private final double ellipsoidArea;
+
+  /**
+   * True for the instances interned by {@link GeodesicRegistry}, which
+   * {@link #close()} leaves alone.
+   */
+  private final boolean shared;
+
+  /**
+   * The closed form approximations of the distance on this ellipsoid, see
+   * {@link #approximateDistance}.
+   */
+  private final DistanceApproximation approximation;
 
   /**
-   * <code>geodesicCppPtr</code> is a pointer to the wrapped C++
-   * GeographicLib::Geodesic object created by newGeodesicCppObject().
+   * True for {@link #WGS84}, which makes its calls on the engine of
+   * <code>Wgs84Engine.GEODESIC</code> instead of its own.
    */
-  private long geodesicCppPtr;
+  private final boolean deferred;
 
   /**
    * Default constructor, marked private so clients can't create
@@ -97,7 +188,35 @@ public class Geodesic implements Closeable {
    */
   private Geodesic() {
     // null by default
-    geodesicCppPtr = 0;
+    javaGeodesic = null;
+    nativeLease = null;
+    cleanable = null;
+    foreignEngine = null;
+    majorRadius = 0;
+    flattening = 0;
+    ellipsoidArea = 0;
+    shared = false;
+    approximation = null;
+    deferred = false;
+  }
+
+  /**
+   * Creates {@link #WGS84}, which has no engine of its own. The parameters
+   * of the ellipsoid are computed in Java so that creating it loads
+   * nothing.
+   */
+  private Geodesic(final double a, final double f, final boolean deferred) {
+    JavaGeodesic parameters = new JavaGeodesic(a, f);
+    javaGeodesic = null;
+    nativeLease = null;
+    cleanable = null;
+    foreignEngine = null;
+    majorRadius = parameters.getMajorRadius();
+    flattening = parameters.getFlattening();
+    ellipsoidArea = parameters.getEllipsoidArea();
+    shared = true;
+    approximation = new DistanceApproximation(majorRadius, flattening);
+    this.deferred = deferred;
   }
 
   /**
@@ -109,8 +228,125 @@ public class Geodesic implements Closeable {
    *      Negative f gives a prolate ellipsoid. If f > 1, set flattening to 1/f.
    */
   public Geodesic(final double a, final double f) {
-    // create the underlying Geodesic C++ object
-    geodesicCppPtr = newGeodesicCppObject(a, f);
+    this(a, f, GeodesicEngine.getDefault());
+  }
+
+  /**
+   * Creates a new <code>Geodesic</code> instance which uses the given
+   * engine.
+   *
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid. Setting f = 0 gives a sphere.
+   *      Negative f gives a prolate ellipsoid. If f > 1, set flattening to 1/f.
+   * @param engine the implementation used by this instance.
+   * @exception UnsatisfiedLinkError if <code>engine</code> is
+   *     {@link GeodesicEngine#NATIVE} or {@link GeodesicEngine#FOREIGN} and
+   *     the JNI library couldn't be loaded, or <code>FOREIGN</code> and its
+   *     <code>java.lang.foreign</code> classes couldn't be.
+   */
+  public Geodesic(final double a, final double f, final GeodesicEngine engine) {
+    this(a, f, engine, false);
+  }
+
+  /**
+   * Creates a new <code>Geodesic</code> instance, shared instances are
+   * created by {@link GeodesicRegistry} and can't be closed.
+   */
+  // the cleaner only keeps a phantom reference to this, it calls nothing
+  // on it, so a subclass never sees itself half constructed
+  @SuppressWarnings("this-escape")
+  Geodesic(final double a,
+           final double f,
+           final GeodesicEngine engine,
+           final boolean shared) {
+    if (engine == null) {
+      throw new IllegalArgumentException("engine must not be null");
+    }
+    this.shared = shared;
+    deferred = false;
+    GeodesicInstrumentation.Sample sample =
+        GeodesicInstrumentation.construction();
+    if (engine == GeodesicEngine.JAVA) {
+      javaGeodesic = new JavaGeodesic(a, f);
+      nativeLease = null;
+      cleanable = null;
+      foreignEngine = null;
+      majorRadius = javaGeodesic.getMajorRadius();
+      flattening = javaGeodesic.getFlattening();
+      ellipsoidArea = javaGeodesic.getEllipsoidArea();
+      approximation = new DistanceApproximation(majorRadius, flattening);
+      if (sample != null) {
+        sample.endConstruction(engine, a, f, false);
+      }
+      return;
+    }
+    if (!LibraryLoader.isAvailable()) {
+      UnsatisfiedLinkError error =
+          new UnsatisfiedLinkError("GeographicJni library is not available");
+      error.initCause(LibraryLoader.getLoadError());
+      throw error;
+    }
+    foreignEngine = engine == GeodesicEngine.FOREIGN ? ForeignEngine.get() : null;
+    NativeInit.ensure();
+    javaGeodesic = null;
+    // share the underlying Geodesic C++ object of this ellipsoid
+    nativeLease = new NativeHandle.Lease(a, f);
+    cleanable = NativeHandle.CLEANER.register(this, nativeLease);
+    NativeHandle nativeHandle = nativeLease.getHandle();
+    majorRadius = nativeHandle.getMajorRadius();
+    flattening = nativeHandle.getFlattening();
+    ellipsoidArea = nativeHandle.getEllipsoidArea();
+    approximation = new DistanceApproximation(majorRadius, flattening);
+    if (sample != null) {
+      sample.endConstruction(engine, a, f, nativeLease.isCreated());
+    }
+  }
+
+  /**
+   * Get the engine used by this instance; for {@link #WGS84} this chooses
+   * the engine if none of its calls did yet.
+   * @return a <code>GeodesicEngine</code> value
+   */
+  public final GeodesicEngine getEngine() {
+    if (javaEngine() != null) {
+      return GeodesicEngine.JAVA;
+    }
+    return foreign() != null ? GeodesicEngine.FOREIGN : GeodesicEngine.NATIVE;
+  }
+
+  /**
+   * Get the Java engine of this instance, for the classes built on top of
+   * it such as {@link PolygonArea}.
+   * @return a <code>JavaGeodesic</code> value, null for the native engine
+   */
+  final JavaGeodesic getJavaGeodesic() {
+    return javaEngine();
+  }
+
+  /**
+   * Get the lease on the C++ object of this instance, to bracket native
+   * calls made by other classes with enter() and exit().
+   * @return a <code>NativeHandle.Lease</code> value, null for the Java engine
+   */
+  final NativeHandle.Lease getNativeLease() {
+    return lease();
+  }
+
+  /**
+   * The engine fields of the instance which makes the calls of this one:
+   * this instance, or <code>Wgs84Engine.GEODESIC</code> for
+   * {@link #WGS84}.
+   */
+  private JavaGeodesic javaEngine() {
+    return deferred ? Wgs84Engine.GEODESIC.javaGeodesic : javaGeodesic;
+  }
+
+  private NativeHandle.Lease lease() {
+    return deferred ? Wgs84Engine.GEODESIC.nativeLease : nativeLease;
+  }
+
+  private ForeignEngine foreign() {
+    return deferred ? Wgs84Engine.GEODESIC.foreignEngine : foreignEngine;
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -129,45 +365,83 @@ public class Geodesic implements Closeable {
    *      Negative f gives a prolate ellipsoid. If f > 1, set flattening to 1/f.
    * @return The pointer to the C++ object.
    */
-  private static native long newGeodesicCppObject(final double a,
+  static native long newGeodesicCppObject(final double a,
                                                   final double f);
 
   /**
    * Deletes a GeographicLib::Geodesic object created by newGeodesicCppObject()
    * @param geodesicCppObjectPtr the pointer to the Geodesic C++ objec to delete
    */
-  private static native void deleteGeodesicCppObject(final long geodesicCppObjectPtr);
+  static native void deleteGeodesicCppObject(final long geodesicCppObjectPtr);
 
-  /**
-   * Creates a Geodesic with the parameters for the WGS84 ellipsoid.
-   * @return A Geodesic object with the WGS84 parameters.
-   */
-  private static native Geodesic newGeodesicWgs84Object();
 
   /**
    * Inherited from java.io.Closeable. <br>
-   * Used to destroy the underlying C++ object.
+   * Used to release the underlying C++ object, which is deleted once no
+   * other instance of the same ellipsoid uses it. Does nothing for
+   * {@link #WGS84} and the instances of {@link GeodesicRegistry}.
+   *
+   * Safe to call while other threads use this instance: calls already
+   * running complete normally, the last of them releases the C++ object,
+   * and calls made after <code>close()</code> throw an
+   * <code>IllegalStateException</code>.
    */
   public final void close() {
-    if (geodesicCppPtr != 0) {
-      // delete the underlying C++ Geodesic object
-      deleteGeodesicCppObject(geodesicCppPtr);
-      geodesicCppPtr = 0;
+    if (nativeLease != null && !shared) {
+      // release the underlying C++ Geodesic object, the cleanable runs the
+      // release at most once
+      nativeLease.markClosed();
+      cleanable.clean();
     }
   }
 
   /**
-   * Inherited from java.lang.Object. <br>
-   * Used to destroy the underlying C++ object.
-   * @exception Throwable if an error occurs
+   * Get a snapshot of the native object and handle counters of the
+   * {@link GeodesicEngine#NATIVE} and {@link GeodesicEngine#FOREIGN}
+   * engines, for monitoring native memory and finding instances which are
+   * never closed.
+   *
+   * @return a <code>NativeStats</code> value
    */
-  protected final void finalize() throws Throwable {
-    try {
-      // delete the underlying C++ Geodesic object
-      close();
-    } finally {
-      super.finalize();
-    }
+  public static NativeStats getNativeStats() {
+    return NativeHandle.stats();
+  }
+
+  /**
+   * Creates a geodesic line starting at point 1 with every capability, so
+   * that points along it can be computed without redoing the setup of the
+   * direct problem for each of them.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param azi1 azimuth at point 1 (degrees).
+   * @return a <code>GeodesicLine</code> value, to be closed by the caller
+   */
+  public final GeodesicLine line(final double lat1,
+                                 final double lon1,
+                                 final double azi1) {
+    return line(lat1, lon1, azi1, MASK_ALL);
+  }
+
+  /**
+   * Creates a geodesic line starting at point 1 which can compute the
+   * quantities selected by <code>caps</code>. Fewer capabilities make the
+   * line cheaper to set up; include <code>MASK_DISTANCE_IN</code> to
+   * position points by distance instead of arc length.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param azi1 azimuth at point 1 (degrees).
+   * @param caps a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying the capabilities of the line.
+   * @return a <code>GeodesicLine</code> value, to be closed by the caller
+   * @exception IllegalStateException if this instance was closed.
+   */
+  public final GeodesicLine line(final double lat1,
+                                 final double lon1,
+                                 final double azi1,
+                                 final long caps) {
+    return new GeodesicLine(this, lat1, lon1, azi1, caps);
   }
 
   ///////////////////////////////////////////////////
@@ -186,7 +460,27 @@ public class Geodesic implements Closeable {
                                    final double lon1,
                                    final double azi1,
                                    final double s12) {
-    return nativeDirect(this, this.geodesicCppPtr, lat1, lon1, azi1, s12);
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        return javaGenDirect(lat1, lon1, azi1, false, s12, MASK_ALL);
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          return foreignGenDirect(geodesicCppPtr, lat1, lon1, azi1, false, s12,
+                                  MASK_ALL);
+        }
+        return nativeDirect(this, geodesicCppPtr, lat1, lon1, azi1, s12);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DIRECT, getEngine(), MASK_ALL,
+                   1);
+      }
+    }
   }
   private static native DirectResult nativeDirect(final Geodesic geodesic,
                                                   final long geodesicCppPtr,
@@ -208,7 +502,27 @@ public class Geodesic implements Closeable {
                                       final double lon1,
                                       final double azi1,
                                       final double a12) {
-    return nativeArcDirect(this, this.geodesicCppPtr, lat1, lon1, azi1, a12);
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        return javaGenDirect(lat1, lon1, azi1, true, a12, MASK_ALL);
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          return foreignGenDirect(geodesicCppPtr, lat1, lon1, azi1, true, a12,
+                                  MASK_ALL);
+        }
+        return nativeArcDirect(this, geodesicCppPtr, lat1, lon1, azi1, a12);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.ARC_DIRECT, getEngine(), MASK_ALL,
+                   1);
+      }
+    }
   }
   private static native DirectResult nativeArcDirect(final Geodesic geodesic,
                                                      final long geodesicCppPtr,
@@ -228,81 +542,1843 @@ public class Geodesic implements Closeable {
    * @param outmask a <code>long</code> value
    * @return a <code>DirectResult</code> value
    */
-  public final DirectResult genDirect(final double lat1,
-                                      final double lon1,
-                                      final double azi1,
-                                      final boolean arcmode,
-                                      final double s12_a12,
-                                      final long outmask) {
-    return nativeGenDirect(this, this.geodesicCppPtr, lat1, lon1, azi1, arcmode,
-                           s12_a12, outmask);
+  public final DirectResult genDirect(final double lat1,
+                                      final double lon1,
+                                      final double azi1,
+                                      final boolean arcmode,
+                                      final double s12_a12,
+                                      final long outmask) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        return javaGenDirect(lat1, lon1, azi1, arcmode, s12_a12, outmask);
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          return foreignGenDirect(geodesicCppPtr, lat1, lon1, azi1, arcmode,
+                                  s12_a12, outmask);
+        }
+        return nativeGenDirect(this, geodesicCppPtr, lat1, lon1, azi1, arcmode,
+                               s12_a12, outmask);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.GEN_DIRECT, getEngine(), outmask,
+                   1);
+      }
+    }
+  }
+  private static native DirectResult nativeGenDirect(final Geodesic geodesic,
+                                                     final long geodesicCppPtr,
+                                                     final double lat1,
+                                                     final double lon1,
+                                                     final double azi1,
+                                                     final boolean arcmode,
+                                                     final double s12_a12,
+                                                     final long outmask);
+
+  /**
+   * Same as {@link #direct(double, double, double, double)} but stores the
+   * results in a caller-owned <code>result</code> instead of allocating a
+   * new <code>DirectResult</code>, so the holder can be reused between calls.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param azi1 azimuth at point 1 (degrees).
+   * @param s12 distance between point 1 and point 2 (meters).
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   */
+  public final MutableDirectResult direct(final double lat1,
+                                          final double lon1,
+                                          final double azi1,
+                                          final double s12,
+                                          final MutableDirectResult result) {
+    return genDirect(lat1, lon1, azi1, false, s12, MASK_ALL, result);
+  }
+
+  /**
+   * Same as {@link #arcDirect(double, double, double, double)} but stores the
+   * results in a caller-owned <code>result</code> instead of allocating a
+   * new <code>DirectResult</code>, so the holder can be reused between calls.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param azi1 azimuth at point 1 (degrees).
+   * @param a12 arc length between point 1 and point 2 (degrees).
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   */
+  public final MutableDirectResult arcDirect(final double lat1,
+                                             final double lon1,
+                                             final double azi1,
+                                             final double a12,
+                                             final MutableDirectResult result) {
+    return genDirect(lat1, lon1, azi1, true, a12, MASK_ALL, result);
+  }
+
+  /**
+   * Same as {@link #genDirect(double, double, double, boolean, double, long)}
+   * but stores the results in a caller-owned <code>result</code> instead of
+   * allocating a new <code>DirectResult</code>, so the holder can be reused
+   * between calls.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param azi1 azimuth at point 1 (degrees).
+   * @param arcmode if true then <code>s12_a12</code> is an arc length
+   *     (degrees), otherwise a distance (meters).
+   * @param s12_a12 distance or arc length between point 1 and point 2.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   */
+  public final MutableDirectResult genDirect(final double lat1,
+                                             final double lon1,
+                                             final double azi1,
+                                             final boolean arcmode,
+                                             final double s12_a12,
+                                             final long outmask,
+                                             final MutableDirectResult result) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().genDirect(lat1, lon1, azi1, arcmode, s12_a12, outmask,
+                               result.values);
+      } else {
+        long geodesicCppPtr = lease().enter();
+        try {
+          if (foreign() != null) {
+            foreign().genDirect(geodesicCppPtr, lat1, lon1, azi1, arcmode,
+                                s12_a12, outmask, result.values);
+          } else {
+            nativeGenDirectInto(geodesicCppPtr, lat1, lon1, azi1, arcmode,
+                                s12_a12, outmask, result.values);
+          }
+        } finally {
+          lease().exit();
+        }
+      }
+      result.outmask = outmask;
+      return result;
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.GEN_DIRECT, getEngine(), outmask,
+                   1);
+      }
+    }
+  }
+  private static native void nativeGenDirectInto(final long geodesicCppPtr,
+                                                 final double lat1,
+                                                 final double lon1,
+                                                 final double azi1,
+                                                 final boolean arcmode,
+                                                 final double s12_a12,
+                                                 final long outmask,
+                                                 final double[] values);
+
+  /**
+   * Solves the direct problem for many starting points in a single native
+   * call. Element <code>i</code> of each input array, for
+   * <code>offset &lt;= i &lt; offset + length</code>, describes one geodesic
+   * and the results are written to the same element of the output arrays.
+   * <p>
+   * Output arrays may be <code>null</code> when the corresponding quantity
+   * is not needed; non-null output arrays are only written for the
+   * quantities selected by <code>outmask</code>, except <code>a12</code>
+   * which is always calculated. No Java objects are allocated.
+   *
+   * @param lat1 latitudes of point 1 (degrees).
+   * @param lon1 longitudes of point 1 (degrees).
+   * @param azi1 azimuths at point 1 (degrees).
+   * @param arcmode if true then <code>s12_a12</code> holds arc lengths
+   *     (degrees), otherwise distances (meters).
+   * @param s12_a12 distances or arc lengths between point 1 and point 2.
+   * @param offset index of the first element to process in every array.
+   * @param length number of geodesics to process.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param lat2 latitudes of point 2 (degrees), may be null.
+   * @param lon2 longitudes of point 2 (degrees), may be null.
+   * @param azi2 azimuths at point 2 (degrees), may be null.
+   * @param s12 distances between point 1 and point 2 (meters), may be null.
+   * @param m12 reduced lengths of the geodesics (meters), may be null.
+   * @param M12 geodesic scales of point 2 relative to point 1, may be null.
+   * @param M21 geodesic scales of point 1 relative to point 2, may be null.
+   * @param S12 areas under the geodesics (meters<sup>2</sup>), may be null.
+   * @param a12 arc lengths between point 1 and point 2 (degrees), may be null.
+   * @exception IllegalArgumentException if <code>offset</code> or
+   *     <code>length</code> is negative or a non-null array is too short.
+   */
+  public final void genDirect(final double[] lat1,
+                              final double[] lon1,
+                              final double[] azi1,
+                              final boolean arcmode,
+                              final double[] s12_a12,
+                              final int offset,
+                              final int length,
+                              final long outmask,
+                              final double[] lat2,
+                              final double[] lon2,
+                              final double[] azi2,
+                              final double[] s12,
+                              final double[] m12,
+                              final double[] M12,
+                              final double[] M21,
+                              final double[] S12,
+                              final double[] a12) {
+    checkBatchInput(azi1, "azi1", offset, length);
+    checkBatchInput(s12_a12, "s12_a12", offset, length);
+    genDirectBatch(lat1, lon1, azi1, 0, arcmode, s12_a12, 0,
+                   offset, length, outmask,
+                   lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+  }
+
+  /**
+   * Solves the direct problem for many starting points which all share the
+   * same distance or arc length. See
+   * {@link #genDirect(double[], double[], double[], boolean, double[], int, int, long, double[], double[], double[], double[], double[], double[], double[], double[], double[])}
+   * for a description of the other parameters.
+   *
+   * @param s12_a12 distance (meters) or arc length (degrees) used for every
+   *     geodesic.
+   */
+  public final void genDirect(final double[] lat1,
+                              final double[] lon1,
+                              final double[] azi1,
+                              final boolean arcmode,
+                              final double s12_a12,
+                              final int offset,
+                              final int length,
+                              final long outmask,
+                              final double[] lat2,
+                              final double[] lon2,
+                              final double[] azi2,
+                              final double[] s12,
+                              final double[] m12,
+                              final double[] M12,
+                              final double[] M21,
+                              final double[] S12,
+                              final double[] a12) {
+    checkBatchInput(azi1, "azi1", offset, length);
+    genDirectBatch(lat1, lon1, azi1, 0, arcmode, null, s12_a12,
+                   offset, length, outmask,
+                   lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+  }
+
+  /**
+   * Solves the direct problem for many starting points which all share the
+   * same azimuth. See
+   * {@link #genDirect(double[], double[], double[], boolean, double[], int, int, long, double[], double[], double[], double[], double[], double[], double[], double[], double[])}
+   * for a description of the other parameters.
+   *
+   * @param azi1 azimuth at point 1 (degrees) used for every geodesic.
+   */
+  public final void genDirect(final double[] lat1,
+                              final double[] lon1,
+                              final double azi1,
+                              final boolean arcmode,
+                              final double[] s12_a12,
+                              final int offset,
+                              final int length,
+                              final long outmask,
+                              final double[] lat2,
+                              final double[] lon2,
+                              final double[] azi2,
+                              final double[] s12,
+                              final double[] m12,
+                              final double[] M12,
+                              final double[] M21,
+                              final double[] S12,
+                              final double[] a12) {
+    checkBatchInput(s12_a12, "s12_a12", offset, length);
+    genDirectBatch(lat1, lon1, null, azi1, arcmode, s12_a12, 0,
+                   offset, length, outmask,
+                   lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+  }
+
+  /**
+   * Solves the direct problem for many starting points which all share the
+   * same azimuth and distance or arc length. See
+   * {@link #genDirect(double[], double[], double[], boolean, double[], int, int, long, double[], double[], double[], double[], double[], double[], double[], double[], double[])}
+   * for a description of the other parameters.
+   *
+   * @param azi1 azimuth at point 1 (degrees) used for every geodesic.
+   * @param s12_a12 distance (meters) or arc length (degrees) used for every
+   *     geodesic.
+   */
+  public final void genDirect(final double[] lat1,
+                              final double[] lon1,
+                              final double azi1,
+                              final boolean arcmode,
+                              final double s12_a12,
+                              final int offset,
+                              final int length,
+                              final long outmask,
+                              final double[] lat2,
+                              final double[] lon2,
+                              final double[] azi2,
+                              final double[] s12,
+                              final double[] m12,
+                              final double[] M12,
+                              final double[] M21,
+                              final double[] S12,
+                              final double[] a12) {
+    genDirectBatch(lat1, lon1, null, azi1, arcmode, null, s12_a12,
+                   offset, length, outmask,
+                   lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+  }
+
+  /**
+   * Common implementation of the batch <code>genDirect</code> functions.
+   * A <code>null</code> <code>azi1Array</code> or <code>s12_a12Array</code>
+   * means that the corresponding scalar is shared by every element.
+   */
+  private void genDirectBatch(final double[] lat1,
+                              final double[] lon1,
+                              final double[] azi1Array,
+                              final double azi1,
+                              final boolean arcmode,
+                              final double[] s12_a12Array,
+                              final double s12_a12,
+                              final int offset,
+                              final int length,
+                              final long outmask,
+                              final double[] lat2,
+                              final double[] lon2,
+                              final double[] azi2,
+                              final double[] s12,
+                              final double[] m12,
+                              final double[] M12,
+                              final double[] M21,
+                              final double[] S12,
+                              final double[] a12) {
+    checkBatchRange(offset, length);
+    checkBatchInput(lat1, "lat1", offset, length);
+    checkBatchInput(lon1, "lon1", offset, length);
+    checkBatchOutput(lat2, "lat2", offset, length);
+    checkBatchOutput(lon2, "lon2", offset, length);
+    checkBatchOutput(azi2, "azi2", offset, length);
+    checkBatchOutput(s12, "s12", offset, length);
+    checkBatchOutput(m12, "m12", offset, length);
+    checkBatchOutput(M12, "M12", offset, length);
+    checkBatchOutput(M21, "M21", offset, length);
+    checkBatchOutput(S12, "S12", offset, length);
+    checkBatchOutput(a12, "a12", offset, length);
+    if (length == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().genDirectBatch(lat1, lon1, azi1Array, azi1,
+                                    arcmode, s12_a12Array, s12_a12,
+                                    offset, length, outmask,
+                                    lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+        return;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        nativeGenDirectBatch(geodesicCppPtr, lat1, lon1, azi1Array, azi1,
+                             arcmode, s12_a12Array, s12_a12,
+                             offset, length, outmask,
+                             lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DIRECT_BATCH, getEngine(), outmask,
+                   length);
+      }
+    }
+  }
+  private static native void nativeGenDirectBatch(final long geodesicCppPtr,
+                                                  final double[] lat1,
+                                                  final double[] lon1,
+                                                  final double[] azi1Array,
+                                                  final double azi1,
+                                                  final boolean arcmode,
+                                                  final double[] s12_a12Array,
+                                                  final double s12_a12,
+                                                  final int offset,
+                                                  final int length,
+                                                  final long outmask,
+                                                  final double[] lat2,
+                                                  final double[] lon2,
+                                                  final double[] azi2,
+                                                  final double[] s12,
+                                                  final double[] m12,
+                                                  final double[] M12,
+                                                  final double[] M21,
+                                                  final double[] S12,
+                                                  final double[] a12);
+
+  /**
+   * Describe <code>inverse</code> method here.
+   *
+   * @param lat1 a <code>double</code> value
+   * @param lon1 a <code>double</code> value
+   * @param lat2 a <code>double</code> value
+   * @param lon2 a <code>double</code> value
+   * @return an <code>InverseResult</code> value
+   */
+  public final InverseResult inverse(final double lat1,
+                                     final double lon1,
+                                     final double lat2,
+                                     final double lon2) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        return javaGenInverse(lat1, lon1, lat2, lon2, MASK_ALL, sample);
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          return foreignGenInverse(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                                   MASK_ALL);
+        }
+        return nativeInverse(this, geodesicCppPtr, lat1, lon1, lat2, lon2);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.INVERSE, getEngine(), MASK_ALL,
+                   1);
+      }
+    }
+  }
+  private static native InverseResult nativeInverse(final Geodesic geodesic,
+                                                    final long geodesicCppPtr,
+                                                    final double lat1,
+                                                    final double lon1,
+                                                    final double lat2,
+                                                    final double lon2);
+  
+  /**
+   * Describe <code>genInverse</code> method here.
+   *
+   * @param lat1 a <code>double</code> value
+   * @param lon1 a <code>double</code> value
+   * @param lat2 a <code>double</code> value
+   * @param lon2 a <code>double</code> value
+   * @param outmask a <code>long</code> value
+   * @return an <code>InverseResult</code> value
+   */
+  public final InverseResult genInverse(final double lat1,
+                                        final double lon1,
+                                        final double lat2,
+                                        final double lon2,
+                                        final long outmask) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        return javaGenInverse(lat1, lon1, lat2, lon2, outmask, sample);
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          return foreignGenInverse(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                                   outmask);
+        }
+        return nativeGenInverse(this, geodesicCppPtr,
+                                lat1, lon1, lat2, lon2, outmask);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.GEN_INVERSE, getEngine(), outmask,
+                   1);
+      }
+    }
+  }
+  private static native InverseResult nativeGenInverse(final Geodesic geodesic,
+                                                       final long geodesicCppPtr,
+                                                       final double lat1,
+                                                       final double lon1,
+                                                       final double lat2,
+                                                       final double lon2,
+                                                       final long outmask);
+
+  /**
+   * Same as {@link #inverse(double, double, double, double)} but stores the
+   * results in a caller-owned <code>result</code> instead of allocating a
+   * new <code>InverseResult</code>, so the holder can be reused between calls.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   */
+  public final MutableInverseResult inverse(final double lat1,
+                                            final double lon1,
+                                            final double lat2,
+                                            final double lon2,
+                                            final MutableInverseResult result) {
+    return genInverse(lat1, lon1, lat2, lon2, MASK_ALL, result);
+  }
+
+  /**
+   * Same as {@link #genInverse(double, double, double, double, long)} but
+   * stores the results in a caller-owned <code>result</code> instead of
+   * allocating a new <code>InverseResult</code>, so the holder can be reused
+   * between calls.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   */
+  public final MutableInverseResult genInverse(final double lat1,
+                                               final double lon1,
+                                               final double lat2,
+                                               final double lon2,
+                                               final long outmask,
+                                               final MutableInverseResult result) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().genInverse(lat1, lon1, lat2, lon2, outmask, result.values,
+                                iterations(sample));
+      } else {
+        long geodesicCppPtr = lease().enter();
+        try {
+          if (foreign() != null) {
+            foreign().genInverse(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                                 outmask, result.values);
+          } else {
+            nativeGenInverseInto(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                                 outmask, result.values);
+          }
+        } finally {
+          lease().exit();
+        }
+      }
+      result.outmask = outmask;
+      return result;
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.GEN_INVERSE, getEngine(), outmask,
+                   1);
+      }
+    }
+  }
+  private static native void nativeGenInverseInto(final long geodesicCppPtr,
+                                                  final double lat1,
+                                                  final double lon1,
+                                                  final double lat2,
+                                                  final double lon2,
+                                                  final long outmask,
+                                                  final double[] values);
+
+  /**
+   * Solves the inverse problem for many pairs of points in a single native
+   * call. Element <code>i</code> of each input array, for
+   * <code>offset &lt;= i &lt; offset + length</code>, describes one pair and
+   * the results are written to the same element of the output arrays, so
+   * slices of large buffers can be processed in place.
+   * <p>
+   * Output arrays may be <code>null</code> when the corresponding quantity
+   * is not needed; non-null output arrays are only written for the
+   * quantities selected by <code>outmask</code>, except <code>a12</code>
+   * which is always calculated. No Java objects are allocated.
+   *
+   * @param lat1 latitudes of point 1 (degrees).
+   * @param lon1 longitudes of point 1 (degrees).
+   * @param lat2 latitudes of point 2 (degrees).
+   * @param lon2 longitudes of point 2 (degrees).
+   * @param offset index of the first element to process in every array.
+   * @param length number of pairs to process.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param s12 distances between point 1 and point 2 (meters), may be null.
+   * @param azi1 azimuths at point 1 (degrees), may be null.
+   * @param azi2 azimuths at point 2 (degrees), may be null.
+   * @param m12 reduced lengths of the geodesics (meters), may be null.
+   * @param M12 geodesic scales of point 2 relative to point 1, may be null.
+   * @param M21 geodesic scales of point 1 relative to point 2, may be null.
+   * @param S12 areas under the geodesics (meters<sup>2</sup>), may be null.
+   * @param a12 arc lengths between point 1 and point 2 (degrees), may be null.
+   * @exception IllegalArgumentException if <code>offset</code> or
+   *     <code>length</code> is negative or a non-null array is too short.
+   */
+  public final void genInverse(final double[] lat1,
+                               final double[] lon1,
+                               final double[] lat2,
+                               final double[] lon2,
+                               final int offset,
+                               final int length,
+                               final long outmask,
+                               final double[] s12,
+                               final double[] azi1,
+                               final double[] azi2,
+                               final double[] m12,
+                               final double[] M12,
+                               final double[] M21,
+                               final double[] S12,
+                               final double[] a12) {
+    checkBatchRange(offset, length);
+    checkBatchInput(lat1, "lat1", offset, length);
+    checkBatchInput(lon1, "lon1", offset, length);
+    checkBatchInput(lat2, "lat2", offset, length);
+    checkBatchInput(lon2, "lon2", offset, length);
+    checkBatchOutput(s12, "s12", offset, length);
+    checkBatchOutput(azi1, "azi1", offset, length);
+    checkBatchOutput(azi2, "azi2", offset, length);
+    checkBatchOutput(m12, "m12", offset, length);
+    checkBatchOutput(M12, "M12", offset, length);
+    checkBatchOutput(M21, "M21", offset, length);
+    checkBatchOutput(S12, "S12", offset, length);
+    checkBatchOutput(a12, "a12", offset, length);
+    if (length == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().genInverseBatch(lat1, lon1, lat2, lon2,
+                                     offset, length, outmask,
+                                     s12, azi1, azi2, m12, M12, M21, S12, a12);
+        return;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        nativeGenInverseBatch(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                              offset, length, outmask,
+                              s12, azi1, azi2, m12, M12, M21, S12, a12);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.INVERSE_BATCH, getEngine(), outmask,
+                   length);
+      }
+    }
+  }
+  private static native void nativeGenInverseBatch(final long geodesicCppPtr,
+                                                   final double[] lat1,
+                                                   final double[] lon1,
+                                                   final double[] lat2,
+                                                   final double[] lon2,
+                                                   final int offset,
+                                                   final int length,
+                                                   final long outmask,
+                                                   final double[] s12,
+                                                   final double[] azi1,
+                                                   final double[] azi2,
+                                                   final double[] m12,
+                                                   final double[] M12,
+                                                   final double[] M21,
+                                                   final double[] S12,
+                                                   final double[] a12);
+
+  /**
+   * Solves one direct problem with the Java engine into a new result.
+   */
+  private DirectResult javaGenDirect(final double lat1,
+                                     final double lon1,
+                                     final double azi1,
+                                     final boolean arcmode,
+                                     final double s12_a12,
+                                     final long outmask) {
+    double[] v = SCRATCH.get();
+    javaEngine().genDirect(lat1, lon1, azi1, arcmode, s12_a12, outmask, v);
+    return new DirectResult(outmask, v[0], v[1], v[2], v[3], v[4], v[5], v[6],
+                            v[7], v[8]);
+  }
+
+  /**
+   * Solves one inverse problem with the Java engine into a new result.
+   */
+  private InverseResult javaGenInverse(final double lat1,
+                                       final double lon1,
+                                       final double lat2,
+                                       final double lon2,
+                                       final long outmask,
+                                       final GeodesicInstrumentation.Sample sample) {
+    double[] v = SCRATCH.get();
+    javaEngine().genInverse(lat1, lon1, lat2, lon2, outmask, v,
+                            iterations(sample));
+    return new InverseResult(outmask, v[0], v[1], v[2], v[3], v[4], v[5], v[6],
+                             v[7]);
+  }
+
+  /**
+   * Solves one direct problem with the foreign engine into a new result.
+   */
+  private DirectResult foreignGenDirect(final long geodesicCppPtr,
+                                        final double lat1,
+                                        final double lon1,
+                                        final double azi1,
+                                        final boolean arcmode,
+                                        final double s12_a12,
+                                        final long outmask) {
+    double[] v = SCRATCH.get();
+    foreign().genDirect(geodesicCppPtr, lat1, lon1, azi1, arcmode, s12_a12,
+                        outmask, v);
+    return new DirectResult(outmask, v[0], v[1], v[2], v[3], v[4], v[5], v[6],
+                            v[7], v[8]);
+  }
+
+  /**
+   * Solves one inverse problem with the foreign engine into a new result.
+   */
+  private InverseResult foreignGenInverse(final long geodesicCppPtr,
+                                          final double lat1,
+                                          final double lon1,
+                                          final double lat2,
+                                          final double lon2,
+                                          final long outmask) {
+    double[] v = SCRATCH.get();
+    foreign().genInverse(geodesicCppPtr, lat1, lon1, lat2, lon2, outmask, v);
+    return new InverseResult(outmask, v[0], v[1], v[2], v[3], v[4], v[5], v[6],
+                             v[7]);
+  }
+
+  /**
+   * Get the array receiving the iterations of a measured call, null if the
+   * call isn't measured.
+   */
+  private static int[] iterations(final GeodesicInstrumentation.Sample sample) {
+    return sample != null ? sample.iterations : null;
+  }
+
+  /**
+   * Validates the <code>offset</code> and <code>length</code> of a batch call.
+   */
+  static void checkBatchRange(final int offset, final int length) {
+    if (offset < 0 || length < 0) {
+      throw new IllegalArgumentException("offset (" + offset + ") and length ("
+                                         + length + ") must be non-negative");
+    }
+  }
+
+  /**
+   * Validates a required input array of a batch call.
+   */
+  static void checkBatchInput(final double[] array,
+                              final String name,
+                              final int offset,
+                              final int length) {
+    if (array == null) {
+      throw new IllegalArgumentException(name + " must not be null");
+    }
+    checkBatchOutput(array, name, offset, length);
+  }
+
+  /**
+   * Validates an optional output array of a batch call.
+   */
+  static void checkBatchOutput(final double[] array,
+                               final String name,
+                               final int offset,
+                               final int length) {
+    if (array != null && array.length - offset < length) {
+      throw new IllegalArgumentException(name + " has " + array.length
+                                         + " elements, need " + (offset + length));
+    }
+  }
+
+  /**
+   * Solves the inverse problem for <code>count</code> pairs of points stored
+   * off-heap in direct buffers. The buffers are read and written in place
+   * by the native code, see {@link BufferColumn} for the supported layouts.
+   * Output columns may be <code>null</code> when the corresponding quantity
+   * is not needed; otherwise they are only written for the quantities
+   * selected by <code>outmask</code>, except <code>a12</code> which is always
+   * calculated.
+   *
+   * @param lat1 latitudes of point 1 (degrees).
+   * @param lon1 longitudes of point 1 (degrees).
+   * @param lat2 latitudes of point 2 (degrees).
+   * @param lon2 longitudes of point 2 (degrees).
+   * @param count number of pairs to process.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param s12 distances between point 1 and point 2 (meters), may be null.
+   * @param azi1 azimuths at point 1 (degrees), may be null.
+   * @param azi2 azimuths at point 2 (degrees), may be null.
+   * @param m12 reduced lengths of the geodesics (meters), may be null.
+   * @param M12 geodesic scales of point 2 relative to point 1, may be null.
+   * @param M21 geodesic scales of point 1 relative to point 2, may be null.
+   * @param S12 areas under the geodesics (meters<sup>2</sup>), may be null.
+   * @param a12 arc lengths between point 1 and point 2 (degrees), may be null.
+   * @exception IllegalArgumentException if <code>count</code> is negative, a
+   *     buffer is too small or an output buffer is read-only.
+   */
+  public final void genInverse(final BufferColumn lat1,
+                               final BufferColumn lon1,
+                               final BufferColumn lat2,
+                               final BufferColumn lon2,
+                               final int count,
+                               final long outmask,
+                               final BufferColumn s12,
+                               final BufferColumn azi1,
+                               final BufferColumn azi2,
+                               final BufferColumn m12,
+                               final BufferColumn M12,
+                               final BufferColumn M21,
+                               final BufferColumn S12,
+                               final BufferColumn a12) {
+    checkBatchRange(0, count);
+    checkBufferInput(lat1, "lat1", count);
+    checkBufferInput(lon1, "lon1", count);
+    checkBufferInput(lat2, "lat2", count);
+    checkBufferInput(lon2, "lon2", count);
+    checkBufferOutput(s12, "s12", count);
+    checkBufferOutput(azi1, "azi1", count);
+    checkBufferOutput(azi2, "azi2", count);
+    checkBufferOutput(m12, "m12", count);
+    checkBufferOutput(M12, "M12", count);
+    checkBufferOutput(M21, "M21", count);
+    checkBufferOutput(S12, "S12", count);
+    checkBufferOutput(a12, "a12", count);
+    if (count == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().genInverseBuffers(count, outmask, lat1, lon1, lat2, lon2,
+                                       s12, azi1, azi2, m12, M12, M21, S12, a12);
+        return;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        nativeGenInverseBuffers(geodesicCppPtr, count, outmask,
+                                address(lat1), stride(lat1),
+                                address(lon1), stride(lon1),
+                                address(lat2), stride(lat2),
+                                address(lon2), stride(lon2),
+                                address(s12), stride(s12),
+                                address(azi1), stride(azi1),
+                                address(azi2), stride(azi2),
+                                address(m12), stride(m12),
+                                address(M12), stride(M12),
+                                address(M21), stride(M21),
+                                address(S12), stride(S12),
+                                address(a12), stride(a12));
+      } finally {
+        lease().exit();
+        // the native code only has the raw addresses, so make sure the buffers
+        // can't be freed until it has returned
+        Reference.reachabilityFence(lat1);
+        Reference.reachabilityFence(lon1);
+        Reference.reachabilityFence(lat2);
+        Reference.reachabilityFence(lon2);
+        Reference.reachabilityFence(s12);
+        Reference.reachabilityFence(azi1);
+        Reference.reachabilityFence(azi2);
+        Reference.reachabilityFence(m12);
+        Reference.reachabilityFence(M12);
+        Reference.reachabilityFence(M21);
+        Reference.reachabilityFence(S12);
+        Reference.reachabilityFence(a12);
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.INVERSE_BATCH, getEngine(), outmask,
+                   count);
+      }
+    }
+  }
+  private static native void nativeGenInverseBuffers(final long geodesicCppPtr,
+                                                     final int count,
+                                                     final long outmask,
+                                                     final long lat1, final int lat1Stride,
+                                                     final long lon1, final int lon1Stride,
+                                                     final long lat2, final int lat2Stride,
+                                                     final long lon2, final int lon2Stride,
+                                                     final long s12, final int s12Stride,
+                                                     final long azi1, final int azi1Stride,
+                                                     final long azi2, final int azi2Stride,
+                                                     final long m12, final int m12Stride,
+                                                     final long M12, final int M12Stride,
+                                                     final long M21, final int M21Stride,
+                                                     final long S12, final int S12Stride,
+                                                     final long a12, final int a12Stride);
+
+  /**
+   * Solves the direct problem for <code>count</code> geodesics stored
+   * off-heap in direct buffers. The buffers are read and written in place
+   * by the native code, see {@link BufferColumn} for the supported layouts;
+   * a column with a stride of 0 shares one azimuth or distance between all
+   * geodesics. Output columns may be <code>null</code> when the
+   * corresponding quantity is not needed; otherwise they are only written
+   * for the quantities selected by <code>outmask</code>, except
+   * <code>a12</code> which is always calculated.
+   *
+   * @param lat1 latitudes of point 1 (degrees).
+   * @param lon1 longitudes of point 1 (degrees).
+   * @param azi1 azimuths at point 1 (degrees).
+   * @param arcmode if true then <code>s12_a12</code> holds arc lengths
+   *     (degrees), otherwise distances (meters).
+   * @param s12_a12 distances or arc lengths between point 1 and point 2.
+   * @param count number of geodesics to process.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param lat2 latitudes of point 2 (degrees), may be null.
+   * @param lon2 longitudes of point 2 (degrees), may be null.
+   * @param azi2 azimuths at point 2 (degrees), may be null.
+   * @param s12 distances between point 1 and point 2 (meters), may be null.
+   * @param m12 reduced lengths of the geodesics (meters), may be null.
+   * @param M12 geodesic scales of point 2 relative to point 1, may be null.
+   * @param M21 geodesic scales of point 1 relative to point 2, may be null.
+   * @param S12 areas under the geodesics (meters<sup>2</sup>), may be null.
+   * @param a12 arc lengths between point 1 and point 2 (degrees), may be null.
+   * @exception IllegalArgumentException if <code>count</code> is negative, a
+   *     buffer is too small or an output buffer is read-only.
+   */
+  public final void genDirect(final BufferColumn lat1,
+                              final BufferColumn lon1,
+                              final BufferColumn azi1,
+                              final boolean arcmode,
+                              final BufferColumn s12_a12,
+                              final int count,
+                              final long outmask,
+                              final BufferColumn lat2,
+                              final BufferColumn lon2,
+                              final BufferColumn azi2,
+                              final BufferColumn s12,
+                              final BufferColumn m12,
+                              final BufferColumn M12,
+                              final BufferColumn M21,
+                              final BufferColumn S12,
+                              final BufferColumn a12) {
+    checkBatchRange(0, count);
+    checkBufferInput(lat1, "lat1", count);
+    checkBufferInput(lon1, "lon1", count);
+    checkBufferInput(azi1, "azi1", count);
+    checkBufferInput(s12_a12, "s12_a12", count);
+    checkBufferOutput(lat2, "lat2", count);
+    checkBufferOutput(lon2, "lon2", count);
+    checkBufferOutput(azi2, "azi2", count);
+    checkBufferOutput(s12, "s12", count);
+    checkBufferOutput(m12, "m12", count);
+    checkBufferOutput(M12, "M12", count);
+    checkBufferOutput(M21, "M21", count);
+    checkBufferOutput(S12, "S12", count);
+    checkBufferOutput(a12, "a12", count);
+    if (count == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().genDirectBuffers(count, arcmode, outmask,
+                                      lat1, lon1, azi1, s12_a12,
+                                      lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+        return;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        nativeGenDirectBuffers(geodesicCppPtr, count, arcmode, outmask,
+                               address(lat1), stride(lat1),
+                               address(lon1), stride(lon1),
+                               address(azi1), stride(azi1),
+                               address(s12_a12), stride(s12_a12),
+                               address(lat2), stride(lat2),
+                               address(lon2), stride(lon2),
+                               address(azi2), stride(azi2),
+                               address(s12), stride(s12),
+                               address(m12), stride(m12),
+                               address(M12), stride(M12),
+                               address(M21), stride(M21),
+                               address(S12), stride(S12),
+                               address(a12), stride(a12));
+      } finally {
+        lease().exit();
+        // the native code only has the raw addresses, so make sure the buffers
+        // can't be freed until it has returned
+        Reference.reachabilityFence(lat1);
+        Reference.reachabilityFence(lon1);
+        Reference.reachabilityFence(azi1);
+        Reference.reachabilityFence(s12_a12);
+        Reference.reachabilityFence(lat2);
+        Reference.reachabilityFence(lon2);
+        Reference.reachabilityFence(azi2);
+        Reference.reachabilityFence(s12);
+        Reference.reachabilityFence(m12);
+        Reference.reachabilityFence(M12);
+        Reference.reachabilityFence(M21);
+        Reference.reachabilityFence(S12);
+        Reference.reachabilityFence(a12);
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DIRECT_BATCH, getEngine(), outmask,
+                   count);
+      }
+    }
+  }
+  private static native void nativeGenDirectBuffers(final long geodesicCppPtr,
+                                                    final int count,
+                                                    final boolean arcmode,
+                                                    final long outmask,
+                                                    final long lat1, final int lat1Stride,
+                                                    final long lon1, final int lon1Stride,
+                                                    final long azi1, final int azi1Stride,
+                                                    final long s12_a12, final int s12_a12Stride,
+                                                    final long lat2, final int lat2Stride,
+                                                    final long lon2, final int lon2Stride,
+                                                    final long azi2, final int azi2Stride,
+                                                    final long s12, final int s12Stride,
+                                                    final long m12, final int m12Stride,
+                                                    final long M12, final int M12Stride,
+                                                    final long M21, final int M21Stride,
+                                                    final long S12, final int S12Stride,
+                                                    final long a12, final int a12Stride);
+
+  /**
+   * Computes the origin x destination matrix of geodesics between every
+   * point 1 (origin) and every point 2 (destination) in a single native
+   * call. The result for origin <code>i</code> and destination
+   * <code>j</code> is stored at index <code>i * lat2.length + j</code> of the
+   * output arrays (row-major).
+   * <p>
+   * The matrix is split into cache-friendly tiles which are computed by
+   * <code>threads</code> native threads sharing this (immutable) ellipsoid.
+   * Only {@link #MASK_DISTANCE} and {@link #MASK_AZIMUTH} are meaningful
+   * in <code>outmask</code>; output arrays may be <code>null</code> when the
+   * corresponding quantity isn't needed.
+   *
+   * @param lat1 latitudes of the origins (degrees).
+   * @param lon1 longitudes of the origins (degrees).
+   * @param lat2 latitudes of the destinations (degrees).
+   * @param lon2 longitudes of the destinations (degrees).
+   * @param outmask a bitor'ed combination of {@link #MASK_DISTANCE} and
+   *     {@link #MASK_AZIMUTH}.
+   * @param s12 distances (meters), may be null.
+   * @param azi1 azimuths at the origins (degrees), may be null.
+   * @param azi2 azimuths at the destinations (degrees), may be null.
+   * @param threads number of native threads to use, 0 or less to use one
+   *     per available processor.
+   * @exception IllegalArgumentException if the coordinate arrays don't
+   *     match or an output array is too short.
+   */
+  public final void distanceMatrix(final double[] lat1,
+                                   final double[] lon1,
+                                   final double[] lat2,
+                                   final double[] lon2,
+                                   final long outmask,
+                                   final double[] s12,
+                                   final double[] azi1,
+                                   final double[] azi2,
+                                   final int threads) {
+    int size = checkMatrixInputs(lat1, lon1, lat2, lon2);
+    checkBatchOutput(s12, "s12", 0, size);
+    checkBatchOutput(azi1, "azi1", 0, size);
+    checkBatchOutput(azi2, "azi2", 0, size);
+    if (size == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().distanceMatrix(lat1, lon1, lat2, lon2, outmask,
+                                    s12, azi1, azi2, matrixThreads(threads));
+        return;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        nativeDistanceMatrix(geodesicCppPtr, lat1, lon1, lat2, lon2, outmask,
+                             s12, azi1, azi2, matrixThreads(threads));
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DISTANCE_MATRIX, getEngine(),
+                   outmask, (long) lat1.length * lat2.length);
+      }
+    }
+  }
+  private static native void nativeDistanceMatrix(final long geodesicCppPtr,
+                                                  final double[] lat1,
+                                                  final double[] lon1,
+                                                  final double[] lat2,
+                                                  final double[] lon2,
+                                                  final long outmask,
+                                                  final double[] s12,
+                                                  final double[] azi1,
+                                                  final double[] azi2,
+                                                  final int threads);
+
+  /**
+   * Same as
+   * {@link #distanceMatrix(double[], double[], double[], double[], long, double[], double[], double[], int)}
+   * but writes the row-major matrices off-heap into direct buffers, which
+   * are written in place by the native threads.
+   *
+   * @param lat1 latitudes of the origins (degrees).
+   * @param lon1 longitudes of the origins (degrees).
+   * @param lat2 latitudes of the destinations (degrees).
+   * @param lon2 longitudes of the destinations (degrees).
+   * @param outmask a bitor'ed combination of {@link #MASK_DISTANCE} and
+   *     {@link #MASK_AZIMUTH}.
+   * @param s12 distances (meters), may be null.
+   * @param azi1 azimuths at the origins (degrees), may be null.
+   * @param azi2 azimuths at the destinations (degrees), may be null.
+   * @param threads number of native threads to use, 0 or less to use one
+   *     per available processor.
+   * @exception IllegalArgumentException if the coordinate arrays don't
+   *     match or an output buffer is too small or read-only.
+   */
+  public final void distanceMatrix(final double[] lat1,
+                                   final double[] lon1,
+                                   final double[] lat2,
+                                   final double[] lon2,
+                                   final long outmask,
+                                   final BufferColumn s12,
+                                   final BufferColumn azi1,
+                                   final BufferColumn azi2,
+                                   final int threads) {
+    int size = checkMatrixInputs(lat1, lon1, lat2, lon2);
+    checkBufferOutput(s12, "s12", size);
+    checkBufferOutput(azi1, "azi1", size);
+    checkBufferOutput(azi2, "azi2", size);
+    if (size == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().distanceMatrix(lat1, lon1, lat2, lon2, outmask,
+                                    s12, azi1, azi2, matrixThreads(threads));
+        return;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        nativeDistanceMatrixBuffers(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                                    outmask,
+                                    address(s12), stride(s12),
+                                    address(azi1), stride(azi1),
+                                    address(azi2), stride(azi2),
+                                    matrixThreads(threads));
+      } finally {
+        lease().exit();
+        // the native code only has the raw addresses, so make sure the buffers
+        // can't be freed until it has returned
+        Reference.reachabilityFence(s12);
+        Reference.reachabilityFence(azi1);
+        Reference.reachabilityFence(azi2);
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DISTANCE_MATRIX, getEngine(),
+                   outmask, (long) lat1.length * lat2.length);
+      }
+    }
+  }
+  private static native void nativeDistanceMatrixBuffers(final long geodesicCppPtr,
+                                                         final double[] lat1,
+                                                         final double[] lon1,
+                                                         final double[] lat2,
+                                                         final double[] lon2,
+                                                         final long outmask,
+                                                         final long s12, final int s12Stride,
+                                                         final long azi1, final int azi1Stride,
+                                                         final long azi2, final int azi2Stride,
+                                                         final int threads);
+
+  /**
+   * Generates range rings, the geodesic circles of every radius around every
+   * center, in a single native call. Ring <code>(i - offset) * radii.length
+   * + r</code> is the circle of radius <code>radii[r]</code> around center
+   * <code>i</code>, for <code>offset &lt;= i &lt; offset + length</code>,
+   * and its vertices are stored contiguously in <code>latOut</code> and
+   * <code>lonOut</code> starting at index <code>ring * n</code>, where
+   * <code>n</code> is {@link #rangeRingVertexCount(double, boolean)}.
+   * <p>
+   * The vertices are the points at the given distance along the azimuths
+   * 0, -azimuthStep, -2 azimuthStep, ... (a last step may be shorter),
+   * i.e. counter-clockwise starting due north, which is the orientation of
+   * the exterior rings of GeoJSON and gives positive areas with
+   * {@link PolygonArea#compute()}. The line from a center along an azimuth
+   * is set up once and shared by every radius. When <code>closed</code> is
+   * true every ring ends with a copy of its first vertex. If
+   * <code>ringOffsets</code> isn't null it receives the index of the first
+   * vertex of every ring followed by the end of the last one, ready for
+   * {@link PolygonArea#compute(Geodesic, double[], double[], int[], int, int, boolean, boolean, boolean, double[], double[])}.
+   *
+   * @param lat latitudes of the centers (degrees).
+   * @param lon longitudes of the centers (degrees).
+   * @param offset index of the first center.
+   * @param length number of centers.
+   * @param radii the radii of the rings of every center (meters).
+   * @param azimuthStep the angle between consecutive vertices as seen from
+   *     the center (degrees), in (0, 360].
+   * @param closed if true, repeat the first vertex at the end of every ring.
+   * @param latOut latitudes of the vertices (degrees).
+   * @param lonOut longitudes of the vertices (degrees).
+   * @param ringOffsets receives the ring offsets, may be null.
+   * @exception IllegalArgumentException if an array is missing or too
+   *     short, or <code>azimuthStep</code> is out of range.
+   */
+  public final void rangeRings(final double[] lat,
+                               final double[] lon,
+                               final int offset,
+                               final int length,
+                               final double[] radii,
+                               final double azimuthStep,
+                               final boolean closed,
+                               final double[] latOut,
+                               final double[] lonOut,
+                               final int[] ringOffsets) {
+    int vertices = rangeRingVertexCount(azimuthStep, closed);
+    checkBatchRange(offset, length);
+    checkBatchInput(lat, "lat", offset, length);
+    checkBatchInput(lon, "lon", offset, length);
+    if (radii == null) {
+      throw new IllegalArgumentException("radii must not be null");
+    }
+    long rings = (long) length * radii.length;
+    if (rings * vertices > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(rings + " rings of " + vertices
+                                         + " vertices are too many");
+    }
+    int total = (int) (rings * vertices);
+    checkBatchInput(latOut, "latOut", 0, total);
+    checkBatchInput(lonOut, "lonOut", 0, total);
+    if (ringOffsets != null) {
+      if (ringOffsets.length <= rings) {
+        throw new IllegalArgumentException("ringOffsets has "
+                                           + ringOffsets.length
+                                           + " elements, need " + (rings + 1));
+      }
+      for (int ring = 0; ring <= rings; ++ring) {
+        ringOffsets[ring] = ring * vertices;
+      }
+    }
+    if (rings == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        javaEngine().rangeRings(lat, lon, offset, length, radii, azimuthStep,
+                                vertices, closed, latOut, lonOut);
+        return;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        nativeRangeRings(geodesicCppPtr, lat, lon, offset, length, radii,
+                         azimuthStep, vertices, closed, latOut, lonOut);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.RANGE_RINGS, getEngine(),
+                   MASK_LATITUDE | MASK_LONGITUDE, total);
+      }
+    }
+  }
+  private static native void nativeRangeRings(final long geodesicCppPtr,
+                                              final double[] lat,
+                                              final double[] lon,
+                                              final int offset,
+                                              final int length,
+                                              final double[] radii,
+                                              final double azimuthStep,
+                                              final int vertices,
+                                              final boolean closed,
+                                              final double[] latOut,
+                                              final double[] lonOut);
+
+  /**
+   * Get the number of vertices of every ring generated by
+   * {@link #rangeRings(double[], double[], int, int, double[], double, boolean, double[], double[], int[])}.
+   *
+   * @param azimuthStep the angle between consecutive vertices (degrees),
+   *     in (0, 360].
+   * @param closed if true, the first vertex is repeated at the end.
+   * @return the number of azimuths, plus one if <code>closed</code>
+   * @exception IllegalArgumentException if <code>azimuthStep</code> is out
+   *     of range.
+   */
+  public static int rangeRingVertexCount(final double azimuthStep,
+                                         final boolean closed) {
+    if (!(azimuthStep > 0 && azimuthStep <= 360)) {
+      throw new IllegalArgumentException("azimuthStep (" + azimuthStep
+                                         + ") must be in (0, 360]");
+    }
+    // tolerate a step which divides 360 up to rounding, e.g. 360.0 / 7
+    int azimuths = (int) Math.ceil(360 / azimuthStep - 1e-9);
+    return azimuths + (closed ? 1 : 0);
+  }
+
+  /**
+   * Validates the coordinates of a distance matrix call.
+   *
+   * @return the number of elements in the matrix.
+   */
+  private static int checkMatrixInputs(final double[] lat1,
+                                       final double[] lon1,
+                                       final double[] lat2,
+                                       final double[] lon2) {
+    if (lat1 == null || lon1 == null || lat1.length != lon1.length) {
+      throw new IllegalArgumentException("lat1 and lon1 must have the same length");
+    }
+    if (lat2 == null || lon2 == null || lat2.length != lon2.length) {
+      throw new IllegalArgumentException("lat2 and lon2 must have the same length");
+    }
+    long size = (long) lat1.length * lat2.length;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("matrix of " + lat1.length + " x "
+                                         + lat2.length + " is too large");
+    }
+    return (int) size;
+  }
+
+  /**
+   * Resolves the thread count of a distance matrix call.
+   */
+  private static int matrixThreads(final int threads) {
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Validates a required input column of an off-heap batch call.
+   */
+  private static void checkBufferInput(final BufferColumn column,
+                                       final String name,
+                                       final int count) {
+    if (column == null) {
+      throw new IllegalArgumentException(name + " must not be null");
+    }
+    column.checkCapacity(name, count);
+  }
+
+  /**
+   * Validates an optional output column of an off-heap batch call.
+   */
+  private static void checkBufferOutput(final BufferColumn column,
+                                        final String name,
+                                        final int count) {
+    if (column != null) {
+      column.checkWritable(name);
+      column.checkCapacity(name, count);
+    }
+  }
+
+  /**
+   * Get the native address of a column, 0 if it is <code>null</code>.
+   */
+  private static long address(final BufferColumn column) {
+    return column == null ? 0 : column.address();
+  }
+
+  /**
+   * Get the stride of a column, 0 if it is <code>null</code>.
+   */
+  private static int stride(final BufferColumn column) {
+    return column == null ? 0 : column.getByteStride();
+  }
+
+  /**
+   * Get the native address of a direct buffer.
+   *
+   * @param buffer a direct buffer.
+   * @return the address of the first byte of the buffer.
+   */
+  static long directBufferAddress(final Buffer buffer) {
+    // the Java engine accesses the buffer itself and has no use for it
+    return LibraryLoader.isAvailable() ? nativeDirectBufferAddress(buffer) : 0;
+  }
+  private static native long nativeDirectBufferAddress(final Buffer buffer);
+
+  /**
+   * Computes the distance between two points. Only the distance is
+   * requested from the engine ({@link #MASK_DISTANCE}), so the reduced
+   * length, geodesic scale and area series aren't evaluated and no result
+   * object is created.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return distance between point 1 and point 2 (meters).
+   */
+  public final double distance(final double lat1,
+                               final double lon1,
+                               final double lat2,
+                               final double lon2) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      return computeDistance(lat1, lon1, lat2, lon2, sample);
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DISTANCE, getEngine(), MASK_DISTANCE,
+                   1);
+      }
+    }
+  }
+
+  /**
+   * Computes the distance between two points with the engine, the caller
+   * records the call.
+   */
+  private double computeDistance(final double lat1,
+                                 final double lon1,
+                                 final double lat2,
+                                 final double lon2,
+                                 final GeodesicInstrumentation.Sample sample) {
+    if (javaEngine() != null) {
+      double[] v = SCRATCH.get();
+      javaEngine().genInverse(lat1, lon1, lat2, lon2, MASK_DISTANCE, v,
+                              iterations(sample));
+      return v[JavaGeodesic.INVERSE_s12];
+    }
+    long geodesicCppPtr = lease().enter();
+    try {
+      if (foreign() != null) {
+        return foreign().inverseValue(geodesicCppPtr, lat1, lon1, lat2, lon2,
+                                      MASK_DISTANCE, JavaGeodesic.INVERSE_s12);
+      }
+      return nativeDistance(geodesicCppPtr, lat1, lon1, lat2, lon2);
+    } finally {
+      lease().exit();
+    }
+  }
+  private static native double nativeDistance(final long geodesicCppPtr,
+                                              final double lat1,
+                                              final double lon1,
+                                              final double lat2,
+                                              final double lon2);
+
+  /**
+   * Computes the azimuth at point 1 of the geodesic between two points.
+   * Only the azimuths are requested from the engine
+   * ({@link #MASK_AZIMUTH}) and no result object is created.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return azimuth at point 1 (degrees).
+   */
+  public final double initialAzimuth(final double lat1,
+                                     final double lon1,
+                                     final double lat2,
+                                     final double lon2) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        double[] v = SCRATCH.get();
+        javaEngine().genInverse(lat1, lon1, lat2, lon2, MASK_AZIMUTH, v,
+                                iterations(sample));
+        return v[JavaGeodesic.INVERSE_AZI1];
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          return foreign().inverseValue(geodesicCppPtr, lat1, lon1, lat2,
+                                        lon2, MASK_AZIMUTH,
+                                        JavaGeodesic.INVERSE_AZI1);
+        }
+        return nativeInitialAzimuth(geodesicCppPtr, lat1, lon1, lat2, lon2);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.AZIMUTH, getEngine(), MASK_AZIMUTH,
+                   1);
+      }
+    }
+  }
+  private static native double nativeInitialAzimuth(final long geodesicCppPtr,
+                                                    final double lat1,
+                                                    final double lon1,
+                                                    final double lat2,
+                                                    final double lon2);
+
+  /**
+   * Computes the azimuth at point 2 of the geodesic between two points.
+   * Only the azimuths are requested from the engine
+   * ({@link #MASK_AZIMUTH}) and no result object is created.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return (forward) azimuth at point 2 (degrees).
+   */
+  public final double finalAzimuth(final double lat1,
+                                   final double lon1,
+                                   final double lat2,
+                                   final double lon2) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        double[] v = SCRATCH.get();
+        javaEngine().genInverse(lat1, lon1, lat2, lon2, MASK_AZIMUTH, v,
+                                iterations(sample));
+        return v[JavaGeodesic.INVERSE_AZI2];
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          return foreign().inverseValue(geodesicCppPtr, lat1, lon1, lat2,
+                                        lon2, MASK_AZIMUTH,
+                                        JavaGeodesic.INVERSE_AZI2);
+        }
+        return nativeFinalAzimuth(geodesicCppPtr, lat1, lon1, lat2, lon2);
+      } finally {
+        lease().exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.AZIMUTH, getEngine(), MASK_AZIMUTH,
+                   1);
+      }
+    }
+  }
+  private static native double nativeFinalAzimuth(final long geodesicCppPtr,
+                                                  final double lat1,
+                                                  final double lon1,
+                                                  final double lat2,
+                                                  final double lon2);
+
+  /**
+   * Computes the position of point 2 given point 1, an azimuth and a
+   * distance. Only the latitude and longitude are requested from the
+   * engine ({@link #MASK_LATITUDE} | {@link #MASK_LONGITUDE}) and no result
+   * object is created.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param azi1 azimuth at point 1 (degrees).
+   * @param s12 distance between point 1 and point 2 (meters).
+   * @param latLonOut receives the latitude (index 0) and longitude
+   *     (index 1) of point 2 (degrees).
+   * @return <code>latLonOut</code>
+   * @exception IllegalArgumentException if <code>latLonOut</code> has fewer
+   *     than 2 elements.
+   */
+  public final double[] destination(final double lat1,
+                                    final double lon1,
+                                    final double azi1,
+                                    final double s12,
+                                    final double[] latLonOut) {
+    if (latLonOut == null || latLonOut.length < 2) {
+      throw new IllegalArgumentException("latLonOut must have at least 2 elements");
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaEngine() != null) {
+        double[] v = SCRATCH.get();
+        javaEngine().genDirect(lat1, lon1, azi1, false, s12,
+                               MASK_LATITUDE | MASK_LONGITUDE, v);
+        latLonOut[0] = v[JavaGeodesic.DIRECT_LAT2];
+        latLonOut[1] = v[JavaGeodesic.DIRECT_LON2];
+        return latLonOut;
+      }
+      long geodesicCppPtr = lease().enter();
+      try {
+        if (foreign() != null) {
+          foreign().destination(geodesicCppPtr, lat1, lon1, azi1, s12,
+                                latLonOut);
+        } else {
+          nativeDestination(geodesicCppPtr, lat1, lon1, azi1, s12, latLonOut);
+        }
+      } finally {
+        lease().exit();
+      }
+      return latLonOut;
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DESTINATION, getEngine(), MASK_LATITUDE | MASK_LONGITUDE,
+                   1);
+      }
+    }
+  }
+  private static native void nativeDestination(final long geodesicCppPtr,
+                                               final double lat1,
+                                               final double lon1,
+                                               final double azi1,
+                                               final double s12,
+                                               final double[] latLonOut);
+
+  /**
+   * Approximates the distance between two points with a closed form
+   * formula, for ranking and filtering where the accuracy of
+   * {@link #distance} isn't needed. The relative error measured for the
+   * ellipsoid is given by {@link #getApproximationError}, it isn't
+   * guaranteed; {@link #adaptiveDistance} guarantees an absolute one. The
+   * result doesn't depend on the engine.
+   *
+   * @param method the approximation.
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return approximate distance between point 1 and point 2 (meters).
+   */
+  public final double approximateDistance(final DistanceMethod method,
+                                          final double lat1,
+                                          final double lon1,
+                                          final double lat2,
+                                          final double lon2) {
+    checkMethod(method);
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      return approximation.distance(method, lat1, lon1, lat2, lon2);
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.APPROXIMATE_DISTANCE, getEngine(),
+                   MASK_DISTANCE, 1);
+      }
+    }
+  }
+
+  /**
+   * Approximates the distances between the pairs of points
+   * <code>offset</code> to <code>offset + length - 1</code> of the input
+   * arrays, see {@link #approximateDistance(DistanceMethod, double, double,
+   * double, double)}. The distances are written to <code>s12</code> at the
+   * same indices. The pairs are processed in blocks whose arithmetic passes
+   * the JIT can vectorize.
+   *
+   * @param method the approximation.
+   * @param lat1 latitudes of point 1 (degrees).
+   * @param lon1 longitudes of point 1 (degrees).
+   * @param lat2 latitudes of point 2 (degrees).
+   * @param lon2 longitudes of point 2 (degrees).
+   * @param offset index of the first pair.
+   * @param length number of pairs.
+   * @param s12 approximate distances between point 1 and point 2 (meters).
+   * @exception IllegalArgumentException if <code>method</code> or an array
+   *     is missing, or an array is too short.
+   */
+  public final void approximateDistance(final DistanceMethod method,
+                                        final double[] lat1,
+                                        final double[] lon1,
+                                        final double[] lat2,
+                                        final double[] lon2,
+                                        final int offset,
+                                        final int length,
+                                        final double[] s12) {
+    checkMethod(method);
+    checkBatchRange(offset, length);
+    checkBatchInput(lat1, "lat1", offset, length);
+    checkBatchInput(lon1, "lon1", offset, length);
+    checkBatchInput(lat2, "lat2", offset, length);
+    checkBatchInput(lon2, "lon2", offset, length);
+    checkBatchInput(s12, "s12", offset, length);
+    if (length == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      approximation.distance(method, lat1, lon1, lat2, lon2, offset, length,
+                             s12, Double.NaN);
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.APPROXIMATE_DISTANCE, getEngine(),
+                   MASK_DISTANCE, length);
+      }
+    }
+  }
+
+  /**
+   * Get the largest relative error of an approximation on this ellipsoid:
+   * |d - s| &lt;= e s where d is the approximation of the distance s, apart
+   * from a rounding error below a micrometre. It is 1.7 |f| + 3
+   * f<sup>2</sup> for {@link DistanceMethod#SPHERICAL} and 160
+   * f<sup>2</sup> for {@link DistanceMethod#ANDOYER_LAMBERT}, reached near
+   * antipodal points.
+   *
+   * This value isn't a guarantee: it was measured against {@link
+   * #distance} over |f| &lt;= 1/150 rather than derived, and it is infinite
+   * for a flattening outside that range. Only {@link #adaptiveDistance}
+   * guarantees its error, with a proven bound.
+   *
+   * @param method the approximation.
+   * @return a <code>double</code> value, infinite if |f| &gt; 1/150
+   */
+  public final double getApproximationError(final DistanceMethod method) {
+    checkMethod(method);
+    return approximation.relativeError(method);
   }
-  private static native DirectResult nativeGenDirect(final Geodesic geodesic,
-                                                     final long geodesicCppPtr,
-                                                     final double lat1,
-                                                     final double lon1,
-                                                     final double azi1,
-                                                     final boolean arcmode,
-                                                     final double s12_a12,
-                                                     final long outmask);
- 
+
   /**
-   * Describe <code>inverse</code> method here.
+   * Computes the distance between two points within
+   * <code>tolerance</code>: the approximation is returned when its error is
+   * proven to be within the tolerance, the exact {@link #distance}
+   * otherwise.
    *
-   * @param lat1 a <code>double</code> value
-   * @param lon1 a <code>double</code> value
-   * @param lat2 a <code>double</code> value
-   * @param lon2 a <code>double</code> value
-   * @return an <code>InverseResult</code> value
+   * The proof brackets the distance between the chord joining the points
+   * and the circular arc with the same chord whose curvature is the largest
+   * of the ellipsoid (Schur's comparison theorem). The bracket is about
+   * c<sup>3</sup> / (24 rho<sup>2</sup>) wide, c the chord and rho the
+   * smallest radius of curvature of the ellipsoid, so that for WGS84 a
+   * tolerance of 1 m accepts the approximation up to about 120 km, 10 m up
+   * to about 270 km and 1 km up to about 1200 km; beyond the smallest
+   * radius of curvature, or for |f| &gt; 0.2, the exact distance is always
+   * computed.
+   *
+   * @param method the approximation.
+   * @param tolerance the largest error allowed (meters).
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return distance between point 1 and point 2 (meters).
+   * @exception IllegalArgumentException if <code>method</code> is missing
+   *     or <code>tolerance</code> is negative or NaN.
    */
-  public final InverseResult inverse(final double lat1,
-                                     final double lon1,
-                                     final double lat2,
-                                     final double lon2) {
-    return nativeInverse(this, this.geodesicCppPtr, lat1, lon1, lat2, lon2);
+  public final double adaptiveDistance(final DistanceMethod method,
+                                       final double tolerance,
+                                       final double lat1,
+                                       final double lon1,
+                                       final double lat2,
+                                       final double lon2) {
+    checkMethod(method);
+    checkTolerance(tolerance);
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    // recorded once, as the operation which served the distance
+    GeodesicMetrics.Operation operation =
+        GeodesicMetrics.Operation.APPROXIMATE_DISTANCE;
+    try {
+      double d = approximation.distance(method, lat1, lon1, lat2, lon2);
+      if (approximation.error(lat1, lon1, lat2, lon2, d) <= tolerance) {
+        return d;
+      }
+      operation = GeodesicMetrics.Operation.DISTANCE;
+      return computeDistance(lat1, lon1, lat2, lon2, sample);
+    } finally {
+      if (sample != null) {
+        sample.end(operation, getEngine(), MASK_DISTANCE, 1);
+      }
+    }
   }
-  private static native InverseResult nativeInverse(final Geodesic geodesic,
-                                                    final long geodesicCppPtr,
-                                                    final double lat1,
-                                                    final double lon1,
-                                                    final double lat2,
-                                                    final double lon2);
-  
+
   /**
-   * Describe <code>genInverse</code> method here.
+   * Computes the distances between the pairs of points
+   * <code>offset</code> to <code>offset + length - 1</code> of the input
+   * arrays within <code>tolerance</code>, see {@link
+   * #adaptiveDistance(DistanceMethod, double, double, double, double,
+   * double)}. The distances are written to <code>s12</code> at the same
+   * indices; the pairs whose approximation isn't proven to be within the
+   * tolerance are solved exactly by one batch call to the engine.
    *
-   * @param lat1 a <code>double</code> value
-   * @param lon1 a <code>double</code> value
-   * @param lat2 a <code>double</code> value
-   * @param lon2 a <code>double</code> value
-   * @param outmask a <code>long</code> value
-   * @return an <code>InverseResult</code> value
+   * @param method the approximation.
+   * @param tolerance the largest error allowed (meters).
+   * @param lat1 latitudes of point 1 (degrees).
+   * @param lon1 longitudes of point 1 (degrees).
+   * @param lat2 latitudes of point 2 (degrees).
+   * @param lon2 longitudes of point 2 (degrees).
+   * @param offset index of the first pair.
+   * @param length number of pairs.
+   * @param s12 distances between point 1 and point 2 (meters).
+   * @return the number of pairs solved exactly.
+   * @exception IllegalArgumentException if <code>method</code> or an array
+   *     is missing, an array is too short, or <code>tolerance</code> is
+   *     negative or NaN.
    */
-  public final InverseResult genInverse(final double lat1,
-                                        final double lon1,
-                                        final double lat2,
-                                        final double lon2,
-                                        final long outmask) {
-    return nativeGenInverse(this, this.geodesicCppPtr,
-                            lat1, lon1, lat2, lon2, outmask);
+  public final int adaptiveDistance(final DistanceMethod method,
+                                    final double tolerance,
+                                    final double[] lat1,
+                                    final double[] lon1,
+                                    final double[] lat2,
+                                    final double[] lon2,
+                                    final int offset,
+                                    final int length,
+                                    final double[] s12) {
+    checkMethod(method);
+    checkTolerance(tolerance);
+    checkBatchRange(offset, length);
+    checkBatchInput(lat1, "lat1", offset, length);
+    checkBatchInput(lon1, "lon1", offset, length);
+    checkBatchInput(lat2, "lat2", offset, length);
+    checkBatchInput(lon2, "lon2", offset, length);
+    checkBatchInput(s12, "s12", offset, length);
+    if (length == 0) {
+      return 0;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    int[] fallback = null;
+    try {
+      fallback = approximation.distance(method, lat1, lon1, lat2, lon2, offset,
+                                        length, s12, tolerance);
+    } finally {
+      // only the approximated pairs, genInverse() records the others
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.APPROXIMATE_DISTANCE, getEngine(),
+                   MASK_DISTANCE,
+                   length - (fallback == null ? 0 : fallback.length));
+      }
+    }
+    if (fallback == null) {
+      return 0;
+    }
+    int count = fallback.length;
+    // gather the pairs out of tolerance, solve them in one batch and
+    // scatter the distances back
+    double[] exactLat1 = new double[count];
+    double[] exactLon1 = new double[count];
+    double[] exactLat2 = new double[count];
+    double[] exactLon2 = new double[count];
+    double[] exactS12 = new double[count];
+    for (int j = 0; j < count; ++j) {
+      int i = fallback[j];
+      exactLat1[j] = lat1[i];
+      exactLon1[j] = lon1[i];
+      exactLat2[j] = lat2[i];
+      exactLon2[j] = lon2[i];
+    }
+    genInverse(exactLat1, exactLon1, exactLat2, exactLon2, 0, count,
+               MASK_DISTANCE, exactS12, null, null, null, null, null, null,
+               null);
+    for (int j = 0; j < count; ++j) {
+      s12[fallback[j]] = exactS12[j];
+    }
+    return count;
   }
-  private static native InverseResult nativeGenInverse(final Geodesic geodesic,
-                                                       final long geodesicCppPtr,
-                                                       final double lat1,
-                                                       final double lon1,
-                                                       final double lat2,
-                                                       final double lon2,
-                                                       final long outmask);
- 
+
+  /**
+   * Validates the method of an approximation.
+   */
+  private static void checkMethod(final DistanceMethod method) {
+    if (method == null) {
+      throw new IllegalArgumentException("method must not be null");
+    }
+  }
+
+  /**
+   * Validates the tolerance of an adaptive distance.
+   */
+  private static void checkTolerance(final double tolerance) {
+    if (!(tolerance >= 0)) {
+      throw new IllegalArgumentException("tolerance (" + tolerance
+                                         + ") must be non-negative");
+    }
+  }
+
   /**
    * Describe <code>getMajorRadius</code> method here.
    *
    * @return a <code>double</code> value
    */
   public final double getMajorRadius() {
-    return nativeMajorRadius(this.geodesicCppPtr);
+    return majorRadius;
   }
-  private static native double nativeMajorRadius(final long geodesicCppPtr);
+  static native double nativeMajorRadius(final long geodesicCppPtr);
  
   /**
    * Describe <code>getFlattening</code> method here.
@@ -310,9 +2386,9 @@ public class Geodesic implements Closeable {
    * @return a <code>double</code> value
    */
   public final double getFlattening() {
-    return nativeFlattening(this.geodesicCppPtr);
+    return flattening;
   }
-  private static native double nativeFlattening(final long geodesicCppPtr);
+  static native double nativeFlattening(final long geodesicCppPtr);
  
   /**
    * Describe <code>getEllipsoidArea</code> method here.
@@ -320,12 +2396,9 @@ public class Geodesic implements Closeable {
    * @return a <code>double</code> value
    */
   public final double getEllipsoidArea() {
-    return nativeEllipsoidArea(this.geodesicCppPtr);
+    return ellipsoidArea;
   }
-  private static native double nativeEllipsoidArea(final long geodesicCppPtr);
-
-  // @todo Interface to GeodesicLine.
-  // GeodesicLine 	Line (double lat1, double lon1, double azi1, unsigned caps=ALL) const throw ()
+  static native double nativeEllipsoidArea(final long geodesicCppPtr);
 
   /**
    * Get a string representation of this object.
@@ -354,13 +2427,13 @@ public class Geodesic implements Closeable {
   public final int hashCode() {
     int code = 11;
 
+    // only the parameters equals() compares: the ellipsoid area is derived
+    // from them, but computed by the engine, and WGS84 computes it in Java
     double major_radius = getMajorRadius();
     double flattening = getFlattening();
-    double ellipsoid_area = getEllipsoidArea();
     
     code = code * 37 + (int) (Double.doubleToLongBits(major_radius) ^ (Double.doubleToLongBits(major_radius) >> 32));
     code = code * 37 + (int) (Double.doubleToLongBits(flattening) ^ (Double.doubleToLongBits(flattening) >> 32));
-    code = code * 37 + (int) (Double.doubleToLongBits(ellipsoid_area) ^ (Double.doubleToLongBits(ellipsoid_area) >> 32));
     
     return code;
   }
@@ -891,6 +2964,32 @@ public class Geodesic implements Closeable {
           .toString();
     }
 
+    /**
+     * Calculate the hash code for this object.
+     * 
+     * <p>The rules laid out in J. Blosh's Effective Java are used
+     * for the hash code calculation.</p>
+     * 
+     * @return the hash code.
+     * 
+     * @see java.lang.Object#hashCode
+     */
+    public int hashCode() {
+      int code = 17;
+      
+      code = code * 37 + (int) (outmask ^ (outmask >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(s12) ^ (Double.doubleToLongBits(s12) >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(azi1) ^ (Double.doubleToLongBits(azi1) >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(azi2) ^ (Double.doubleToLongBits(azi2) >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(m12) ^ (Double.doubleToLongBits(m12) >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(M12) ^ (Double.doubleToLongBits(M12) >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(M21) ^ (Double.doubleToLongBits(M21) >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(S12) ^ (Double.doubleToLongBits(S12) >> 32));
+      code = code * 37 + (int) (Double.doubleToLongBits(a12) ^ (Double.doubleToLongBits(a12) >> 32));
+      
+      return code;
+    }
+
     /**
      * Check if this object is equal (equivalent) to another object.
      */
@@ -919,5 +3018,267 @@ public class Geodesic implements Closeable {
     
   } // End DirectResult
 
+  /**
+   * <code>MutableDirectResult</code>, a reusable holder for the results of
+   * the direct() functions which take a result argument. Unlike
+   * {@link DirectResult} it doesn't reference the <code>Geodesic</code> that
+   * filled it, so one holder per thread can be reused for every call.
+   * A holder must not be shared between threads without synchronization.
+   *
+   * @version 1.29
+   */
+  public static final class MutableDirectResult {
+    // indices into values, the order is the one written by the native code
+    private static final int LAT2 = 0;
+    private static final int LON2 = 1;
+    private static final int AZI2 = 2;
+    private static final int M12_REDUCED = 3;
+    private static final int M12 = 4;
+    private static final int M21 = 5;
+    private static final int S12_AREA = 6;
+    private static final int A12 = 7;
+    private static final int S12 = 8;
+    private static final int COUNT = 9;
+
+    // package-private so the other backends can fill the holder
+    final double[] values = new double[COUNT];
+    long outmask;
+
+    /**
+     * Creates a new, empty <code>MutableDirectResult</code> instance.
+     */
+    public MutableDirectResult() {
+      this.outmask = MASK_NONE;
+    }
+
+    /**
+     * Get the outmask used by the last call which filled this holder.
+     * @return a <code>long</code> value
+     */
+    public long getOutmask() {
+      return outmask;
+    }
+
+    /**
+     * Get the <code>Latitude</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getLat2() {
+      return values[LAT2];
+    }
+
+    /**
+     * Get the <code>Longitude</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getLon2() {
+      return values[LON2];
+    }
+
+    /**
+     * Get the <code>Azimuth</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getAzi2() {
+      return values[AZI2];
+    }
+
+    /**
+     * Get the <code>m12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getm12() {
+      return values[M12_REDUCED];
+    }
+
+    /**
+     * Get the <code>M12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getM12() {
+      return values[M12];
+    }
+
+    /**
+     * Get the <code>M21</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getM21() {
+      return values[M21];
+    }
+
+    /**
+     * Get the <code>S12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getS12() {
+      return values[S12_AREA];
+    }
+
+    /**
+     * Get the <code>a12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getA12() {
+      return values[A12];
+    }
+
+    /**
+     * Get the <code>s12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double gets12() {
+      return values[S12];
+    }
+
+    /**
+     * Get a string representation of this object.
+     * 
+     * @return a string representation of this object.
+     * 
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("outmask=" + outmask)
+          .append(", lat2=" + getLat2())
+          .append(", lon2=" + getLon2())
+          .append(", azi2=" + getAzi2())
+          .append(", m12=" + getm12())
+          .append(", M12=" + getM12())
+          .append(", M21=" + getM21())
+          .append(", S12=" + getS12())
+          .append(", a12=" + getA12())
+          .append(", s12=" + gets12())
+          .toString();
+    }
+
+  } // end MutableDirectResult
+
+  /**
+   * <code>MutableInverseResult</code>, a reusable holder for the results of
+   * the inverse() functions which take a result argument. Unlike
+   * {@link InverseResult} it doesn't reference the <code>Geodesic</code> that
+   * filled it, so one holder per thread can be reused for every call.
+   * A holder must not be shared between threads without synchronization.
+   *
+   * @version 1.29
+   */
+  public static final class MutableInverseResult {
+    // indices into values, the order is the one written by the native code
+    private static final int S12 = 0;
+    private static final int AZI1 = 1;
+    private static final int AZI2 = 2;
+    private static final int M12_REDUCED = 3;
+    private static final int M12 = 4;
+    private static final int M21 = 5;
+    private static final int S12_AREA = 6;
+    private static final int A12 = 7;
+    private static final int COUNT = 8;
+
+    // package-private so the other backends can fill the holder
+    final double[] values = new double[COUNT];
+    long outmask;
+
+    /**
+     * Creates a new, empty <code>MutableInverseResult</code> instance.
+     */
+    public MutableInverseResult() {
+      this.outmask = MASK_NONE;
+    }
+
+    /**
+     * Get the outmask used by the last call which filled this holder.
+     * @return a <code>long</code> value
+     */
+    public long getOutmask() {
+      return outmask;
+    }
+
+    /**
+     * Get the <code>s12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double gets12() {
+      return values[S12];
+    }
+
+    /**
+     * Get the <code>Azimuth</code> value at point 1.
+     * @return a <code>double</code> value
+     */
+    public double getAzi1() {
+      return values[AZI1];
+    }
+
+    /**
+     * Get the <code>Azimuth</code> value at point 2.
+     * @return a <code>double</code> value
+     */
+    public double getAzi2() {
+      return values[AZI2];
+    }
+
+    /**
+     * Get the <code>m12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getm12() {
+      return values[M12_REDUCED];
+    }
+
+    /**
+     * Get the <code>M12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getM12() {
+      return values[M12];
+    }
+
+    /**
+     * Get the <code>M21</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getM21() {
+      return values[M21];
+    }
+
+    /**
+     * Get the <code>S12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getS12() {
+      return values[S12_AREA];
+    }
+
+    /**
+     * Get the <code>a12</code> value.
+     * @return a <code>double</code> value
+     */
+    public double getA12() {
+      return values[A12];
+    }
+
+    /**
+     * Get a string representation of this object.
+     * 
+     * @return a string representation of this object.
+     * 
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("outmask=" + outmask)
+          .append(", s12=" + gets12())
+          .append(", azi1=" + getAzi1())
+          .append(", azi2=" + getAzi2())
+          .append(", m12=" + getm12())
+          .append(", M12=" + getM12())
+          .append(", M21=" + getM21())
+          .append(", S12=" + getS12())
+          .append(", a12=" + getA12())
+          .toString();
+    }
+
+  } // end MutableInverseResult
+
 } // end Geodesic
  
@@ -0,0 +1,498 @@
+package net.sf.geographiclib;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>GeodesicCache</code>, a bounded, thread-safe cache of inverse
+ * solutions for workloads which ask for the same legs over and over (e.g.
+ * depot to customer distances).
+ *
+ * A cache belongs to one {@link Geodesic}, so the ellipsoid is implied and
+ * the entries are keyed by the outmask and the coordinates quantized to
+ * <code>precision</code> degrees. The inverse problem is solved at the
+ * quantized coordinates, so the result for a key doesn't depend on which
+ * caller missed first; with the default precision of 1e-7 degrees (about
+ * 1 cm) this is well below the accuracy of most inputs.
+ *
+ * The entries are spread over independently locked segments, each evicting
+ * its least recently used entry when full. Misses are solved outside of the
+ * segment lock. If <code>symmetric</code> is set, (b, a) is served from the
+ * entry for (a, b): the distance, arc length and reduced length are the same,
+ * the azimuths are swapped and reversed, M12 and M21 are swapped and the area
+ * changes sign.
+ *
+ * @version 1.29
+ */
+public class GeodesicCache {
+
+  /**
+   * Default quantization of the coordinates (degrees).
+   */
+  public static final double DEFAULT_PRECISION = 1e-7;
+
+  // indices into the cached values, the order of the InverseResult
+  // constructor arguments
+  private static final int S12 = 0;
+  private static final int AZI1 = 1;
+  private static final int AZI2 = 2;
+  private static final int M12_REDUCED = 3;
+  private static final int M12 = 4;
+  private static final int M21 = 5;
+  private static final int S12_AREA = 6;
+  private static final int A12 = 7;
+
+  private final Geodesic geodesic;
+  private final int maximumSize;
+  private final double precision;
+  private final boolean symmetric;
+  private final Segment[] segments;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates a new <code>GeodesicCache</code> instance with the default
+   * precision which serves (b, a) from (a, b).
+   *
+   * @param geodesic the ellipsoid used to solve the misses.
+   * @param maximumSize maximum number of entries.
+   */
+  public GeodesicCache(final Geodesic geodesic, final int maximumSize) {
+    this(geodesic, maximumSize, DEFAULT_PRECISION, true);
+  }
+
+  /**
+   * Creates a new <code>GeodesicCache</code> instance.
+   *
+   * @param geodesic the ellipsoid used to solve the misses.
+   * @param maximumSize maximum number of entries.
+   * @param precision quantization of the coordinates (degrees).
+   * @param symmetric if true (b, a) is served from the entry for (a, b).
+   */
+  public GeodesicCache(final Geodesic geodesic,
+                       final int maximumSize,
+                       final double precision,
+                       final boolean symmetric) {
+    if (geodesic == null) {
+      throw new IllegalArgumentException("geodesic must not be null");
+    }
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("maximumSize must be positive");
+    }
+    if (!(precision > 0) || Double.isInfinite(precision)) {
+      throw new IllegalArgumentException("precision must be positive");
+    }
+    this.geodesic = geodesic;
+    this.maximumSize = maximumSize;
+    this.precision = precision;
+    this.symmetric = symmetric;
+
+    // a power of two number of segments, a few per processor but never so
+    // many that a segment holds less than 16 entries
+    int wanted = Math.min(4 * Runtime.getRuntime().availableProcessors(),
+                          Math.max(1, maximumSize / 16));
+    int count = Integer.highestOneBit(wanted);
+    segments = new Segment[count];
+    int capacity = (maximumSize + count - 1) / count;
+    for (int i = 0; i < count; ++i) {
+      segments[i] = new Segment(capacity);
+    }
+  }
+
+  /**
+   * Get the ellipsoid used to solve the misses.
+   * @return a <code>Geodesic</code> value
+   */
+  public final Geodesic getGeodesic() {
+    return geodesic;
+  }
+
+  /**
+   * Get the maximum number of entries.
+   * @return an <code>int</code> value
+   */
+  public final int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Get the quantization of the coordinates.
+   * @return a <code>double</code> value (degrees)
+   */
+  public final double getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Get whether (b, a) is served from the entry for (a, b).
+   * @return a <code>boolean</code> value
+   */
+  public final boolean isSymmetric() {
+    return symmetric;
+  }
+
+  /**
+   * Cached version of {@link Geodesic#inverse(double, double, double, double)}.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return an <code>InverseResult</code> value
+   */
+  public final Geodesic.InverseResult inverse(final double lat1,
+                                              final double lon1,
+                                              final double lat2,
+                                              final double lon2) {
+    return genInverse(lat1, lon1, lat2, lon2, Geodesic.MASK_ALL);
+  }
+
+  /**
+   * Cached version of
+   * {@link Geodesic#genInverse(double, double, double, double, long)}.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @param outmask a bitor'ed combination of the
+   *     <code>Geodesic.MASK_*</code> values specifying which outputs to
+   *     calculate.
+   * @return an <code>InverseResult</code> value
+   */
+  public final Geodesic.InverseResult genInverse(final double lat1,
+                                                 final double lon1,
+                                                 final double lat2,
+                                                 final double lon2,
+                                                 final long outmask) {
+    double[] v = new double[A12 + 1];
+    lookup(lat1, lon1, lat2, lon2, outmask, v);
+    return geodesic.new InverseResult(outmask, v[S12], v[AZI1], v[AZI2],
+                                      v[M12_REDUCED], v[M12], v[M21],
+                                      v[S12_AREA], v[A12]);
+  }
+
+  /**
+   * Cached version of
+   * {@link Geodesic#genInverse(double, double, double, double, long, Geodesic.MutableInverseResult)},
+   * which doesn't allocate on a hit.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @param outmask a bitor'ed combination of the
+   *     <code>Geodesic.MASK_*</code> values specifying which outputs to
+   *     calculate.
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   */
+  public final Geodesic.MutableInverseResult genInverse(final double lat1,
+                                                        final double lon1,
+                                                        final double lat2,
+                                                        final double lon2,
+                                                        final long outmask,
+                                                        final Geodesic.MutableInverseResult result) {
+    lookup(lat1, lon1, lat2, lon2, outmask, result.values);
+    result.outmask = outmask;
+    return result;
+  }
+
+  /**
+   * Cached version of {@link Geodesic#distance(double, double, double, double)}.
+   *
+   * @param lat1 latitude of point 1 (degrees).
+   * @param lon1 longitude of point 1 (degrees).
+   * @param lat2 latitude of point 2 (degrees).
+   * @param lon2 longitude of point 2 (degrees).
+   * @return distance between point 1 and point 2 (meters).
+   */
+  public final double distance(final double lat1,
+                               final double lon1,
+                               final double lat2,
+                               final double lon2) {
+    Key key = key(lat1, lon1, lat2, lon2, Geodesic.MASK_DISTANCE);
+    return entry(key)[S12];
+  }
+
+  /**
+   * Removes every entry, the statistics are kept.
+   */
+  public final void clear() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * Get the number of entries.
+   * @return an <code>int</code> value
+   */
+  public final int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Get a snapshot of the hit, miss and eviction counts.
+   * @return a <code>CacheStats</code> value
+   */
+  public final CacheStats getStats() {
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size());
+  }
+
+  /**
+   * Looks up (or solves and inserts) a query and writes the values, in the
+   * order of the InverseResult constructor arguments, to out.
+   */
+  private void lookup(final double lat1,
+                      final double lon1,
+                      final double lat2,
+                      final double lon2,
+                      final long outmask,
+                      final double[] out) {
+    Key key = key(lat1, lon1, lat2, lon2, outmask);
+    double[] v = entry(key);
+    System.arraycopy(v, 0, out, 0, A12 + 1);
+    if (key.swapped) {
+      // the outputs which weren't asked for are left as the engine set them
+      long requested = outmask & JavaGeodesic.OUT_MASK;
+      if ((requested & Geodesic.MASK_AZIMUTH) != 0) {
+        out[AZI1] = reverse(v[AZI2]);
+        out[AZI2] = reverse(v[AZI1]);
+      }
+      if ((requested & Geodesic.MASK_GEODESICSCALE) != 0) {
+        out[M12] = v[M21];
+        out[M21] = v[M12];
+      }
+      if ((requested & Geodesic.MASK_AREA) != 0) {
+        out[S12_AREA] = 0 - v[S12_AREA];
+      }
+    }
+  }
+
+  /**
+   * Get the cached values of key, solving the inverse problem on a miss.
+   * The returned array must not be modified.
+   */
+  private double[] entry(final Key key) {
+    Segment segment = segments[(key.hash ^ (key.hash >>> 16)) & (segments.length - 1)];
+    double[] v;
+    synchronized (segment) {
+      v = segment.get(key);
+    }
+    if (v != null) {
+      hits.increment();
+      return v;
+    }
+    misses.increment();
+    Geodesic.MutableInverseResult result = new Geodesic.MutableInverseResult();
+    geodesic.genInverse(key.lat1 * precision, key.lon1 * precision,
+                        key.lat2 * precision, key.lon2 * precision,
+                        key.outmask, result);
+    v = result.values;
+    synchronized (segment) {
+      segment.put(key, v);
+    }
+    return v;
+  }
+
+  /**
+   * Builds the key of a query, in canonical point order if symmetric.
+   */
+  private Key key(final double lat1,
+                  final double lon1,
+                  final double lat2,
+                  final double lon2,
+                  final long outmask) {
+    long qlat1 = Math.round(lat1 / precision);
+    long qlon1 = Math.round(lon1 / precision);
+    long qlat2 = Math.round(lat2 / precision);
+    long qlon2 = Math.round(lon2 / precision);
+    if (symmetric && (qlat1 > qlat2 || (qlat1 == qlat2 && qlon1 > qlon2))) {
+      return new Key(qlat2, qlon2, qlat1, qlon1, outmask, true);
+    }
+    return new Key(qlat1, qlon1, qlat2, qlon2, outmask, false);
+  }
+
+  /**
+   * Reverses an azimuth, the result is in [-180, 180].
+   */
+  private static double reverse(final double azi) {
+    return azi >= 0 ? azi - 180 : azi + 180;
+  }
+
+  /**
+   * The quantized coordinates and outmask of a query.
+   */
+  private static final class Key {
+    final long lat1;
+    final long lon1;
+    final long lat2;
+    final long lon2;
+    final long outmask;
+    // not part of the identity, true if the query was (point 2, point 1)
+    final boolean swapped;
+    final int hash;
+
+    Key(final long lat1,
+        final long lon1,
+        final long lat2,
+        final long lon2,
+        final long outmask,
+        final boolean swapped) {
+      this.lat1 = lat1;
+      this.lon1 = lon1;
+      this.lat2 = lat2;
+      this.lon2 = lon2;
+      this.outmask = outmask;
+      this.swapped = swapped;
+      int code = 11;
+      code = code * 37 + (int) (lat1 ^ (lat1 >>> 32));
+      code = code * 37 + (int) (lon1 ^ (lon1 >>> 32));
+      code = code * 37 + (int) (lat2 ^ (lat2 >>> 32));
+      code = code * 37 + (int) (lon2 ^ (lon2 >>> 32));
+      code = code * 37 + (int) (outmask ^ (outmask >>> 32));
+      this.hash = code;
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(final Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key o = (Key) obj;
+      return (lat1 == o.lat1) &&
+          (lon1 == o.lon1) &&
+          (lat2 == o.lat2) &&
+          (lon2 == o.lon2) &&
+          (outmask == o.outmask);
+    }
+  }
+
+  /**
+   * One independently locked LRU segment, guarded by its own monitor.
+   */
+  private final class Segment extends LinkedHashMap<Key, double[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    Segment(final int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    protected boolean removeEldestEntry(final Map.Entry<Key, double[]> eldest) {
+      if (size() > capacity) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * <code>CacheStats</code>, a snapshot of the statistics of a
+   * <code>GeodesicCache</code>.
+   *
+   * @version 1.29
+   */
+  public static final class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    /**
+     * Creates a new <code>CacheStats</code> instance.
+     *
+     * @param hits number of queries served from the cache.
+     * @param misses number of queries which solved the inverse problem.
+     * @param evictions number of entries evicted to make room.
+     * @param size number of entries.
+     */
+    public CacheStats(final long hits,
+                      final long misses,
+                      final long evictions,
+                      final int size) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.size = size;
+    }
+
+    /**
+     * Get the number of queries served from the cache.
+     * @return a <code>long</code> value
+     */
+    public long getHits() {
+      return hits;
+    }
+
+    /**
+     * Get the number of queries which solved the inverse problem.
+     * @return a <code>long</code> value
+     */
+    public long getMisses() {
+      return misses;
+    }
+
+    /**
+     * Get the number of entries evicted to make room.
+     * @return a <code>long</code> value
+     */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /**
+     * Get the number of entries.
+     * @return an <code>int</code> value
+     */
+    public int getSize() {
+      return size;
+    }
+
+    /**
+     * Get the fraction of the queries served from the cache.
+     * @return a <code>double</code> value
+     */
+    public double getHitRate() {
+      long requests = hits + misses;
+      return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("hits=" + hits)
+          .append(", misses=" + misses)
+          .append(", evictions=" + evictions)
+          .append(", size=" + size)
+          .append(", hitRate=" + getHitRate())
+          .toString();
+    }
+  } // end CacheStats
+
+} // end GeodesicCache
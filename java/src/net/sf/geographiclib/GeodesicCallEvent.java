@@ -0,0 +1,39 @@
+package net.sf.geographiclib;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <code>GeodesicCallEvent</code>, the JDK Flight Recorder event of a sampled
+ * {@link Geodesic} call, see {@link GeodesicInstrumentation}.
+ *
+ * @version 1.29
+ */
+@Name("net.sf.geographiclib.GeodesicCall")
+@Label("Geodesic Call")
+@Category("GeographicLib")
+@Description("A sampled call of a geodesic function")
+@StackTrace(false)
+final class GeodesicCallEvent extends Event {
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Engine")
+  String engine;
+
+  @Label("Outmask")
+  long outmask;
+
+  @Label("Geodesics")
+  @Description("Number of geodesics solved by the call")
+  long count;
+
+  @Label("Iterations")
+  @Description("Iterations of the inverse problem, -1 if unknown")
+  int iterations;
+}
@@ -0,0 +1,34 @@
+package net.sf.geographiclib;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <code>GeodesicConstructionEvent</code>, the JDK Flight Recorder event of
+ * the construction of a {@link Geodesic}, see
+ * {@link GeodesicInstrumentation}.
+ *
+ * @version 1.29
+ */
+@Name("net.sf.geographiclib.GeodesicConstruction")
+@Label("Geodesic Construction")
+@Category("GeographicLib")
+@Description("Construction of a Geodesic instance")
+final class GeodesicConstructionEvent extends Event {
+
+  @Label("Engine")
+  String engine;
+
+  @Label("Equatorial Radius")
+  double a;
+
+  @Label("Flattening")
+  double f;
+
+  @Label("Native Allocated")
+  @Description("True if a new C++ object was allocated instead of shared")
+  boolean nativeAllocated;
+}
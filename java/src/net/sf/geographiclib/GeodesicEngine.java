@@ -0,0 +1,60 @@
+package net.sf.geographiclib;
+
+/**
+ * <code>GeodesicEngine</code> selects the implementation used by a
+ * {@link Geodesic} instance.
+ *
+ * The default engine is read from the <code>net.sf.geographiclib.engine</code>
+ * system property (<code>native</code>, <code>foreign</code> or
+ * <code>java</code>). If the property isn't set, or asks for an engine which
+ * can't be loaded, the native engine is used when available and the pure
+ * Java engine otherwise.
+ *
+ * @version 1.29
+ */
+public enum GeodesicEngine {
+
+  /**
+   * The C++ GeographicLib called through JNI. Best for the batch, off-heap
+   * and distance matrix functions where the JNI transition is amortized over
+   * many geodesics.
+   */
+  NATIVE,
+
+  /**
+   * The same shared C++ objects as {@link #NATIVE}, with the single direct,
+   * inverse, distance, azimuth and destination calls made through
+   * <code>java.lang.foreign</code> downcalls instead of JNI; the other calls
+   * use JNI. Needs the classes built by <code>ant compile.ffm</code> and
+   * JDK 22, or JDK 21 run with <code>--enable-preview</code>.
+   */
+  FOREIGN,
+
+  /**
+   * A pure Java port of the same algorithms. Avoids the JNI transition for
+   * single calls and doesn't need the native library.
+   */
+  JAVA;
+
+  /**
+   * Name of the system property which selects the default engine.
+   */
+  public static final String PROPERTY = "net.sf.geographiclib.engine";
+
+  /**
+   * Get the engine used by the constructors which don't take one.
+   *
+   * @return a <code>GeodesicEngine</code> value
+   */
+  public static GeodesicEngine getDefault() {
+    String value = System.getProperty(PROPERTY);
+    if (value != null && value.trim().equalsIgnoreCase(JAVA.name())) {
+      return JAVA;
+    }
+    if (value != null && value.trim().equalsIgnoreCase(FOREIGN.name())
+        && ForeignEngine.isAvailable()) {
+      return FOREIGN;
+    }
+    return LibraryLoader.isAvailable() ? NATIVE : JAVA;
+  }
+}
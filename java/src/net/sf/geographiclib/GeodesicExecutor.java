@@ -0,0 +1,327 @@
+package net.sf.geographiclib;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>GeodesicExecutor</code> runs the batch direct and inverse functions
+ * of a {@link Geodesic} in parallel on a {@link java.util.concurrent.ForkJoinPool}.
+ *
+ * A batch is split recursively in halves until the chunks are small enough
+ * for every worker of the pool to get a few of them, but never smaller than
+ * the sequential cutoff. Batches which aren't larger than the cutoff are run
+ * directly on the calling thread. Every chunk is one native batch call on
+ * the shared <code>Geodesic</code>, which is safe to use from many threads
+ * as long as it isn't closed while a batch is running.
+ *
+ * Every batch returns a {@link BatchStats} with its throughput so the
+ * sequential cutoff can be tuned for a particular host.
+ *
+ * @version 1.29
+ */
+public class GeodesicExecutor {
+
+  /**
+   * Default minimum number of elements in a chunk.
+   */
+  public static final int DEFAULT_SEQUENTIAL_CUTOFF = 4096;
+
+  /**
+   * Number of chunks per pool worker aimed for when splitting a batch, more
+   * than one so that workers which finish early can steal work.
+   */
+  private static final int CHUNKS_PER_WORKER = 4;
+
+  private final Geodesic geodesic;
+  private final ForkJoinPool pool;
+  private final int sequentialCutoff;
+
+  /**
+   * Creates a new <code>GeodesicExecutor</code> instance which uses the
+   * common pool and the default sequential cutoff.
+   *
+   * @param geodesic the ellipsoid used for every batch.
+   */
+  public GeodesicExecutor(final Geodesic geodesic) {
+    this(geodesic, ForkJoinPool.commonPool(), DEFAULT_SEQUENTIAL_CUTOFF);
+  }
+
+  /**
+   * Creates a new <code>GeodesicExecutor</code> instance.
+   *
+   * @param geodesic the ellipsoid used for every batch.
+   * @param pool the pool which runs the chunks.
+   * @param sequentialCutoff minimum number of elements in a chunk; batches
+   *     of at most this many elements aren't split.
+   */
+  public GeodesicExecutor(final Geodesic geodesic,
+                          final ForkJoinPool pool,
+                          final int sequentialCutoff) {
+    if (geodesic == null || pool == null) {
+      throw new IllegalArgumentException("geodesic and pool must not be null");
+    }
+    if (sequentialCutoff < 1) {
+      throw new IllegalArgumentException("sequentialCutoff must be positive");
+    }
+    this.geodesic = geodesic;
+    this.pool = pool;
+    this.sequentialCutoff = sequentialCutoff;
+  }
+
+  /**
+   * Get the ellipsoid used for every batch.
+   * @return a <code>Geodesic</code> value
+   */
+  public final Geodesic getGeodesic() {
+    return geodesic;
+  }
+
+  /**
+   * Get the pool which runs the chunks.
+   * @return a <code>ForkJoinPool</code> value
+   */
+  public final ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Get the minimum number of elements in a chunk.
+   * @return an <code>int</code> value
+   */
+  public final int getSequentialCutoff() {
+    return sequentialCutoff;
+  }
+
+  /**
+   * Parallel version of
+   * {@link Geodesic#genInverse(double[], double[], double[], double[], int, int, long, double[], double[], double[], double[], double[], double[], double[], double[])},
+   * see there for a description of the parameters.
+   *
+   * @return statistics of the batch.
+   */
+  public final BatchStats genInverse(final double[] lat1,
+                                     final double[] lon1,
+                                     final double[] lat2,
+                                     final double[] lon2,
+                                     final int offset,
+                                     final int length,
+                                     final long outmask,
+                                     final double[] s12,
+                                     final double[] azi1,
+                                     final double[] azi2,
+                                     final double[] m12,
+                                     final double[] M12,
+                                     final double[] M21,
+                                     final double[] S12,
+                                     final double[] a12) {
+    // validate up front so errors are reported on the calling thread
+    Geodesic.checkBatchRange(offset, length);
+    Geodesic.checkBatchInput(lat1, "lat1", offset, length);
+    Geodesic.checkBatchInput(lon1, "lon1", offset, length);
+    Geodesic.checkBatchInput(lat2, "lat2", offset, length);
+    Geodesic.checkBatchInput(lon2, "lon2", offset, length);
+    Geodesic.checkBatchOutput(s12, "s12", offset, length);
+    Geodesic.checkBatchOutput(azi1, "azi1", offset, length);
+    Geodesic.checkBatchOutput(azi2, "azi2", offset, length);
+    Geodesic.checkBatchOutput(m12, "m12", offset, length);
+    Geodesic.checkBatchOutput(M12, "M12", offset, length);
+    Geodesic.checkBatchOutput(M21, "M21", offset, length);
+    Geodesic.checkBatchOutput(S12, "S12", offset, length);
+    Geodesic.checkBatchOutput(a12, "a12", offset, length);
+    return run(offset, length, new Chunk() {
+        public void run(final int chunkOffset, final int chunkLength) {
+          geodesic.genInverse(lat1, lon1, lat2, lon2,
+                              chunkOffset, chunkLength, outmask,
+                              s12, azi1, azi2, m12, M12, M21, S12, a12);
+        }
+      });
+  }
+
+  /**
+   * Parallel version of
+   * {@link Geodesic#genDirect(double[], double[], double[], boolean, double[], int, int, long, double[], double[], double[], double[], double[], double[], double[], double[], double[])},
+   * see there for a description of the parameters.
+   *
+   * @return statistics of the batch.
+   */
+  public final BatchStats genDirect(final double[] lat1,
+                                    final double[] lon1,
+                                    final double[] azi1,
+                                    final boolean arcmode,
+                                    final double[] s12_a12,
+                                    final int offset,
+                                    final int length,
+                                    final long outmask,
+                                    final double[] lat2,
+                                    final double[] lon2,
+                                    final double[] azi2,
+                                    final double[] s12,
+                                    final double[] m12,
+                                    final double[] M12,
+                                    final double[] M21,
+                                    final double[] S12,
+                                    final double[] a12) {
+    // validate up front so errors are reported on the calling thread
+    Geodesic.checkBatchRange(offset, length);
+    Geodesic.checkBatchInput(lat1, "lat1", offset, length);
+    Geodesic.checkBatchInput(lon1, "lon1", offset, length);
+    Geodesic.checkBatchInput(azi1, "azi1", offset, length);
+    Geodesic.checkBatchInput(s12_a12, "s12_a12", offset, length);
+    Geodesic.checkBatchOutput(lat2, "lat2", offset, length);
+    Geodesic.checkBatchOutput(lon2, "lon2", offset, length);
+    Geodesic.checkBatchOutput(azi2, "azi2", offset, length);
+    Geodesic.checkBatchOutput(s12, "s12", offset, length);
+    Geodesic.checkBatchOutput(m12, "m12", offset, length);
+    Geodesic.checkBatchOutput(M12, "M12", offset, length);
+    Geodesic.checkBatchOutput(M21, "M21", offset, length);
+    Geodesic.checkBatchOutput(S12, "S12", offset, length);
+    Geodesic.checkBatchOutput(a12, "a12", offset, length);
+    return run(offset, length, new Chunk() {
+        public void run(final int chunkOffset, final int chunkLength) {
+          geodesic.genDirect(lat1, lon1, azi1, arcmode, s12_a12,
+                             chunkOffset, chunkLength, outmask,
+                             lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+        }
+      });
+  }
+
+  /**
+   * Runs chunk over [offset, offset + length), splitting it as needed.
+   */
+  private BatchStats run(final int offset, final int length, final Chunk chunk) {
+    long start = System.nanoTime();
+    int chunks;
+    if (length <= sequentialCutoff) {
+      chunk.run(offset, length);
+      chunks = 1;
+    } else {
+      int target = pool.getParallelism() * CHUNKS_PER_WORKER;
+      int granularity = Math.max(sequentialCutoff, (length + target - 1) / target);
+      LongAdder counter = new LongAdder();
+      pool.invoke(new ChunkTask(chunk, offset, length, granularity, counter));
+      chunks = counter.intValue();
+    }
+    return new BatchStats(length, chunks, System.nanoTime() - start);
+  }
+
+  /**
+   * One native batch call over a slice of the arrays.
+   */
+  private interface Chunk {
+    void run(int offset, int length);
+  }
+
+  /**
+   * Splits a slice in halves while both halves are at least as large as
+   * the granularity, so that no chunk is smaller than the cutoff.
+   */
+  private static final class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    // tasks only live inside the pool, they are never serialized
+    private final transient Chunk chunk;
+    private final int offset;
+    private final int length;
+    private final int granularity;
+    private final LongAdder counter;
+
+    ChunkTask(final Chunk chunk,
+              final int offset,
+              final int length,
+              final int granularity,
+              final LongAdder counter) {
+      this.chunk = chunk;
+      this.offset = offset;
+      this.length = length;
+      this.granularity = granularity;
+      this.counter = counter;
+    }
+
+    protected void compute() {
+      // split only if length >= 2 * granularity, without overflowing
+      int half = length >>> 1;
+      if (half < granularity) {
+        chunk.run(offset, length);
+        counter.increment();
+        return;
+      }
+      invokeAll(new ChunkTask(chunk, offset, half, granularity, counter),
+                new ChunkTask(chunk, offset + half, length - half, granularity,
+                              counter));
+    }
+  }
+
+  /**
+   * <code>BatchStats</code>, the statistics of one batch run by a
+   * <code>GeodesicExecutor</code>.
+   *
+   * @version 1.29
+   */
+  public static final class BatchStats {
+    private final int length;
+    private final int chunks;
+    private final long elapsedNanos;
+
+    /**
+     * Creates a new <code>BatchStats</code> instance.
+     *
+     * @param length number of elements in the batch.
+     * @param chunks number of chunks the batch was split into.
+     * @param elapsedNanos wall clock time of the batch (nanoseconds).
+     */
+    public BatchStats(final int length, final int chunks, final long elapsedNanos) {
+      this.length = length;
+      this.chunks = chunks;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the number of elements in the batch.
+     * @return an <code>int</code> value
+     */
+    public int getLength() {
+      return length;
+    }
+
+    /**
+     * Get the number of chunks the batch was split into.
+     * @return an <code>int</code> value
+     */
+    public int getChunks() {
+      return chunks;
+    }
+
+    /**
+     * Get the wall clock time of the batch.
+     * @return a <code>long</code> value (nanoseconds)
+     */
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /**
+     * Get the throughput of the batch.
+     * @return a <code>double</code> value (elements per second)
+     */
+    public double getThroughput() {
+      return elapsedNanos == 0 ? 0 : length * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("length=" + length)
+          .append(", chunks=" + chunks)
+          .append(", elapsedNanos=" + elapsedNanos)
+          .append(", throughput=" + getThroughput())
+          .toString();
+    }
+  } // end BatchStats
+
+} // end GeodesicExecutor
@@ -0,0 +1,1116 @@
+package net.sf.geographiclib;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>GeodesicIndex</code>, an in-memory spatial index of points on the
+ * ellipsoid of a {@link Geodesic} answering exact k-nearest-neighbour
+ * queries by geodesic distance.
+ *
+ * The points are converted to earth-centered, earth-fixed (ECEF)
+ * coordinates and organized as a k-d tree whose nodes carry the bounding
+ * box of their points. The straight line between two points is never
+ * longer than the geodesic joining them, so the distance from a query
+ * point to a box (or a point) in ECEF coordinates is a conservative lower
+ * bound of the geodesic distance. A query visits the nodes in the order of
+ * their bounds and stops as soon as no node can hold a point nearer than
+ * the k'th found so far; only the points of the visited leaves which pass
+ * the same test get their geodesic distance computed, with one batch
+ * inverse call per leaf. The results are therefore exact. Radius queries,
+ * and the spatial join of many centers with the index, prune the nodes and
+ * points the same way.
+ *
+ * All the data is stored in primitive arrays in tree order (about 60 bytes
+ * per point). An index is immutable once built, so any number of threads
+ * may query it concurrently.
+ *
+ * @version 1.29
+ */
+public class GeodesicIndex {
+
+  /**
+   * Default maximum number of points in a leaf.
+   */
+  public static final int DEFAULT_LEAF_SIZE = 32;
+
+  /**
+   * Scale applied to the straight line distances so that rounding can never
+   * make them exceed the geodesic distances they bound.
+   */
+  private static final double LOWER_BOUND_SCALE = 1 - 1e-9;
+
+  /**
+   * Number of bounds stored per node: the minimum and maximum of x, y and z.
+   */
+  private static final int NODE_BOUNDS = 6;
+
+  /**
+   * Number of chunks per pool worker aimed for when splitting a join, more
+   * than one so that workers which finish early can steal work.
+   */
+  private static final int JOIN_CHUNKS_PER_WORKER = 4;
+
+  private final Geodesic geodesic;
+  private final int leafSize;
+  private final double a;
+  private final double e2;
+
+  // the points in tree order, indices holds their index in the arrays the
+  // index was built from
+  private final double[] lat;
+  private final double[] lon;
+  private final double[] x;
+  private final double[] y;
+  private final double[] z;
+  private final int[] indices;
+
+  // the nodes, a leaf has no left child, the right child always follows the
+  // left one
+  private final int[] nodeBegin;
+  private final int[] nodeEnd;
+  private final int[] nodeLeft;
+  private final double[] nodeBounds;
+
+  /**
+   * Creates a new <code>GeodesicIndex</code> instance over all the points
+   * with the default leaf size.
+   *
+   * @param geodesic the ellipsoid of the points.
+   * @param lat latitudes of the points (degrees).
+   * @param lon longitudes of the points (degrees).
+   * @exception IllegalArgumentException if an array is missing, the arrays
+   *     have different lengths or a coordinate is invalid.
+   */
+  public GeodesicIndex(final Geodesic geodesic,
+                       final double[] lat,
+                       final double[] lon) {
+    this(geodesic, lat, lon, 0, allPoints(lat, lon), DEFAULT_LEAF_SIZE);
+  }
+
+  /**
+   * Creates a new <code>GeodesicIndex</code> instance over the points
+   * <code>offset</code> to <code>offset + length - 1</code>. The coordinates
+   * are copied, the arrays may be modified once the index is built.
+   *
+   * @param geodesic the ellipsoid of the points.
+   * @param lat latitudes of the points (degrees).
+   * @param lon longitudes of the points (degrees).
+   * @param offset index of the first point.
+   * @param length number of points.
+   * @param leafSize maximum number of points in a leaf.
+   * @exception IllegalArgumentException if an array is missing or too short,
+   *     <code>leafSize</code> isn't positive or a coordinate is invalid.
+   */
+  public GeodesicIndex(final Geodesic geodesic,
+                       final double[] lat,
+                       final double[] lon,
+                       final int offset,
+                       final int length,
+                       final int leafSize) {
+    if (geodesic == null) {
+      throw new IllegalArgumentException("geodesic must not be null");
+    }
+    if (leafSize < 1) {
+      throw new IllegalArgumentException("leafSize (" + leafSize
+                                         + ") must be positive");
+    }
+    Geodesic.checkBatchRange(offset, length);
+    Geodesic.checkBatchInput(lat, "lat", offset, length);
+    Geodesic.checkBatchInput(lon, "lon", offset, length);
+    this.geodesic = geodesic;
+    this.leafSize = leafSize;
+    double f = geodesic.getFlattening();
+    this.a = geodesic.getMajorRadius();
+    this.e2 = f * (2 - f);
+
+    // ECEF coordinates in input order
+    double[] ecef = new double[3];
+    double[][] coordinates = new double[3][length];
+    for (int i = 0; i < length; ++i) {
+      checkCoordinates(lat[offset + i], lon[offset + i]);
+      toEcef(lat[offset + i], lon[offset + i], ecef);
+      coordinates[0][i] = ecef[0];
+      coordinates[1][i] = ecef[1];
+      coordinates[2][i] = ecef[2];
+    }
+
+    int nodes = countNodes(length);
+    this.nodeBegin = new int[nodes];
+    this.nodeEnd = new int[nodes];
+    this.nodeLeft = new int[nodes];
+    this.nodeBounds = new double[nodes * NODE_BOUNDS];
+    int[] order = new int[length];
+    for (int i = 0; i < length; ++i) {
+      order[i] = i;
+    }
+    if (length > 0) {
+      build(order, coordinates, 0, 0, length, 1);
+    }
+
+    this.lat = new double[length];
+    this.lon = new double[length];
+    this.x = new double[length];
+    this.y = new double[length];
+    this.z = new double[length];
+    this.indices = new int[length];
+    for (int i = 0; i < length; ++i) {
+      int j = order[i];
+      this.lat[i] = lat[offset + j];
+      this.lon[i] = lon[offset + j];
+      this.x[i] = coordinates[0][j];
+      this.y[i] = coordinates[1][j];
+      this.z[i] = coordinates[2][j];
+      this.indices[i] = offset + j;
+    }
+  }
+
+  /**
+   * Get the ellipsoid of the points.
+   * @return a <code>Geodesic</code> value
+   */
+  public final Geodesic getGeodesic() {
+    return geodesic;
+  }
+
+  /**
+   * Get the maximum number of points in a leaf.
+   * @return an <code>int</code> value
+   */
+  public final int getLeafSize() {
+    return leafSize;
+  }
+
+  /**
+   * Get the number of points in the index.
+   * @return an <code>int</code> value
+   */
+  public final int size() {
+    return indices.length;
+  }
+
+  /**
+   * Finds the <code>k</code> points nearest to a query point.
+   *
+   * @param lat latitude of the query point (degrees).
+   * @param lon longitude of the query point (degrees).
+   * @param k number of points to find.
+   * @return the neighbours, nearest first.
+   * @exception IllegalArgumentException if <code>k</code> isn't positive or
+   *     a coordinate is invalid.
+   */
+  public final Neighbors nearest(final double lat,
+                                 final double lon,
+                                 final int k) {
+    int count = Math.min(k, size());
+    int[] found = new int[Math.max(count, 0)];
+    double[] distances = new double[found.length];
+    nearest(lat, lon, k, found, distances);
+    return new Neighbors(found, distances);
+  }
+
+  /**
+   * Finds the <code>k</code> points nearest to a query point. This version
+   * stores the results in the given arrays and returns their number, which
+   * is <code>k</code> unless the index holds fewer points.
+   *
+   * @param lat latitude of the query point (degrees).
+   * @param lon longitude of the query point (degrees).
+   * @param k number of points to find.
+   * @param found receives the indices of the points in the arrays the index
+   *     was built from, nearest first.
+   * @param distances receives the distances of the points (meters).
+   * @return the number of points found.
+   * @exception IllegalArgumentException if <code>k</code> isn't positive, a
+   *     coordinate is invalid or an array is missing or too short.
+   */
+  public final int nearest(final double lat,
+                           final double lon,
+                           final int k,
+                           final int[] found,
+                           final double[] distances) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k (" + k + ") must be positive");
+    }
+    checkCoordinates(lat, lon);
+    int count = Math.min(k, size());
+    if (found == null || found.length < count) {
+      throw new IllegalArgumentException("found must hold " + count + " elements");
+    }
+    Geodesic.checkBatchInput(distances, "distances", 0, count);
+    if (count == 0) {
+      return 0;
+    }
+
+    Search search = new Search(lat, lon, count);
+    search.pushNode(0);
+    while (search.queueSize > 0) {
+      double bound = search.queueKeys[0];
+      int node = search.popNode();
+      if (search.isFull() && bound > search.worst()) {
+        break;
+      }
+      if (nodeLeft[node] < 0) {
+        search.scanLeaf(node);
+      } else {
+        search.pushNode(nodeLeft[node]);
+        search.pushNode(nodeLeft[node] + 1);
+      }
+    }
+    search.drain(found, distances);
+    return count;
+  }
+
+  /**
+   * Finds the points within <code>radius</code> of a query point. Nodes and
+   * points are discarded on the straight line lower bound of their
+   * distance, the distances of the remaining points are computed with a
+   * single batch inverse call.
+   *
+   * @param lat latitude of the query point (degrees).
+   * @param lon longitude of the query point (degrees).
+   * @param radius the maximum distance (meters).
+   * @return the points, nearest first.
+   * @exception IllegalArgumentException if <code>radius</code> is negative
+   *     or a coordinate is invalid.
+   */
+  public final Neighbors within(final double lat,
+                                final double lon,
+                                final double radius) {
+    checkCoordinates(lat, lon);
+    checkRadius(radius);
+    Within within = new Within();
+    int count = within.search(lat, lon, radius);
+    return new Neighbors(Arrays.copyOf(within.found, count),
+                         Arrays.copyOf(within.distances, count));
+  }
+
+  /**
+   * Finds the points within <code>radius</code> of every center, in
+   * parallel on the common pool, see
+   * {@link #join(ForkJoinPool, double[], double[], int, int, double)}.
+   *
+   * @param lat latitudes of the centers (degrees).
+   * @param lon longitudes of the centers (degrees).
+   * @param offset index of the first center.
+   * @param length number of centers.
+   * @param radius the maximum distance (meters).
+   * @return the points within <code>radius</code> of every center.
+   * @exception IllegalArgumentException if an array is missing or too short,
+   *     <code>radius</code> is negative or a coordinate is invalid.
+   */
+  public final JoinResult join(final double[] lat,
+                               final double[] lon,
+                               final int offset,
+                               final int length,
+                               final double radius) {
+    return join(ForkJoinPool.commonPool(), lat, lon, offset, length, radius);
+  }
+
+  /**
+   * Finds the points within <code>radius</code> of the centers
+   * <code>offset</code> to <code>offset + length - 1</code>, the spatial
+   * join of the centers and the points of the index. The centers are split
+   * into chunks run on <code>pool</code>, every query being done as by
+   * {@link #within(double, double, double)}.
+   *
+   * @param pool the pool which runs the chunks.
+   * @param lat latitudes of the centers (degrees).
+   * @param lon longitudes of the centers (degrees).
+   * @param offset index of the first center.
+   * @param length number of centers.
+   * @param radius the maximum distance (meters).
+   * @return the points within <code>radius</code> of every center.
+   * @exception IllegalArgumentException if an array is missing or too short,
+   *     <code>radius</code> is negative or a coordinate is invalid.
+   */
+  public final JoinResult join(final ForkJoinPool pool,
+                               final double[] lat,
+                               final double[] lon,
+                               final int offset,
+                               final int length,
+                               final double radius) {
+    if (pool == null) {
+      throw new IllegalArgumentException("pool must not be null");
+    }
+    Geodesic.checkBatchRange(offset, length);
+    Geodesic.checkBatchInput(lat, "lat", offset, length);
+    Geodesic.checkBatchInput(lon, "lon", offset, length);
+    checkRadius(radius);
+    // validate up front so errors are reported on the calling thread
+    for (int i = offset; i < offset + length; ++i) {
+      checkCoordinates(lat[i], lon[i]);
+    }
+
+    int target = pool.getParallelism() * JOIN_CHUNKS_PER_WORKER;
+    int chunkLength = Math.max(1, (length + target - 1) / target);
+    JoinChunk[] chunks = new JoinChunk[(length + chunkLength - 1) / chunkLength];
+    for (int c = 0; c < chunks.length; ++c) {
+      int begin = offset + c * chunkLength;
+      chunks[c] = new JoinChunk(begin, Math.min(begin + chunkLength, offset + length));
+    }
+    if (chunks.length == 1) {
+      chunks[0].run(lat, lon, radius);
+    } else if (chunks.length > 1) {
+      pool.invoke(new JoinTask(chunks, 0, chunks.length, lat, lon, radius));
+    }
+
+    // concatenate the chunks
+    int[] offsets = new int[length + 1];
+    int total = 0;
+    for (JoinChunk chunk : chunks) {
+      total += chunk.size;
+    }
+    int[] found = new int[total];
+    double[] distances = new double[total];
+    int position = 0;
+    for (JoinChunk chunk : chunks) {
+      for (int i = 0; i < chunk.end - chunk.begin; ++i) {
+        offsets[chunk.begin - offset + i] = position + chunk.offsets[i];
+      }
+      System.arraycopy(chunk.found, 0, found, position, chunk.size);
+      System.arraycopy(chunk.distances, 0, distances, position, chunk.size);
+      position += chunk.size;
+    }
+    offsets[length] = total;
+    return new JoinResult(offsets, found, distances);
+  }
+
+  /**
+   * Converts a geodetic position on the surface of the ellipsoid to ECEF
+   * coordinates.
+   */
+  private void toEcef(final double lat, final double lon, final double[] ecef) {
+    GeoMath.Pair p = new GeoMath.Pair();
+    GeoMath.sincosd(p, lat);
+    double sphi = p.first;
+    double cphi = p.second;
+    GeoMath.sincosd(p, lon);
+    double n = a / Math.sqrt(1 - e2 * sphi * sphi);
+    ecef[0] = n * cphi * p.second;
+    ecef[1] = n * cphi * p.first;
+    ecef[2] = n * (1 - e2) * sphi;
+  }
+
+  /**
+   * Number of points of the arrays of all the points, validated before the
+   * tree is built. The arrays themselves are checked by the constructor.
+   */
+  private static int allPoints(final double[] lat, final double[] lon) {
+    if (lat == null || lon == null) {
+      return 0;
+    }
+    if (lat.length != lon.length) {
+      throw new IllegalArgumentException("lat and lon must have the same length");
+    }
+    return lat.length;
+  }
+
+  /**
+   * Validates the coordinates of a point.
+   */
+  private static void checkCoordinates(final double lat, final double lon) {
+    if (!(Math.abs(lat) <= 90) || !GeoMath.isFinite(lon)) {
+      throw new IllegalArgumentException("invalid coordinates (" + lat + ", "
+                                         + lon + ")");
+    }
+  }
+
+  /**
+   * Number of nodes of the tree of <code>length</code> points.
+   */
+  private int countNodes(final int length) {
+    if (length <= leafSize) {
+      return 1;
+    }
+    int half = length >>> 1;
+    return 1 + countNodes(half) + countNodes(length - half);
+  }
+
+  /**
+   * Builds node and its subtree over order[begin, end), returning the next
+   * free node.
+   */
+  private int build(final int[] order,
+                    final double[][] coordinates,
+                    final int node,
+                    final int begin,
+                    final int end,
+                    final int next) {
+    nodeBegin[node] = begin;
+    nodeEnd[node] = end;
+    int widest = 0;
+    for (int axis = 0; axis < 3; ++axis) {
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = begin; i < end; ++i) {
+        double value = coordinates[axis][order[i]];
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+      nodeBounds[node * NODE_BOUNDS + 2 * axis] = min;
+      nodeBounds[node * NODE_BOUNDS + 2 * axis + 1] = max;
+      if (max - min > nodeBounds[node * NODE_BOUNDS + 2 * widest + 1]
+          - nodeBounds[node * NODE_BOUNDS + 2 * widest]) {
+        widest = axis;
+      }
+    }
+    if (end - begin <= leafSize) {
+      nodeLeft[node] = -1;
+      return next;
+    }
+    // split at the median of the widest axis
+    int middle = begin + ((end - begin) >>> 1);
+    select(order, coordinates[widest], begin, end, middle);
+    nodeLeft[node] = next;
+    int free = build(order, coordinates, next, begin, middle, next + 2);
+    return build(order, coordinates, next + 1, middle, end, free);
+  }
+
+  /**
+   * Validates the radius of a query.
+   */
+  private static void checkRadius(final double radius) {
+    if (!(radius >= 0)) {
+      throw new IllegalArgumentException("radius (" + radius
+                                         + ") must be non-negative");
+    }
+  }
+
+  /**
+   * Sorts the first <code>count</code> keys in increasing order, moving the
+   * values along. A heapsort, so no scratch arrays are needed.
+   */
+  private static void sort(final double[] keys,
+                           final int[] values,
+                           final int count) {
+    for (int i = (count >>> 1) - 1; i >= 0; --i) {
+      siftDown(keys, values, i, count);
+    }
+    for (int end = count - 1; end > 0; --end) {
+      double key = keys[0];
+      int value = values[0];
+      keys[0] = keys[end];
+      values[0] = values[end];
+      keys[end] = key;
+      values[end] = value;
+      siftDown(keys, values, 0, end);
+    }
+  }
+
+  /**
+   * Moves element i of the max-heap of <code>count</code> keys down to its
+   * place.
+   */
+  private static void siftDown(final double[] keys,
+                               final int[] values,
+                               int i,
+                               final int count) {
+    double key = keys[i];
+    int value = values[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= count) {
+        break;
+      }
+      if (child + 1 < count && keys[child + 1] > keys[child]) {
+        ++child;
+      }
+      if (keys[child] <= key) {
+        break;
+      }
+      keys[i] = keys[child];
+      values[i] = values[child];
+      i = child;
+    }
+    keys[i] = key;
+    values[i] = value;
+  }
+
+  /**
+   * Partially sorts order[begin, end) by key so that element nth is in its
+   * sorted position, with no larger keys before it and no smaller ones
+   * after it.
+   */
+  private static void select(final int[] order,
+                             final double[] key,
+                             final int begin,
+                             final int end,
+                             final int nth) {
+    int lo = begin;
+    int hi = end - 1;
+    while (lo < hi) {
+      double pivot = key[order[(lo + hi) >>> 1]];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (key[order[i]] < pivot) {
+          ++i;
+        }
+        while (key[order[j]] > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          int t = order[i];
+          order[i] = order[j];
+          order[j] = t;
+          ++i;
+          --j;
+        }
+      }
+      if (nth <= j) {
+        hi = j;
+      } else if (nth >= i) {
+        lo = i;
+      } else {
+        break;
+      }
+    }
+  }
+
+  /**
+   * The state of one query: the queue of nodes still to visit and the
+   * heap of the best points found so far.
+   */
+  private final class Search {
+    private final double qx;
+    private final double qy;
+    private final double qz;
+    private final int k;
+
+    // min-heap of the nodes by lower bound
+    private double[] queueKeys = new double[64];
+    private int[] queueNodes = new int[64];
+    private int queueSize;
+
+    // max-heap of the best points by distance
+    private final double[] bestDistances;
+    private final int[] bestPoints;
+    private int bestSize;
+
+    // inputs and outputs of the batch inverse call of a leaf, the query
+    // point is repeated for every candidate
+    private final double[] queryLat;
+    private final double[] queryLon;
+    private final double[] candidateLat;
+    private final double[] candidateLon;
+    private final int[] candidates;
+    private final double[] s12;
+
+    Search(final double lat, final double lon, final int k) {
+      double[] ecef = new double[3];
+      toEcef(lat, lon, ecef);
+      this.qx = ecef[0];
+      this.qy = ecef[1];
+      this.qz = ecef[2];
+      this.k = k;
+      this.bestDistances = new double[k];
+      this.bestPoints = new int[k];
+      int leaf = Math.min(leafSize, size());
+      this.queryLat = new double[leaf];
+      this.queryLon = new double[leaf];
+      Arrays.fill(queryLat, lat);
+      Arrays.fill(queryLon, lon);
+      this.candidateLat = new double[leaf];
+      this.candidateLon = new double[leaf];
+      this.candidates = new int[leaf];
+      this.s12 = new double[leaf];
+    }
+
+    boolean isFull() {
+      return bestSize == k;
+    }
+
+    /**
+     * Get the distance of the k'th best point, infinite until k points
+     * were found.
+     */
+    double worst() {
+      return isFull() ? bestDistances[0] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Queues a node unless it can't hold a better point.
+     */
+    void pushNode(final int node) {
+      int b = node * NODE_BOUNDS;
+      double dx = Math.max(0, Math.max(nodeBounds[b] - qx, qx - nodeBounds[b + 1]));
+      double dy = Math.max(0, Math.max(nodeBounds[b + 2] - qy, qy - nodeBounds[b + 3]));
+      double dz = Math.max(0, Math.max(nodeBounds[b + 4] - qz, qz - nodeBounds[b + 5]));
+      double bound = Math.sqrt(dx * dx + dy * dy + dz * dz) * LOWER_BOUND_SCALE;
+      if (bound > worst()) {
+        return;
+      }
+      if (queueSize == queueKeys.length) {
+        queueKeys = Arrays.copyOf(queueKeys, 2 * queueSize);
+        queueNodes = Arrays.copyOf(queueNodes, 2 * queueSize);
+      }
+      // sift up
+      int i = queueSize++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (queueKeys[parent] <= bound) {
+          break;
+        }
+        queueKeys[i] = queueKeys[parent];
+        queueNodes[i] = queueNodes[parent];
+        i = parent;
+      }
+      queueKeys[i] = bound;
+      queueNodes[i] = node;
+    }
+
+    /**
+     * Removes the node with the smallest bound from the queue.
+     */
+    int popNode() {
+      int node = queueNodes[0];
+      --queueSize;
+      double key = queueKeys[queueSize];
+      int last = queueNodes[queueSize];
+      // sift down
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= queueSize) {
+          break;
+        }
+        if (child + 1 < queueSize && queueKeys[child + 1] < queueKeys[child]) {
+          ++child;
+        }
+        if (queueKeys[child] >= key) {
+          break;
+        }
+        queueKeys[i] = queueKeys[child];
+        queueNodes[i] = queueNodes[child];
+        i = child;
+      }
+      queueKeys[i] = key;
+      queueNodes[i] = last;
+      return node;
+    }
+
+    /**
+     * Computes the distances of the points of a leaf which may be better
+     * than the current ones in one batch.
+     */
+    void scanLeaf(final int node) {
+      double worst = worst();
+      int count = 0;
+      for (int i = nodeBegin[node]; i < nodeEnd[node]; ++i) {
+        double dx = x[i] - qx;
+        double dy = y[i] - qy;
+        double dz = z[i] - qz;
+        if (Math.sqrt(dx * dx + dy * dy + dz * dz) * LOWER_BOUND_SCALE <= worst) {
+          candidateLat[count] = lat[i];
+          candidateLon[count] = lon[i];
+          candidates[count] = i;
+          ++count;
+        }
+      }
+      if (count == 0) {
+        return;
+      }
+      geodesic.genInverse(queryLat, queryLon, candidateLat, candidateLon,
+                          0, count, Geodesic.MASK_DISTANCE,
+                          s12, null, null, null, null, null, null, null);
+      for (int j = 0; j < count; ++j) {
+        offer(candidates[j], s12[j]);
+      }
+    }
+
+    /**
+     * Adds a point to the best ones if it is nearer than the k'th.
+     */
+    void offer(final int point, final double distance) {
+      int i;
+      if (bestSize < k) {
+        // sift up
+        i = bestSize++;
+        while (i > 0) {
+          int parent = (i - 1) >>> 1;
+          if (bestDistances[parent] >= distance) {
+            break;
+          }
+          bestDistances[i] = bestDistances[parent];
+          bestPoints[i] = bestPoints[parent];
+          i = parent;
+        }
+      } else if (distance < bestDistances[0]) {
+        // replace the root and sift down
+        i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= bestSize) {
+            break;
+          }
+          if (child + 1 < bestSize && bestDistances[child + 1] > bestDistances[child]) {
+            ++child;
+          }
+          if (bestDistances[child] <= distance) {
+            break;
+          }
+          bestDistances[i] = bestDistances[child];
+          bestPoints[i] = bestPoints[child];
+          i = child;
+        }
+      } else {
+        return;
+      }
+      bestDistances[i] = distance;
+      bestPoints[i] = point;
+    }
+
+    /**
+     * Empties the heap of the best points into the outputs, nearest first.
+     */
+    void drain(final int[] found, final double[] distances) {
+      while (bestSize > 0) {
+        int last = bestSize - 1;
+        found[last] = indices[bestPoints[0]];
+        distances[last] = bestDistances[0];
+        // move the last element to the root and sift it down
+        double distance = bestDistances[last];
+        int point = bestPoints[last];
+        bestSize = last;
+        int i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= bestSize) {
+            break;
+          }
+          if (child + 1 < bestSize && bestDistances[child + 1] > bestDistances[child]) {
+            ++child;
+          }
+          if (bestDistances[child] <= distance) {
+            break;
+          }
+          bestDistances[i] = bestDistances[child];
+          bestPoints[i] = bestPoints[child];
+          i = child;
+        }
+        if (bestSize > 0) {
+          bestDistances[i] = distance;
+          bestPoints[i] = point;
+        }
+      }
+    }
+  } // end Search
+
+  /**
+   * The state of radius queries, reused for the centers of a join chunk.
+   */
+  private final class Within {
+    private int[] stack = new int[64];
+
+    // the candidates, then the points found
+    private int[] found = new int[64];
+    private double[] distances = new double[64];
+    private double[] candidateLat = new double[64];
+    private double[] candidateLon = new double[64];
+    private double[] queryLat = new double[64];
+    private double[] queryLon = new double[64];
+
+    /**
+     * Finds the points within radius, leaving their indices and distances
+     * in found and distances, nearest first.
+     *
+     * @return the number of points found.
+     */
+    int search(final double lat, final double lon, final double radius) {
+      double[] ecef = new double[3];
+      toEcef(lat, lon, ecef);
+      double qx = ecef[0];
+      double qy = ecef[1];
+      double qz = ecef[2];
+      int count = 0;
+      int depth = 0;
+      if (size() > 0) {
+        stack[depth++] = 0;
+      }
+      while (depth > 0) {
+        int node = stack[--depth];
+        int b = node * NODE_BOUNDS;
+        double dx = Math.max(0, Math.max(nodeBounds[b] - qx, qx - nodeBounds[b + 1]));
+        double dy = Math.max(0, Math.max(nodeBounds[b + 2] - qy, qy - nodeBounds[b + 3]));
+        double dz = Math.max(0, Math.max(nodeBounds[b + 4] - qz, qz - nodeBounds[b + 5]));
+        if (Math.sqrt(dx * dx + dy * dy + dz * dz) * LOWER_BOUND_SCALE > radius) {
+          continue;
+        }
+        if (nodeLeft[node] >= 0) {
+          if (depth + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, 2 * stack.length);
+          }
+          stack[depth++] = nodeLeft[node];
+          stack[depth++] = nodeLeft[node] + 1;
+          continue;
+        }
+        for (int i = nodeBegin[node]; i < nodeEnd[node]; ++i) {
+          dx = x[i] - qx;
+          dy = y[i] - qy;
+          dz = z[i] - qz;
+          if (Math.sqrt(dx * dx + dy * dy + dz * dz) * LOWER_BOUND_SCALE <= radius) {
+            if (count == found.length) {
+              grow();
+            }
+            found[count] = i;
+            candidateLat[count] = GeodesicIndex.this.lat[i];
+            candidateLon[count] = GeodesicIndex.this.lon[i];
+            ++count;
+          }
+        }
+      }
+      if (count == 0) {
+        return 0;
+      }
+
+      // one batch for all the candidates, then keep those within radius
+      Arrays.fill(queryLat, 0, count, lat);
+      Arrays.fill(queryLon, 0, count, lon);
+      geodesic.genInverse(queryLat, queryLon, candidateLat, candidateLon,
+                          0, count, Geodesic.MASK_DISTANCE,
+                          distances, null, null, null, null, null, null, null);
+      int kept = 0;
+      for (int j = 0; j < count; ++j) {
+        if (distances[j] <= radius) {
+          found[kept] = indices[found[j]];
+          distances[kept] = distances[j];
+          ++kept;
+        }
+      }
+      sort(distances, found, kept);
+      return kept;
+    }
+
+    private void grow() {
+      int capacity = 2 * found.length;
+      found = Arrays.copyOf(found, capacity);
+      distances = Arrays.copyOf(distances, capacity);
+      candidateLat = Arrays.copyOf(candidateLat, capacity);
+      candidateLon = Arrays.copyOf(candidateLon, capacity);
+      queryLat = new double[capacity];
+      queryLon = new double[capacity];
+    }
+  } // end Within
+
+  /**
+   * The centers [begin, end) of a join and the points found for them.
+   */
+  private final class JoinChunk {
+    private final int begin;
+    private final int end;
+    // offsets[i] is the first point of center begin + i in found
+    private final int[] offsets;
+    private int[] found = new int[0];
+    private double[] distances = new double[0];
+    private int size;
+
+    JoinChunk(final int begin, final int end) {
+      this.begin = begin;
+      this.end = end;
+      this.offsets = new int[end - begin];
+    }
+
+    void run(final double[] lat, final double[] lon, final double radius) {
+      Within within = new Within();
+      for (int i = begin; i < end; ++i) {
+        int count = within.search(lat[i], lon[i], radius);
+        offsets[i - begin] = size;
+        if (size + count > found.length) {
+          int capacity = Math.max(size + count, 2 * found.length);
+          found = Arrays.copyOf(found, capacity);
+          distances = Arrays.copyOf(distances, capacity);
+        }
+        System.arraycopy(within.found, 0, found, size, count);
+        System.arraycopy(within.distances, 0, distances, size, count);
+        size += count;
+      }
+    }
+  } // end JoinChunk
+
+  /**
+   * Splits a range of join chunks in halves until a single chunk is left.
+   */
+  private static final class JoinTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    // not serializable and never serialized, like the pool's tasks
+    private final transient JoinChunk[] chunks;
+    private final int begin;
+    private final int end;
+    private final double[] lat;
+    private final double[] lon;
+    private final double radius;
+
+    JoinTask(final JoinChunk[] chunks,
+             final int begin,
+             final int end,
+             final double[] lat,
+             final double[] lon,
+             final double radius) {
+      this.chunks = chunks;
+      this.begin = begin;
+      this.end = end;
+      this.lat = lat;
+      this.lon = lon;
+      this.radius = radius;
+    }
+
+    protected void compute() {
+      if (end - begin == 1) {
+        chunks[begin].run(lat, lon, radius);
+        return;
+      }
+      int middle = (begin + end) >>> 1;
+      invokeAll(new JoinTask(chunks, begin, middle, lat, lon, radius),
+                new JoinTask(chunks, middle, end, lat, lon, radius));
+    }
+  }
+
+  /**
+   * <code>Neighbors</code>, the result of a k-nearest-neighbour or radius
+   * query of a <code>GeodesicIndex</code>.
+   *
+   * @version 1.29
+   */
+  public static final class Neighbors {
+    private final int[] indices;
+    private final double[] distances;
+
+    /**
+     * Creates a new <code>Neighbors</code> instance.
+     *
+     * @param indices indices of the points, nearest first.
+     * @param distances distances of the points (meters).
+     */
+    public Neighbors(final int[] indices, final double[] distances) {
+      this.indices = indices;
+      this.distances = distances;
+    }
+
+    /**
+     * Get the number of points found.
+     * @return an <code>int</code> value
+     */
+    public int size() {
+      return indices.length;
+    }
+
+    /**
+     * Get the indices of the points in the arrays the index was built from,
+     * nearest first.
+     * @return an <code>int[]</code> value
+     */
+    public int[] getIndices() {
+      return indices;
+    }
+
+    /**
+     * Get the distances of the points.
+     * @return a <code>double[]</code> value (meters)
+     */
+    public double[] getDistances() {
+      return distances;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("indices=" + Arrays.toString(indices))
+          .append(", distances=" + Arrays.toString(distances))
+          .toString();
+    }
+  } // end Neighbors
+
+  /**
+   * <code>JoinResult</code>, the result of a spatial join of a
+   * <code>GeodesicIndex</code>, stored in compressed sparse row form: the
+   * points found for center <code>i</code> (counted from the first center
+   * of the join) are elements <code>getOffsets()[i]</code> to
+   * <code>getOffsets()[i + 1] - 1</code> of the indices and distances,
+   * nearest first.
+   *
+   * @version 1.29
+   */
+  public static final class JoinResult {
+    private final int[] offsets;
+    private final int[] indices;
+    private final double[] distances;
+
+    /**
+     * Creates a new <code>JoinResult</code> instance.
+     *
+     * @param offsets the first point of every center followed by the total
+     *     number of points.
+     * @param indices indices of the points.
+     * @param distances distances of the points (meters).
+     */
+    public JoinResult(final int[] offsets,
+                      final int[] indices,
+                      final double[] distances) {
+      this.offsets = offsets;
+      this.indices = indices;
+      this.distances = distances;
+    }
+
+    /**
+     * Get the number of centers.
+     * @return an <code>int</code> value
+     */
+    public int getCenterCount() {
+      return offsets.length - 1;
+    }
+
+    /**
+     * Get the number of (center, point) pairs found.
+     * @return an <code>int</code> value
+     */
+    public int size() {
+      return indices.length;
+    }
+
+    /**
+     * Get the first point of every center followed by the number of pairs.
+     * @return an <code>int[]</code> value
+     */
+    public int[] getOffsets() {
+      return offsets;
+    }
+
+    /**
+     * Get the indices of the points in the arrays the index was built from.
+     * @return an <code>int[]</code> value
+     */
+    public int[] getIndices() {
+      return indices;
+    }
+
+    /**
+     * Get the distances of the points from their centers.
+     * @return a <code>double[]</code> value (meters)
+     */
+    public double[] getDistances() {
+      return distances;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("centers=" + getCenterCount())
+          .append(", size=" + size())
+          .toString();
+    }
+  } // end JoinResult
+
+} // end GeodesicIndex
@@ -0,0 +1,184 @@
+package net.sf.geographiclib;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <code>GeodesicInstrumentation</code>, opt-in measurement of the
+ * {@link Geodesic} calls and constructions.
+ *
+ * Instrumentation is off by default, in which case a call pays a single
+ * volatile read. Once {@link #setEnabled(boolean) enabled}, one call in
+ * {@link #setSampleInterval(int) sampleInterval} (chosen at random, per
+ * thread) is timed and reported to the {@link #setMetrics(GeodesicMetrics)
+ * metrics} receiver, if any, and as a <code>net.sf.geographiclib.GeodesicCall</code>
+ * JDK Flight Recorder event, if a recording enables it. Constructions are
+ * always reported, as <code>net.sf.geographiclib.GeodesicConstruction</code>
+ * events.
+ *
+ * For the Java engine the single inverse calls also report the number of
+ * iterations the solution needed, which exposes slow nearly antipodal
+ * queries. GeographicLib doesn't expose that number, so it is -1 for the
+ * native engine.
+ *
+ * @version 1.29
+ */
+public final class GeodesicInstrumentation {
+
+  private static volatile boolean enabled;
+  private static volatile int sampleInterval = 1;
+  private static volatile GeodesicMetrics metrics;
+
+  /**
+   * Not instantiable.
+   */
+  private GeodesicInstrumentation() {
+  }
+
+  /**
+   * Turns instrumentation on or off.
+   *
+   * @param enabled true to measure the calls.
+   */
+  public static void setEnabled(final boolean enabled) {
+    GeodesicInstrumentation.enabled = enabled;
+  }
+
+  /**
+   * Get whether instrumentation is on.
+   * @return a <code>boolean</code> value
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Sets the sampling of the calls, constructions are never sampled.
+   *
+   * @param sampleInterval measure one call in this many, 1 to measure every
+   *     call.
+   */
+  public static void setSampleInterval(final int sampleInterval) {
+    if (sampleInterval < 1) {
+      throw new IllegalArgumentException("sampleInterval must be positive");
+    }
+    GeodesicInstrumentation.sampleInterval = sampleInterval;
+  }
+
+  /**
+   * Get the sampling of the calls.
+   * @return an <code>int</code> value
+   */
+  public static int getSampleInterval() {
+    return sampleInterval;
+  }
+
+  /**
+   * Sets the receiver of the measurements.
+   *
+   * @param metrics the receiver, null to only emit JFR events.
+   */
+  public static void setMetrics(final GeodesicMetrics metrics) {
+    GeodesicInstrumentation.metrics = metrics;
+  }
+
+  /**
+   * Get the receiver of the measurements.
+   * @return a <code>GeodesicMetrics</code> value, may be null
+   */
+  public static GeodesicMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Starts measuring a call.
+   *
+   * @return a <code>Sample</code> to end, or null if this call isn't
+   *     measured
+   */
+  static Sample sample() {
+    if (!enabled) {
+      return null;
+    }
+    int interval = sampleInterval;
+    if (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0) {
+      return null;
+    }
+    return new Sample(new GeodesicCallEvent());
+  }
+
+  /**
+   * Starts measuring a construction.
+   *
+   * @return a <code>Sample</code> to end, or null if instrumentation is off
+   */
+  static Sample construction() {
+    return enabled ? new Sample(new GeodesicConstructionEvent()) : null;
+  }
+
+  /**
+   * One measured call or construction.
+   */
+  static final class Sample {
+    private final jdk.jfr.Event event;
+    private final long start;
+    /**
+     * Receives the iterations of a Java engine inverse problem.
+     */
+    final int[] iterations = {-1};
+
+    Sample(final jdk.jfr.Event event) {
+      this.event = event;
+      event.begin();
+      start = System.nanoTime();
+    }
+
+    /**
+     * Ends the measurement of a call and reports it.
+     */
+    void end(final GeodesicMetrics.Operation operation,
+             final GeodesicEngine engine,
+             final long outmask,
+             final long count) {
+      long nanos = System.nanoTime() - start;
+      GeodesicMetrics receiver = metrics;
+      if (receiver != null) {
+        receiver.recordCall(operation, engine, outmask, count, nanos,
+                            iterations[0]);
+      }
+      event.end();
+      if (event.shouldCommit()) {
+        GeodesicCallEvent call = (GeodesicCallEvent) event;
+        call.operation = operation.name();
+        call.engine = engine.name();
+        call.outmask = outmask;
+        call.count = count;
+        call.iterations = iterations[0];
+        call.commit();
+      }
+    }
+
+    /**
+     * Ends the measurement of a construction and reports it.
+     */
+    void endConstruction(final GeodesicEngine engine,
+                         final double a,
+                         final double f,
+                         final boolean nativeAllocated) {
+      long nanos = System.nanoTime() - start;
+      GeodesicMetrics receiver = metrics;
+      if (receiver != null) {
+        receiver.recordConstruction(engine, a, f, nativeAllocated, nanos);
+      }
+      event.end();
+      if (event.shouldCommit()) {
+        GeodesicConstructionEvent construction =
+            (GeodesicConstructionEvent) event;
+        construction.engine = engine.name();
+        construction.a = a;
+        construction.f = f;
+        construction.nativeAllocated = nativeAllocated;
+        construction.commit();
+      }
+    }
+  }
+}
@@ -0,0 +1,603 @@
+package net.sf.geographiclib;
+
+import java.io.Closeable;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+
+/**
+ * <code>GeodesicLine</code>, a geodesic starting at a given point and
+ * azimuth, wrapping the C++
+ * <a href="http://geographiclib.sourceforge.net/html/classGeographicLib_1_1GeodesicLine.html">GeographicLib::GeodesicLine</a>
+ * class. Created by {@link Geodesic#line(double, double, double, long)}.
+ *
+ * The setup of the direct problem (the series coefficients of the line) is
+ * done once when the line is created, so computing many points along it
+ * with {@link #position(double)}, {@link #arcPosition(double)} or the batch
+ * {@link #genPosition(boolean, double[], int, int, long, double[], double[],
+ * double[], double[], double[], double[], double[], double[], double[])}
+ * is much cheaper than as many direct problems.
+ * {@link #densify(Geodesic, double[], double[], double)} uses lines to add
+ * points along every leg of a route.
+ *
+ * A line is immutable and may be shared between threads, but not closed
+ * while another thread uses it. A native line owns a C++ object (it doesn't
+ * keep the <code>Geodesic</code>'s C++ object alive) which is deleted by
+ * {@link #close()} or, if the line is garbage collected first, by a cleaner.
+ *
+ * @version 1.29
+ */
+public class GeodesicLine implements Closeable {
+
+  static {
+    // force the GeographicLib JNI library to be loaded before anything below
+    // is executed
+    LibraryLoader.load();
+  }
+
+  /**
+   * The ellipsoid of the line, parent of the {@link Geodesic.DirectResult}
+   * instances returned.
+   */
+  private final Geodesic geodesic;
+
+  /**
+   * <code>javaLine</code> implements every function when the engine is
+   * {@link GeodesicEngine#JAVA}, null for the native engine.
+   */
+  private final JavaGeodesic.Line javaLine;
+
+  /**
+   * <code>nativeLine</code> owns the C++ object, null for the Java engine.
+   * <code>cleanable</code> deletes it either on {@link #close()} or once
+   * this instance is unreachable.
+   */
+  private final NativeLine nativeLine;
+  private final Cleaner.Cleanable cleanable;
+
+  /**
+   * The starting point and capabilities as stored by the engine (the
+   * azimuth is normalized), read once at construction.
+   */
+  private final double latitude;
+  private final double longitude;
+  private final double azimuth;
+  private final long capabilities;
+
+  /**
+   * Creates a new <code>GeodesicLine</code> instance, see
+   * {@link Geodesic#line(double, double, double, long)}.
+   */
+  GeodesicLine(final Geodesic geodesic,
+               final double lat1,
+               final double lon1,
+               final double azi1,
+               final long caps) {
+    this.geodesic = geodesic;
+    JavaGeodesic javaGeodesic = geodesic.getJavaGeodesic();
+    if (javaGeodesic != null) {
+      javaLine = new JavaGeodesic.Line(javaGeodesic, lat1, lon1, azi1,
+                                       (int) caps);
+      nativeLine = null;
+      cleanable = null;
+      latitude = javaLine.getLatitude();
+      longitude = javaLine.getLongitude();
+      azimuth = javaLine.getAzimuth();
+      capabilities = javaLine.getCapabilities();
+      return;
+    }
+    javaLine = null;
+    NativeHandle.Lease lease = geodesic.getNativeLease();
+    long geodesicCppPtr = lease.enter();
+    try {
+      nativeLine = new NativeLine(newGeodesicLineCppObject(geodesicCppPtr,
+                                                           lat1, lon1, azi1,
+                                                           caps));
+    } finally {
+      lease.exit();
+    }
+    cleanable = NativeHandle.CLEANER.register(this, nativeLine);
+    double[] values = new double[3];
+    capabilities = nativeProperties(nativeLine.pointer, values);
+    latitude = values[0];
+    longitude = values[1];
+    azimuth = values[2];
+  }
+
+  /**
+   * Inherited from java.io.Closeable. <br>
+   * Deletes the C++ object of a native line, which can't be used
+   * afterwards. Closing twice has no effect.
+   */
+  public void close() {
+    if (cleanable != null) {
+      cleanable.clean();
+    }
+  }
+
+  /**
+   * Get the ellipsoid of this line.
+   * @return a <code>Geodesic</code> value
+   */
+  public final Geodesic getGeodesic() {
+    return geodesic;
+  }
+
+  /**
+   * Get the engine used by this line.
+   * @return a <code>GeodesicEngine</code> value
+   */
+  public final GeodesicEngine getEngine() {
+    return javaLine != null ? GeodesicEngine.JAVA : GeodesicEngine.NATIVE;
+  }
+
+  /**
+   * Get the latitude of point 1 (degrees).
+   * @return a <code>double</code> value
+   */
+  public final double getLatitude() {
+    return latitude;
+  }
+
+  /**
+   * Get the longitude of point 1 (degrees).
+   * @return a <code>double</code> value
+   */
+  public final double getLongitude() {
+    return longitude;
+  }
+
+  /**
+   * Get the azimuth at point 1 (degrees).
+   * @return a <code>double</code> value
+   */
+  public final double getAzimuth() {
+    return azimuth;
+  }
+
+  /**
+   * Get the capabilities of the line, a bitor'ed combination of the
+   * <code>Geodesic.MASK_*</code> values which always includes latitude and
+   * azimuth.
+   * @return a <code>long</code> value
+   */
+  public final long getCapabilities() {
+    return capabilities;
+  }
+
+  /**
+   * Computes the point a distance from point 1, with every quantity the
+   * line is capable of.
+   *
+   * @param s12 distance between point 1 and point 2 (meters), may be
+   *     negative.
+   * @return a <code>DirectResult</code> value, NaN if the line wasn't
+   *     created with <code>MASK_DISTANCE_IN</code>
+   */
+  public final Geodesic.DirectResult position(final double s12) {
+    return genPosition(false, s12, Geodesic.MASK_ALL);
+  }
+
+  /**
+   * Computes the point an arc length from point 1, with every quantity the
+   * line is capable of.
+   *
+   * @param a12 arc length between point 1 and point 2 (degrees), may be
+   *     negative.
+   * @return a <code>DirectResult</code> value
+   */
+  public final Geodesic.DirectResult arcPosition(final double a12) {
+    return genPosition(true, a12, Geodesic.MASK_ALL);
+  }
+
+  /**
+   * The general position function, computing the quantities selected by
+   * <code>outmask</code> which the line is capable of.
+   *
+   * @param arcmode if true then <code>s12_a12</code> is an arc length
+   *     (degrees), otherwise a distance (meters).
+   * @param s12_a12 distance or arc length between point 1 and point 2.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @return a <code>DirectResult</code> value
+   */
+  public final Geodesic.DirectResult genPosition(final boolean arcmode,
+                                                 final double s12_a12,
+                                                 final long outmask) {
+    double[] v = genPosition(arcmode, s12_a12, outmask,
+                             new double[JavaGeodesic.DIRECT_COUNT]);
+    return geodesic.new DirectResult(outmask, v[0], v[1], v[2], v[3], v[4],
+                                     v[5], v[6], v[7], v[8]);
+  }
+
+  /**
+   * Same as {@link #genPosition(boolean, double, long)} but stores the
+   * results in a caller-owned <code>result</code>, so the holder can be
+   * reused between calls.
+   *
+   * @param arcmode if true then <code>s12_a12</code> is an arc length
+   *     (degrees), otherwise a distance (meters).
+   * @param s12_a12 distance or arc length between point 1 and point 2.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param result the holder which receives the results.
+   * @return <code>result</code>
+   */
+  public final Geodesic.MutableDirectResult genPosition(final boolean arcmode,
+                                                        final double s12_a12,
+                                                        final long outmask,
+                                                        final Geodesic.MutableDirectResult result) {
+    genPosition(arcmode, s12_a12, outmask, result.values);
+    result.outmask = outmask;
+    return result;
+  }
+
+  /**
+   * Computes one position into values, in the DirectResult order.
+   */
+  private double[] genPosition(final boolean arcmode,
+                               final double s12_a12,
+                               final long outmask,
+                               final double[] values) {
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaLine != null) {
+        javaLine.genPosition(arcmode, s12_a12, (int) outmask, values);
+        return values;
+      }
+      try {
+        nativeGenPositionInto(pointer(), arcmode, s12_a12, outmask, values);
+      } finally {
+        Reference.reachabilityFence(this);
+      }
+      return values;
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.POSITION, getEngine(), outmask,
+                   1);
+      }
+    }
+  }
+  private static native void nativeGenPositionInto(final long lineCppPtr,
+                                                   final boolean arcmode,
+                                                   final double s12_a12,
+                                                   final long outmask,
+                                                   final double[] values);
+
+  /**
+   * Computes many points along the line in a single native call. Element
+   * <code>i</code> of <code>s12_a12</code>, for
+   * <code>offset &lt;= i &lt; offset + length</code>, is the distance or arc
+   * length of one point from point 1 and its results are written to the
+   * same element of the output arrays.
+   * <p>
+   * Output arrays may be <code>null</code> when the corresponding quantity
+   * is not needed; non-null output arrays are only written for the
+   * quantities selected by <code>outmask</code> which the line is capable
+   * of, except <code>a12</code> which is always calculated. No Java objects
+   * are allocated.
+   *
+   * @param arcmode if true then <code>s12_a12</code> holds arc lengths
+   *     (degrees), otherwise distances (meters).
+   * @param s12_a12 distances or arc lengths between point 1 and the points.
+   * @param offset index of the first element to process in every array.
+   * @param length number of points to compute.
+   * @param outmask a bitor'ed combination of the <code>MASK_*</code> values
+   *     specifying which outputs to calculate.
+   * @param lat2 latitudes of the points (degrees), may be null.
+   * @param lon2 longitudes of the points (degrees), may be null.
+   * @param azi2 azimuths at the points (degrees), may be null.
+   * @param s12 distances between point 1 and the points (meters), may be
+   *     null.
+   * @param m12 reduced lengths (meters), may be null.
+   * @param M12 geodesic scales of the points relative to point 1, may be
+   *     null.
+   * @param M21 geodesic scales of point 1 relative to the points, may be
+   *     null.
+   * @param S12 areas under the line (meters<sup>2</sup>), may be null.
+   * @param a12 arc lengths between point 1 and the points (degrees), may be
+   *     null.
+   * @exception IllegalArgumentException if <code>offset</code> or
+   *     <code>length</code> is negative or a non-null array is too short.
+   */
+  public final void genPosition(final boolean arcmode,
+                                final double[] s12_a12,
+                                final int offset,
+                                final int length,
+                                final long outmask,
+                                final double[] lat2,
+                                final double[] lon2,
+                                final double[] azi2,
+                                final double[] s12,
+                                final double[] m12,
+                                final double[] M12,
+                                final double[] M21,
+                                final double[] S12,
+                                final double[] a12) {
+    Geodesic.checkBatchRange(offset, length);
+    Geodesic.checkBatchInput(s12_a12, "s12_a12", offset, length);
+    Geodesic.checkBatchOutput(lat2, "lat2", offset, length);
+    Geodesic.checkBatchOutput(lon2, "lon2", offset, length);
+    Geodesic.checkBatchOutput(azi2, "azi2", offset, length);
+    Geodesic.checkBatchOutput(s12, "s12", offset, length);
+    Geodesic.checkBatchOutput(m12, "m12", offset, length);
+    Geodesic.checkBatchOutput(M12, "M12", offset, length);
+    Geodesic.checkBatchOutput(M21, "M21", offset, length);
+    Geodesic.checkBatchOutput(S12, "S12", offset, length);
+    Geodesic.checkBatchOutput(a12, "a12", offset, length);
+    if (length == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      if (javaLine != null) {
+        javaLine.genPositionBatch(arcmode, s12_a12, offset, length, outmask,
+                                  lat2, lon2, azi2, s12, m12, M12, M21, S12,
+                                  a12);
+        return;
+      }
+      try {
+        nativeGenPositionBatch(pointer(), arcmode, s12_a12, offset, length,
+                               outmask,
+                               lat2, lon2, azi2, s12, m12, M12, M21, S12, a12);
+      } finally {
+        Reference.reachabilityFence(this);
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.POSITION_BATCH, getEngine(),
+                   outmask, length);
+      }
+    }
+  }
+  private static native void nativeGenPositionBatch(final long lineCppPtr,
+                                                    final boolean arcmode,
+                                                    final double[] s12_a12,
+                                                    final int offset,
+                                                    final int length,
+                                                    final long outmask,
+                                                    final double[] lat2,
+                                                    final double[] lon2,
+                                                    final double[] azi2,
+                                                    final double[] s12,
+                                                    final double[] m12,
+                                                    final double[] M12,
+                                                    final double[] M21,
+                                                    final double[] S12,
+                                                    final double[] a12);
+
+  /**
+   * Densifies a route so that no segment is longer than
+   * <code>maxSegmentLength</code>. Every leg between consecutive vertices
+   * of the route follows the geodesic between them and is split into the
+   * smallest number of segments of equal length; the route vertices are
+   * kept unchanged. The legs are solved in two native calls (one to size
+   * the output, one to fill it) whatever the length of the route.
+   *
+   * @param geodesic the ellipsoid, and the engine used.
+   * @param lat latitudes of the route vertices (degrees).
+   * @param lon longitudes of the route vertices (degrees).
+   * @param maxSegmentLength the maximum length of a segment (meters).
+   * @return a <code>Route</code> value
+   * @exception IllegalArgumentException if <code>lat</code> and
+   *     <code>lon</code> don't have the same length,
+   *     <code>maxSegmentLength</code> isn't positive or the densified route
+   *     would have more than <code>Integer.MAX_VALUE - 8</code> points.
+   */
+  public static Route densify(final Geodesic geodesic,
+                              final double[] lat,
+                              final double[] lon,
+                              final double maxSegmentLength) {
+    if (geodesic == null) {
+      throw new IllegalArgumentException("geodesic must not be null");
+    }
+    if (lat == null || lon == null || lat.length != lon.length) {
+      throw new IllegalArgumentException("lat and lon must have the same length");
+    }
+    if (!(maxSegmentLength > 0)) {
+      throw new IllegalArgumentException("maxSegmentLength must be positive");
+    }
+    if (lat.length < 2) {
+      return new Route(lat.clone(), lon.clone(), lat.length == 0
+                       ? new int[0] : new int[] {0});
+    }
+    int legs = lat.length - 1;
+    double[] azi1 = new double[legs];
+    double[] s12 = new double[legs];
+    int[] segments = new int[legs];
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    long points = 0;
+    try {
+      JavaGeodesic javaGeodesic = geodesic.getJavaGeodesic();
+      NativeHandle.Lease lease = geodesic.getNativeLease();
+      if (javaGeodesic != null) {
+        points = javaGeodesic.densifyLegs(lat, lon, maxSegmentLength,
+                                          azi1, s12, segments);
+      } else {
+        long geodesicCppPtr = lease.enter();
+        try {
+          points = nativeDensifyLegs(geodesicCppPtr, lat, lon,
+                                     maxSegmentLength, azi1, s12, segments);
+        } finally {
+          lease.exit();
+        }
+      }
+      if (points > Integer.MAX_VALUE - 8) {
+        throw new IllegalArgumentException("densified route of " + points
+                                           + " points is too large");
+      }
+      double[] latOut = new double[(int) points];
+      double[] lonOut = new double[(int) points];
+      int[] vertexIndices = new int[lat.length];
+      if (javaGeodesic != null) {
+        javaGeodesic.densifyPoints(lat, lon, azi1, s12, segments,
+                                   latOut, lonOut, vertexIndices);
+      } else {
+        long geodesicCppPtr = lease.enter();
+        try {
+          nativeDensifyPoints(geodesicCppPtr, lat, lon, azi1, s12, segments,
+                              latOut, lonOut, vertexIndices);
+        } finally {
+          lease.exit();
+        }
+      }
+      return new Route(latOut, lonOut, vertexIndices);
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.DENSIFY, geodesic.getEngine(),
+                   Geodesic.MASK_LATITUDE | Geodesic.MASK_LONGITUDE, points);
+      }
+    }
+  }
+
+  private static native long nativeDensifyLegs(final long geodesicCppPtr,
+                                               final double[] lat,
+                                               final double[] lon,
+                                               final double maxSegmentLength,
+                                               final double[] azi1,
+                                               final double[] s12,
+                                               final int[] segments);
+  private static native void nativeDensifyPoints(final long geodesicCppPtr,
+                                                 final double[] lat,
+                                                 final double[] lon,
+                                                 final double[] azi1,
+                                                 final double[] s12,
+                                                 final int[] segments,
+                                                 final double[] latOut,
+                                                 final double[] lonOut,
+                                                 final int[] vertexIndices);
+
+  /**
+   * Get the pointer to the C++ object.
+   *
+   * @exception IllegalStateException if this line was closed.
+   */
+  private long pointer() {
+    long lineCppPtr = nativeLine.pointer;
+    if (lineCppPtr == 0) {
+      throw new IllegalStateException("GeodesicLine is closed");
+    }
+    return lineCppPtr;
+  }
+
+  /**
+   * Creates a new GeographicLib::GeodesicLine object and returns the pointer
+   * to it.
+   * @param geodesicCppPtr the ellipsoid.
+   * @return The pointer to the C++ object.
+   */
+  private static native long newGeodesicLineCppObject(final long geodesicCppPtr,
+                                                      final double lat1,
+                                                      final double lon1,
+                                                      final double azi1,
+                                                      final long caps);
+
+  /**
+   * Deletes a GeographicLib::GeodesicLine object created by
+   * newGeodesicLineCppObject()
+   * @param lineCppPtr the pointer to the C++ object to delete
+   */
+  private static native void deleteGeodesicLineCppObject(final long lineCppPtr);
+
+  /**
+   * Reads the starting point of a line.
+   * @param values receives the latitude, longitude and azimuth.
+   * @return the capabilities of the line.
+   */
+  private static native long nativeProperties(final long lineCppPtr,
+                                              final double[] values);
+
+  /**
+   * The C++ object of a native line, the cleaning action registered with
+   * the cleaner. It must not refer to the <code>GeodesicLine</code>, or the
+   * line would never become unreachable.
+   */
+  private static final class NativeLine implements Runnable {
+    private volatile long pointer;
+
+    NativeLine(final long pointer) {
+      this.pointer = pointer;
+    }
+
+    /**
+     * Deletes the C++ object, run at most once by the cleanable.
+     */
+    public void run() {
+      long lineCppPtr = pointer;
+      pointer = 0;
+      deleteGeodesicLineCppObject(lineCppPtr);
+    }
+  }
+
+  /**
+   * <code>Route</code>, the result of
+   * {@link GeodesicLine#densify(Geodesic, double[], double[], double)}.
+   *
+   * @version 1.29
+   */
+  public static final class Route {
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] vertexIndices;
+
+    /**
+     * Creates a new <code>Route</code> instance.
+     *
+     * @param latitudes a <code>double[]</code> value
+     * @param longitudes a <code>double[]</code> value
+     * @param vertexIndices an <code>int[]</code> value
+     */
+    public Route(final double[] latitudes,
+                 final double[] longitudes,
+                 final int[] vertexIndices) {
+      this.latitudes = latitudes;
+      this.longitudes = longitudes;
+      this.vertexIndices = vertexIndices;
+    }
+
+    /**
+     * Get the number of points of the densified route.
+     * @return an <code>int</code> value
+     */
+    public int size() {
+      return latitudes.length;
+    }
+
+    /**
+     * Get the latitudes of the points (degrees), not copied.
+     * @return a <code>double[]</code> value
+     */
+    public double[] getLatitudes() {
+      return latitudes;
+    }
+
+    /**
+     * Get the longitudes of the points (degrees), not copied.
+     * @return a <code>double[]</code> value
+     */
+    public double[] getLongitudes() {
+      return longitudes;
+    }
+
+    /**
+     * Get the index in the densified route of every vertex of the original
+     * route, not copied.
+     * @return an <code>int[]</code> value
+     */
+    public int[] getVertexIndices() {
+      return vertexIndices;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("size=" + size())
+          .append(", vertices=" + vertexIndices.length)
+          .toString();
+    }
+  } // end Route
+}
@@ -0,0 +1,95 @@
+package net.sf.geographiclib;
+
+/**
+ * <code>GeodesicMetrics</code>, the receiver of the measurements taken by
+ * {@link GeodesicInstrumentation}, to be bridged to the metrics library of
+ * the application. {@link GeodesicMetricsRecorder} is a self-contained
+ * implementation with counters and latency histograms.
+ *
+ * Implementations are called on the threads doing the geodesic calculations
+ * and must be thread-safe and fast.
+ *
+ * @version 1.29
+ */
+public interface GeodesicMetrics {
+
+  /**
+   * The instrumented functions of {@link Geodesic}, {@link GeodesicLine}
+   * and {@link PolygonArea}.
+   */
+  enum Operation {
+    /** direct() */
+    DIRECT,
+    /** arcDirect() */
+    ARC_DIRECT,
+    /** genDirect() of one geodesic, into a result or a holder */
+    GEN_DIRECT,
+    /** inverse() */
+    INVERSE,
+    /** genInverse() of one geodesic, into a result or a holder */
+    GEN_INVERSE,
+    /** genDirect() of arrays or buffers */
+    DIRECT_BATCH,
+    /** genInverse() of arrays or buffers */
+    INVERSE_BATCH,
+    /** distanceMatrix() */
+    DISTANCE_MATRIX,
+    /** distance() */
+    DISTANCE,
+    /** initialAzimuth() and finalAzimuth() */
+    AZIMUTH,
+    /** destination() */
+    DESTINATION,
+    /** PolygonArea.compute() of many rings */
+    POLYGON_BATCH,
+    /** GeodesicLine position(), arcPosition() and genPosition() */
+    POSITION,
+    /** GeodesicLine genPosition() of arrays */
+    POSITION_BATCH,
+    /** GeodesicLine.densify(), counting the points of the route */
+    DENSIFY,
+    /** rangeRings(), counting the vertices of the rings */
+    RANGE_RINGS,
+    /**
+     * approximateDistance() and adaptiveDistance(), counting the pairs
+     * served by the approximation; the exact fallbacks of
+     * adaptiveDistance() are recorded as DISTANCE and INVERSE_BATCH
+     */
+    APPROXIMATE_DISTANCE
+  }
+
+  /**
+   * Records one sampled call.
+   *
+   * @param operation the function called.
+   * @param engine the engine of the instance.
+   * @param outmask the outmask of the call.
+   * @param count number of geodesics solved, 1 except for the batch
+   *     functions and the distance matrix (the vertices for the polygons).
+   * @param nanos duration of the call (nanoseconds).
+   * @param iterations iterations needed by the inverse problem, -1 when not
+   *     known (the native engine and the batch functions).
+   */
+  void recordCall(Operation operation,
+                  GeodesicEngine engine,
+                  long outmask,
+                  long count,
+                  long nanos,
+                  int iterations);
+
+  /**
+   * Records the construction of a <code>Geodesic</code>, never sampled.
+   *
+   * @param engine the engine of the instance.
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid.
+   * @param nativeAllocated true if a new C++ object was allocated, false if
+   *     an existing one is shared or for the Java engine.
+   * @param nanos duration of the construction (nanoseconds).
+   */
+  void recordConstruction(GeodesicEngine engine,
+                          double a,
+                          double f,
+                          boolean nativeAllocated,
+                          long nanos);
+}
@@ -0,0 +1,226 @@
+package net.sf.geographiclib;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>GeodesicMetricsRecorder</code>, a self-contained
+ * {@link GeodesicMetrics} which keeps, per operation, the number of sampled
+ * calls and geodesics and a latency histogram, plus the calls per outmask,
+ * a histogram of the inverse iterations and the constructions.
+ *
+ * Latencies go in power of two buckets: bucket <code>i</code> counts the
+ * calls which took [2<sup>i</sup>, 2<sup>i+1</sup>) nanoseconds (bucket 0
+ * also counts 0). Iterations go in one bucket per count, the last bucket
+ * collecting {@link #ITERATION_BUCKETS} - 1 and more.
+ *
+ * @version 1.29
+ */
+public class GeodesicMetricsRecorder implements GeodesicMetrics {
+
+  /**
+   * Number of buckets of the latency histograms.
+   */
+  public static final int LATENCY_BUCKETS = 64;
+
+  /**
+   * Number of buckets of the iteration histogram.
+   */
+  public static final int ITERATION_BUCKETS = 32;
+
+  private static final int OPERATIONS = Operation.values().length;
+
+  private final LongAdder[] calls = new LongAdder[OPERATIONS];
+  private final LongAdder[] geodesics = new LongAdder[OPERATIONS];
+  private final AtomicLongArray latencies =
+      new AtomicLongArray(OPERATIONS * LATENCY_BUCKETS);
+  private final AtomicLongArray iterations =
+      new AtomicLongArray(ITERATION_BUCKETS);
+  private final ConcurrentMap<Long, LongAdder> outmasks =
+      new ConcurrentHashMap<Long, LongAdder>();
+  private final LongAdder constructions = new LongAdder();
+  private final LongAdder nativeAllocations = new LongAdder();
+
+  /**
+   * Creates a new <code>GeodesicMetricsRecorder</code> instance.
+   */
+  public GeodesicMetricsRecorder() {
+    for (int i = 0; i < OPERATIONS; ++i) {
+      calls[i] = new LongAdder();
+      geodesics[i] = new LongAdder();
+    }
+  }
+
+  public void recordCall(final Operation operation,
+                         final GeodesicEngine engine,
+                         final long outmask,
+                         final long count,
+                         final long nanos,
+                         final int iterations) {
+    int op = operation.ordinal();
+    calls[op].increment();
+    geodesics[op].add(count);
+    int bucket = nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    latencies.incrementAndGet(op * LATENCY_BUCKETS + bucket);
+    if (iterations >= 0) {
+      this.iterations.incrementAndGet(Math.min(iterations,
+                                               ITERATION_BUCKETS - 1));
+    }
+    LongAdder counter = outmasks.get(outmask);
+    if (counter == null) {
+      LongAdder created = new LongAdder();
+      counter = outmasks.putIfAbsent(outmask, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    counter.increment();
+  }
+
+  public void recordConstruction(final GeodesicEngine engine,
+                                 final double a,
+                                 final double f,
+                                 final boolean nativeAllocated,
+                                 final long nanos) {
+    constructions.increment();
+    if (nativeAllocated) {
+      nativeAllocations.increment();
+    }
+  }
+
+  /**
+   * Get the number of sampled calls of an operation.
+   *
+   * @param operation the operation.
+   * @return a <code>long</code> value
+   */
+  public long getCalls(final Operation operation) {
+    return calls[operation.ordinal()].sum();
+  }
+
+  /**
+   * Get the number of geodesics solved by the sampled calls of an
+   * operation, divided by {@link #getCalls(Operation)} it gives the mean
+   * batch size.
+   *
+   * @param operation the operation.
+   * @return a <code>long</code> value
+   */
+  public long getGeodesics(final Operation operation) {
+    return geodesics[operation.ordinal()].sum();
+  }
+
+  /**
+   * Get the latency histogram of an operation.
+   *
+   * @param operation the operation.
+   * @return a copy of the {@link #LATENCY_BUCKETS} bucket counts
+   */
+  public long[] getLatencyHistogram(final Operation operation) {
+    long[] histogram = new long[LATENCY_BUCKETS];
+    int base = operation.ordinal() * LATENCY_BUCKETS;
+    for (int i = 0; i < LATENCY_BUCKETS; ++i) {
+      histogram[i] = latencies.get(base + i);
+    }
+    return histogram;
+  }
+
+  /**
+   * Get an upper bound of a latency percentile of an operation, from its
+   * histogram.
+   *
+   * @param operation the operation.
+   * @param percentile the percentile, in [0, 100].
+   * @return an upper bound of the latency (nanoseconds), 0 if no call was
+   *     recorded
+   */
+  public long getLatencyPercentile(final Operation operation,
+                                   final double percentile) {
+    long[] histogram = getLatencyHistogram(operation);
+    long total = 0;
+    for (long count : histogram) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile))
+                                 / 100);
+    long seen = 0;
+    for (int i = 0; i < LATENCY_BUCKETS; ++i) {
+      seen += histogram[i];
+      if (seen >= Math.max(1, rank)) {
+        return i == LATENCY_BUCKETS - 1 ? Long.MAX_VALUE : (2L << i) - 1;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Get the histogram of the iterations of the inverse problems (Java
+   * engine only).
+   * @return a copy of the {@link #ITERATION_BUCKETS} bucket counts
+   */
+  public long[] getIterationHistogram() {
+    long[] histogram = new long[ITERATION_BUCKETS];
+    for (int i = 0; i < ITERATION_BUCKETS; ++i) {
+      histogram[i] = iterations.get(i);
+    }
+    return histogram;
+  }
+
+  /**
+   * Get the number of sampled calls per outmask.
+   * @return a <code>Map</code> from outmask to count, sorted by outmask
+   */
+  public Map<Long, Long> getOutmaskCounts() {
+    Map<Long, Long> counts = new TreeMap<Long, Long>();
+    for (Map.Entry<Long, LongAdder> entry : outmasks.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().sum());
+    }
+    return counts;
+  }
+
+  /**
+   * Get the number of <code>Geodesic</code> constructions.
+   * @return a <code>long</code> value
+   */
+  public long getConstructions() {
+    return constructions.sum();
+  }
+
+  /**
+   * Get the number of constructions which allocated a new C++ object.
+   * @return a <code>long</code> value
+   */
+  public long getNativeAllocations() {
+    return nativeAllocations.sum();
+  }
+
+  /**
+   * Get a string representation of this object.
+   *
+   * @return a string representation of this object.
+   *
+   * @see java.lang.Object#toString
+   */
+  public String toString() {
+    StringBuffer buffer = new StringBuffer("constructions=" + getConstructions())
+        .append(", nativeAllocations=" + getNativeAllocations());
+    for (Operation operation : Operation.values()) {
+      long count = getCalls(operation);
+      if (count == 0) {
+        continue;
+      }
+      buffer.append(", " + operation + "={calls=" + count)
+          .append(", geodesics=" + getGeodesics(operation))
+          .append(", p50<=" + getLatencyPercentile(operation, 50) + "ns")
+          .append(", p99<=" + getLatencyPercentile(operation, 99) + "ns}");
+    }
+    return buffer.toString();
+  }
+}
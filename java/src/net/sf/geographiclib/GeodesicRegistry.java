@@ -0,0 +1,105 @@
+package net.sf.geographiclib;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * <code>GeodesicRegistry</code>, a factory which interns {@link Geodesic}
+ * instances by ellipsoid and engine, so code which needs "the geodesic for
+ * (a, f)" in many places gets one shared, thread-safe instance instead of
+ * building (and forgetting to close) its own.
+ *
+ * Interned instances live as long as the JVM; their
+ * {@link Geodesic#close() close()} method does nothing. Independently of
+ * the registry, every native <code>Geodesic</code> with the same (a, f)
+ * shares one reference counted C++ object.
+ *
+ * @version 1.29
+ */
+public final class GeodesicRegistry {
+
+  private static final Map<GeodesicEngine, ConcurrentMap<NativeHandle.Key, Geodesic>> GEODESICS =
+      new EnumMap<GeodesicEngine, ConcurrentMap<NativeHandle.Key, Geodesic>>(GeodesicEngine.class);
+
+  static {
+    for (GeodesicEngine engine : GeodesicEngine.values()) {
+      GEODESICS.put(engine, new ConcurrentHashMap<NativeHandle.Key, Geodesic>());
+    }
+  }
+
+  /**
+   * Not instantiable.
+   */
+  private GeodesicRegistry() {
+  }
+
+  /**
+   * Get the shared <code>Geodesic</code> for an ellipsoid, using the default
+   * engine.
+   *
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid. Setting f = 0 gives a sphere.
+   *      Negative f gives a prolate ellipsoid. If f > 1, set flattening to 1/f.
+   * @return a <code>Geodesic</code> value
+   */
+  public static Geodesic get(final double a, final double f) {
+    return get(a, f, GeodesicEngine.getDefault());
+  }
+
+  /**
+   * Get the shared <code>Geodesic</code> for an ellipsoid and engine.
+   *
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid. Setting f = 0 gives a sphere.
+   *      Negative f gives a prolate ellipsoid. If f > 1, set flattening to 1/f.
+   * @param engine the implementation used by the instance.
+   * @return a <code>Geodesic</code> value
+   * @exception UnsatisfiedLinkError if <code>engine</code> is
+   *     {@link GeodesicEngine#NATIVE} or {@link GeodesicEngine#FOREIGN} and
+   *     the JNI library couldn't be loaded, or <code>FOREIGN</code> and its
+   *     <code>java.lang.foreign</code> classes couldn't be.
+   */
+  public static Geodesic get(final double a,
+                             final double f,
+                             final GeodesicEngine engine) {
+    if (engine == null) {
+      throw new IllegalArgumentException("engine must not be null");
+    }
+    ConcurrentMap<NativeHandle.Key, Geodesic> geodesics = GEODESICS.get(engine);
+    NativeHandle.Key key = new NativeHandle.Key(a, f);
+    Geodesic geodesic = geodesics.get(key);
+    if (geodesic == null) {
+      // atomic, so a racing caller never creates a second instance
+      geodesic = geodesics.computeIfAbsent(key, new Function<NativeHandle.Key, Geodesic>() {
+          public Geodesic apply(final NativeHandle.Key k) {
+            return new Geodesic(a, f, engine, true);
+          }
+        });
+    }
+    return geodesic;
+  }
+
+  /**
+   * Get the number of interned instances.
+   * @return an <code>int</code> value
+   */
+  public static int size() {
+    int size = 0;
+    for (ConcurrentMap<NativeHandle.Key, Geodesic> geodesics : GEODESICS.values()) {
+      size += geodesics.size();
+    }
+    return size;
+  }
+
+  /**
+   * Get the number of C++ objects shared by the native instances, interned
+   * or not.
+   * @return an <code>int</code> value
+   */
+  public static int getNativeObjectCount() {
+    return LibraryLoader.isAvailable() ? NativeHandle.count() : 0;
+  }
+}
@@ -0,0 +1,173 @@
+package net.sf.geographiclib;
+
+import java.util.Arrays;
+
+/**
+ * <code>Geofence</code>, a circular or polygonal area watched by a
+ * {@link GeofenceEngine}.
+ *
+ * A circle is the set of points within a geodesic distance of its center.
+ * A polygon is bounded by the geodesics joining consecutive vertices, the
+ * last vertex being joined to the first one; it must be simple. Both kinds
+ * of fence must fit in a cap whose radius doesn't exceed the smallest
+ * radius of curvature of the ellipsoid (about 6335 km for WGS84), which
+ * the engine checks when the fences are added.
+ *
+ * @version 1.29
+ */
+public final class Geofence {
+
+  private final double lat;
+  private final double lon;
+  private final double radius;
+  private final double[] latitudes;
+  private final double[] longitudes;
+
+  private Geofence(final double lat,
+                   final double lon,
+                   final double radius,
+                   final double[] latitudes,
+                   final double[] longitudes) {
+    this.lat = lat;
+    this.lon = lon;
+    this.radius = radius;
+    this.latitudes = latitudes;
+    this.longitudes = longitudes;
+  }
+
+  /**
+   * Creates a circular fence.
+   *
+   * @param lat latitude of the center (degrees).
+   * @param lon longitude of the center (degrees).
+   * @param radius the radius (meters).
+   * @return a <code>Geofence</code> value
+   * @exception IllegalArgumentException if a coordinate is invalid or the
+   *     radius isn't positive.
+   */
+  public static Geofence circle(final double lat,
+                                final double lon,
+                                final double radius) {
+    checkCoordinates(lat, lon);
+    if (!(radius > 0) || Double.isInfinite(radius)) {
+      throw new IllegalArgumentException("radius (" + radius
+                                         + ") must be positive");
+    }
+    return new Geofence(lat, lon, radius, null, null);
+  }
+
+  /**
+   * Creates a polygonal fence. The coordinates are copied; a last vertex
+   * equal to the first one is dropped.
+   *
+   * @param lat latitudes of the vertices (degrees).
+   * @param lon longitudes of the vertices (degrees).
+   * @return a <code>Geofence</code> value
+   * @exception IllegalArgumentException if the arrays are missing or have
+   *     different lengths, a coordinate is invalid or there are fewer than
+   *     three vertices.
+   */
+  public static Geofence polygon(final double[] lat, final double[] lon) {
+    if (lat == null || lon == null || lat.length != lon.length) {
+      throw new IllegalArgumentException("lat and lon must have the same length");
+    }
+    int n = lat.length;
+    if (n > 1 && lat[0] == lat[n - 1] && lon[0] == lon[n - 1]) {
+      --n;
+    }
+    if (n < 3) {
+      throw new IllegalArgumentException("a polygon needs at least 3 vertices");
+    }
+    for (int i = 0; i < n; ++i) {
+      checkCoordinates(lat[i], lon[i]);
+    }
+    return new Geofence(Double.NaN, Double.NaN, Double.NaN,
+                        Arrays.copyOf(lat, n), Arrays.copyOf(lon, n));
+  }
+
+  /**
+   * Validates the coordinates of a point.
+   */
+  private static void checkCoordinates(final double lat, final double lon) {
+    if (!(Math.abs(lat) <= 90) || !GeoMath.isFinite(lon)) {
+      throw new IllegalArgumentException("invalid coordinates (" + lat + ", "
+                                         + lon + ")");
+    }
+  }
+
+  /**
+   * Get whether this fence is a polygon.
+   * @return a <code>boolean</code> value
+   */
+  public boolean isPolygon() {
+    return latitudes != null;
+  }
+
+  /**
+   * Get the latitude of the center of a circle.
+   * @return a <code>double</code> value (degrees), NaN for a polygon
+   */
+  public double getLatitude() {
+    return lat;
+  }
+
+  /**
+   * Get the longitude of the center of a circle.
+   * @return a <code>double</code> value (degrees), NaN for a polygon
+   */
+  public double getLongitude() {
+    return lon;
+  }
+
+  /**
+   * Get the radius of a circle.
+   * @return a <code>double</code> value (meters), NaN for a polygon
+   */
+  public double getRadius() {
+    return radius;
+  }
+
+  /**
+   * Get the number of vertices of a polygon.
+   * @return an <code>int</code> value, 0 for a circle
+   */
+  public int getVertexCount() {
+    return latitudes == null ? 0 : latitudes.length;
+  }
+
+  /**
+   * Get the latitude of vertex <code>i</code> of a polygon.
+   * @param i index of the vertex.
+   * @return a <code>double</code> value (degrees)
+   */
+  public double getVertexLatitude(final int i) {
+    return latitudes[i];
+  }
+
+  /**
+   * Get the longitude of vertex <code>i</code> of a polygon.
+   * @param i index of the vertex.
+   * @return a <code>double</code> value (degrees)
+   */
+  public double getVertexLongitude(final int i) {
+    return longitudes[i];
+  }
+
+  /**
+   * Get a string representation of this object.
+   *
+   * @return a string representation of this object.
+   *
+   * @see java.lang.Object#toString
+   */
+  public String toString() {
+    if (isPolygon()) {
+      return new StringBuffer("polygon, vertices=" + latitudes.length)
+          .toString();
+    }
+    return new StringBuffer("circle, lat=" + lat)
+        .append(", lon=" + lon)
+        .append(", radius=" + radius)
+        .toString();
+  }
+} // end Geofence
@@ -0,0 +1,1027 @@
+package net.sf.geographiclib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>GeofenceEngine</code> evaluates circular and polygonal
+ * {@link Geofence}s against a feed of object positions and reports the
+ * {@link GeofenceEvent}s of every object: entering a fence, leaving it
+ * and dwelling in it for a given time.
+ *
+ * The fences are indexed by a grid of latitude/longitude cells, every fence
+ * being listed in the cells its bounding cap may reach, so a position is
+ * only compared with the fences of its cell. Most comparisons are then
+ * decided with cheap conservative bounds computed from earth-centered,
+ * earth-fixed (ECEF) coordinates:
+ * <ul>
+ * <li>a circle: the straight line to the center is never longer than the
+ *   geodesic, and a geodesic can't be longer than the arc of the circle of
+ *   the smallest radius of curvature of the ellipsoid with the same chord;
+ * <li>a polygon: the position is located relative to the plane sections
+ *   through the vertices in a central projection, which is trusted when the
+ *   position is far enough from every edge for the difference between the
+ *   geodesic edges and the plane sections not to matter.
+ * </ul>
+ * Only the ambiguous cases, near the boundary of a fence, are resolved
+ * exactly, with one batch inverse call per micro-batch: the distance to the
+ * center of a circle, the winding number of the azimuths of the vertices of
+ * a polygon.
+ *
+ * The objects are partitioned by id; the partitions own the state of their
+ * objects and run in parallel on a {@link java.util.concurrent.ForkJoinPool},
+ * so the positions of one object are always processed in order. The
+ * engine itself isn't thread-safe: {@link #update(long[], long[], double[], double[], int, int)}
+ * must be called by one thread at a time, e.g. the consumer of the feed.
+ *
+ * @version 1.29
+ */
+public class GeofenceEngine {
+
+  /**
+   * Default size of the cells of the fence index (degrees).
+   */
+  public static final double DEFAULT_CELL_SIZE = 1;
+
+  /**
+   * Scales applied to the bounds so that rounding can never make them
+   * cross the distances they bound.
+   */
+  private static final double LOWER_BOUND_SCALE = 1 - 1e-9;
+  private static final double UPPER_BOUND_SCALE = 1 + 1e-9;
+
+  /**
+   * A polygon edge is sampled at equal steps, as many as needed for the
+   * edge to stray at most MIN_MARGIN (meters) between two samples but at
+   * most MAX_EDGE_STEPS. The margin of the edge is the largest distance of
+   * a sample from the plane section through its vertices plus what the
+   * edge can stray between samples, and at least MIN_MARGIN.
+   */
+  private static final int MAX_EDGE_STEPS = 1024;
+  private static final double MIN_MARGIN = 1e-3;
+
+  /**
+   * States of a (position, fence) pair.
+   */
+  private static final byte OUTSIDE = 0;
+  private static final byte INSIDE = 1;
+  private static final byte AMBIGUOUS = 2;
+
+  private final Geodesic geodesic;
+  private final Geofence[] fences;
+  private final long dwellTime;
+  private final ForkJoinPool pool;
+  private final double a;
+  private final double e2;
+  // the smallest radius of curvature of the ellipsoid
+  private final double rho;
+
+  // the bounding cap of every fence, the center of a circle
+  private final double[] capX;
+  private final double[] capY;
+  private final double[] capZ;
+  private final double[] capRadius;
+
+  // the polygons: the edges of fence f are vertexOffsets[f] to
+  // vertexOffsets[f + 1] - 1, edge i joining vertex i to the next one
+  private final int[] vertexOffsets;
+  private final double[] vertexLat;
+  private final double[] vertexLon;
+  // the vertices in the central projection of their fence
+  private final double[] vertexU;
+  private final double[] vertexV;
+  // the unit normals of the plane sections, the chord midpoints, the
+  // largest distances of the edges from their chord midpoints and the
+  // margins of the edges
+  private final double[] edgeNormal;
+  private final double[] edgeMiddle;
+  private final double[] edgeReach;
+  private final double[] edgeMargin;
+  // per polygon, the unit vector to the center of its cap followed by the
+  // axes of the projection plane
+  private final double[] projection;
+
+  // the fence index, the fences of cell c are cellFences[cellOffsets[c]]
+  // to cellFences[cellOffsets[c + 1] - 1], in increasing order
+  private final double cellSize;
+  private final int latCells;
+  private final int lonCells;
+  private final int[] cellOffsets;
+  private final int[] cellFences;
+
+  private final Partition[] partitions;
+
+  private final LongAdder positionCount = new LongAdder();
+  private final LongAdder candidateCount = new LongAdder();
+  private final LongAdder exactCount = new LongAdder();
+
+  /**
+   * Creates a new <code>GeofenceEngine</code> instance which uses the common
+   * pool with one partition per worker and the default cell size.
+   *
+   * @param geodesic the ellipsoid of the fences and positions.
+   * @param fences the fences; events refer to them by index.
+   * @param dwellTime the time an object must spend in a fence before a
+   *     {@link GeofenceEvent.Type#DWELL} event, in the unit of the
+   *     position times; <code>Long.MAX_VALUE</code> for no such events.
+   * @exception IllegalArgumentException if an argument is invalid or a
+   *     fence is too large.
+   */
+  public GeofenceEngine(final Geodesic geodesic,
+                        final Geofence[] fences,
+                        final long dwellTime) {
+    this(geodesic, fences, dwellTime, ForkJoinPool.commonPool(),
+         ForkJoinPool.commonPool().getParallelism(), DEFAULT_CELL_SIZE);
+  }
+
+  /**
+   * Creates a new <code>GeofenceEngine</code> instance.
+   *
+   * @param geodesic the ellipsoid of the fences and positions.
+   * @param fences the fences; events refer to them by index.
+   * @param dwellTime the time an object must spend in a fence before a
+   *     {@link GeofenceEvent.Type#DWELL} event, in the unit of the
+   *     position times; <code>Long.MAX_VALUE</code> for no such events.
+   * @param pool the pool which runs the partitions.
+   * @param partitions number of partitions of the objects.
+   * @param cellSize size of the cells of the fence index (degrees).
+   * @exception IllegalArgumentException if an argument is invalid or a
+   *     fence is too large.
+   */
+  public GeofenceEngine(final Geodesic geodesic,
+                        final Geofence[] fences,
+                        final long dwellTime,
+                        final ForkJoinPool pool,
+                        final int partitions,
+                        final double cellSize) {
+    if (geodesic == null || fences == null || pool == null) {
+      throw new IllegalArgumentException("geodesic, fences and pool must not be null");
+    }
+    if (dwellTime < 0) {
+      throw new IllegalArgumentException("dwellTime (" + dwellTime
+                                         + ") must be non-negative");
+    }
+    if (partitions < 1) {
+      throw new IllegalArgumentException("partitions (" + partitions
+                                         + ") must be positive");
+    }
+    if (!(cellSize > 0 && cellSize <= 180)) {
+      throw new IllegalArgumentException("cellSize (" + cellSize
+                                         + ") must be in (0, 180]");
+    }
+    this.geodesic = geodesic;
+    this.fences = fences.clone();
+    this.dwellTime = dwellTime;
+    this.pool = pool;
+    double f = geodesic.getFlattening();
+    this.a = geodesic.getMajorRadius();
+    this.e2 = f * (2 - f);
+    double b = a * (1 - f);
+    this.rho = Math.min(a, b) * Math.min(a, b) / Math.max(a, b);
+
+    int count = this.fences.length;
+    int vertices = 0;
+    for (int i = 0; i < count; ++i) {
+      if (this.fences[i] == null) {
+        throw new IllegalArgumentException("fence " + i + " is null");
+      }
+      vertices += this.fences[i].getVertexCount();
+    }
+    this.capX = new double[count];
+    this.capY = new double[count];
+    this.capZ = new double[count];
+    this.capRadius = new double[count];
+    this.vertexOffsets = new int[count + 1];
+    this.vertexLat = new double[vertices];
+    this.vertexLon = new double[vertices];
+    this.vertexU = new double[vertices];
+    this.vertexV = new double[vertices];
+    this.edgeNormal = new double[3 * vertices];
+    this.edgeMiddle = new double[3 * vertices];
+    this.edgeReach = new double[vertices];
+    this.edgeMargin = new double[vertices];
+    this.projection = new double[9 * count];
+    double[] capLat = new double[count];
+    double[] capLon = new double[count];
+    for (int i = 0; i < count; ++i) {
+      vertexOffsets[i + 1] = vertexOffsets[i] + this.fences[i].getVertexCount();
+      if (this.fences[i].isPolygon()) {
+        addPolygon(i, capLat, capLon);
+      } else {
+        addCircle(i, capLat, capLon);
+      }
+      if (capRadius[i] > rho) {
+        throw new IllegalArgumentException("fence " + i + " is too large, its"
+                                           + " bounding cap has a radius of "
+                                           + capRadius[i] + " m, the limit is "
+                                           + rho + " m");
+      }
+    }
+
+    this.cellSize = cellSize;
+    this.latCells = (int) Math.ceil(180 / cellSize);
+    this.lonCells = (int) Math.ceil(360 / cellSize);
+    this.cellOffsets = new int[latCells * lonCells + 1];
+    // count the fences of every cell, then fill the cells
+    for (int i = 0; i < count; ++i) {
+      addToCells(i, capLat[i], capLon[i], null);
+    }
+    for (int c = 0; c < latCells * lonCells; ++c) {
+      cellOffsets[c + 1] += cellOffsets[c];
+    }
+    this.cellFences = new int[cellOffsets[latCells * lonCells]];
+    int[] next = Arrays.copyOf(cellOffsets, latCells * lonCells);
+    for (int i = 0; i < count; ++i) {
+      addToCells(i, capLat[i], capLon[i], next);
+    }
+
+    this.partitions = new Partition[partitions];
+    for (int p = 0; p < partitions; ++p) {
+      this.partitions[p] = new Partition();
+    }
+  }
+
+  /**
+   * Get the ellipsoid of the fences and positions.
+   * @return a <code>Geodesic</code> value
+   */
+  public final Geodesic getGeodesic() {
+    return geodesic;
+  }
+
+  /**
+   * Get the number of fences.
+   * @return an <code>int</code> value
+   */
+  public final int getFenceCount() {
+    return fences.length;
+  }
+
+  /**
+   * Get fence <code>i</code>.
+   * @param i index of the fence.
+   * @return a <code>Geofence</code> value
+   */
+  public final Geofence getFence(final int i) {
+    return fences[i];
+  }
+
+  /**
+   * Get the time an object must spend in a fence before a dwell event.
+   * @return a <code>long</code> value
+   */
+  public final long getDwellTime() {
+    return dwellTime;
+  }
+
+  /**
+   * Get the number of partitions of the objects.
+   * @return an <code>int</code> value
+   */
+  public final int getPartitionCount() {
+    return partitions.length;
+  }
+
+  /**
+   * Get the number of positions processed so far.
+   * @return a <code>long</code> value
+   */
+  public final long getPositionCount() {
+    return positionCount.sum();
+  }
+
+  /**
+   * Get the number of (position, fence) pairs which shared an index cell,
+   * i.e. were checked with the bounds.
+   * @return a <code>long</code> value
+   */
+  public final long getCandidateCount() {
+    return candidateCount.sum();
+  }
+
+  /**
+   * Get the number of (position, fence) pairs which the bounds couldn't
+   * decide and were resolved with the exact geodesic computations.
+   * @return a <code>long</code> value
+   */
+  public final long getExactCount() {
+    return exactCount.sum();
+  }
+
+  /**
+   * Get the number of objects whose state is kept. Mustn't be called while
+   * an update is running.
+   * @return an <code>int</code> value
+   */
+  public final int getObjectCount() {
+    int count = 0;
+    for (Partition partition : partitions) {
+      count += partition.objects.size();
+    }
+    return count;
+  }
+
+  /**
+   * Drops the state of an object, e.g. once it went offline, without any
+   * event. Mustn't be called while an update is running.
+   *
+   * @param objectId id of the object.
+   */
+  public final void forget(final long objectId) {
+    partitions[partitionOf(objectId)].objects.remove(objectId);
+  }
+
+  /**
+   * Processes a micro-batch of positions, those of the same object being in
+   * chronological order, and returns the transitions they triggered, in
+   * the order of the positions.
+   *
+   * @param objectIds ids of the objects.
+   * @param times times of the positions, in the unit of the dwell time.
+   * @param lat latitudes of the positions (degrees).
+   * @param lon longitudes of the positions (degrees).
+   * @param offset index of the first position.
+   * @param length number of positions.
+   * @return the events.
+   * @exception IllegalArgumentException if an array is missing or too short
+   *     or a coordinate is invalid.
+   */
+  public final List<GeofenceEvent> update(final long[] objectIds,
+                                          final long[] times,
+                                          final double[] lat,
+                                          final double[] lon,
+                                          final int offset,
+                                          final int length) {
+    Geodesic.checkBatchRange(offset, length);
+    if (objectIds == null || objectIds.length - offset < length
+        || times == null || times.length - offset < length) {
+      throw new IllegalArgumentException("objectIds and times must hold "
+                                         + (offset + length) + " elements");
+    }
+    Geodesic.checkBatchInput(lat, "lat", offset, length);
+    Geodesic.checkBatchInput(lon, "lon", offset, length);
+    for (int i = offset; i < offset + length; ++i) {
+      if (!(Math.abs(lat[i]) <= 90) || !GeoMath.isFinite(lon[i])) {
+        throw new IllegalArgumentException("invalid coordinates (" + lat[i]
+                                           + ", " + lon[i] + ") at " + i);
+      }
+    }
+
+    // bucket the positions by partition, keeping their order
+    final int[] bucketOffsets = new int[partitions.length + 1];
+    for (int i = offset; i < offset + length; ++i) {
+      ++bucketOffsets[partitionOf(objectIds[i]) + 1];
+    }
+    for (int p = 0; p < partitions.length; ++p) {
+      bucketOffsets[p + 1] += bucketOffsets[p];
+    }
+    final int[] buckets = new int[length];
+    int[] next = Arrays.copyOf(bucketOffsets, partitions.length);
+    for (int i = offset; i < offset + length; ++i) {
+      buckets[next[partitionOf(objectIds[i])]++] = i;
+    }
+
+    final Batch batch = new Batch(objectIds, times, lat, lon, buckets,
+                                  bucketOffsets);
+    if (partitions.length == 1) {
+      partitions[0].process(batch, 0);
+    } else {
+      pool.invoke(new PartitionTask(batch, 0, partitions.length));
+    }
+    positionCount.add(length);
+
+    List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+    for (Partition partition : partitions) {
+      events.addAll(partition.events);
+      partition.events.clear();
+    }
+    // stable, so the events of a position stay in fence order
+    Collections.sort(events, new Comparator<GeofenceEvent>() {
+        public int compare(final GeofenceEvent e1, final GeofenceEvent e2) {
+          return Integer.compare(e1.getPosition(), e2.getPosition());
+        }
+      });
+    return events;
+  }
+
+  /**
+   * Get the partition owning an object.
+   */
+  private int partitionOf(final long objectId) {
+    return Math.floorMod(Long.hashCode(objectId * 0x9E3779B97F4A7C15L),
+                         partitions.length);
+  }
+
+  /**
+   * Sets up the cap of a circle.
+   */
+  private void addCircle(final int i, final double[] capLat, final double[] capLon) {
+    Geofence fence = fences[i];
+    double[] ecef = new double[3];
+    toEcef(fence.getLatitude(), fence.getLongitude(), ecef);
+    capX[i] = ecef[0];
+    capY[i] = ecef[1];
+    capZ[i] = ecef[2];
+    capRadius[i] = fence.getRadius();
+    capLat[i] = fence.getLatitude();
+    capLon[i] = fence.getLongitude();
+  }
+
+  /**
+   * Sets up the edges, projection and cap of a polygon.
+   */
+  private void addPolygon(final int i, final double[] capLat, final double[] capLon) {
+    Geofence fence = fences[i];
+    int first = vertexOffsets[i];
+    int n = fence.getVertexCount();
+    double[] ecef = new double[3 * n];
+    double[] point = new double[3];
+    double sx = 0;
+    double sy = 0;
+    double sz = 0;
+    for (int k = 0; k < n; ++k) {
+      vertexLat[first + k] = fence.getVertexLatitude(k);
+      vertexLon[first + k] = fence.getVertexLongitude(k);
+      toEcef(vertexLat[first + k], vertexLon[first + k], point);
+      System.arraycopy(point, 0, ecef, 3 * k, 3);
+      double r = Math.sqrt(point[0] * point[0] + point[1] * point[1]
+                           + point[2] * point[2]);
+      sx += point[0] / r;
+      sy += point[1] / r;
+      sz += point[2] / r;
+    }
+
+    // the center of the cap is the surface point in the mean direction of
+    // the vertices
+    double p = Math.hypot(sx, sy);
+    double b2 = a * a * (1 - e2);
+    double t = 1 / Math.sqrt((p * p) / (a * a) + (sz * sz) / b2);
+    capLat[i] = Math.toDegrees(Math.atan2(t * sz, (1 - e2) * t * p));
+    capLon[i] = Math.toDegrees(Math.atan2(sy, sx));
+    toEcef(capLat[i], capLon[i], point);
+    capX[i] = point[0];
+    capY[i] = point[1];
+    capZ[i] = point[2];
+
+    // the projection axes
+    double r = Math.sqrt(sx * sx + sy * sy + sz * sz);
+    double cx = sx / r;
+    double cy = sy / r;
+    double cz = sz / r;
+    double ux = -cy;
+    double uy = cx;
+    double uz = 0;
+    double u = Math.hypot(ux, uy);
+    if (u < 1e-12) {
+      // a cap centered on a pole
+      ux = 1;
+      uy = 0;
+      u = 1;
+    }
+    ux /= u;
+    uy /= u;
+    double vx = cy * uz - cz * uy;
+    double vy = cz * ux - cx * uz;
+    double vz = cx * uy - cy * ux;
+    int q = 9 * i;
+    projection[q] = cx;
+    projection[q + 1] = cy;
+    projection[q + 2] = cz;
+    projection[q + 3] = ux;
+    projection[q + 4] = uy;
+    projection[q + 5] = uz;
+    projection[q + 6] = vx;
+    projection[q + 7] = vy;
+    projection[q + 8] = vz;
+    for (int k = 0; k < n; ++k) {
+      double x = ecef[3 * k];
+      double y = ecef[3 * k + 1];
+      double z = ecef[3 * k + 2];
+      double w = x * cx + y * cy + z * cz;
+      if (!(w > 0)) {
+        throw new IllegalArgumentException("fence " + i + " is too large");
+      }
+      vertexU[first + k] = (x * ux + y * uy + z * uz) / w;
+      vertexV[first + k] = (x * vx + y * vy + z * vz) / w;
+    }
+
+    // the edges, and the cap radius from the vertices and edge samples
+    double radius = 0;
+    double maxMargin = 0;
+    double maxHalfStep = 0;
+    for (int k = 0; k < n; ++k) {
+      int k1 = (k + 1) % n;
+      int e = first + k;
+      double x0 = ecef[3 * k];
+      double y0 = ecef[3 * k + 1];
+      double z0 = ecef[3 * k + 2];
+      double x1 = ecef[3 * k1];
+      double y1 = ecef[3 * k1 + 1];
+      double z1 = ecef[3 * k1 + 2];
+      double nx = y0 * z1 - z0 * y1;
+      double ny = z0 * x1 - x0 * z1;
+      double nz = x0 * y1 - y0 * x1;
+      double nn = Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (nn > 0) {
+        edgeNormal[3 * e] = nx / nn;
+        edgeNormal[3 * e + 1] = ny / nn;
+        edgeNormal[3 * e + 2] = nz / nn;
+      }
+      edgeMiddle[3 * e] = (x0 + x1) / 2;
+      edgeMiddle[3 * e + 1] = (y0 + y1) / 2;
+      edgeMiddle[3 * e + 2] = (z0 + z1) / 2;
+
+      Geodesic.InverseResult edge =
+          geodesic.inverse(vertexLat[e], vertexLon[e],
+                           vertexLat[first + k1], vertexLon[first + k1]);
+      // The distance g(s) from the plane of the point at s along the edge
+      // vanishes at both vertices, and |g''(s)| <= 1 / rho: the acceleration
+      // of a geodesic is its normal curvature along the surface normal, at
+      // most the largest principal curvature. Between two samples h apart
+      // g thus exceeds the line joining them by at most h^2 / (8 rho), and
+      // every point is within h / 2 of a sample along the edge.
+      int steps = (int) Math.min(MAX_EDGE_STEPS, Math.max(1, Math.ceil(
+          edge.gets12() / Math.sqrt(8 * rho * MIN_MARGIN))));
+      double step = edge.gets12() / steps;
+      double deviation = 0;
+      double reach = 0;
+      for (int j = 0; j <= steps; ++j) {
+        Geodesic.DirectResult sample =
+            geodesic.direct(vertexLat[e], vertexLon[e], edge.getAzi1(),
+                            step * j);
+        toEcef(sample.getLat2(), sample.getLon2(), point);
+        deviation = Math.max(deviation,
+                             Math.abs(point[0] * edgeNormal[3 * e]
+                                      + point[1] * edgeNormal[3 * e + 1]
+                                      + point[2] * edgeNormal[3 * e + 2]));
+        double mx = point[0] - edgeMiddle[3 * e];
+        double my = point[1] - edgeMiddle[3 * e + 1];
+        double mz = point[2] - edgeMiddle[3 * e + 2];
+        reach = Math.max(reach, Math.sqrt(mx * mx + my * my + mz * mz));
+        radius = Math.max(radius, geodesic.inverse(capLat[i], capLon[i],
+                                                   sample.getLat2(),
+                                                   sample.getLon2())
+                          .gets12());
+      }
+      edgeMargin[e] = Math.max((deviation + step * step / (8 * rho))
+                               * UPPER_BOUND_SCALE, MIN_MARGIN);
+      edgeReach[e] = (reach + step / 2) * UPPER_BOUND_SCALE;
+      maxHalfStep = Math.max(maxHalfStep, step / 2);
+      maxMargin = Math.max(maxMargin, edgeMargin[e]);
+    }
+    capRadius[i] = (radius + maxHalfStep) * UPPER_BOUND_SCALE + maxMargin;
+  }
+
+  /**
+   * Counts fence i in the cells its cap may reach if next is null, else
+   * stores it in them.
+   */
+  private void addToCells(final int i,
+                          final double lat,
+                          final double lon,
+                          final int[] next) {
+    // along a path of length s the latitude changes by at most s / rho and
+    // the longitude by at most s / p, p being the smallest radius of the
+    // parallels crossed
+    double dlat = Math.toDegrees(capRadius[i] / rho) * UPPER_BOUND_SCALE;
+    double latLo = lat - dlat;
+    double latHi = lat + dlat;
+    int rowLo = latRow(Math.max(latLo, -90));
+    int rowHi = latRow(Math.min(latHi, 90));
+    int colLo = 0;
+    int cols = lonCells;
+    if (latLo > -90 && latHi < 90) {
+      GeoMath.Pair sc = new GeoMath.Pair();
+      GeoMath.sincosd(sc, Math.max(Math.abs(latLo), Math.abs(latHi)));
+      double p = a / Math.sqrt(1 - e2 * sc.first * sc.first) * sc.second;
+      double dlon = Math.toDegrees(capRadius[i] / p) * UPPER_BOUND_SCALE;
+      if (dlon < 180) {
+        colLo = lonColumn(lon - dlon);
+        int colHi = lonColumn(lon + dlon);
+        cols = Math.min(Math.floorMod(colHi - colLo, lonCells) + 1, lonCells);
+      }
+    }
+    for (int row = rowLo; row <= rowHi; ++row) {
+      for (int k = 0; k < cols; ++k) {
+        int cell = row * lonCells + (colLo + k) % lonCells;
+        if (next == null) {
+          ++cellOffsets[cell + 1];
+        } else {
+          cellFences[next[cell]++] = i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the row of the cells containing a latitude.
+   */
+  private int latRow(final double lat) {
+    return Math.min((int) Math.floor((lat + 90) / cellSize), latCells - 1);
+  }
+
+  /**
+   * Get the column of the cells containing a longitude.
+   */
+  private int lonColumn(final double lon) {
+    double x = GeoMath.angNormalize(lon);
+    int col = (int) Math.floor((x + 180) / cellSize);
+    return Math.floorMod(col, lonCells);
+  }
+
+  /**
+   * Converts a geodetic position on the surface of the ellipsoid to ECEF
+   * coordinates.
+   */
+  private void toEcef(final double lat, final double lon, final double[] ecef) {
+    GeoMath.Pair p = new GeoMath.Pair();
+    GeoMath.sincosd(p, lat);
+    double sphi = p.first;
+    double cphi = p.second;
+    GeoMath.sincosd(p, lon);
+    double n = a / Math.sqrt(1 - e2 * sphi * sphi);
+    ecef[0] = n * cphi * p.second;
+    ecef[1] = n * cphi * p.first;
+    ecef[2] = n * (1 - e2) * sphi;
+  }
+
+  /**
+   * Classifies a position relative to a fence with the bounds.
+   */
+  private byte classify(final int fence,
+                        final double x,
+                        final double y,
+                        final double z) {
+    double dx = x - capX[fence];
+    double dy = y - capY[fence];
+    double dz = z - capZ[fence];
+    double chord = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (chord * LOWER_BOUND_SCALE > capRadius[fence]) {
+      return OUTSIDE;
+    }
+    if (!fences[fence].isPolygon()) {
+      // Schur's comparison theorem: a curve whose curvature doesn't exceed
+      // 1 / rho is at most as long as the circular arc of radius rho with
+      // the same chord
+      double arc = 2 * rho * Math.asin(Math.min(1, chord / (2 * rho)));
+      return arc * UPPER_BOUND_SCALE < capRadius[fence] ? INSIDE : AMBIGUOUS;
+    }
+
+    int first = vertexOffsets[fence];
+    int end = vertexOffsets[fence + 1];
+    for (int e = first; e < end; ++e) {
+      double d = x * edgeNormal[3 * e] + y * edgeNormal[3 * e + 1]
+          + z * edgeNormal[3 * e + 2];
+      if (Math.abs(d) < edgeMargin[e]) {
+        double mx = x - edgeMiddle[3 * e];
+        double my = y - edgeMiddle[3 * e + 1];
+        double mz = z - edgeMiddle[3 * e + 2];
+        if (Math.sqrt(mx * mx + my * my + mz * mz)
+            <= edgeReach[e] + edgeMargin[e]) {
+          return AMBIGUOUS;
+        }
+      }
+    }
+    // crossing number in the central projection, where the plane sections
+    // are straight lines
+    int q = 9 * fence;
+    double w = x * projection[q] + y * projection[q + 1] + z * projection[q + 2];
+    double u = (x * projection[q + 3] + y * projection[q + 4]
+                + z * projection[q + 5]) / w;
+    double v = (x * projection[q + 6] + y * projection[q + 7]
+                + z * projection[q + 8]) / w;
+    boolean inside = false;
+    for (int e = first, prev = end - 1; e < end; prev = e++) {
+      double u0 = vertexU[prev];
+      double v0 = vertexV[prev];
+      double u1 = vertexU[e];
+      double v1 = vertexV[e];
+      if ((v1 > v) != (v0 > v)
+          && u < (u0 - u1) * (v - v1) / (v0 - v1) + u1) {
+        inside = !inside;
+      }
+    }
+    return inside ? INSIDE : OUTSIDE;
+  }
+
+  /**
+   * A micro-batch of positions bucketed by partition.
+   */
+  private static final class Batch {
+    private final long[] objectIds;
+    private final long[] times;
+    private final double[] lat;
+    private final double[] lon;
+    // the positions of partition p are buckets[bucketOffsets[p]] to
+    // buckets[bucketOffsets[p + 1] - 1]
+    private final int[] buckets;
+    private final int[] bucketOffsets;
+
+    Batch(final long[] objectIds,
+          final long[] times,
+          final double[] lat,
+          final double[] lon,
+          final int[] buckets,
+          final int[] bucketOffsets) {
+      this.objectIds = objectIds;
+      this.times = times;
+      this.lat = lat;
+      this.lon = lon;
+      this.buckets = buckets;
+      this.bucketOffsets = bucketOffsets;
+    }
+  }
+
+  /**
+   * The fences an object is in.
+   */
+  private static final class ObjectState {
+    private int count;
+    private int[] fences = new int[4];
+    private long[] entered = new long[4];
+    private boolean[] dwelt = new boolean[4];
+  }
+
+  /**
+   * A partition of the objects with their state and the scratch memory of
+   * its micro-batches.
+   */
+  private final class Partition {
+    private final Map<Long, ObjectState> objects = new HashMap<Long, ObjectState>();
+    private final List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+
+    // the candidate pairs, those of position j of the bucket being
+    // pairBegin[j] to pairBegin[j + 1] - 1
+    private int[] pairBegin = new int[64];
+    private int[] pairFence = new int[64];
+    private byte[] pairState = new byte[64];
+    private int pairCount;
+
+    // the inputs of the batch inverse calls of the ambiguous pairs, and the
+    // pair and first input of every ambiguous pair
+    private double[] lat1 = new double[64];
+    private double[] lon1 = new double[64];
+    private double[] lat2 = new double[64];
+    private double[] lon2 = new double[64];
+    private double[] result = new double[64];
+    private int inputCount;
+    private int[] ambiguousPair = new int[16];
+    private int[] ambiguousStart = new int[16];
+    private int ambiguousCount;
+
+    // the fences of an object after a position
+    private int[] inside = new int[16];
+    private ObjectState next = new ObjectState();
+
+    void process(final Batch batch, final int p) {
+      int begin = batch.bucketOffsets[p];
+      int end = batch.bucketOffsets[p + 1];
+      if (end == begin) {
+        return;
+      }
+      if (pairBegin.length < end - begin + 1) {
+        pairBegin = new int[end - begin + 1];
+      }
+      pairCount = 0;
+      long candidates = 0;
+      double[] ecef = new double[3];
+
+      // classify the candidate pairs with the bounds, one batch for the
+      // circles and one for the polygons which remain ambiguous
+      for (int j = 0; j < end - begin; ++j) {
+        int i = batch.buckets[begin + j];
+        pairBegin[j] = pairCount;
+        double lat = batch.lat[i];
+        double lon = batch.lon[i];
+        int cell = latRow(lat) * lonCells + lonColumn(lon);
+        if (cellOffsets[cell + 1] == cellOffsets[cell]) {
+          continue;
+        }
+        toEcef(lat, lon, ecef);
+        for (int c = cellOffsets[cell]; c < cellOffsets[cell + 1]; ++c) {
+          int fence = cellFences[c];
+          byte state = classify(fence, ecef[0], ecef[1], ecef[2]);
+          ++candidates;
+          if (state != OUTSIDE) {
+            addPair(fence, state);
+          }
+        }
+      }
+      pairBegin[end - begin] = pairCount;
+      candidateCount.add(candidates);
+      resolve(batch, begin, end - begin, false);
+      resolve(batch, begin, end - begin, true);
+
+      // update the objects in the order of their positions
+      for (int j = 0; j < end - begin; ++j) {
+        int i = batch.buckets[begin + j];
+        int count = 0;
+        for (int k = pairBegin[j]; k < pairBegin[j + 1]; ++k) {
+          if (pairState[k] == INSIDE) {
+            if (count == inside.length) {
+              inside = Arrays.copyOf(inside, 2 * count);
+            }
+            inside[count++] = pairFence[k];
+          }
+        }
+        transition(batch.objectIds[i], batch.times[i], i, count);
+      }
+    }
+
+    private void addPair(final int fence, final byte state) {
+      if (pairCount == pairFence.length) {
+        pairFence = Arrays.copyOf(pairFence, 2 * pairCount);
+        pairState = Arrays.copyOf(pairState, 2 * pairCount);
+      }
+      pairFence[pairCount] = fence;
+      pairState[pairCount] = state;
+      ++pairCount;
+    }
+
+    /**
+     * Resolves the ambiguous pairs of the circles or polygons exactly: a
+     * circle by the distance to its center, a polygon by the winding number
+     * of the azimuths of its vertices.
+     */
+    private void resolve(final Batch batch,
+                         final int begin,
+                         final int positions,
+                         final boolean polygons) {
+      inputCount = 0;
+      ambiguousCount = 0;
+      for (int j = 0; j < positions; ++j) {
+        int i = batch.buckets[begin + j];
+        for (int k = pairBegin[j]; k < pairBegin[j + 1]; ++k) {
+          int fence = pairFence[k];
+          if (pairState[k] != AMBIGUOUS || fences[fence].isPolygon() != polygons) {
+            continue;
+          }
+          if (ambiguousCount == ambiguousPair.length) {
+            ambiguousPair = Arrays.copyOf(ambiguousPair, 2 * ambiguousCount);
+            ambiguousStart = Arrays.copyOf(ambiguousStart, 2 * ambiguousCount);
+          }
+          ambiguousPair[ambiguousCount] = k;
+          ambiguousStart[ambiguousCount] = inputCount;
+          ++ambiguousCount;
+          if (polygons) {
+            for (int e = vertexOffsets[fence]; e < vertexOffsets[fence + 1]; ++e) {
+              addInput(batch.lat[i], batch.lon[i], vertexLat[e], vertexLon[e]);
+            }
+          } else {
+            addInput(batch.lat[i], batch.lon[i],
+                     fences[fence].getLatitude(), fences[fence].getLongitude());
+          }
+        }
+      }
+      if (ambiguousCount == 0) {
+        return;
+      }
+      exactCount.add(ambiguousCount);
+      if (polygons) {
+        geodesic.genInverse(lat1, lon1, lat2, lon2, 0, inputCount,
+                            Geodesic.MASK_AZIMUTH, null, result, null,
+                            null, null, null, null, null);
+      } else {
+        geodesic.genInverse(lat1, lon1, lat2, lon2, 0, inputCount,
+                            Geodesic.MASK_DISTANCE, result, null, null,
+                            null, null, null, null, null);
+      }
+      for (int m = 0; m < ambiguousCount; ++m) {
+        int k = ambiguousPair[m];
+        int fence = pairFence[k];
+        boolean in;
+        if (polygons) {
+          int start = ambiguousStart[m];
+          int n = fences[fence].getVertexCount();
+          double winding = 0;
+          for (int e = 0; e < n; ++e) {
+            double turn = result[start + (e + 1) % n] - result[start + e];
+            winding += GeoMath.angNormalize(turn);
+          }
+          in = Math.abs(winding) > 180;
+        } else {
+          in = result[ambiguousStart[m]] <= fences[fence].getRadius();
+        }
+        pairState[k] = in ? INSIDE : OUTSIDE;
+      }
+    }
+
+    private void addInput(final double latA,
+                          final double lonA,
+                          final double latB,
+                          final double lonB) {
+      if (inputCount == lat1.length) {
+        int capacity = 2 * inputCount;
+        lat1 = Arrays.copyOf(lat1, capacity);
+        lon1 = Arrays.copyOf(lon1, capacity);
+        lat2 = Arrays.copyOf(lat2, capacity);
+        lon2 = Arrays.copyOf(lon2, capacity);
+        result = new double[capacity];
+      }
+      lat1[inputCount] = latA;
+      lon1[inputCount] = lonA;
+      lat2[inputCount] = latB;
+      lon2[inputCount] = lonB;
+      ++inputCount;
+    }
+
+    /**
+     * Compares the fences of an object before and after a position, the
+     * first count of inside, and reports the transitions.
+     */
+    private void transition(final long objectId,
+                            final long time,
+                            final int position,
+                            final int count) {
+      ObjectState state = objects.get(objectId);
+      if (state == null) {
+        if (count == 0) {
+          return;
+        }
+        state = new ObjectState();
+        objects.put(objectId, state);
+      }
+      if (next.fences.length < count) {
+        next.fences = new int[count];
+        next.entered = new long[count];
+        next.dwelt = new boolean[count];
+      }
+      next.count = 0;
+      int o = 0;
+      int n = 0;
+      while (o < state.count || n < count) {
+        int oldFence = o < state.count ? state.fences[o] : Integer.MAX_VALUE;
+        int newFence = n < count ? inside[n] : Integer.MAX_VALUE;
+        if (oldFence < newFence) {
+          events.add(new GeofenceEvent(GeofenceEvent.Type.EXIT, objectId,
+                                       oldFence, time, position));
+          ++o;
+          continue;
+        }
+        int k = next.count++;
+        next.fences[k] = newFence;
+        if (newFence < oldFence) {
+          events.add(new GeofenceEvent(GeofenceEvent.Type.ENTER, objectId,
+                                       newFence, time, position));
+          next.entered[k] = time;
+          next.dwelt[k] = false;
+        } else {
+          next.entered[k] = state.entered[o];
+          next.dwelt[k] = state.dwelt[o];
+          ++o;
+        }
+        ++n;
+        if (!next.dwelt[k] && dwellTime != Long.MAX_VALUE
+            && time - next.entered[k] >= dwellTime) {
+          events.add(new GeofenceEvent(GeofenceEvent.Type.DWELL, objectId,
+                                       newFence, time, position));
+          next.dwelt[k] = true;
+        }
+      }
+      if (next.count == 0) {
+        objects.remove(objectId);
+        return;
+      }
+      // swap the state of the object with the scratch one
+      objects.put(objectId, next);
+      next = state;
+    }
+  } // end Partition
+
+  /**
+   * Splits a range of partitions in halves until a single one is left.
+   */
+  private final class PartitionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    // RecursiveAction is Serializable, but the task never leaves the pool
+    private final transient Batch batch;
+    private final int begin;
+    private final int end;
+
+    PartitionTask(final Batch batch, final int begin, final int end) {
+      this.batch = batch;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    protected void compute() {
+      if (end - begin == 1) {
+        partitions[begin].process(batch, begin);
+        return;
+      }
+      int middle = (begin + end) >>> 1;
+      invokeAll(new PartitionTask(batch, begin, middle),
+                new PartitionTask(batch, middle, end));
+    }
+  }
+
+} // end GeofenceEngine
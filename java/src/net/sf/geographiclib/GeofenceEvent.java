@@ -0,0 +1,106 @@
+package net.sf.geographiclib;
+
+/**
+ * <code>GeofenceEvent</code>, a transition of an object relative to a
+ * fence reported by a {@link GeofenceEngine}.
+ *
+ * @version 1.29
+ */
+public final class GeofenceEvent {
+
+  /**
+   * The kinds of transitions.
+   */
+  public enum Type {
+    /** the object entered the fence */
+    ENTER,
+    /** the object left the fence */
+    EXIT,
+    /** the object has been inside the fence for the dwell time */
+    DWELL
+  }
+
+  private final Type type;
+  private final long objectId;
+  private final int fence;
+  private final long time;
+  private final int position;
+
+  /**
+   * Creates a new <code>GeofenceEvent</code> instance.
+   *
+   * @param type the kind of transition.
+   * @param objectId id of the object.
+   * @param fence index of the fence in the engine.
+   * @param time time of the position which triggered the transition.
+   * @param position index of that position in its batch.
+   */
+  public GeofenceEvent(final Type type,
+                       final long objectId,
+                       final int fence,
+                       final long time,
+                       final int position) {
+    this.type = type;
+    this.objectId = objectId;
+    this.fence = fence;
+    this.time = time;
+    this.position = position;
+  }
+
+  /**
+   * Get the kind of transition.
+   * @return a <code>Type</code> value
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Get the id of the object.
+   * @return a <code>long</code> value
+   */
+  public long getObjectId() {
+    return objectId;
+  }
+
+  /**
+   * Get the index of the fence in the engine.
+   * @return an <code>int</code> value
+   */
+  public int getFence() {
+    return fence;
+  }
+
+  /**
+   * Get the time of the position which triggered the transition.
+   * @return a <code>long</code> value
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Get the index in its batch of the position which triggered the
+   * transition.
+   * @return an <code>int</code> value
+   */
+  public int getPosition() {
+    return position;
+  }
+
+  /**
+   * Get a string representation of this object.
+   *
+   * @return a string representation of this object.
+   *
+   * @see java.lang.Object#toString
+   */
+  public String toString() {
+    return new StringBuffer("type=" + type)
+        .append(", objectId=" + objectId)
+        .append(", fence=" + fence)
+        .append(", time=" + time)
+        .append(", position=" + position)
+        .toString();
+  }
+} // end GeofenceEvent
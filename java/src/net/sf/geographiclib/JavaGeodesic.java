@@ -0,0 +1,2116 @@
+package net.sf.geographiclib;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import net.sf.geographiclib.GeoMath.Pair;
+
+/**
+ * <code>JavaGeodesic</code>, a pure Java implementation of the geodesic
+ * calculations of the C++
+ * <a href="http://geographiclib.sourceforge.net/html/classGeographicLib_1_1Geodesic.html">GeographicLib::Geodesic</a>
+ * and GeographicLib::GeodesicLine classes (C. F. F. Karney, Algorithms for
+ * geodesics, J. Geodesy 87, 43-55 (2013)), using the 6th order series of the
+ * C++ library. It is the {@link GeodesicEngine#JAVA} engine of
+ * {@link Geodesic}: small calls avoid the JNI transition and can be inlined
+ * by the JIT, and it keeps working when the native library can't be loaded.
+ *
+ * The results are written to <code>double[]</code> arrays using the same
+ * layout as the native code, quantities which aren't requested in the
+ * outmask are left at 0. Instances are immutable and thread-safe.
+ *
+ * @version 1.29
+ */
+final class JavaGeodesic {
+
+  // capability and output bits, same values as the Geodesic.MASK_* constants
+  static final int CAP_C1   = 1 << 0;
+  static final int CAP_C1p  = 1 << 1;
+  static final int CAP_C2   = 1 << 2;
+  static final int CAP_C3   = 1 << 3;
+  static final int CAP_C4   = 1 << 4;
+  static final int OUT_MASK = 0x7F80;
+  static final int LATITUDE      = 1 << 7;
+  static final int LONGITUDE     = 1 << 8  | CAP_C3;
+  static final int AZIMUTH       = 1 << 9;
+  static final int DISTANCE      = 1 << 10 | CAP_C1;
+  static final int DISTANCE_IN   = 1 << 11 | CAP_C1 | CAP_C1p;
+  static final int REDUCEDLENGTH = 1 << 12 | CAP_C1 | CAP_C2;
+  static final int GEODESICSCALE = 1 << 13 | CAP_C1 | CAP_C2;
+  static final int AREA          = 1 << 14 | CAP_C4;
+
+  // indices of the results written by genDirect(), the order of the
+  // DirectResult constructor arguments
+  static final int DIRECT_LAT2 = 0;
+  static final int DIRECT_LON2 = 1;
+  static final int DIRECT_AZI2 = 2;
+  static final int DIRECT_m12 = 3;
+  static final int DIRECT_M12 = 4;
+  static final int DIRECT_M21 = 5;
+  static final int DIRECT_S12 = 6;
+  static final int DIRECT_A12 = 7;
+  static final int DIRECT_s12 = 8;
+  static final int DIRECT_COUNT = 9;
+
+  // indices of the results written by genInverse(), the order of the
+  // InverseResult constructor arguments
+  static final int INVERSE_s12 = 0;
+  static final int INVERSE_AZI1 = 1;
+  static final int INVERSE_AZI2 = 2;
+  static final int INVERSE_m12 = 3;
+  static final int INVERSE_M12 = 4;
+  static final int INVERSE_M21 = 5;
+  static final int INVERSE_S12 = 6;
+  static final int INVERSE_A12 = 7;
+  static final int INVERSE_COUNT = 8;
+
+  // order of the series expansions
+  private static final int GEODESIC_ORDER = 6;
+  private static final int nA1 = GEODESIC_ORDER;
+  private static final int nC1 = GEODESIC_ORDER;
+  private static final int nC1p = GEODESIC_ORDER;
+  private static final int nA2 = GEODESIC_ORDER;
+  private static final int nC2 = GEODESIC_ORDER;
+  private static final int nA3 = GEODESIC_ORDER;
+  private static final int nA3x = nA3;
+  private static final int nC3 = GEODESIC_ORDER;
+  private static final int nC3x = (nC3 * (nC3 - 1)) / 2;
+  private static final int nC4 = GEODESIC_ORDER;
+  private static final int nC4x = (nC4 * (nC4 + 1)) / 2;
+
+  // iteration limits and tolerances of the inverse solution
+  private static final int MAXIT1 = 20;
+  private static final int MAXIT2 = MAXIT1 + GeoMath.DIGITS + 10;
+  private static final double TINY = Math.sqrt(GeoMath.MIN);
+  private static final double TOL0 = GeoMath.EPSILON;
+  private static final double TOL1 = 200 * TOL0;
+  private static final double TOL2 = Math.sqrt(TOL0);
+  private static final double TOLB = TOL0 * TOL2;
+  private static final double XTHRESH = 1000 * TOL2;
+
+  /**
+   * The series coefficients of the inverse problems solved by this thread,
+   * overwritten by each of them, so that the single calls don't allocate
+   * them.
+   */
+  private static final ThreadLocal<Coefficients> COEFFICIENTS =
+      new ThreadLocal<Coefficients>() {
+        protected Coefficients initialValue() {
+          return new Coefficients();
+        }
+      };
+
+  private final double a;
+  private final double f;
+  private final double f1;
+  private final double e2;
+  private final double ep2;
+  private final double n;
+  private final double b;
+  private final double c2;
+  private final double etol2;
+  private final double[] A3x;
+  private final double[] C3x;
+  private final double[] C4x;
+
+  /**
+   * Creates a new <code>JavaGeodesic</code> instance.
+   *
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid. Setting f = 0 gives a sphere.
+   *      Negative f gives a prolate ellipsoid. If f > 1, set flattening to 1/f.
+   * @exception IllegalArgumentException if a or the polar semi-axis isn't
+   *     positive.
+   */
+  JavaGeodesic(final double a, final double f) {
+    this.a = a;
+    this.f = f > 1 ? 1 / f : f;
+    this.f1 = 1 - this.f;
+    this.e2 = this.f * (2 - this.f);
+    this.ep2 = e2 / GeoMath.sq(f1);
+    this.n = this.f / (2 - this.f);
+    this.b = a * f1;
+    // authalic radius squared
+    this.c2 = (GeoMath.sq(a) + GeoMath.sq(b)
+               * (e2 == 0 ? 1 :
+                  (e2 > 0 ? GeoMath.atanh(Math.sqrt(e2)) : Math.atan(Math.sqrt(-e2)))
+                  / Math.sqrt(Math.abs(e2)))) / 2;
+    // The sig12 threshold for "really short". Using the auxiliary sphere
+    // solution with dnm computed at (bet1 + bet2) / 2, the relative error in
+    // the azimuth consistency check is sig12^2 * abs(f) * min(1, 1-f/2) / 2.
+    this.etol2 = 0.1 * TOL2
+        / Math.sqrt(Math.max(0.001, Math.abs(this.f)) * Math.min(1.0, 1 - this.f / 2) / 2);
+    if (!(GeoMath.isFinite(a) && a > 0)) {
+      throw new IllegalArgumentException("Equatorial radius is not positive");
+    }
+    if (!(GeoMath.isFinite(b) && b > 0)) {
+      throw new IllegalArgumentException("Polar semi-axis is not positive");
+    }
+    A3x = new double[nA3x];
+    C3x = new double[nC3x];
+    C4x = new double[nC4x];
+    A3coeff();
+    C3coeff();
+    C4coeff();
+  }
+
+  /**
+   * Get the equatorial radius of the ellipsoid (meters).
+   */
+  double getMajorRadius() {
+    return a;
+  }
+
+  /**
+   * Get the flattening of the ellipsoid.
+   */
+  double getFlattening() {
+    return f;
+  }
+
+  /**
+   * Get the total area of the ellipsoid (meters<sup>2</sup>).
+   */
+  double getEllipsoidArea() {
+    return 4 * Math.PI * c2;
+  }
+
+  ///////////////////////////////////
+  // Direct and inverse solutions //
+  ///////////////////////////////////
+
+  /**
+   * Solves the direct geodesic problem.
+   *
+   * @param values receives the results, indexed by the
+   *     <code>DIRECT_*</code> constants.
+   * @return the arc length a12 (degrees).
+   */
+  double genDirect(final double lat1,
+                   final double lon1,
+                   final double azi1,
+                   final boolean arcmode,
+                   final double s12_a12,
+                   final long outmask,
+                   final double[] values) {
+    int mask = (int) outmask;
+    Line line = new Line(this, lat1, lon1, azi1,
+                         mask | (arcmode ? 0 : DISTANCE_IN));
+    return line.genPosition(arcmode, s12_a12, mask, values);
+  }
+
+  /**
+   * Solves the inverse geodesic problem.
+   *
+   * @param values receives the results, indexed by the
+   *     <code>INVERSE_*</code> constants.
+   * @return the arc length a12 (degrees).
+   */
+  double genInverse(final double lat1,
+                    final double lon1,
+                    final double lat2,
+                    final double lon2,
+                    final long outmask,
+                    final double[] values) {
+    return genInverse(lat1, lon1, lat2, lon2, outmask, values, null);
+  }
+
+  /**
+   * Solves the inverse geodesic problem and reports the number of
+   * iterations it needed (0 when no iteration is needed).
+   *
+   * @param values receives the results, indexed by the
+   *     <code>INVERSE_*</code> constants.
+   * @param iterations receives the number of iterations in element 0, may
+   *     be null.
+   * @return the arc length a12 (degrees).
+   */
+  double genInverse(final double lat1,
+                    final double lon1,
+                    final double lat2,
+                    final double lon2,
+                    final long outmask,
+                    final double[] values,
+                    final int[] iterations) {
+    for (int i = 0; i < INVERSE_COUNT; ++i) {
+      values[i] = 0;
+    }
+    Pair p = new Pair();
+    Inverse r = inverseInt(lat1, lon1, lat2, lon2, (int) outmask & OUT_MASK,
+                           values, p);
+    if ((outmask & AZIMUTH & OUT_MASK) != 0) {
+      values[INVERSE_AZI1] = GeoMath.atan2d(r.salp1, r.calp1);
+      values[INVERSE_AZI2] = GeoMath.atan2d(r.salp2, r.calp2);
+    }
+    values[INVERSE_A12] = r.a12;
+    if (iterations != null) {
+      iterations[0] = r.iterations;
+    }
+    return r.a12;
+  }
+
+  /**
+   * The sines and cosines of the azimuths and the arc length computed by
+   * inverseInt().
+   */
+  private static final class Inverse {
+    double a12;
+    int iterations;
+    double salp1;
+    double calp1;
+    double salp2;
+    double calp2;
+  }
+
+  /**
+   * The scratch arrays of the series coefficients used by inverseInt().
+   */
+  private static final class Coefficients {
+    // index zero elements of these arrays are unused
+    final double[] C1a = new double[nC1 + 1];
+    final double[] C2a = new double[nC2 + 1];
+    final double[] C3a = new double[nC3];
+    final double[] C4a = new double[nC4];
+  }
+
+  /**
+   * The distance, reduced length and geodesic scales computed by lengths().
+   */
+  private static final class Lengths {
+    double s12b;
+    double m12b;
+    double m0;
+    double M12;
+    double M21;
+  }
+
+  /**
+   * The starting point of Newton's method computed by inverseStart().
+   */
+  private static final class Start {
+    double sig12;
+    double salp1;
+    double calp1;
+    double salp2;
+    double calp2;
+    double dnm;
+  }
+
+  /**
+   * The state of one evaluation of lambda12().
+   */
+  private static final class Lambda {
+    double lam12;
+    double salp2;
+    double calp2;
+    double sig12;
+    double ssig1;
+    double csig1;
+    double ssig2;
+    double csig2;
+    double eps;
+    double domg12;
+    double dlam12;
+  }
+
+  private Inverse inverseInt(double lat1,
+                             double lon1,
+                             double lat2,
+                             double lon2,
+                             final int outmask,
+                             final double[] values,
+                             final Pair p) {
+    Inverse result = new Inverse();
+    // Compute longitude difference (angDiff does this carefully). Result is
+    // in [-180, 180] but -180 is only for west-going geodesics. 180 is for
+    // east-going and meridional geodesics.
+    lat1 = GeoMath.latFix(lat1);
+    lat2 = GeoMath.latFix(lat2);
+    // If really close to the equator, treat as on equator.
+    lat1 = GeoMath.angRound(lat1);
+    lat2 = GeoMath.angRound(lat2);
+    GeoMath.angDiff(p, lon1, lon2);
+    double lon12 = p.first;
+    double lon12s = p.second;
+    // Make longitude difference positive.
+    int lonsign = lon12 >= 0 ? 1 : -1;
+    // If very close to being on the same half-meridian, then make it so.
+    lon12 = lonsign * GeoMath.angRound(lon12);
+    lon12s = GeoMath.angRound((180 - lon12) - lonsign * lon12s);
+    double lam12 = Math.toRadians(lon12);
+    GeoMath.sincosd(p, lon12 > 90 ? lon12s : lon12);
+    double slam12 = p.first;
+    double clam12 = (lon12 > 90 ? -1 : 1) * p.second;
+
+    // Swap points so that point with higher (abs) latitude is point 1.
+    // If one latitude is a nan, then it becomes lat1.
+    int swapp = Math.abs(lat1) < Math.abs(lat2) ? -1 : 1;
+    if (swapp < 0) {
+      lonsign *= -1;
+      double t = lat1;
+      lat1 = lat2;
+      lat2 = t;
+    }
+    // Make lat1 <= 0
+    int latsign = lat1 < 0 ? 1 : -1;
+    lat1 *= latsign;
+    lat2 *= latsign;
+    // Now we have
+    //
+    //     0 <= lon12 <= 180
+    //     -90 <= lat1 <= 0
+    //     lat1 <= lat2 <= -lat1
+    //
+    // lonsign, swapp, latsign register the transformation to bring the
+    // coordinates to this canonical form. In all cases, 1 means no change
+    // was made.
+
+    double s12x = Double.NaN;
+    double m12x = Double.NaN;
+
+    GeoMath.sincosd(p, lat1);
+    double sbet1 = f1 * p.first;
+    double cbet1 = p.second;
+    // Ensure cbet1 = +epsilon at poles; doing the fix on beta means that
+    // sig12 will be <= 2*tiny for two points at the same pole.
+    GeoMath.norm(p, sbet1, cbet1);
+    sbet1 = p.first;
+    cbet1 = Math.max(TINY, p.second);
+
+    GeoMath.sincosd(p, lat2);
+    double sbet2 = f1 * p.first;
+    double cbet2 = p.second;
+    // Ensure cbet2 = +epsilon at poles
+    GeoMath.norm(p, sbet2, cbet2);
+    sbet2 = p.first;
+    cbet2 = Math.max(TINY, p.second);
+
+    // If cbet1 < -sbet1, then cbet2 - cbet1 is a sensitive measure of the
+    // |bet1| - |bet2|. Alternatively (cbet1 >= -sbet1), abs(sbet2) + sbet1
+    // is a better measure. Sometimes these quantities vanish and in that
+    // case we force bet2 = +/- bet1 exactly.
+    if (cbet1 < -sbet1) {
+      if (cbet2 == cbet1) {
+        sbet2 = sbet2 < 0 ? sbet1 : -sbet1;
+      }
+    } else {
+      if (Math.abs(sbet2) == -sbet1) {
+        cbet2 = cbet1;
+      }
+    }
+
+    double dn1 = Math.sqrt(1 + ep2 * GeoMath.sq(sbet1));
+    double dn2 = Math.sqrt(1 + ep2 * GeoMath.sq(sbet2));
+
+    double a12 = Double.NaN;
+    double sig12 = Double.NaN;
+    double calp1 = Double.NaN;
+    double salp1 = Double.NaN;
+    double calp2 = Double.NaN;
+    double salp2 = Double.NaN;
+    Coefficients coefficients = COEFFICIENTS.get();
+    double[] C1a = coefficients.C1a;
+    double[] C2a = coefficients.C2a;
+    double[] C3a = coefficients.C3a;
+    Lengths v = new Lengths();
+
+    boolean meridian = lat1 == -90 || slam12 == 0;
+
+    if (meridian) {
+      // Endpoints are on a single full meridian, so the geodesic might lie
+      // on a meridian.
+      calp1 = clam12; salp1 = slam12; // Head to the target longitude
+      calp2 = 1; salp2 = 0;           // At the target we're heading north
+
+      // tan(bet) = tan(sig) * cos(alp)
+      double ssig1 = sbet1;
+      double csig1 = calp1 * cbet1;
+      double ssig2 = sbet2;
+      double csig2 = calp2 * cbet2;
+
+      // sig12 = sig2 - sig1
+      sig12 = Math.atan2(Math.max(0.0, csig1 * ssig2 - ssig1 * csig2),
+                         csig1 * csig2 + ssig1 * ssig2);
+      lengths(n, sig12, ssig1, csig1, dn1, ssig2, csig2, dn2, cbet1, cbet2,
+              outmask | DISTANCE | REDUCEDLENGTH, C1a, C2a, v);
+      s12x = v.s12b;
+      m12x = v.m12b;
+      if ((outmask & GEODESICSCALE & OUT_MASK) != 0) {
+        values[INVERSE_M12] = v.M12;
+        values[INVERSE_M21] = v.M21;
+      }
+      // Add the check for sig12 since zero length geodesics might yield
+      // m12 < 0. In fact, we will have sig12 > pi/2 for meridional geodesic
+      // which is not a shortest path.
+      if (sig12 < 1 || m12x >= 0) {
+        // Need at least 2, to handle 90 0 90 180
+        if (sig12 < 3 * TINY) {
+          sig12 = m12x = s12x = 0;
+        }
+        m12x *= b;
+        s12x *= b;
+        a12 = Math.toDegrees(sig12);
+      } else {
+        // m12 < 0, i.e., prolate and too close to anti-podal
+        meridian = false;
+      }
+    }
+
+    // somg12 > 1 marks that it needs to be calculated
+    double omg12 = Double.NaN;
+    double somg12 = 2;
+    double comg12 = Double.NaN;
+    if (!meridian &&
+        sbet1 == 0 &&   // and sbet2 == 0
+        // Mimic the way lambda12 works with calp1 = 0
+        (f <= 0 || lon12s >= f * 180)) {
+
+      // Geodesic runs along equator
+      calp1 = calp2 = 0;
+      salp1 = salp2 = 1;
+      s12x = a * lam12;
+      sig12 = omg12 = lam12 / f1;
+      m12x = b * Math.sin(sig12);
+      if ((outmask & GEODESICSCALE & OUT_MASK) != 0) {
+        values[INVERSE_M12] = values[INVERSE_M21] = Math.cos(sig12);
+      }
+      a12 = lon12 / f1;
+
+    } else if (!meridian) {
+
+      // Now point1 and point2 belong within a hemisphere bounded by a
+      // meridian and geodesic is neither meridional or equatorial.
+
+      // Figure a starting point for Newton's method
+      Start start = inverseStart(sbet1, cbet1, dn1, sbet2, cbet2, dn2,
+                                 lam12, slam12, clam12, C1a, C2a, p, v);
+      sig12 = start.sig12;
+      salp1 = start.salp1;
+      calp1 = start.calp1;
+
+      if (sig12 >= 0) {
+        // Short lines (inverseStart sets salp2, calp2, dnm)
+        salp2 = start.salp2;
+        calp2 = start.calp2;
+        double dnm = start.dnm;
+        s12x = sig12 * b * dnm;
+        m12x = GeoMath.sq(dnm) * b * Math.sin(sig12 / dnm);
+        if ((outmask & GEODESICSCALE & OUT_MASK) != 0) {
+          values[INVERSE_M12] = values[INVERSE_M21] = Math.cos(sig12 / dnm);
+        }
+        a12 = Math.toDegrees(sig12);
+        omg12 = lam12 / (f1 * dnm);
+      } else {
+
+        // Newton's method. This is a straightforward solution of f(alp1) =
+        // lambda12(alp1) - lam12 = 0 with one wrinkle. f(alp) has exactly
+        // one root in the interval (0, pi) and its derivative is positive at
+        // the root. Thus f(alp) is positive for alp > alp1 and negative for
+        // alp < alp1. During the course of the iteration, a range (alp1a,
+        // alp1b) is maintained which brackets the root and with each
+        // evaluation of f(alp) the range is shrunk, if possible. Newton's
+        // method is restarted whenever the derivative of f is negative
+        // (because the new value of alp1 is then further from the solution)
+        // or if the new estimate of alp1 lies outside (0,pi); in this case,
+        // the new starting guess is taken to be (alp1a + alp1b) / 2.
+        Lambda w = new Lambda();
+        int numit = 0;
+        // Bracketing range
+        double salp1a = TINY;
+        double calp1a = 1;
+        double salp1b = TINY;
+        double calp1b = -1;
+        for (boolean tripn = false, tripb = false; numit < MAXIT2; ++numit) {
+          // the WGS84 test set: mean = 1.47, sd = 1.25, max = 16
+          // WGS84 and random input: mean = 2.85, sd = 0.60
+          lambda12(sbet1, cbet1, dn1, sbet2, cbet2, dn2, salp1, calp1,
+                   slam12, clam12, numit < MAXIT1, C1a, C2a, C3a, p, v, w);
+          double diff = w.lam12;
+          double dv = w.dlam12;
+          // 2 * TOL0 is approximately 1 ulp for a number in [0, pi].
+          // Reversed test to allow escape with NaNs
+          if (tripb || !(Math.abs(diff) >= (tripn ? 8 : 1) * TOL0)) {
+            break;
+          }
+          // Update bracketing values
+          if (diff > 0 && (numit > MAXIT1 || calp1 / salp1 > calp1b / salp1b)) {
+            salp1b = salp1;
+            calp1b = calp1;
+          } else if (diff < 0
+                     && (numit > MAXIT1 || calp1 / salp1 < calp1a / salp1a)) {
+            salp1a = salp1;
+            calp1a = calp1;
+          }
+          if (numit < MAXIT1 && dv > 0) {
+            double dalp1 = -diff / dv;
+            double sdalp1 = Math.sin(dalp1);
+            double cdalp1 = Math.cos(dalp1);
+            double nsalp1 = salp1 * cdalp1 + calp1 * sdalp1;
+            if (nsalp1 > 0 && Math.abs(dalp1) < Math.PI) {
+              calp1 = calp1 * cdalp1 - salp1 * sdalp1;
+              salp1 = nsalp1;
+              GeoMath.norm(p, salp1, calp1);
+              salp1 = p.first;
+              calp1 = p.second;
+              // In some regimes we don't get quadratic convergence because
+              // slope -> 0. So use convergence conditions based on epsilon
+              // instead of sqrt(epsilon).
+              tripn = Math.abs(diff) <= 16 * TOL0;
+              continue;
+            }
+          }
+          // Either dv was not positive or updated value was outside legal
+          // range. Use the midpoint of the bracket as the next estimate.
+          // This mechanism is not needed for the WGS84 ellipsoid, but it
+          // does catch problems with more eccentric ellipsoids.
+          salp1 = (salp1a + salp1b) / 2;
+          calp1 = (calp1a + calp1b) / 2;
+          GeoMath.norm(p, salp1, calp1);
+          salp1 = p.first;
+          calp1 = p.second;
+          tripn = false;
+          tripb = (Math.abs(salp1a - salp1) + (calp1a - calp1) < TOLB
+                   || Math.abs(salp1 - salp1b) + (calp1 - calp1b) < TOLB);
+        }
+        result.iterations = numit;
+        salp2 = w.salp2;
+        calp2 = w.calp2;
+        sig12 = w.sig12;
+        lengths(w.eps, sig12, w.ssig1, w.csig1, dn1, w.ssig2, w.csig2, dn2,
+                cbet1, cbet2, outmask, C1a, C2a, v);
+        s12x = v.s12b;
+        m12x = v.m12b;
+        if ((outmask & GEODESICSCALE & OUT_MASK) != 0) {
+          values[INVERSE_M12] = v.M12;
+          values[INVERSE_M21] = v.M21;
+        }
+        m12x *= b;
+        s12x *= b;
+        a12 = Math.toDegrees(sig12);
+        if ((outmask & AREA & OUT_MASK) != 0) {
+          // omg12 = lam12 - domg12
+          double sdomg12 = Math.sin(w.domg12);
+          double cdomg12 = Math.cos(w.domg12);
+          somg12 = slam12 * cdomg12 - clam12 * sdomg12;
+          comg12 = clam12 * cdomg12 + slam12 * sdomg12;
+        }
+      }
+    }
+
+    if ((outmask & DISTANCE & OUT_MASK) != 0) {
+      values[INVERSE_s12] = 0 + s12x; // Convert -0 to 0
+    }
+
+    if ((outmask & REDUCEDLENGTH & OUT_MASK) != 0) {
+      values[INVERSE_m12] = 0 + m12x; // Convert -0 to 0
+    }
+
+    if ((outmask & AREA & OUT_MASK) != 0) {
+      // From lambda12: sin(alp1) * cos(bet1) = sin(alp0)
+      double salp0 = salp1 * cbet1;
+      double calp0 = GeoMath.hypot(calp1, salp1 * sbet1); // calp0 > 0
+      double S12;
+      if (calp0 != 0 && salp0 != 0) {
+        // From lambda12: tan(bet) = tan(sig) * cos(alp)
+        double ssig1 = sbet1;
+        double csig1 = calp1 * cbet1;
+        double ssig2 = sbet2;
+        double csig2 = calp2 * cbet2;
+        double k2 = GeoMath.sq(calp0) * ep2;
+        double eps = k2 / (2 * (1 + Math.sqrt(1 + k2)) + k2);
+        // Multiplier = a^2 * e^2 * cos(alpha0) * sin(alpha0).
+        double A4 = GeoMath.sq(a) * calp0 * salp0 * e2;
+        GeoMath.norm(p, ssig1, csig1);
+        ssig1 = p.first;
+        csig1 = p.second;
+        GeoMath.norm(p, ssig2, csig2);
+        ssig2 = p.first;
+        csig2 = p.second;
+        double[] C4a = coefficients.C4a;
+        C4f(eps, C4a);
+        double B41 = sinCosSeries(false, ssig1, csig1, C4a);
+        double B42 = sinCosSeries(false, ssig2, csig2, C4a);
+        S12 = A4 * (B42 - B41);
+      } else {
+        // Avoid problems with indeterminate sig1, sig2 on equator
+        S12 = 0;
+      }
+
+      if (!meridian && somg12 > 1) {
+        somg12 = Math.sin(omg12);
+        comg12 = Math.cos(omg12);
+      }
+
+      double alp12;
+      if (!meridian &&
+          comg12 > -0.7071 &&     // Long difference not too big
+          sbet2 - sbet1 < 1.75) { // Lat difference not too big
+        // Use tan(Gamma/2) = tan(omg12/2)
+        // * (tan(bet1/2)+tan(bet2/2))/(1+tan(bet1/2)*tan(bet2/2))
+        // with tan(x/2) = sin(x)/(1+cos(x))
+        double domg12 = 1 + comg12;
+        double dbet1 = 1 + cbet1;
+        double dbet2 = 1 + cbet2;
+        alp12 = 2 * Math.atan2(somg12 * (sbet1 * dbet2 + sbet2 * dbet1),
+                               domg12 * (sbet1 * sbet2 + dbet1 * dbet2));
+      } else {
+        // alp12 = alp2 - alp1, used in atan2 so no need to normalize
+        double salp12 = salp2 * calp1 - calp2 * salp1;
+        double calp12 = calp2 * calp1 + salp2 * salp1;
+        // The right thing appears to happen if alp1 = +/-180 and alp2 = 0,
+        // viz salp12 = -0 and alp12 = -180. However this depends on the sign
+        // being attached to 0 correctly. The following ensures the correct
+        // behavior.
+        if (salp12 == 0 && calp12 < 0) {
+          salp12 = TINY * calp1;
+          calp12 = -1;
+        }
+        alp12 = Math.atan2(salp12, calp12);
+      }
+      S12 += c2 * alp12;
+      S12 *= swapp * lonsign * latsign;
+      // Convert -0 to 0
+      values[INVERSE_S12] = S12 + 0;
+    }
+
+    // Convert calp, salp to azimuth accounting for lonsign, swapp, latsign.
+    if (swapp < 0) {
+      double t = salp1;
+      salp1 = salp2;
+      salp2 = t;
+      t = calp1;
+      calp1 = calp2;
+      calp2 = t;
+      if ((outmask & GEODESICSCALE & OUT_MASK) != 0) {
+        t = values[INVERSE_M12];
+        values[INVERSE_M12] = values[INVERSE_M21];
+        values[INVERSE_M21] = t;
+      }
+    }
+
+    salp1 *= swapp * lonsign;
+    calp1 *= swapp * latsign;
+    salp2 *= swapp * lonsign;
+    calp2 *= swapp * latsign;
+
+    // Returned value in [0, 180]
+    result.a12 = a12;
+    result.salp1 = salp1;
+    result.calp1 = calp1;
+    result.salp2 = salp2;
+    result.calp2 = calp2;
+    return result;
+  }
+
+  /**
+   * Computes s12b = distance / b, m12b = (reduced length) / b, m0 =
+   * coefficient of the secular term in the expression for the reduced
+   * length and the geodesic scales, as selected by outmask.
+   */
+  private void lengths(final double eps,
+                       final double sig12,
+                       final double ssig1,
+                       final double csig1,
+                       final double dn1,
+                       final double ssig2,
+                       final double csig2,
+                       final double dn2,
+                       final double cbet1,
+                       final double cbet2,
+                       int outmask,
+                       // Scratch areas of the right size
+                       final double[] C1a,
+                       final double[] C2a,
+                       final Lengths v) {
+    outmask &= OUT_MASK;
+    double m0x = 0;
+    double J12 = 0;
+    double A1 = 0;
+    double A2 = 0;
+    if ((outmask & (DISTANCE | REDUCEDLENGTH | GEODESICSCALE)) != 0) {
+      A1 = A1m1f(eps);
+      C1f(eps, C1a);
+      if ((outmask & (REDUCEDLENGTH | GEODESICSCALE)) != 0) {
+        A2 = A2m1f(eps);
+        C2f(eps, C2a);
+        m0x = A1 - A2;
+        A2 = 1 + A2;
+      }
+      A1 = 1 + A1;
+    }
+    if ((outmask & DISTANCE) != 0) {
+      double B1 = sinCosSeries(true, ssig2, csig2, C1a)
+          - sinCosSeries(true, ssig1, csig1, C1a);
+      // Missing a factor of b
+      v.s12b = A1 * (sig12 + B1);
+      if ((outmask & (REDUCEDLENGTH | GEODESICSCALE)) != 0) {
+        double B2 = sinCosSeries(true, ssig2, csig2, C2a)
+            - sinCosSeries(true, ssig1, csig1, C2a);
+        J12 = m0x * sig12 + (A1 * B1 - A2 * B2);
+      }
+    } else if ((outmask & (REDUCEDLENGTH | GEODESICSCALE)) != 0) {
+      // Assume here that nC1 >= nC2
+      for (int l = 1; l <= nC2; ++l) {
+        C2a[l] = A1 * C1a[l] - A2 * C2a[l];
+      }
+      J12 = m0x * sig12 + (sinCosSeries(true, ssig2, csig2, C2a)
+                           - sinCosSeries(true, ssig1, csig1, C2a));
+    }
+    if ((outmask & REDUCEDLENGTH) != 0) {
+      v.m0 = m0x;
+      // Missing a factor of b.
+      // Add parens around (csig1 * ssig2) and (ssig1 * csig2) to ensure
+      // accurate cancellation in the case of coincident points.
+      v.m12b = dn2 * (csig1 * ssig2) - dn1 * (ssig1 * csig2)
+          - csig1 * csig2 * J12;
+    }
+    if ((outmask & GEODESICSCALE) != 0) {
+      double csig12 = csig1 * csig2 + ssig1 * ssig2;
+      double t = ep2 * (cbet1 - cbet2) * (cbet1 + cbet2) / (dn1 + dn2);
+      v.M12 = csig12 + (t * ssig2 - csig2 * J12) * ssig1 / dn1;
+      v.M21 = csig12 - (t * ssig1 - csig1 * J12) * ssig2 / dn2;
+    }
+  }
+
+  /**
+   * Solve k^4+2*k^3-(x^2+y^2-1)*k^2-2*y^2*k-y^2 = 0 for the positive root k.
+   */
+  private static double astroid(final double x, final double y) {
+    double k;
+    double p = GeoMath.sq(x);
+    double q = GeoMath.sq(y);
+    double r = (p + q - 1) / 6;
+    if (!(q == 0 && r <= 0)) {
+      // Avoid possible division by zero when r = 0 by multiplying equations
+      // for s and t by r^3 and r, resp.
+      double S = p * q / 4; // S = r^3 * s
+      double r2 = GeoMath.sq(r);
+      double r3 = r * r2;
+      // The discriminant of the quadratic equation for T3. This is zero on
+      // the evolute curve p^(1/3)+q^(1/3) = 1
+      double disc = S * (S + 2 * r3);
+      double u = r;
+      if (disc >= 0) {
+        double T3 = S + r3;
+        // Pick the sign on the sqrt to maximize abs(T3). This minimizes loss
+        // of precision due to cancellation. The result is unchanged because
+        // of the way the T is used in definition of u.
+        T3 += T3 < 0 ? -Math.sqrt(disc) : Math.sqrt(disc); // T3 = (r * t)^3
+        // N.B. cbrt always returns the real root. cbrt(-8) = -2.
+        double T = Math.cbrt(T3); // T = r * t
+        // T can be zero; but then r2 / T -> 0.
+        u += T + (T != 0 ? r2 / T : 0);
+      } else {
+        // T is complex, but the way u is defined the result is real.
+        double ang = Math.atan2(Math.sqrt(-disc), -(S + r3));
+        // There are three possible cube roots. We choose the root which
+        // avoids cancellation. Note that disc < 0 implies that r < 0.
+        u += 2 * r * Math.cos(ang / 3);
+      }
+      double v = Math.sqrt(GeoMath.sq(u) + q); // guaranteed positive
+      // Avoid loss of accuracy when u < 0.
+      double uv = u < 0 ? q / (v - u) : u + v; // u+v, guaranteed positive
+      double w = (uv - q) / (2 * v);           // positive?
+      // Rearrange expression for k to avoid loss of accuracy due to
+      // subtraction. Division by 0 not possible because uv > 0, w >= 0.
+      k = uv / (Math.sqrt(uv + GeoMath.sq(w)) + w); // guaranteed positive
+    } else { // q == 0 && r <= 0
+      // y = 0 with |x| <= 1. Handle this case directly.
+      // for y small, positive root is k = abs(y)/sqrt(1-x^2)
+      k = 0;
+    }
+    return k;
+  }
+
+  /**
+   * Returns a starting point for Newton's method in salp1 and calp1 (sig12
+   * is -1). If Newton's method doesn't need to be used, also returns salp2,
+   * calp2 and dnm and sig12 is the arc length.
+   */
+  private Start inverseStart(final double sbet1,
+                             final double cbet1,
+                             final double dn1,
+                             final double sbet2,
+                             final double cbet2,
+                             final double dn2,
+                             final double lam12,
+                             final double slam12,
+                             final double clam12,
+                             // Scratch areas of the right size
+                             final double[] C1a,
+                             final double[] C2a,
+                             final Pair p,
+                             final Lengths v) {
+    Start w = new Start();
+    w.sig12 = -1; // Return value
+    // bet12 = bet2 - bet1 in [0, pi); bet12a = bet2 + bet1 in (-pi, 0]
+    double sbet12 = sbet2 * cbet1 - cbet2 * sbet1;
+    double cbet12 = cbet2 * cbet1 + sbet2 * sbet1;
+    double sbet12a = sbet2 * cbet1 + cbet2 * sbet1;
+    boolean shortline = cbet12 >= 0 && sbet12 < 0.5 && cbet2 * lam12 < 0.5;
+    double somg12;
+    double comg12;
+    if (shortline) {
+      double sbetm2 = GeoMath.sq(sbet1 + sbet2);
+      // sin((bet1+bet2)/2)^2
+      // =  (sbet1 + sbet2)^2 / ((sbet1 + sbet2)^2 + (cbet1 + cbet2)^2)
+      sbetm2 /= sbetm2 + GeoMath.sq(cbet1 + cbet2);
+      w.dnm = Math.sqrt(1 + ep2 * sbetm2);
+      double omg12 = lam12 / (f1 * w.dnm);
+      somg12 = Math.sin(omg12);
+      comg12 = Math.cos(omg12);
+    } else {
+      somg12 = slam12;
+      comg12 = clam12;
+    }
+
+    w.salp1 = cbet2 * somg12;
+    w.calp1 = comg12 >= 0
+        ? sbet12 + cbet2 * sbet1 * GeoMath.sq(somg12) / (1 + comg12)
+        : sbet12a - cbet2 * sbet1 * GeoMath.sq(somg12) / (1 - comg12);
+
+    double ssig12 = GeoMath.hypot(w.salp1, w.calp1);
+    double csig12 = sbet1 * sbet2 + cbet1 * cbet2 * comg12;
+
+    if (shortline && ssig12 < etol2) {
+      // really short lines
+      w.salp2 = cbet1 * somg12;
+      w.calp2 = sbet12 - cbet1 * sbet2
+          * (comg12 >= 0 ? GeoMath.sq(somg12) / (1 + comg12) : 1 - comg12);
+      GeoMath.norm(p, w.salp2, w.calp2);
+      w.salp2 = p.first;
+      w.calp2 = p.second;
+      // Set return value
+      w.sig12 = Math.atan2(ssig12, csig12);
+    } else if (Math.abs(n) > 0.1 || // Skip astroid calc if too eccentric
+               csig12 >= 0 ||
+               ssig12 >= 6 * Math.abs(n) * Math.PI * GeoMath.sq(cbet1)) {
+      // Nothing to do, zeroth order spherical approximation is OK
+    } else {
+      // Scale lam12 and bet2 to x, y coordinate system where antipodal point
+      // is at origin and singular point is at y = 0, x = -1.
+      double x;
+      double y;
+      double lamscale;
+      double betscale;
+      double lam12x = Math.atan2(-slam12, -clam12); // lam12 - pi
+      if (f >= 0) { // In fact f == 0 does not get here
+        // x = dlong, y = dlat
+        double k2 = GeoMath.sq(sbet1) * ep2;
+        double eps = k2 / (2 * (1 + Math.sqrt(1 + k2)) + k2);
+        lamscale = f * cbet1 * A3f(eps) * Math.PI;
+        betscale = lamscale * cbet1;
+
+        x = lam12x / lamscale;
+        y = sbet12a / betscale;
+      } else { // f < 0
+        // x = dlat, y = dlong
+        double cbet12a = cbet2 * cbet1 - sbet2 * sbet1;
+        double bet12a = Math.atan2(sbet12a, cbet12a);
+        // In the case of lon12 = 180, this repeats a calculation made in
+        // inverse.
+        lengths(n, Math.PI + bet12a, sbet1, -cbet1, dn1, sbet2, cbet2, dn2,
+                cbet1, cbet2, REDUCEDLENGTH, C1a, C2a, v);
+        x = -1 + v.m12b / (cbet1 * cbet2 * v.m0 * Math.PI);
+        betscale = x < -0.01 ? sbet12a / x : -f * GeoMath.sq(cbet1) * Math.PI;
+        lamscale = betscale / cbet1;
+        y = lam12x / lamscale;
+      }
+
+      if (y > -TOL1 && x > -1 - XTHRESH) {
+        // strip near cut
+        if (f >= 0) {
+          w.salp1 = Math.min(1.0, -x);
+          w.calp1 = -Math.sqrt(1 - GeoMath.sq(w.salp1));
+        } else {
+          w.calp1 = Math.max(x > -TOL1 ? 0.0 : -1.0, x);
+          w.salp1 = Math.sqrt(1 - GeoMath.sq(w.calp1));
+        }
+      } else {
+        // Estimate alp1, by solving the astroid problem.
+        //
+        // Could estimate alpha1 = theta + pi/2, directly, i.e.,
+        //   calp1 = y/k; salp1 = -x/(1+k);  for f >= 0
+        //   calp1 = x/(1+k); salp1 = -y/k;  for f < 0 (need to check)
+        //
+        // However, it's better to estimate omg12 from astroid and use
+        // spherical formula to compute alp1. This reduces the mean number of
+        // Newton iterations for astroid cases from 2.24 (min 0, max 6) to
+        // 2.12 (min 0 max 5).
+        double k = astroid(x, y);
+        double omg12a = lamscale * (f >= 0 ? -x * k / (1 + k) : -y * (1 + k) / k);
+        somg12 = Math.sin(omg12a);
+        comg12 = -Math.cos(omg12a);
+        // Update spherical estimate of alp1 using omg12 instead of lam12
+        w.salp1 = cbet2 * somg12;
+        w.calp1 = sbet12a - cbet2 * sbet1 * GeoMath.sq(somg12) / (1 - comg12);
+      }
+    }
+    // Sanity check on starting guess. Backwards check allows NaN through.
+    if (!(w.salp1 <= 0)) {
+      GeoMath.norm(p, w.salp1, w.calp1);
+      w.salp1 = p.first;
+      w.calp1 = p.second;
+    } else {
+      w.salp1 = 1;
+      w.calp1 = 0;
+    }
+    return w;
+  }
+
+  /**
+   * Evaluates the longitude difference lambda12 (minus the target) for a
+   * trial azimuth alp1 and, if diffp, its derivative with respect to alp1.
+   */
+  private void lambda12(final double sbet1,
+                        final double cbet1,
+                        final double dn1,
+                        final double sbet2,
+                        final double cbet2,
+                        final double dn2,
+                        final double salp1,
+                        double calp1,
+                        final double slam120,
+                        final double clam120,
+                        final boolean diffp,
+                        // Scratch areas of the right size
+                        final double[] C1a,
+                        final double[] C2a,
+                        final double[] C3a,
+                        final Pair p,
+                        final Lengths v,
+                        final Lambda w) {
+    if (sbet1 == 0 && calp1 == 0) {
+      // Break degeneracy of equatorial line. This case has already been
+      // handled.
+      calp1 = -TINY;
+    }
+
+    // sin(alp1) * cos(bet1) = sin(alp0)
+    double salp0 = salp1 * cbet1;
+    double calp0 = GeoMath.hypot(calp1, salp1 * sbet1); // calp0 > 0
+
+    // tan(bet1) = tan(sig1) * cos(alp1)
+    // tan(omg1) = sin(alp0) * tan(sig1) = tan(omg1)=tan(alp1)*sin(bet1)
+    double somg1 = salp0 * sbet1;
+    double comg1 = calp1 * cbet1;
+    GeoMath.norm(p, sbet1, calp1 * cbet1);
+    w.ssig1 = p.first;
+    w.csig1 = p.second;
+    // GeoMath.norm(somg1, comg1); -- don't need to normalize!
+
+    // Enforce symmetries in the case abs(bet2) = -bet1. Need to be careful
+    // about this case, since this can yield singularities in the Newton
+    // iteration.
+    // sin(alp2) * cos(bet2) = sin(alp0)
+    w.salp2 = cbet2 != cbet1 ? salp0 / cbet2 : salp1;
+    // calp2 = sqrt(1 - sq(salp2))
+    //       = sqrt(sq(calp0) - sq(sbet2)) / cbet2
+    // and subst for calp0 and rearrange to give (choose positive sqrt
+    // to give alp2 in [0, pi/2]).
+    w.calp2 = cbet2 != cbet1 || Math.abs(sbet2) != -sbet1
+        ? Math.sqrt(GeoMath.sq(calp1 * cbet1)
+                    + (cbet1 < -sbet1
+                       ? (cbet2 - cbet1) * (cbet1 + cbet2)
+                       : (sbet1 - sbet2) * (sbet1 + sbet2))) / cbet2
+        : Math.abs(calp1);
+    // tan(bet2) = tan(sig2) * cos(alp2)
+    // tan(omg2) = sin(alp0) * tan(sig2).
+    double somg2 = salp0 * sbet2;
+    double comg2 = w.calp2 * cbet2;
+    GeoMath.norm(p, sbet2, w.calp2 * cbet2);
+    w.ssig2 = p.first;
+    w.csig2 = p.second;
+    // GeoMath.norm(somg2, comg2); -- don't need to normalize!
+
+    // sig12 = sig2 - sig1, limit to [0, pi]
+    w.sig12 = Math.atan2(Math.max(0.0, w.csig1 * w.ssig2 - w.ssig1 * w.csig2),
+                         w.csig1 * w.csig2 + w.ssig1 * w.ssig2);
+
+    // omg12 = omg2 - omg1, limit to [0, pi]
+    double somg12 = Math.max(0.0, comg1 * somg2 - somg1 * comg2);
+    double comg12 = comg1 * comg2 + somg1 * somg2;
+    // eta = omg12 - lam120
+    double eta = Math.atan2(somg12 * clam120 - comg12 * slam120,
+                            comg12 * clam120 + somg12 * slam120);
+    double k2 = GeoMath.sq(calp0) * ep2;
+    w.eps = k2 / (2 * (1 + Math.sqrt(1 + k2)) + k2);
+    C3f(w.eps, C3a);
+    double B312 = sinCosSeries(true, w.ssig2, w.csig2, C3a)
+        - sinCosSeries(true, w.ssig1, w.csig1, C3a);
+    w.domg12 = -f * A3f(w.eps) * salp0 * (w.sig12 + B312);
+    w.lam12 = eta + w.domg12;
+
+    if (diffp) {
+      if (w.calp2 == 0) {
+        w.dlam12 = -2 * f1 * dn1 / sbet1;
+      } else {
+        lengths(w.eps, w.sig12, w.ssig1, w.csig1, dn1, w.ssig2, w.csig2, dn2,
+                cbet1, cbet2, REDUCEDLENGTH, C1a, C2a, v);
+        w.dlam12 = v.m12b * f1 / (w.calp2 * cbet2);
+      }
+    } else {
+      w.dlam12 = Double.NaN;
+    }
+  }
+
+  ///////////////////////
+  // Geodesic line     //
+  ///////////////////////
+
+  /**
+   * <code>Line</code>, the pure Java equivalent of the C++
+   * GeographicLib::GeodesicLine used to solve the direct problem.
+   */
+  static final class Line {
+    private final double a;
+    private final double f;
+    private final double b;
+    private final double c2;
+    private final double f1;
+    private final int caps;
+    private final double lat1;
+    private final double lon1;
+    private final double azi1;
+    private final double salp1;
+    private final double calp1;
+    private final double dn1;
+    private final double salp0;
+    private final double calp0;
+    private final double ssig1;
+    private final double csig1;
+    private final double somg1;
+    private final double comg1;
+    private final double k2;
+    private double A1m1;
+    private double A2m1;
+    private double A3c;
+    private double B11;
+    private double B21;
+    private double B31;
+    private double A4;
+    private double B41;
+    private double stau1;
+    private double ctau1;
+    // index zero elements of C1a, C1pa, C2a, C3a are unused
+    private double[] C1a;
+    private double[] C1pa;
+    private double[] C2a;
+    private double[] C3a;
+    private double[] C4a;
+
+    /**
+     * Creates a new <code>Line</code> instance.
+     *
+     * @param g the ellipsoid.
+     * @param lat1 latitude of point 1 (degrees).
+     * @param lon1 longitude of point 1 (degrees).
+     * @param azi1 azimuth at point 1 (degrees).
+     * @param caps the capabilities (a bitor'ed combination of the mask
+     *     values) the line should have.
+     */
+    Line(final JavaGeodesic g,
+         final double lat1,
+         final double lon1,
+         final double azi1,
+         final int caps) {
+      a = g.a;
+      f = g.f;
+      b = g.b;
+      c2 = g.c2;
+      f1 = g.f1;
+      // Always allow latitude and azimuth
+      this.caps = caps | LATITUDE | AZIMUTH;
+
+      this.lat1 = GeoMath.latFix(lat1);
+      this.lon1 = lon1;
+      this.azi1 = GeoMath.angNormalize(azi1);
+      Pair p = new Pair();
+      // Guard against underflow in salp0
+      GeoMath.sincosd(p, GeoMath.angRound(this.azi1));
+      salp1 = p.first;
+      calp1 = p.second;
+
+      GeoMath.sincosd(p, GeoMath.angRound(this.lat1));
+      double sbet1 = f1 * p.first;
+      double cbet1 = p.second;
+      // Ensure cbet1 = +epsilon at poles
+      GeoMath.norm(p, sbet1, cbet1);
+      sbet1 = p.first;
+      cbet1 = Math.max(TINY, p.second);
+      dn1 = Math.sqrt(1 + g.ep2 * GeoMath.sq(sbet1));
+
+      // Evaluate alp0 from sin(alp1) * cos(bet1) = sin(alp0),
+      salp0 = salp1 * cbet1; // alp0 in [0, pi/2 - |bet1|]
+      // Alt: calp0 = hypot(sbet1, calp1 * cbet1). The following
+      // is slightly better (consider the case salp1 = 0).
+      calp0 = GeoMath.hypot(calp1, salp1 * sbet1);
+      // Evaluate sig with tan(bet1) = tan(sig1) * cos(alp1).
+      // sig = 0 is nearest northward crossing of equator.
+      // With bet1 = 0, alp1 = pi/2, we have sig1 = 0 (equatorial line).
+      // With bet1 =  pi/2, alp1 = -pi, sig1 =  pi/2
+      // With bet1 = -pi/2, alp1 =  0 , sig1 = -pi/2
+      // Evaluate omg1 with tan(omg1) = sin(alp0) * tan(sig1).
+      // With alp0 in (0, pi/2], quadrants for sig and omg coincide.
+      // No atan2(0,-1) = pi issue. So alp0 = 0, omg1 = 0
+      // With alp0 = 0, we have omg1 = 0 but sig1 unchanged
+      somg1 = salp0 * sbet1;
+      comg1 = sbet1 != 0 || calp1 != 0 ? cbet1 * calp1 : 1;
+      GeoMath.norm(p, sbet1, comg1);
+      ssig1 = p.first;
+      csig1 = p.second; // sig1 in (-pi, pi]
+      // GeoMath.norm(somg1, comg1); -- don't need to normalize!
+
+      k2 = GeoMath.sq(calp0) * g.ep2;
+      double eps = k2 / (2 * (1 + Math.sqrt(1 + k2)) + k2);
+
+      if ((this.caps & CAP_C1) != 0) {
+        A1m1 = A1m1f(eps);
+        C1a = new double[nC1 + 1];
+        C1f(eps, C1a);
+        B11 = sinCosSeries(true, ssig1, csig1, C1a);
+        double s = Math.sin(B11);
+        double c = Math.cos(B11);
+        // tau1 = sig1 + B11
+        stau1 = ssig1 * c + csig1 * s;
+        ctau1 = csig1 * c - ssig1 * s;
+        // Not necessary because C1pa reverts C1a
+        //    B11 = -sinCosSeries(true, stau1, ctau1, C1pa);
+      }
+
+      if ((this.caps & CAP_C1p) != 0) {
+        C1pa = new double[nC1p + 1];
+        C1pf(eps, C1pa);
+      }
+
+      if ((this.caps & CAP_C2) != 0) {
+        A2m1 = A2m1f(eps);
+        C2a = new double[nC2 + 1];
+        C2f(eps, C2a);
+        B21 = sinCosSeries(true, ssig1, csig1, C2a);
+      }
+
+      if ((this.caps & CAP_C3) != 0) {
+        C3a = new double[nC3];
+        g.C3f(eps, C3a);
+        A3c = -f * salp0 * g.A3f(eps);
+        B31 = sinCosSeries(true, ssig1, csig1, C3a);
+      }
+
+      if ((this.caps & CAP_C4) != 0) {
+        C4a = new double[nC4];
+        g.C4f(eps, C4a);
+        // Multiplier = a^2 * e^2 * cos(alpha0) * sin(alpha0)
+        A4 = GeoMath.sq(a) * calp0 * salp0 * g.e2;
+        B41 = sinCosSeries(false, ssig1, csig1, C4a);
+      }
+    }
+
+    /**
+     * Get the latitude of point 1 (degrees).
+     */
+    double getLatitude() {
+      return lat1;
+    }
+
+    /**
+     * Get the longitude of point 1 (degrees).
+     */
+    double getLongitude() {
+      return lon1;
+    }
+
+    /**
+     * Get the azimuth at point 1 (degrees).
+     */
+    double getAzimuth() {
+      return azi1;
+    }
+
+    /**
+     * Get the capabilities of the line, always including latitude and
+     * azimuth.
+     */
+    int getCapabilities() {
+      return caps;
+    }
+
+    /**
+     * Java version of the native batch position function, see
+     * GeodesicLine.genPosition(boolean, double[], ...).
+     */
+    void genPositionBatch(final boolean arcmode,
+                          final double[] s12_a12,
+                          final int offset,
+                          final int length,
+                          final long outmask,
+                          final double[] lat2,
+                          final double[] lon2,
+                          final double[] azi2,
+                          final double[] s12,
+                          final double[] m12,
+                          final double[] M12,
+                          final double[] M21,
+                          final double[] S12,
+                          final double[] a12) {
+      double[] values = new double[DIRECT_COUNT];
+      for (int i = offset; i < offset + length; ++i) {
+        genPosition(arcmode, s12_a12[i], (int) outmask, values);
+        store(lat2, i, outmask, LATITUDE, values[DIRECT_LAT2]);
+        store(lon2, i, outmask, LONGITUDE, values[DIRECT_LON2]);
+        store(azi2, i, outmask, AZIMUTH, values[DIRECT_AZI2]);
+        store(s12, i, outmask, DISTANCE, values[DIRECT_s12]);
+        store(m12, i, outmask, REDUCEDLENGTH, values[DIRECT_m12]);
+        store(M12, i, outmask, GEODESICSCALE, values[DIRECT_M12]);
+        store(M21, i, outmask, GEODESICSCALE, values[DIRECT_M21]);
+        store(S12, i, outmask, AREA, values[DIRECT_S12]);
+        // a12 is always calculated
+        if (a12 != null) {
+          a12[i] = values[DIRECT_A12];
+        }
+      }
+    }
+
+    /**
+     * Computes the position of point 2 a distance or arc length from point 1.
+     *
+     * @param values receives the results, indexed by the
+     *     <code>DIRECT_*</code> constants.
+     * @return the arc length a12 (degrees).
+     */
+    double genPosition(final boolean arcmode,
+                       final double s12_a12,
+                       int outmask,
+                       final double[] values) {
+      for (int i = 0; i < DIRECT_COUNT; ++i) {
+        values[i] = 0;
+      }
+      outmask &= caps & OUT_MASK;
+      if (!(arcmode || (caps & DISTANCE_IN & OUT_MASK) != 0)) {
+        // Impossible distance calculation requested
+        values[DIRECT_A12] = Double.NaN;
+        return Double.NaN;
+      }
+
+      double sig12;
+      double ssig12;
+      double csig12;
+      double B12 = 0;
+      double AB1 = 0;
+      double a12;
+      if (arcmode) {
+        // Interpret s12_a12 as spherical arc length
+        a12 = s12_a12;
+        sig12 = Math.toRadians(s12_a12);
+        Pair p = new Pair();
+        GeoMath.sincosd(p, s12_a12);
+        ssig12 = p.first;
+        csig12 = p.second;
+      } else {
+        // Interpret s12_a12 as distance
+        double tau12 = s12_a12 / (b * (1 + A1m1));
+        double s = Math.sin(tau12);
+        double c = Math.cos(tau12);
+        // tau2 = tau1 + tau12
+        B12 = -sinCosSeries(true,
+                            stau1 * c + ctau1 * s,
+                            ctau1 * c - stau1 * s,
+                            C1pa);
+        sig12 = tau12 - (B12 - B11);
+        ssig12 = Math.sin(sig12);
+        csig12 = Math.cos(sig12);
+        if (Math.abs(f) > 0.01) {
+          // Reverted distance series is inaccurate for |f| > 1/100, so
+          // correct sig12 with 1 Newton iteration. The following table shows
+          // the approximate maximum error for a = WGS_a() and various f
+          // relative to GeodesicExact.
+          //     erri = the error in the inverse solution (nm)
+          //     errd = the error in the direct solution (series only) (nm)
+          //     errda = the error in the direct solution (series + 1 Newton)
+          //
+          //      f     erri  errd errda
+          //     -1/5    12e6 1.2e9  69e6
+          //     -1/10  123e3  12e6 765e3
+          //     -1/20   1110 108e3  7155
+          //     -1/50  18.63 200.9 27.12
+          //     -1/100 18.63 23.78 23.37
+          //     -1/150 18.63 21.05 20.26
+          //      1/150 22.35 24.73 25.83
+          //      1/100 22.35 25.03 25.31
+          //      1/50  29.80 231.9 30.44
+          //      1/20   5376 146e3  10e3
+          //      1/10  829e3  22e6 1.5e6
+          //      1/5   157e6 3.8e9 280e6
+          double ssig2 = ssig1 * csig12 + csig1 * ssig12;
+          double csig2 = csig1 * csig12 - ssig1 * ssig12;
+          B12 = sinCosSeries(true, ssig2, csig2, C1a);
+          double serr = (1 + A1m1) * (sig12 + (B12 - B11)) - s12_a12 / b;
+          sig12 = sig12 - serr / Math.sqrt(1 + k2 * GeoMath.sq(ssig2));
+          ssig12 = Math.sin(sig12);
+          csig12 = Math.cos(sig12);
+          // Update B12 below
+        }
+        a12 = Math.toDegrees(sig12);
+      }
+      values[DIRECT_A12] = a12;
+
+      // sig2 = sig1 + sig12
+      double ssig2 = ssig1 * csig12 + csig1 * ssig12;
+      double csig2 = csig1 * csig12 - ssig1 * ssig12;
+      double dn2 = Math.sqrt(1 + k2 * GeoMath.sq(ssig2));
+      if ((outmask & (DISTANCE | REDUCEDLENGTH | GEODESICSCALE)) != 0) {
+        if (arcmode || Math.abs(f) > 0.01) {
+          B12 = sinCosSeries(true, ssig2, csig2, C1a);
+        }
+        AB1 = (1 + A1m1) * (B12 - B11);
+      }
+      // sin(bet2) = cos(alp0) * sin(sig2)
+      double sbet2 = calp0 * ssig2;
+      // Alt: cbet2 = hypot(csig2, salp0 * ssig2);
+      double cbet2 = GeoMath.hypot(salp0, calp0 * csig2);
+      if (cbet2 == 0) {
+        // I.e., salp0 = 0, csig2 = 0. Break the degeneracy in this case
+        cbet2 = csig2 = TINY;
+      }
+      // tan(alp0) = cos(sig2)*tan(alp2)
+      double salp2 = salp0;
+      double calp2 = calp0 * csig2; // No need to normalize
+
+      if ((outmask & DISTANCE) != 0) {
+        values[DIRECT_s12] = arcmode ? b * ((1 + A1m1) * sig12 + AB1) : s12_a12;
+      }
+
+      if ((outmask & LONGITUDE) != 0) {
+        // tan(omg2) = sin(alp0) * tan(sig2)
+        double somg2 = salp0 * ssig2;
+        double comg2 = csig2; // No need to normalize
+        // omg12 = omg2 - omg1
+        double omg12 = Math.atan2(somg2 * comg1 - comg2 * somg1,
+                                  comg2 * comg1 + somg2 * somg1);
+        double lam12 = omg12 + A3c
+            * (sig12 + (sinCosSeries(true, ssig2, csig2, C3a) - B31));
+        double lon12 = Math.toDegrees(lam12);
+        values[DIRECT_LON2] =
+            GeoMath.angNormalize(lon1 + GeoMath.angNormalize(lon12));
+      }
+
+      if ((outmask & LATITUDE) != 0) {
+        values[DIRECT_LAT2] = GeoMath.atan2d(sbet2, f1 * cbet2);
+      }
+
+      if ((outmask & AZIMUTH) != 0) {
+        values[DIRECT_AZI2] = GeoMath.atan2d(salp2, calp2);
+      }
+
+      if ((outmask & (REDUCEDLENGTH | GEODESICSCALE)) != 0) {
+        double B22 = sinCosSeries(true, ssig2, csig2, C2a);
+        double AB2 = (1 + A2m1) * (B22 - B21);
+        double J12 = (A1m1 - A2m1) * sig12 + (AB1 - AB2);
+        if ((outmask & REDUCEDLENGTH) != 0) {
+          // Add parens around (csig1 * ssig2) and (ssig1 * csig2) to ensure
+          // accurate cancellation in the case of coincident points.
+          values[DIRECT_m12] = b * ((dn2 * (csig1 * ssig2) - dn1 * (ssig1 * csig2))
+                                    - csig1 * csig2 * J12);
+        }
+        if ((outmask & GEODESICSCALE) != 0) {
+          double t = k2 * (ssig2 - ssig1) * (ssig2 + ssig1) / (dn1 + dn2);
+          values[DIRECT_M12] = csig12 + (t * ssig2 - csig2 * J12) * ssig1 / dn1;
+          values[DIRECT_M21] = csig12 - (t * ssig1 - csig1 * J12) * ssig2 / dn2;
+        }
+      }
+
+      if ((outmask & AREA) != 0) {
+        double B42 = sinCosSeries(false, ssig2, csig2, C4a);
+        double salp12;
+        double calp12;
+        if (calp0 == 0 || salp0 == 0) {
+          // alp12 = alp2 - alp1, used in atan2 so no need to normalize
+          salp12 = salp2 * calp1 - calp2 * salp1;
+          calp12 = calp2 * calp1 + salp2 * salp1;
+        } else {
+          // tan(alp) = tan(alp0) * sec(sig)
+          // tan(alp2-alp1) = (tan(alp2) -tan(alp1)) / (tan(alp2)*tan(alp1)+1)
+          // = calp0 * salp0 * (csig1-csig2) / (salp0^2 + calp0^2 * csig1*csig2)
+          // If csig12 > 0, write
+          //   csig1 - csig2 = ssig12 * (csig1 * ssig12 / (1 + csig12) + ssig1)
+          // else
+          //   csig1 - csig2 = csig1 * (1 - csig12) + ssig12 * ssig1
+          // No need to normalize
+          salp12 = calp0 * salp0
+              * (csig12 <= 0 ? csig1 * (1 - csig12) + ssig12 * ssig1
+                 : ssig12 * (csig1 * ssig12 / (1 + csig12) + ssig1));
+          calp12 = GeoMath.sq(salp0) + GeoMath.sq(calp0) * csig1 * csig2;
+        }
+        values[DIRECT_S12] = c2 * Math.atan2(salp12, calp12) + A4 * (B42 - B41);
+      }
+
+      return a12;
+    }
+  } // end Line
+
+  /////////////////////
+  // Batch functions //
+  /////////////////////
+
+  /**
+   * Java version of the native batch direct function, see
+   * Geodesic.genDirectBatch(). A null <code>azi1Array</code> or
+   * <code>s12_a12Array</code> means the scalar is shared by every element.
+   */
+  void genDirectBatch(final double[] lat1,
+                      final double[] lon1,
+                      final double[] azi1Array,
+                      final double azi1,
+                      final boolean arcmode,
+                      final double[] s12_a12Array,
+                      final double s12_a12,
+                      final int offset,
+                      final int length,
+                      final long outmask,
+                      final double[] lat2,
+                      final double[] lon2,
+                      final double[] azi2,
+                      final double[] s12,
+                      final double[] m12,
+                      final double[] M12,
+                      final double[] M21,
+                      final double[] S12,
+                      final double[] a12) {
+    double[] values = new double[DIRECT_COUNT];
+    for (int i = offset; i < offset + length; ++i) {
+      genDirect(lat1[i], lon1[i],
+                azi1Array != null ? azi1Array[i] : azi1,
+                arcmode,
+                s12_a12Array != null ? s12_a12Array[i] : s12_a12,
+                outmask, values);
+      store(lat2, i, outmask, LATITUDE, values[DIRECT_LAT2]);
+      store(lon2, i, outmask, LONGITUDE, values[DIRECT_LON2]);
+      store(azi2, i, outmask, AZIMUTH, values[DIRECT_AZI2]);
+      store(s12, i, outmask, DISTANCE, values[DIRECT_s12]);
+      store(m12, i, outmask, REDUCEDLENGTH, values[DIRECT_m12]);
+      store(M12, i, outmask, GEODESICSCALE, values[DIRECT_M12]);
+      store(M21, i, outmask, GEODESICSCALE, values[DIRECT_M21]);
+      store(S12, i, outmask, AREA, values[DIRECT_S12]);
+      // a12 is always calculated
+      if (a12 != null) {
+        a12[i] = values[DIRECT_A12];
+      }
+    }
+  }
+
+  /**
+   * Java version of the native batch inverse function, see
+   * Geodesic.genInverse(double[], ...).
+   */
+  void genInverseBatch(final double[] lat1,
+                       final double[] lon1,
+                       final double[] lat2,
+                       final double[] lon2,
+                       final int offset,
+                       final int length,
+                       final long outmask,
+                       final double[] s12,
+                       final double[] azi1,
+                       final double[] azi2,
+                       final double[] m12,
+                       final double[] M12,
+                       final double[] M21,
+                       final double[] S12,
+                       final double[] a12) {
+    double[] values = new double[INVERSE_COUNT];
+    for (int i = offset; i < offset + length; ++i) {
+      genInverse(lat1[i], lon1[i], lat2[i], lon2[i], outmask, values);
+      store(s12, i, outmask, DISTANCE, values[INVERSE_s12]);
+      store(azi1, i, outmask, AZIMUTH, values[INVERSE_AZI1]);
+      store(azi2, i, outmask, AZIMUTH, values[INVERSE_AZI2]);
+      store(m12, i, outmask, REDUCEDLENGTH, values[INVERSE_m12]);
+      store(M12, i, outmask, GEODESICSCALE, values[INVERSE_M12]);
+      store(M21, i, outmask, GEODESICSCALE, values[INVERSE_M21]);
+      store(S12, i, outmask, AREA, values[INVERSE_S12]);
+      // a12 is always calculated
+      if (a12 != null) {
+        a12[i] = values[INVERSE_A12];
+      }
+    }
+  }
+
+  /**
+   * Java version of the native off-heap direct function, the columns are
+   * accessed through their buffers.
+   */
+  void genDirectBuffers(final int count,
+                        final boolean arcmode,
+                        final long outmask,
+                        final BufferColumn lat1,
+                        final BufferColumn lon1,
+                        final BufferColumn azi1,
+                        final BufferColumn s12_a12,
+                        final BufferColumn lat2,
+                        final BufferColumn lon2,
+                        final BufferColumn azi2,
+                        final BufferColumn s12,
+                        final BufferColumn m12,
+                        final BufferColumn M12,
+                        final BufferColumn M21,
+                        final BufferColumn S12,
+                        final BufferColumn a12) {
+    double[] values = new double[DIRECT_COUNT];
+    for (int i = 0; i < count; ++i) {
+      genDirect(lat1.get(i), lon1.get(i), azi1.get(i), arcmode, s12_a12.get(i),
+                outmask, values);
+      store(lat2, i, outmask, LATITUDE, values[DIRECT_LAT2]);
+      store(lon2, i, outmask, LONGITUDE, values[DIRECT_LON2]);
+      store(azi2, i, outmask, AZIMUTH, values[DIRECT_AZI2]);
+      store(s12, i, outmask, DISTANCE, values[DIRECT_s12]);
+      store(m12, i, outmask, REDUCEDLENGTH, values[DIRECT_m12]);
+      store(M12, i, outmask, GEODESICSCALE, values[DIRECT_M12]);
+      store(M21, i, outmask, GEODESICSCALE, values[DIRECT_M21]);
+      store(S12, i, outmask, AREA, values[DIRECT_S12]);
+      // a12 is always calculated
+      if (a12 != null) {
+        a12.put(i, values[DIRECT_A12]);
+      }
+    }
+  }
+
+  /**
+   * Java version of the native off-heap inverse function, the columns are
+   * accessed through their buffers.
+   */
+  void genInverseBuffers(final int count,
+                         final long outmask,
+                         final BufferColumn lat1,
+                         final BufferColumn lon1,
+                         final BufferColumn lat2,
+                         final BufferColumn lon2,
+                         final BufferColumn s12,
+                         final BufferColumn azi1,
+                         final BufferColumn azi2,
+                         final BufferColumn m12,
+                         final BufferColumn M12,
+                         final BufferColumn M21,
+                         final BufferColumn S12,
+                         final BufferColumn a12) {
+    double[] values = new double[INVERSE_COUNT];
+    for (int i = 0; i < count; ++i) {
+      genInverse(lat1.get(i), lon1.get(i), lat2.get(i), lon2.get(i),
+                 outmask, values);
+      store(s12, i, outmask, DISTANCE, values[INVERSE_s12]);
+      store(azi1, i, outmask, AZIMUTH, values[INVERSE_AZI1]);
+      store(azi2, i, outmask, AZIMUTH, values[INVERSE_AZI2]);
+      store(m12, i, outmask, REDUCEDLENGTH, values[INVERSE_m12]);
+      store(M12, i, outmask, GEODESICSCALE, values[INVERSE_M12]);
+      store(M21, i, outmask, GEODESICSCALE, values[INVERSE_M21]);
+      store(S12, i, outmask, AREA, values[INVERSE_S12]);
+      // a12 is always calculated
+      if (a12 != null) {
+        a12.put(i, values[INVERSE_A12]);
+      }
+    }
+  }
+
+  /**
+   * Java version of the native distance matrix. The rows are computed in
+   * parallel on the common fork/join pool unless <code>threads</code> is 1.
+   * The output arrays or columns are passed as <code>Object</code>s so both
+   * kinds share this code, see store(Object, ...).
+   */
+  void distanceMatrix(final double[] lat1,
+                      final double[] lon1,
+                      final double[] lat2,
+                      final double[] lon2,
+                      final long outmask,
+                      final Object s12,
+                      final Object azi1,
+                      final Object azi2,
+                      final int threads) {
+    final int mask = (int) outmask & (DISTANCE | AZIMUTH);
+    final int cols = lat2.length;
+    IntStream rows = IntStream.range(0, lat1.length);
+    if (threads != 1) {
+      rows = rows.parallel();
+    }
+    rows.forEach(new IntConsumer() {
+        public void accept(final int row) {
+          double[] values = new double[INVERSE_COUNT];
+          Pair p = new Pair();
+          for (int col = 0; col < cols; ++col) {
+            int i = row * cols + col;
+            Inverse r = inverseInt(lat1[row], lon1[row], lat2[col], lon2[col],
+                                   mask & OUT_MASK, values, p);
+            store(s12, i, mask, DISTANCE, values[INVERSE_s12]);
+            if ((mask & AZIMUTH & OUT_MASK) != 0) {
+              store(azi1, i, mask, AZIMUTH, GeoMath.atan2d(r.salp1, r.calp1));
+              store(azi2, i, mask, AZIMUTH, GeoMath.atan2d(r.salp2, r.calp2));
+            }
+          }
+        }
+      });
+  }
+
+  /**
+   * Java version of the first native densify pass, see
+   * GeodesicLine.densify(): the azimuth, length and number of segments of
+   * every leg of the route.
+   *
+   * @return the number of points of the densified route.
+   */
+  long densifyLegs(final double[] lat,
+                   final double[] lon,
+                   final double maxSegmentLength,
+                   final double[] azi1,
+                   final double[] s12,
+                   final int[] segments) {
+    double[] values = new double[INVERSE_COUNT];
+    long points = 1;
+    for (int i = 0; i < segments.length; ++i) {
+      genInverse(lat[i], lon[i], lat[i + 1], lon[i + 1],
+                 AZIMUTH | DISTANCE, values);
+      azi1[i] = values[INVERSE_AZI1];
+      s12[i] = values[INVERSE_s12];
+      segments[i] = densifySegments(s12[i], maxSegmentLength);
+      points += segments[i];
+    }
+    return points;
+  }
+
+  /**
+   * Number of equal segments a leg is split into so that none is longer
+   * than maxSegmentLength, the same formula as the native code.
+   */
+  static int densifySegments(final double s12, final double maxSegmentLength) {
+    double n = Math.ceil(s12 / maxSegmentLength);
+    return n >= 1 ? (n < Integer.MAX_VALUE ? (int) n : Integer.MAX_VALUE) : 1;
+  }
+
+  /**
+   * Java version of the second native densify pass: the points of every
+   * leg, the route vertices being copied unchanged.
+   */
+  void densifyPoints(final double[] lat,
+                     final double[] lon,
+                     final double[] azi1,
+                     final double[] s12,
+                     final int[] segments,
+                     final double[] latOut,
+                     final double[] lonOut,
+                     final int[] vertexIndices) {
+    double[] values = new double[DIRECT_COUNT];
+    int j = 0;
+    for (int i = 0; i < segments.length; ++i) {
+      vertexIndices[i] = j;
+      latOut[j] = lat[i];
+      lonOut[j] = lon[i];
+      ++j;
+      if (segments[i] > 1) {
+        Line line = new Line(this, lat[i], lon[i], azi1[i],
+                             LATITUDE | LONGITUDE | DISTANCE_IN);
+        for (int k = 1; k < segments[i]; ++k) {
+          line.genPosition(false, s12[i] * k / segments[i],
+                           LATITUDE | LONGITUDE, values);
+          latOut[j] = values[DIRECT_LAT2];
+          lonOut[j] = values[DIRECT_LON2];
+          ++j;
+        }
+      }
+    }
+    vertexIndices[segments.length] = j;
+    latOut[j] = lat[segments.length];
+    lonOut[j] = lon[segments.length];
+  }
+
+  /**
+   * Java version of the native range rings: one line per center and
+   * azimuth, shared by all the radii.
+   */
+  void rangeRings(final double[] lat,
+                  final double[] lon,
+                  final int offset,
+                  final int length,
+                  final double[] radii,
+                  final double azimuthStep,
+                  final int vertices,
+                  final boolean closed,
+                  final double[] latOut,
+                  final double[] lonOut) {
+    double[] values = new double[DIRECT_COUNT];
+    int azimuths = closed ? vertices - 1 : vertices;
+    for (int i = 0; i < length; ++i) {
+      int first = i * radii.length * vertices;
+      for (int k = 0; k < azimuths; ++k) {
+        Line line = new Line(this, lat[offset + i], lon[offset + i],
+                             -k * azimuthStep,
+                             LATITUDE | LONGITUDE | DISTANCE_IN);
+        for (int r = 0; r < radii.length; ++r) {
+          line.genPosition(false, radii[r], LATITUDE | LONGITUDE, values);
+          latOut[first + r * vertices + k] = values[DIRECT_LAT2];
+          lonOut[first + r * vertices + k] = values[DIRECT_LON2];
+        }
+      }
+      if (closed) {
+        for (int r = 0; r < radii.length; ++r) {
+          latOut[first + r * vertices + azimuths] = latOut[first + r * vertices];
+          lonOut[first + r * vertices + azimuths] = lonOut[first + r * vertices];
+        }
+      }
+    }
+  }
+
+  /**
+   * Stores value into out[i] if the array was supplied and the quantity
+   * selected by outputBit was requested in outmask.
+   */
+  private static void store(final double[] out,
+                            final int i,
+                            final long outmask,
+                            final int outputBit,
+                            final double value) {
+    if (out != null && (outmask & outputBit & OUT_MASK) != 0) {
+      out[i] = value;
+    }
+  }
+
+  /**
+   * Stores value as element i of the column if it was supplied and the
+   * quantity selected by outputBit was requested in outmask.
+   */
+  private static void store(final BufferColumn out,
+                            final int i,
+                            final long outmask,
+                            final int outputBit,
+                            final double value) {
+    if (out != null && (outmask & outputBit & OUT_MASK) != 0) {
+      out.put(i, value);
+    }
+  }
+
+  /**
+   * Stores value into an output which is either a double[] or a
+   * BufferColumn.
+   */
+  private static void store(final Object out,
+                            final int i,
+                            final long outmask,
+                            final int outputBit,
+                            final double value) {
+    if (out instanceof BufferColumn) {
+      store((BufferColumn) out, i, outmask, outputBit, value);
+    } else {
+      store((double[]) out, i, outmask, outputBit, value);
+    }
+  }
+
+  ////////////////////////
+  // Series expansions  //
+  ////////////////////////
+
+  /**
+   * Evaluate
+   * <pre>
+   * y = sinp ? sum(c[i] * sin( 2*i    * x), i, 1, n) :
+   *            sum(c[i] * cos((2*i+1) * x), i, 0, n-1)
+   * </pre>
+   * using Clenshaw summation. n = c.length - 1 if sinp, otherwise c.length.
+   */
+  static double sinCosSeries(final boolean sinp,
+                             final double sinx,
+                             final double cosx,
+                             final double[] c) {
+    int k = c.length; // Point to one beyond last element
+    int n = k - (sinp ? 1 : 0);
+    double ar = 2 * (cosx - sinx) * (cosx + sinx); // 2 * cos(2 * x)
+    double y0 = (n & 1) != 0 ? c[--k] : 0;         // accumulators for sum
+    double y1 = 0;
+    // Now n is even
+    n /= 2;
+    while (n-- != 0) {
+      // Unroll loop x 2, so accumulators return to their original role
+      y1 = ar * y0 - y1 + c[--k];
+      y0 = ar * y1 - y0 + c[--k];
+    }
+    return sinp
+        ? 2 * sinx * cosx * y0 // sin(2 * x) * y0
+        : cosx * (y0 - y1);    // cos(x) * (y0 - y1)
+  }
+
+  /**
+   * The scale factor A1-1 = mean value of (d/dsigma)I1 - 1.
+   */
+  static double A1m1f(final double eps) {
+    final double[] coeff = {
+      // (1-eps)*A1-1, polynomial in eps2 of order 3
+      1, 4, 64, 0, 256,
+    };
+    int m = nA1 / 2;
+    double t = GeoMath.polyval(m, coeff, 0, GeoMath.sq(eps)) / coeff[m + 1];
+    return (t + eps) / (1 - eps);
+  }
+
+  /**
+   * The coefficients C1[l] in the Fourier expansion of B1.
+   */
+  static void C1f(final double eps, final double[] c) {
+    final double[] coeff = {
+      // C1[1]/eps^1, polynomial in eps2 of order 2
+      -1, 6, -16, 32,
+      // C1[2]/eps^2, polynomial in eps2 of order 2
+      -9, 64, -128, 2048,
+      // C1[3]/eps^3, polynomial in eps2 of order 1
+      9, -16, 768,
+      // C1[4]/eps^4, polynomial in eps2 of order 1
+      3, -5, 512,
+      // C1[5]/eps^5, polynomial in eps2 of order 0
+      -7, 1280,
+      // C1[6]/eps^6, polynomial in eps2 of order 0
+      -7, 2048,
+    };
+    double eps2 = GeoMath.sq(eps);
+    double d = eps;
+    int o = 0;
+    for (int l = 1; l <= nC1; ++l) { // l is index of C1p[l]
+      int m = (nC1 - l) / 2;         // order of polynomial in eps^2
+      c[l] = d * GeoMath.polyval(m, coeff, o, eps2) / coeff[o + m + 1];
+      o += m + 2;
+      d *= eps;
+    }
+  }
+
+  /**
+   * The coefficients C1p[l] in the Fourier expansion of B1p.
+   */
+  static void C1pf(final double eps, final double[] c) {
+    final double[] coeff = {
+      // C1p[1]/eps^1, polynomial in eps2 of order 2
+      205, -432, 768, 1536,
+      // C1p[2]/eps^2, polynomial in eps2 of order 2
+      4005, -4736, 3840, 12288,
+      // C1p[3]/eps^3, polynomial in eps2 of order 1
+      -225, 116, 384,
+      // C1p[4]/eps^4, polynomial in eps2 of order 1
+      -7173, 2695, 7680,
+      // C1p[5]/eps^5, polynomial in eps2 of order 0
+      3467, 7680,
+      // C1p[6]/eps^6, polynomial in eps2 of order 0
+      38081, 61440,
+    };
+    double eps2 = GeoMath.sq(eps);
+    double d = eps;
+    int o = 0;
+    for (int l = 1; l <= nC1p; ++l) { // l is index of C1p[l]
+      int m = (nC1p - l) / 2;         // order of polynomial in eps^2
+      c[l] = d * GeoMath.polyval(m, coeff, o, eps2) / coeff[o + m + 1];
+      o += m + 2;
+      d *= eps;
+    }
+  }
+
+  /**
+   * The scale factor A2-1 = mean value of (d/dsigma)I2 - 1.
+   */
+  static double A2m1f(final double eps) {
+    final double[] coeff = {
+      // (eps+1)*A2-1, polynomial in eps2 of order 3
+      -11, -28, -192, 0, 256,
+    };
+    int m = nA2 / 2;
+    double t = GeoMath.polyval(m, coeff, 0, GeoMath.sq(eps)) / coeff[m + 1];
+    return (t - eps) / (1 + eps);
+  }
+
+  /**
+   * The coefficients C2[l] in the Fourier expansion of B2.
+   */
+  static void C2f(final double eps, final double[] c) {
+    final double[] coeff = {
+      // C2[1]/eps^1, polynomial in eps2 of order 2
+      1, 2, 16, 32,
+      // C2[2]/eps^2, polynomial in eps2 of order 2
+      35, 64, 384, 2048,
+      // C2[3]/eps^3, polynomial in eps2 of order 1
+      15, 80, 768,
+      // C2[4]/eps^4, polynomial in eps2 of order 1
+      7, 35, 512,
+      // C2[5]/eps^5, polynomial in eps2 of order 0
+      63, 1280,
+      // C2[6]/eps^6, polynomial in eps2 of order 0
+      77, 2048,
+    };
+    double eps2 = GeoMath.sq(eps);
+    double d = eps;
+    int o = 0;
+    for (int l = 1; l <= nC2; ++l) { // l is index of C2[l]
+      int m = (nC2 - l) / 2;         // order of polynomial in eps^2
+      c[l] = d * GeoMath.polyval(m, coeff, o, eps2) / coeff[o + m + 1];
+      o += m + 2;
+      d *= eps;
+    }
+  }
+
+  /**
+   * The coefficients of A3 as polynomials in n.
+   */
+  private void A3coeff() {
+    final double[] coeff = {
+      // A3, coeff of eps^5, polynomial in n of order 0
+      -3, 128,
+      // A3, coeff of eps^4, polynomial in n of order 1
+      -2, -3, 64,
+      // A3, coeff of eps^3, polynomial in n of order 2
+      -1, -3, -1, 16,
+      // A3, coeff of eps^2, polynomial in n of order 2
+      3, -1, -2, 8,
+      // A3, coeff of eps^1, polynomial in n of order 1
+      1, -1, 2,
+      // A3, coeff of eps^0, polynomial in n of order 0
+      1, 1,
+    };
+    int o = 0;
+    int k = 0;
+    for (int j = nA3 - 1; j >= 0; --j) { // coeff of eps^j
+      int m = Math.min(nA3 - j - 1, j);  // order of polynomial in n
+      A3x[k++] = GeoMath.polyval(m, coeff, o, n) / coeff[o + m + 1];
+      o += m + 2;
+    }
+  }
+
+  /**
+   * The coefficients of C3[l] as polynomials in n.
+   */
+  private void C3coeff() {
+    final double[] coeff = {
+      // C3[1], coeff of eps^5, polynomial in n of order 0
+      3, 128,
+      // C3[1], coeff of eps^4, polynomial in n of order 1
+      2, 5, 128,
+      // C3[1], coeff of eps^3, polynomial in n of order 2
+      -1, 3, 3, 64,
+      // C3[1], coeff of eps^2, polynomial in n of order 2
+      -1, 0, 1, 8,
+      // C3[1], coeff of eps^1, polynomial in n of order 1
+      -1, 1, 4,
+      // C3[2], coeff of eps^5, polynomial in n of order 0
+      5, 256,
+      // C3[2], coeff of eps^4, polynomial in n of order 1
+      1, 3, 128,
+      // C3[2], coeff of eps^3, polynomial in n of order 2
+      -3, -2, 3, 64,
+      // C3[2], coeff of eps^2, polynomial in n of order 2
+      1, -3, 2, 32,
+      // C3[3], coeff of eps^5, polynomial in n of order 0
+      7, 512,
+      // C3[3], coeff of eps^4, polynomial in n of order 1
+      -10, 9, 384,
+      // C3[3], coeff of eps^3, polynomial in n of order 2
+      5, -9, 5, 192,
+      // C3[4], coeff of eps^5, polynomial in n of order 0
+      7, 512,
+      // C3[4], coeff of eps^4, polynomial in n of order 1
+      -14, 7, 512,
+      // C3[5], coeff of eps^5, polynomial in n of order 0
+      21, 2560,
+    };
+    int o = 0;
+    int k = 0;
+    for (int l = 1; l < nC3; ++l) {        // l is index of C3[l]
+      for (int j = nC3 - 1; j >= l; --j) { // coeff of eps^j
+        int m = Math.min(nC3 - j - 1, j);  // order of polynomial in n
+        C3x[k++] = GeoMath.polyval(m, coeff, o, n) / coeff[o + m + 1];
+        o += m + 2;
+      }
+    }
+  }
+
+  /**
+   * The coefficients of C4[l] as polynomials in n.
+   */
+  private void C4coeff() {
+    final double[] coeff = {
+      // C4[0], coeff of eps^5, polynomial in n of order 0
+      97, 15015,
+      // C4[0], coeff of eps^4, polynomial in n of order 1
+      1088, 156, 45045,
+      // C4[0], coeff of eps^3, polynomial in n of order 2
+      -224, -4784, 1573, 45045,
+      // C4[0], coeff of eps^2, polynomial in n of order 3
+      -10656, 14144, -4576, -858, 45045,
+      // C4[0], coeff of eps^1, polynomial in n of order 4
+      64, 624, -4576, 6864, -3003, 15015,
+      // C4[0], coeff of eps^0, polynomial in n of order 5
+      100, 208, 572, 3432, -12012, 30030, 45045,
+      // C4[1], coeff of eps^5, polynomial in n of order 0
+      1, 9009,
+      // C4[1], coeff of eps^4, polynomial in n of order 1
+      -2944, 468, 135135,
+      // C4[1], coeff of eps^3, polynomial in n of order 2
+      5792, 1040, -1287, 135135,
+      // C4[1], coeff of eps^2, polynomial in n of order 3
+      5952, -11648, 9152, -2574, 135135,
+      // C4[1], coeff of eps^1, polynomial in n of order 4
+      -64, -624, 4576, -6864, 3003, 135135,
+      // C4[2], coeff of eps^5, polynomial in n of order 0
+      8, 10725,
+      // C4[2], coeff of eps^4, polynomial in n of order 1
+      1856, -936, 225225,
+      // C4[2], coeff of eps^3, polynomial in n of order 2
+      -8448, 4992, -1144, 225225,
+      // C4[2], coeff of eps^2, polynomial in n of order 3
+      -1440, 4160, -4576, 1716, 225225,
+      // C4[3], coeff of eps^5, polynomial in n of order 0
+      -136, 63063,
+      // C4[3], coeff of eps^4, polynomial in n of order 1
+      1024, -208, 105105,
+      // C4[3], coeff of eps^3, polynomial in n of order 2
+      3584, -3328, 1144, 315315,
+      // C4[4], coeff of eps^5, polynomial in n of order 0
+      -128, 135135,
+      // C4[4], coeff of eps^4, polynomial in n of order 1
+      -2560, 832, 405405,
+      // C4[5], coeff of eps^5, polynomial in n of order 0
+      128, 99099,
+    };
+    int o = 0;
+    int k = 0;
+    for (int l = 0; l < nC4; ++l) {        // l is index of C4[l]
+      for (int j = nC4 - 1; j >= l; --j) { // coeff of eps^j
+        int m = nC4 - j - 1;               // order of polynomial in n
+        C4x[k++] = GeoMath.polyval(m, coeff, o, n) / coeff[o + m + 1];
+        o += m + 2;
+      }
+    }
+  }
+
+  /**
+   * Evaluate A3.
+   */
+  double A3f(final double eps) {
+    return GeoMath.polyval(nA3 - 1, A3x, 0, eps);
+  }
+
+  /**
+   * Evaluate the C3 coefficients, elements c[1] through c[nC3 - 1] are set.
+   */
+  void C3f(final double eps, final double[] c) {
+    double mult = 1;
+    int o = 0;
+    for (int l = 1; l < nC3; ++l) { // l is index of C3[l]
+      int m = nC3 - l - 1;          // order of polynomial in eps
+      mult *= eps;
+      c[l] = mult * GeoMath.polyval(m, C3x, o, eps);
+      o += m + 1;
+    }
+  }
+
+  /**
+   * Evaluate the C4 coefficients, elements c[0] through c[nC4 - 1] are set.
+   */
+  void C4f(final double eps, final double[] c) {
+    double mult = 1;
+    int o = 0;
+    for (int l = 0; l < nC4; ++l) { // l is index of C4[l]
+      int m = nC4 - l - 1;          // order of polynomial in eps
+      c[l] = mult * GeoMath.polyval(m, C4x, o, eps);
+      o += m + 1;
+      mult *= eps;
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package net.sf.geographiclib;
+
+import net.sf.geographiclib.GeoMath.Pair;
+
+/**
+ * <code>JavaPolygonArea</code>, a pure Java implementation of the C++
+ * <a href="http://geographiclib.sourceforge.net/html/classGeographicLib_1_1PolygonArea.html">GeographicLib::PolygonArea</a>
+ * class on top of {@link JavaGeodesic}. It is the
+ * {@link GeodesicEngine#JAVA} engine of {@link PolygonArea}.
+ *
+ * The area and the perimeter are accumulated in double-double precision,
+ * and the number of times the edges cross the antimeridian is counted so
+ * that polygons encircling a pole get the right area. Instances aren't
+ * thread-safe.
+ *
+ * @version 1.29
+ */
+final class JavaPolygonArea {
+
+  // indices of the results written by compute(), same layout as the native
+  // code
+  static final int PERIMETER = 0;
+  static final int AREA = 1;
+  static final int COUNT = 2;
+
+  private final JavaGeodesic earth;
+  private final boolean polyline;
+  private final long mask;
+  private final double area0;
+  private final double[] inverse = new double[JavaGeodesic.INVERSE_COUNT];
+  private final double[] direct = new double[JavaGeodesic.DIRECT_COUNT];
+  private final Pair pair = new Pair();
+  private final Accumulator areaSum = new Accumulator();
+  private final Accumulator perimeterSum = new Accumulator();
+  private int num;
+  private int crossings;
+  private double lat0;
+  private double lon0;
+  private double lat1;
+  private double lon1;
+
+  /**
+   * Creates a new <code>JavaPolygonArea</code> instance.
+   *
+   * @param earth the ellipsoid.
+   * @param polyline if true, the vertices describe an open polyline and
+   *     only its length is computed.
+   */
+  JavaPolygonArea(final JavaGeodesic earth, final boolean polyline) {
+    this.earth = earth;
+    this.polyline = polyline;
+    this.mask = JavaGeodesic.LATITUDE | JavaGeodesic.LONGITUDE
+        | JavaGeodesic.DISTANCE | (polyline ? 0 : JavaGeodesic.AREA);
+    this.area0 = earth.getEllipsoidArea();
+  }
+
+  /**
+   * Removes every vertex.
+   */
+  void clear() {
+    num = 0;
+    crossings = 0;
+    areaSum.set(0);
+    perimeterSum.set(0);
+    lat0 = lon0 = lat1 = lon1 = Double.NaN;
+  }
+
+  /**
+   * Adds a vertex.
+   */
+  void addPoint(final double lat, double lon) {
+    lon = GeoMath.angNormalize(lon);
+    if (num == 0) {
+      lat0 = lat1 = lat;
+      lon0 = lon1 = lon;
+    } else {
+      earth.genInverse(lat1, lon1, lat, lon, mask, inverse);
+      perimeterSum.add(inverse[JavaGeodesic.INVERSE_s12]);
+      if (!polyline) {
+        areaSum.add(inverse[JavaGeodesic.INVERSE_S12]);
+        crossings += transit(lon1, lon);
+      }
+      lat1 = lat;
+      lon1 = lon;
+    }
+    ++num;
+  }
+
+  /**
+   * Adds an edge from the last vertex, ignored if there is no vertex yet.
+   */
+  void addEdge(final double azi, final double s) {
+    if (num == 0) {
+      return;
+    }
+    earth.genDirect(lat1, lon1, azi, false, s, mask, direct);
+    double lat = direct[JavaGeodesic.DIRECT_LAT2];
+    double lon = GeoMath.angNormalize(direct[JavaGeodesic.DIRECT_LON2]);
+    perimeterSum.add(s);
+    if (!polyline) {
+      areaSum.add(direct[JavaGeodesic.DIRECT_S12]);
+      crossings += transit(lon1, lon);
+    }
+    lat1 = lat;
+    lon1 = lon;
+    ++num;
+  }
+
+  /**
+   * Computes the perimeter and the area of the polygon closed by an edge
+   * from the last vertex back to the first one.
+   *
+   * @param reverse if true, clockwise traversal counts as positive.
+   * @param sign if true, return a signed result for the area if the polygon
+   *     is traversed in the "wrong" direction instead of returning the area
+   *     of the rest of the earth.
+   * @param values receives the results, indexed by {@link #PERIMETER} and
+   *     {@link #AREA}; the area of a polyline is left alone.
+   * @return the number of vertices.
+   */
+  int compute(final boolean reverse,
+              final boolean sign,
+              final double[] values) {
+    if (num < 2) {
+      values[PERIMETER] = 0;
+      if (!polyline) {
+        values[AREA] = 0;
+      }
+      return num;
+    }
+    if (polyline) {
+      values[PERIMETER] = perimeterSum.sum();
+      return num;
+    }
+    earth.genInverse(lat1, lon1, lat0, lon0, mask, inverse);
+    values[PERIMETER] = perimeterSum.sum(inverse[JavaGeodesic.INVERSE_s12]);
+    Accumulator area = new Accumulator(areaSum);
+    area.add(inverse[JavaGeodesic.INVERSE_S12]);
+    int count = crossings + transit(lon1, lon0);
+    if ((count & 1) != 0) {
+      area.add((area.sum() < 0 ? 1 : -1) * area0 / 2);
+    }
+    // area is with the clockwise sense, change the sign if necessary
+    if (!reverse) {
+      area.negate();
+    }
+    // if sign put area in (-area0/2, area0/2], else put area in [0, area0)
+    if (sign) {
+      if (area.sum() > area0 / 2) {
+        area.add(-area0);
+      } else if (area.sum() <= -area0 / 2) {
+        area.add(+area0);
+      }
+    } else {
+      if (area.sum() >= area0) {
+        area.add(-area0);
+      } else if (area.sum() < 0) {
+        area.add(+area0);
+      }
+    }
+    values[AREA] = 0 + area.sum();
+    return num;
+  }
+
+  /**
+   * Get the number of vertices.
+   */
+  int getNumberOfPoints() {
+    return num;
+  }
+
+  /**
+   * Returns 1 or -1 if crossing the antimeridian in the east or west
+   * direction going from lon1 to lon2, otherwise 0. The longitudes are
+   * normalized.
+   */
+  private int transit(final double lon1, final double lon2) {
+    GeoMath.angDiff(pair, lon1, lon2);
+    double lon12 = pair.first;
+    return lon1 <= 0 && lon2 > 0 && lon12 > 0 ? 1
+        : (lon2 <= 0 && lon1 > 0 && lon12 < 0 ? -1 : 0);
+  }
+
+  /**
+   * A sum of doubles kept as an unevaluated sum of two doubles, as the C++
+   * GeographicLib::Accumulator.
+   */
+  private static final class Accumulator {
+    private final Pair p = new Pair();
+    private double s;
+    private double t;
+
+    Accumulator() {
+    }
+
+    Accumulator(final Accumulator a) {
+      s = a.s;
+      t = a.t;
+    }
+
+    void set(final double y) {
+      s = y;
+      t = 0;
+    }
+
+    void add(final double y) {
+      GeoMath.sum(p, y, t);
+      double u = p.second;
+      GeoMath.sum(p, p.first, s);
+      s = p.first;
+      t = p.second;
+      if (s == 0) {
+        s = u;
+      } else {
+        t += u;
+      }
+    }
+
+    void negate() {
+      s = -s;
+      t = -t;
+    }
+
+    double sum() {
+      return s;
+    }
+
+    double sum(final double y) {
+      Accumulator a = new Accumulator(this);
+      a.add(y);
+      return a.s;
+    }
+  }
+}
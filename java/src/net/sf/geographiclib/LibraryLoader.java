@@ -1,22 +1,429 @@
 package net.sf.geographiclib;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+
 /**
  * <code>LibraryLoader</code> loads the JNI library which implements the functions
  * in C++.
  *
+ * The library is loaded the first time it is needed rather than when this
+ * class is initialized. A jar built by <code>ant jar.bin</code> embeds the
+ * library of the build platform under
+ * <code>net/sf/geographiclib/native/&lt;os&gt;-&lt;arch&gt;/</code>; it is
+ * extracted once to a cache directory named after the version and the
+ * checksum of the library, and loaded from there by the later starts. The
+ * cache defaults to <code>$XDG_CACHE_HOME/geographiclib</code> or
+ * <code>~/.cache/geographiclib</code> and can be moved with the
+ * {@link #CACHE_PROPERTY} system property. If the jar doesn't embed a
+ * library for the platform, or it can't be loaded, the library is looked up
+ * in <code>java.library.path</code> by <code>System.loadLibrary()</code>.
+ * A library built with <code>GEOGRAPHICLIBJNI_STATIC=ON</code> links
+ * GeographicLib statically, so the embedded library depends on no other
+ * library of the jar; one built by default only loads if the dynamic loader
+ * finds <code>libGeographic</code> on its own.
+ *
+ * On x86-64, a build given the GeographicLib sources also produces
+ * <code>GeographicJni-avx2</code> and <code>GeographicJni-avx512</code>,
+ * each with its own copy of GeographicLib compiled for the x86-64-v3 and
+ * x86-64-v4 levels; the best variant the CPU supports, as listed by
+ * {@link #getSupportedVariants()}, is tried first, down to the baseline
+ * library.
+ *
+ * If the library can't be loaded the error is remembered instead of being
+ * thrown, so that {@link Geodesic} can fall back to the pure Java
+ * {@link GeodesicEngine#JAVA} engine.
+ *
  * @author <a href="mailto:nmaludy@gmail.com">Nick Maludy</a>
  * @version 1.29
  */
 public class LibraryLoader {
-  static {
-    System.loadLibrary("GeographicJni");
+
+  /**
+   * Name of the system property which selects the directory the embedded
+   * library is extracted to.
+   */
+  public static final String CACHE_PROPERTY = "net.sf.geographiclib.cache.dir";
+
+  /**
+   * Name of the system property which caps the variant of the library, one
+   * of <code>avx512</code>, <code>avx2</code> or <code>baseline</code>.
+   */
+  public static final String VARIANT_PROPERTY = "net.sf.geographiclib.variant";
+
+  static final String VARIANT_AVX512 = "avx512";
+  static final String VARIANT_AVX2 = "avx2";
+  static final String VARIANT_BASELINE = "baseline";
+
+  /**
+   * The /proc/cpuinfo flags of the x86-64-v3 and x86-64-v4 levels of the
+   * x86-64 psABI the variants are compiled for. <code>-march</code> lets
+   * the compiler use any feature of the level, so all of them are required,
+   * those of the lower levels included: x86-64-v2 is CMPXCHG16B, LAHF-SAHF,
+   * POPCNT, SSE3, SSE4_1, SSE4_2 and SSSE3, x86-64-v3 adds AVX, AVX2, BMI1,
+   * BMI2, F16C, FMA, LZCNT, MOVBE and OSXSAVE. Linux lists SSE3 as
+   * <code>pni</code> and LZCNT as <code>abm</code>, and doesn't list
+   * OSXSAVE: it lists <code>xsave</code> only when it enabled XSAVE, which
+   * is what OSXSAVE reports.
+   */
+  private static final String[] AVX2_FLAGS = {
+    "cx16", "lahf_lm", "popcnt", "pni", "sse4_1", "sse4_2", "ssse3",
+    "avx", "avx2", "bmi1", "bmi2", "f16c", "fma", "abm", "movbe", "xsave"
+  };
+  private static final String[] AVX512_FLAGS = {
+    "avx512f", "avx512bw", "avx512cd", "avx512dq", "avx512vl"
+  };
+
+  private static final String LIBRARY_NAME = "GeographicJni";
+  private static final String RESOURCE_DIR = "native/";
+
+  /**
+   * Holds the outcome of loading the library; the JVM initializes it, and
+   * so loads the library, exactly once and on the first call which needs
+   * it.
+   */
+  private static final class Holder {
+    /**
+     * The error thrown while loading the library, null if it was loaded.
+     */
+    static final Throwable LOAD_ERROR;
+    /**
+     * The variant which was loaded, null if none could be.
+     */
+    static final String VARIANT;
+
+    static {
+      String[] loaded = new String[1];
+      LOAD_ERROR = loadLibrary(loaded);
+      VARIANT = loaded[0];
+    }
+  }
+
+  /**
+   * The forces the JNI library to be loaded. Clients should not need to
+   * call this since the classes in this library invoke this function on
+   * their own.
+   */
+  public static void load() {
+    isAvailable();
+  }
+
+  /**
+   * Check if the JNI library was loaded, loading it if that wasn't tried
+   * yet.
+   *
+   * @return true if the native functions can be called.
+   */
+  public static boolean isAvailable() {
+    return Holder.LOAD_ERROR == null;
+  }
+
+  /**
+   * Get the error which prevented the JNI library from being loaded.
+   *
+   * @return the error, null if the library was loaded.
+   */
+  public static Throwable getLoadError() {
+    return Holder.LOAD_ERROR;
+  }
+
+  /**
+   * Get the name of the directory of the jar holding the library of this
+   * platform, such as <code>linux-x86_64</code>.
+   *
+   * @return a <code>String</code> value
+   */
+  public static String getPlatform() {
+    String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+    if (os.startsWith("windows")) {
+      os = "windows";
+    } else if (os.startsWith("mac") || os.startsWith("darwin")) {
+      os = "macos";
+    } else {
+      os = os.replaceAll("[^a-z0-9]", "");
+    }
+    String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+    if (arch.equals("amd64") || arch.equals("x86-64")) {
+      arch = "x86_64";
+    } else if (arch.equals("arm64")) {
+      arch = "aarch64";
+    } else if (arch.matches("i[3-6]86")) {
+      arch = "x86";
+    }
+    return os + "-" + arch;
+  }
+
+  /**
+   * Get the variants of the library the CPU can run, the best one first:
+   * <code>avx512</code> for the x86-64-v4 level (AVX-512 F, BW, CD, DQ and
+   * VL), <code>avx2</code> for the x86-64-v3 level (AVX2, FMA, BMI2 and
+   * the other features of the level and of x86-64-v2) and
+   * <code>baseline</code>. The features are read from
+   * <code>/proc/cpuinfo</code>, other systems only get the baseline. The
+   * {@link #VARIANT_PROPERTY} system property caps the choice.
+   *
+   * @return a <code>String[]</code> value, ending with <code>baseline</code>
+   */
+  public static String[] getSupportedVariants() {
+    return supportedVariants(getPlatform(), cpuFlags(),
+                             System.getProperty(VARIANT_PROPERTY));
+  }
+
+  /**
+   * Get the variants of the library a CPU can run, the best one first.
+   *
+   * @param platform the platform, as named by {@link #getPlatform()}.
+   * @param flags the features of the CPU, as listed by
+   *     <code>/proc/cpuinfo</code>.
+   * @param cap the best variant to use, null for any.
+   * @return a <code>String[]</code> value, ending with <code>baseline</code>
+   */
+  static String[] supportedVariants(final String platform,
+                                    final Collection<String> flags,
+                                    final String cap) {
+    List<String> variants = new ArrayList<String>();
+    if (platform.endsWith("-x86_64")
+        && flags.containsAll(Arrays.asList(AVX2_FLAGS))) {
+      if (flags.containsAll(Arrays.asList(AVX512_FLAGS))) {
+        variants.add(VARIANT_AVX512);
+      }
+      variants.add(VARIANT_AVX2);
+    }
+    variants.add(VARIANT_BASELINE);
+    String capped = cap == null ? null : cap.trim().toLowerCase(Locale.ROOT);
+    if (variants.contains(capped)) {
+      variants = variants.subList(variants.indexOf(capped), variants.size());
+    }
+    return variants.toArray(new String[variants.size()]);
+  }
+
+  /**
+   * Get the variant of the library which was loaded.
+   *
+   * @return one of the values of {@link #getSupportedVariants()}, null if
+   *     the library couldn't be loaded.
+   */
+  public static String getVariant() {
+    return Holder.VARIANT;
+  }
+
+  /**
+   * Get the flags of the first processor listed by
+   * <code>/proc/cpuinfo</code>, empty where it doesn't exist.
+   */
+  private static Set<String> cpuFlags() {
+    Set<String> flags = new HashSet<String>();
+    try {
+      BufferedReader reader = Files.newBufferedReader(
+          Paths.get("/proc/cpuinfo"), StandardCharsets.US_ASCII);
+      try {
+        for (String line; (line = reader.readLine()) != null;) {
+          if (line.startsWith("flags")) {
+            int colon = line.indexOf(':');
+            flags.addAll(Arrays.asList(
+                line.substring(colon + 1).trim().split("\\s+")));
+            break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      // no /proc/cpuinfo, only the baseline is used
+    } catch (SecurityException e) {
+      // not allowed to read it, only the baseline is used
+    }
+    return flags;
   }
 
   /**
-   * The forces the JNI library to be loaded using static initialization.
-   * Clients should not need to call this since the classes in this library
-   * invoke this function on their own.
+   * Get the name of the library of a variant, e.g.
+   * <code>GeographicJni-avx2</code>.
    */
-  public static void load()
-  {}
-}
+  static String libraryName(final String variant) {
+    return VARIANT_BASELINE.equals(variant)
+        ? LIBRARY_NAME : LIBRARY_NAME + "-" + variant;
+  }
+
+  /**
+   * Loads the best variant of the library the CPU supports, first from the
+   * jar then from <code>java.library.path</code>, falling back to the
+   * baseline library.
+   *
+   * @param loaded receives the variant which was loaded.
+   * @return the error, null if the library was loaded.
+   */
+  private static Throwable loadLibrary(final String[] loaded) {
+    String[] variants = getSupportedVariants();
+    List<Throwable> embeddedErrors = new ArrayList<Throwable>();
+    for (String variant : variants) {
+      try {
+        File file = extractEmbedded(libraryName(variant));
+        if (file != null) {
+          System.load(file.getPath());
+          loaded[0] = variant;
+          return null;
+        }
+      } catch (IOException e) {
+        embeddedErrors.add(e);
+      } catch (UnsatisfiedLinkError e) {
+        embeddedErrors.add(e);
+      } catch (SecurityException e) {
+        embeddedErrors.add(e);
+      }
+    }
+    // the variants are optional in java.library.path, so only the error of
+    // the baseline library is reported
+    Throwable error = null;
+    for (String variant : variants) {
+      try {
+        System.loadLibrary(libraryName(variant));
+        loaded[0] = variant;
+        return null;
+      } catch (UnsatisfiedLinkError e) {
+        error = e;
+      } catch (SecurityException e) {
+        error = e;
+      }
+    }
+    for (Throwable embeddedError : embeddedErrors) {
+      error.addSuppressed(embeddedError);
+    }
+    return error;
+  }
+
+  /**
+   * Extracts a library embedded in the jar to the cache, unless an earlier
+   * start already did.
+   *
+   * @param libraryName name of the library, without prefix or suffix.
+   * @return the extracted file, null if the jar has no library for this
+   *     platform
+   */
+  private static File extractEmbedded(final String libraryName)
+      throws IOException {
+    String fileName = System.mapLibraryName(libraryName);
+    URL url = LibraryLoader.class.getResource(RESOURCE_DIR + getPlatform()
+                                              + "/" + fileName);
+    if (url == null) {
+      return null;
+    }
+    return extract(url, cacheDirectory(), fileName);
+  }
+
+  /**
+   * Extracts a library to a directory of <code>cache</code> named after the
+   * version, the platform and the checksum of the library, unless it is
+   * already there.
+   *
+   * @param url the library.
+   * @param cache the cache directory.
+   * @param fileName the name of the extracted file.
+   * @return the extracted file
+   * @exception IOException if the library can't be read or written.
+   */
+  static File extract(final URL url, final Path cache, final String fileName)
+      throws IOException {
+    // the CRC of a jar entry is read from the central directory, so the
+    // later starts don't read the library to find its cache directory
+    long crc = -1;
+    long size = -1;
+    URLConnection connection = url.openConnection();
+    if (connection instanceof JarURLConnection) {
+      JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+      crc = entry.getCrc();
+      size = entry.getSize();
+    }
+    if (crc < 0 || size < 0) {
+      CRC32 checksum = new CRC32();
+      byte[] buffer = new byte[1 << 16];
+      size = 0;
+      InputStream in = url.openStream();
+      try {
+        for (int n; (n = in.read(buffer)) > 0;) {
+          checksum.update(buffer, 0, n);
+          size += n;
+        }
+      } finally {
+        in.close();
+      }
+      crc = checksum.getValue();
+    }
+    String version = LibraryLoader.class.getPackage() == null
+        ? null : LibraryLoader.class.getPackage().getImplementationVersion();
+    Path dir = cache.resolve((version == null ? "dev" : version)
+                             + "-" + getPlatform()
+                             + "-" + Long.toHexString(crc));
+    Path target = dir.resolve(fileName);
+    if (Files.isRegularFile(target) && Files.size(target) == size) {
+      return target.toFile();
+    }
+    Files.createDirectories(dir);
+    // write a private copy then move it in place, so that concurrent starts
+    // never load a partially written library
+    Path temp = Files.createTempFile(dir, fileName, ".tmp");
+    try {
+      InputStream in = url.openStream();
+      try {
+        OutputStream out = Files.newOutputStream(temp);
+        try {
+          byte[] buffer = new byte[1 << 16];
+          for (int n; (n = in.read(buffer)) > 0;) {
+            out.write(buffer, 0, n);
+          }
+        } finally {
+          out.close();
+        }
+      } finally {
+        in.close();
+      }
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      } catch (FileAlreadyExistsException e) {
+        // another start extracted the same library first
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return target.toFile();
+  }
+
+  /**
+   * Get the directory the embedded library is extracted to.
+   */
+  private static Path cacheDirectory() {
+    String dir = System.getProperty(CACHE_PROPERTY);
+    if (dir != null && dir.trim().length() > 0) {
+      return Paths.get(dir.trim());
+    }
+    String xdg = System.getenv("XDG_CACHE_HOME");
+    if (xdg != null && xdg.trim().length() > 0) {
+      return Paths.get(xdg.trim(), "geographiclib");
+    }
+    return Paths.get(System.getProperty("user.home"), ".cache", "geographiclib");
+  }
+} // end LibraryLoader
@@ -0,0 +1,296 @@
+package net.sf.geographiclib;
+
+import java.lang.ref.Cleaner;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>NativeHandle</code>, a reference counted C++ GeographicLib::Geodesic
+ * object shared by every native {@link Geodesic} with the same ellipsoid.
+ *
+ * {@link #acquire(double, double)} returns the existing handle for (a, f) or
+ * creates one, {@link #release()} deletes the C++ object when the last
+ * reference is released. The parameters of the ellipsoid are read from the
+ * C++ object once, when it is created.
+ *
+ * Each native <code>Geodesic</code> holds its reference through a
+ * {@link Lease}, released by <code>close()</code> or, if the instance
+ * is garbage collected first, by the {@link #CLEANER}. Both the C++ objects
+ * and the references are counted for {@link NativeStats}.
+ *
+ * @version 1.29
+ */
+final class NativeHandle {
+
+  /**
+   * The live handles, also the lock guarding the reference counts.
+   */
+  private static final Map<Key, NativeHandle> HANDLES =
+      new HashMap<Key, NativeHandle>();
+
+  /**
+   * Releases the references of the instances which were never closed.
+   */
+  static final Cleaner CLEANER = Cleaner.create();
+
+  // C++ objects created and deleted
+  private static final LongAdder ALLOCATED = new LongAdder();
+  private static final LongAdder FREED = new LongAdder();
+  // references taken, released by close() and released by the cleaner
+  private static final LongAdder OPENED = new LongAdder();
+  private static final LongAdder CLOSED = new LongAdder();
+  private static final LongAdder CLEANED = new LongAdder();
+
+  private final Key key;
+  private final long pointer;
+  private final double majorRadius;
+  private final double flattening;
+  private final double ellipsoidArea;
+  // guarded by HANDLES
+  private int references;
+
+  private NativeHandle(final Key key, final long pointer) {
+    this.key = key;
+    this.pointer = pointer;
+    this.majorRadius = Geodesic.nativeMajorRadius(pointer);
+    this.flattening = Geodesic.nativeFlattening(pointer);
+    this.ellipsoidArea = Geodesic.nativeEllipsoidArea(pointer);
+  }
+
+  /**
+   * Get a reference to the C++ object for an ellipsoid, creating it if
+   * there is none.
+   *
+   * @param a equatorial radius (meters).
+   * @param f flattening of ellipsoid.
+   * @return a <code>NativeHandle</code> value, to be released by the caller
+   */
+  static NativeHandle acquire(final double a, final double f) {
+    Key key = new Key(a, f);
+    synchronized (HANDLES) {
+      NativeHandle handle = HANDLES.get(key);
+      if (handle == null) {
+        handle = new NativeHandle(key, Geodesic.newGeodesicCppObject(a, f));
+        HANDLES.put(key, handle);
+        ALLOCATED.increment();
+      }
+      ++handle.references;
+      return handle;
+    }
+  }
+
+  /**
+   * Releases a reference, the C++ object is deleted with the last one.
+   *
+   * @exception IllegalStateException if every reference was already released.
+   */
+  void release() {
+    synchronized (HANDLES) {
+      if (references <= 0) {
+        throw new IllegalStateException("NativeHandle already released");
+      }
+      if (--references > 0) {
+        return;
+      }
+      HANDLES.remove(key);
+    }
+    Geodesic.deleteGeodesicCppObject(pointer);
+    FREED.increment();
+  }
+
+  /**
+   * Get a snapshot of the counters.
+   * @return a <code>NativeStats</code> value
+   */
+  static NativeStats stats() {
+    // read the releases first so the live counts can't go negative
+    long freed = FREED.sum();
+    long allocated = ALLOCATED.sum();
+    long closed = CLOSED.sum();
+    long cleaned = CLEANED.sum();
+    long opened = OPENED.sum();
+    return new NativeStats(allocated, freed, opened, closed, cleaned);
+  }
+
+  /**
+   * Get the number of C++ objects currently shared through handles.
+   * @return an <code>int</code> value
+   */
+  static int count() {
+    synchronized (HANDLES) {
+      return HANDLES.size();
+    }
+  }
+
+  /**
+   * Get the pointer to the C++ object.
+   * @return a <code>long</code> value
+   */
+  long getPointer() {
+    return pointer;
+  }
+
+  /**
+   * Get the equatorial radius of the ellipsoid (meters).
+   * @return a <code>double</code> value
+   */
+  double getMajorRadius() {
+    return majorRadius;
+  }
+
+  /**
+   * Get the flattening of the ellipsoid.
+   * @return a <code>double</code> value
+   */
+  double getFlattening() {
+    return flattening;
+  }
+
+  /**
+   * Get the total area of the ellipsoid (meters<sup>2</sup>).
+   * @return a <code>double</code> value
+   */
+  double getEllipsoidArea() {
+    return ellipsoidArea;
+  }
+
+  /**
+   * The reference of one <code>Geodesic</code> to a handle, the cleaning
+   * action registered with {@link #CLEANER}. It must not refer to the
+   * <code>Geodesic</code>, or the instance would never become unreachable.
+   *
+   * The lease also guards the pointer against a concurrent close: every
+   * native call is bracketed by {@link #enter()} and {@link #exit()}, which
+   * count the calls in flight. Closing sets the sign bit of that count, so
+   * later calls fail, and the handle is released by whichever of the close
+   * and the last call in flight comes last. The cleaner may run while a call
+   * is in flight (the <code>Geodesic</code> is no longer reachable once its
+   * pointer was read), which is safe for the same reason.
+   */
+  static final class Lease implements Runnable {
+    private static final AtomicIntegerFieldUpdater<Lease> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Lease.class, "state");
+    private static final int CLOSED_BIT = Integer.MIN_VALUE;
+
+    private final NativeHandle handle;
+    private final boolean created;
+    private volatile boolean closed;
+    // number of calls in flight, or'ed with CLOSED_BIT once closed
+    private volatile int state;
+
+    /**
+     * Takes a reference to the handle of an ellipsoid.
+     */
+    Lease(final double a, final double f) {
+      synchronized (HANDLES) {
+        handle = NativeHandle.acquire(a, f);
+        created = handle.references == 1;
+      }
+      OPENED.increment();
+    }
+
+    /**
+     * Get whether this lease allocated the C++ object of its handle.
+     * @return a <code>boolean</code> value
+     */
+    boolean isCreated() {
+      return created;
+    }
+
+    /**
+     * Get the handle of this lease.
+     * @return a <code>NativeHandle</code> value
+     */
+    NativeHandle getHandle() {
+      return handle;
+    }
+
+    /**
+     * Starts a native call, to be paired with {@link #exit()} in a finally
+     * block.
+     *
+     * @return the pointer to the C++ object, valid until exit()
+     * @exception IllegalStateException if the lease was closed.
+     */
+    long enter() {
+      int s;
+      do {
+        s = state;
+        if (s < 0) {
+          throw new IllegalStateException("Geodesic is closed");
+        }
+      } while (!STATE.compareAndSet(this, s, s + 1));
+      return handle.getPointer();
+    }
+
+    /**
+     * Ends a native call, releases the handle if the lease was closed while
+     * this was the last call in flight.
+     */
+    void exit() {
+      if (STATE.decrementAndGet(this) == CLOSED_BIT) {
+        handle.release();
+      }
+    }
+
+    /**
+     * Marks the reference as explicitly closed, called before the cleanable
+     * is cleaned by <code>close()</code>.
+     */
+    void markClosed() {
+      closed = true;
+    }
+
+    /**
+     * Closes the lease, run at most once by the cleanable. The handle is
+     * released now if no call is in flight, by the last call otherwise.
+     */
+    public void run() {
+      if (closed) {
+        CLOSED.increment();
+      } else {
+        CLEANED.increment();
+      }
+      if (STATE.getAndAdd(this, CLOSED_BIT) == 0) {
+        handle.release();
+      }
+    }
+  }
+
+  /**
+   * The parameters of an ellipsoid as given to the constructors, with a
+   * flattening greater than 1 replaced by its reciprocal.
+   */
+  static final class Key {
+    private final double a;
+    private final double f;
+
+    Key(final double a, final double f) {
+      this.a = a;
+      this.f = f > 1 ? 1 / f : f;
+    }
+
+    public int hashCode() {
+      int code = 11;
+      long bits = Double.doubleToLongBits(a);
+      code = code * 37 + (int) (bits ^ (bits >>> 32));
+      bits = Double.doubleToLongBits(f);
+      code = code * 37 + (int) (bits ^ (bits >>> 32));
+      return code;
+    }
+
+    public boolean equals(final Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key o = (Key) obj;
+      return (Double.doubleToLongBits(a) == Double.doubleToLongBits(o.a)) &&
+          (Double.doubleToLongBits(f) == Double.doubleToLongBits(o.f));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package net.sf.geographiclib;
+
+/**
+ * <code>NativeStats</code>, a snapshot of the native memory accounting of
+ * the {@link GeodesicEngine#NATIVE} and {@link GeodesicEngine#FOREIGN}
+ * engines, see {@link Geodesic#getNativeStats()}.
+ *
+ * Objects are the C++ GeographicLib::Geodesic objects, shared by every
+ * <code>Geodesic</code> with the same ellipsoid. Handles are the references
+ * of the <code>Geodesic</code> instances to those objects; a handle is
+ * released either by <code>close()</code> or, when the instance was garbage
+ * collected without being closed, by a <code>java.lang.ref.Cleaner</code>.
+ * A growing {@link #getCleanedHandles() cleaned} count means some code
+ * forgets to close its instances.
+ *
+ * @version 1.29
+ */
+public final class NativeStats {
+  private final long allocatedObjects;
+  private final long freedObjects;
+  private final long openedHandles;
+  private final long closedHandles;
+  private final long cleanedHandles;
+
+  /**
+   * Creates a new <code>NativeStats</code> instance.
+   *
+   * @param allocatedObjects number of C++ objects created.
+   * @param freedObjects number of C++ objects deleted.
+   * @param openedHandles number of handles taken.
+   * @param closedHandles number of handles released by <code>close()</code>.
+   * @param cleanedHandles number of handles released by the cleaner.
+   */
+  public NativeStats(final long allocatedObjects,
+                     final long freedObjects,
+                     final long openedHandles,
+                     final long closedHandles,
+                     final long cleanedHandles) {
+    this.allocatedObjects = allocatedObjects;
+    this.freedObjects = freedObjects;
+    this.openedHandles = openedHandles;
+    this.closedHandles = closedHandles;
+    this.cleanedHandles = cleanedHandles;
+  }
+
+  /**
+   * Get the number of C++ objects currently alive.
+   * @return a <code>long</code> value
+   */
+  public long getLiveObjects() {
+    return allocatedObjects - freedObjects;
+  }
+
+  /**
+   * Get the number of C++ objects created.
+   * @return a <code>long</code> value
+   */
+  public long getAllocatedObjects() {
+    return allocatedObjects;
+  }
+
+  /**
+   * Get the number of C++ objects deleted.
+   * @return a <code>long</code> value
+   */
+  public long getFreedObjects() {
+    return freedObjects;
+  }
+
+  /**
+   * Get the number of handles currently held.
+   * @return a <code>long</code> value
+   */
+  public long getLiveHandles() {
+    return openedHandles - closedHandles - cleanedHandles;
+  }
+
+  /**
+   * Get the number of handles taken.
+   * @return a <code>long</code> value
+   */
+  public long getOpenedHandles() {
+    return openedHandles;
+  }
+
+  /**
+   * Get the number of handles released by <code>close()</code>.
+   * @return a <code>long</code> value
+   */
+  public long getClosedHandles() {
+    return closedHandles;
+  }
+
+  /**
+   * Get the number of handles released by the cleaner because their
+   * <code>Geodesic</code> was never closed.
+   * @return a <code>long</code> value
+   */
+  public long getCleanedHandles() {
+    return cleanedHandles;
+  }
+
+  /**
+   * Get a string representation of this object.
+   *
+   * @return a string representation of this object.
+   *
+   * @see java.lang.Object#toString
+   */
+  public String toString() {
+    return new StringBuffer("liveObjects=" + getLiveObjects())
+        .append(", allocatedObjects=" + allocatedObjects)
+        .append(", freedObjects=" + freedObjects)
+        .append(", liveHandles=" + getLiveHandles())
+        .append(", openedHandles=" + openedHandles)
+        .append(", closedHandles=" + closedHandles)
+        .append(", cleanedHandles=" + cleanedHandles)
+        .toString();
+  }
+}
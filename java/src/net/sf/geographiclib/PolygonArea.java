@@ -0,0 +1,515 @@
+package net.sf.geographiclib;
+
+import java.io.Closeable;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+
+/**
+ * <code>PolygonArea</code>, computes the perimeter and area of a geodesic
+ * polygon, or the length of a geodesic polyline, wrapping the C++
+ * <a href="http://geographiclib.sourceforge.net/html/classGeographicLib_1_1PolygonArea.html">GeographicLib::PolygonArea</a>
+ * class.
+ *
+ * The vertices are added one at a time with {@link #addPoint(double, double)}
+ * or {@link #addEdge(double, double)} and accumulated in the engine of the
+ * {@link Geodesic} given to the constructor, a C++ PolygonArea object for
+ * the native engine, so a polygon of n vertices costs n native calls instead
+ * of n inverse problems solved and summed in Java.
+ * {@link #compute(boolean, boolean)} closes the polygon and may be called
+ * at any point; more vertices can be added afterwards.
+ *
+ * The static {@link #compute(Geodesic, double[], double[], int[], int, int,
+ * boolean, boolean, boolean, double[], double[])} computes many rings, given
+ * as flat coordinate arrays plus ring offsets, in a single native call.
+ *
+ * Instances aren't thread-safe. A native instance owns a C++ object (a copy
+ * of the ellipsoid, it doesn't keep the <code>Geodesic</code> alive) which
+ * is deleted by {@link #close()} or, if the instance is garbage collected
+ * first, by a cleaner.
+ *
+ * @version 1.29
+ */
+public class PolygonArea implements Closeable {
+
+  static {
+    // force the GeographicLib JNI library to be loaded before anything below
+    // is executed
+    LibraryLoader.load();
+  }
+
+  /**
+   * <code>javaPolygon</code> implements every function when the engine is
+   * {@link GeodesicEngine#JAVA}, null for the native engine.
+   */
+  private final JavaPolygonArea javaPolygon;
+
+  /**
+   * <code>nativePolygon</code> owns the C++ object, null for the Java
+   * engine. <code>cleanable</code> deletes it either on {@link #close()} or
+   * once this instance is unreachable.
+   */
+  private final NativePolygon nativePolygon;
+  private final Cleaner.Cleanable cleanable;
+
+  private final boolean polyline;
+  private final double[] values = new double[JavaPolygonArea.COUNT];
+
+  /**
+   * Creates a new <code>PolygonArea</code> instance for a polygon.
+   *
+   * @param geodesic the ellipsoid, and the engine used.
+   * @exception IllegalArgumentException if <code>geodesic</code> is null.
+   * @exception IllegalStateException if <code>geodesic</code> is closed.
+   */
+  public PolygonArea(final Geodesic geodesic) {
+    this(geodesic, false);
+  }
+
+  /**
+   * Creates a new <code>PolygonArea</code> instance.
+   *
+   * @param geodesic the ellipsoid, and the engine used.
+   * @param polyline if true, the vertices describe an open polyline and
+   *     only its length is computed.
+   * @exception IllegalArgumentException if <code>geodesic</code> is null.
+   * @exception IllegalStateException if <code>geodesic</code> is closed.
+   */
+  // registering with the cleaner only stores a phantom reference, no method
+  // of a subclass can run before its constructor
+  @SuppressWarnings("this-escape")
+  public PolygonArea(final Geodesic geodesic, final boolean polyline) {
+    if (geodesic == null) {
+      throw new IllegalArgumentException("geodesic must not be null");
+    }
+    this.polyline = polyline;
+    JavaGeodesic javaGeodesic = geodesic.getJavaGeodesic();
+    if (javaGeodesic != null) {
+      javaPolygon = new JavaPolygonArea(javaGeodesic, polyline);
+      nativePolygon = null;
+      cleanable = null;
+      return;
+    }
+    javaPolygon = null;
+    NativeHandle.Lease lease = geodesic.getNativeLease();
+    long geodesicCppPtr = lease.enter();
+    try {
+      nativePolygon = new NativePolygon(newPolygonAreaCppObject(geodesicCppPtr,
+                                                                polyline));
+    } finally {
+      lease.exit();
+    }
+    cleanable = NativeHandle.CLEANER.register(this, nativePolygon);
+  }
+
+  /**
+   * Inherited from java.io.Closeable. <br>
+   * Deletes the C++ object of a native instance, which can't be used
+   * afterwards. Closing twice has no effect.
+   */
+  public void close() {
+    if (cleanable != null) {
+      cleanable.clean();
+    }
+  }
+
+  /**
+   * Get whether only the length of a polyline is computed.
+   * @return a <code>boolean</code> value
+   */
+  public final boolean isPolyline() {
+    return polyline;
+  }
+
+  /**
+   * Get the engine used by this instance.
+   * @return a <code>GeodesicEngine</code> value
+   */
+  public final GeodesicEngine getEngine() {
+    return javaPolygon != null ? GeodesicEngine.JAVA : GeodesicEngine.NATIVE;
+  }
+
+  /**
+   * Removes every vertex, the instance can be reused for another polygon.
+   */
+  public final void clear() {
+    if (javaPolygon != null) {
+      javaPolygon.clear();
+      return;
+    }
+    try {
+      nativeClear(pointer());
+    } finally {
+      Reference.reachabilityFence(this);
+    }
+  }
+  private static native void nativeClear(final long polygonCppPtr);
+
+  /**
+   * Adds a vertex to the polygon or polyline.
+   *
+   * @param lat the latitude of the vertex (degrees), in [-90, 90].
+   * @param lon the longitude of the vertex (degrees).
+   */
+  public final void addPoint(final double lat, final double lon) {
+    if (javaPolygon != null) {
+      javaPolygon.addPoint(lat, lon);
+      return;
+    }
+    try {
+      nativeAddPoint(pointer(), lat, lon);
+    } finally {
+      Reference.reachabilityFence(this);
+    }
+  }
+  private static native void nativeAddPoint(final long polygonCppPtr,
+                                            final double lat,
+                                            final double lon);
+
+  /**
+   * Adds an edge starting at the last vertex, the new vertex is at the end
+   * of the edge. Ignored if no vertex was added yet.
+   *
+   * @param azi azimuth at the current vertex (degrees).
+   * @param s distance from the current vertex to the new one (meters).
+   */
+  public final void addEdge(final double azi, final double s) {
+    if (javaPolygon != null) {
+      javaPolygon.addEdge(azi, s);
+      return;
+    }
+    try {
+      nativeAddEdge(pointer(), azi, s);
+    } finally {
+      Reference.reachabilityFence(this);
+    }
+  }
+  private static native void nativeAddEdge(final long polygonCppPtr,
+                                           final double azi,
+                                           final double s);
+
+  /**
+   * Computes the perimeter and the area of the polygon, counter-clockwise
+   * traversal counting as positive and returning a signed area.
+   *
+   * @return a <code>PolygonResult</code> value
+   */
+  public final PolygonResult compute() {
+    return compute(false, true);
+  }
+
+  /**
+   * Computes the perimeter and the area of the polygon, closed by an edge
+   * from the last vertex back to the first one, or the length of the
+   * polyline.
+   *
+   * @param reverse if true, clockwise (instead of counter-clockwise)
+   *     traversal counts as a positive area.
+   * @param sign if true, return a signed result for the area if the polygon
+   *     is traversed in the "wrong" direction instead of returning the area
+   *     of the rest of the earth.
+   * @return a <code>PolygonResult</code> value, with an area of NaN for a
+   *     polyline
+   */
+  public final PolygonResult compute(final boolean reverse,
+                                     final boolean sign) {
+    values[JavaPolygonArea.AREA] = Double.NaN;
+    int num;
+    if (javaPolygon != null) {
+      num = javaPolygon.compute(reverse, sign, values);
+    } else {
+      try {
+        num = nativeCompute(pointer(), reverse, sign, values);
+      } finally {
+        Reference.reachabilityFence(this);
+      }
+    }
+    return new PolygonResult(num, values[JavaPolygonArea.PERIMETER],
+                             values[JavaPolygonArea.AREA]);
+  }
+  private static native int nativeCompute(final long polygonCppPtr,
+                                          final boolean reverse,
+                                          final boolean sign,
+                                          final double[] values);
+
+  /**
+   * Computes the perimeter and area of many rings in a single call. Ring
+   * <code>i</code>, for <code>offset &lt;= i &lt; offset + length</code>,
+   * consists of the vertices <code>ringOffsets[i]</code> (inclusive) to
+   * <code>ringOffsets[i + 1]</code> (exclusive) of <code>lat</code> and
+   * <code>lon</code>, and its results are written to element <code>i</code>
+   * of <code>perimeter</code> and <code>area</code>. A ring must not repeat
+   * its first vertex at the end, the closing edge is implied.
+   * <p>
+   * A polygon with holes is the sum of its rings when <code>sign</code> is
+   * true and the holes are traversed in the opposite direction of the outer
+   * ring. No Java objects are allocated; for the native engine every ring
+   * is computed by one C++ PolygonArea object inside one native call.
+   *
+   * @param geodesic the ellipsoid, and the engine used.
+   * @param lat latitudes of the vertices (degrees).
+   * @param lon longitudes of the vertices (degrees).
+   * @param ringOffsets index in <code>lat</code> and <code>lon</code> of the
+   *     first vertex of every ring, followed by the end of the last ring;
+   *     must be non-decreasing.
+   * @param offset index of the first ring to compute.
+   * @param length number of rings to compute.
+   * @param polyline if true, the rings are open polylines and only their
+   *     lengths are computed.
+   * @param reverse if true, clockwise traversal counts as a positive area.
+   * @param sign if true, return signed areas for the rings traversed in the
+   *     "wrong" direction instead of the area of the rest of the earth.
+   * @param perimeter perimeters of the rings (meters), may be null.
+   * @param area areas of the rings (meters<sup>2</sup>), may be null; not
+   *     written for polylines.
+   * @exception IllegalArgumentException if an array is missing or too
+   *     short, or <code>ringOffsets</code> is out of order or out of
+   *     range.
+   */
+  public static void compute(final Geodesic geodesic,
+                             final double[] lat,
+                             final double[] lon,
+                             final int[] ringOffsets,
+                             final int offset,
+                             final int length,
+                             final boolean polyline,
+                             final boolean reverse,
+                             final boolean sign,
+                             final double[] perimeter,
+                             final double[] area) {
+    if (geodesic == null) {
+      throw new IllegalArgumentException("geodesic must not be null");
+    }
+    Geodesic.checkBatchRange(offset, length);
+    Geodesic.checkBatchOutput(perimeter, "perimeter", offset, length);
+    Geodesic.checkBatchOutput(area, "area", offset, length);
+    if (lat == null || lon == null || lat.length != lon.length) {
+      throw new IllegalArgumentException("lat and lon must have the same length");
+    }
+    if (ringOffsets == null || ringOffsets.length - offset <= length) {
+      throw new IllegalArgumentException("ringOffsets must have "
+                                         + (offset + length + 1) + " elements");
+    }
+    for (int i = offset; i < offset + length; ++i) {
+      if (ringOffsets[i] < 0 || ringOffsets[i] > ringOffsets[i + 1]
+          || ringOffsets[i + 1] > lat.length) {
+        throw new IllegalArgumentException("ring " + i + " ["
+                                           + ringOffsets[i] + ", "
+                                           + ringOffsets[i + 1]
+                                           + ") is out of order or range");
+      }
+    }
+    if (length == 0) {
+      return;
+    }
+    GeodesicInstrumentation.Sample sample = GeodesicInstrumentation.sample();
+    try {
+      JavaGeodesic javaGeodesic = geodesic.getJavaGeodesic();
+      if (javaGeodesic != null) {
+        javaCompute(javaGeodesic, lat, lon, ringOffsets, offset, length,
+                    polyline, reverse, sign, perimeter, area);
+        return;
+      }
+      NativeHandle.Lease lease = geodesic.getNativeLease();
+      long geodesicCppPtr = lease.enter();
+      try {
+        nativeComputeRings(geodesicCppPtr, lat, lon, ringOffsets, offset,
+                           length, polyline, reverse, sign, perimeter,
+                           polyline ? null : area);
+      } finally {
+        lease.exit();
+      }
+    } finally {
+      if (sample != null) {
+        sample.end(GeodesicMetrics.Operation.POLYGON_BATCH,
+                   geodesic.getEngine(),
+                   Geodesic.MASK_DISTANCE | (polyline ? 0 : Geodesic.MASK_AREA),
+                   ringOffsets[offset + length] - ringOffsets[offset]);
+      }
+    }
+  }
+  private static native void nativeComputeRings(final long geodesicCppPtr,
+                                                final double[] lat,
+                                                final double[] lon,
+                                                final int[] ringOffsets,
+                                                final int offset,
+                                                final int length,
+                                                final boolean polyline,
+                                                final boolean reverse,
+                                                final boolean sign,
+                                                final double[] perimeter,
+                                                final double[] area);
+
+  /**
+   * Computes rings with the Java engine, reusing one polygon.
+   */
+  private static void javaCompute(final JavaGeodesic javaGeodesic,
+                                  final double[] lat,
+                                  final double[] lon,
+                                  final int[] ringOffsets,
+                                  final int offset,
+                                  final int length,
+                                  final boolean polyline,
+                                  final boolean reverse,
+                                  final boolean sign,
+                                  final double[] perimeter,
+                                  final double[] area) {
+    JavaPolygonArea polygon = new JavaPolygonArea(javaGeodesic, polyline);
+    double[] result = new double[JavaPolygonArea.COUNT];
+    for (int i = offset; i < offset + length; ++i) {
+      polygon.clear();
+      for (int j = ringOffsets[i]; j < ringOffsets[i + 1]; ++j) {
+        polygon.addPoint(lat[j], lon[j]);
+      }
+      polygon.compute(reverse, sign, result);
+      if (perimeter != null) {
+        perimeter[i] = result[JavaPolygonArea.PERIMETER];
+      }
+      if (area != null && !polyline) {
+        area[i] = result[JavaPolygonArea.AREA];
+      }
+    }
+  }
+
+  /**
+   * Get the pointer to the C++ object.
+   *
+   * @exception IllegalStateException if this instance was closed.
+   */
+  private long pointer() {
+    long polygonCppPtr = nativePolygon.pointer;
+    if (polygonCppPtr == 0) {
+      throw new IllegalStateException("PolygonArea is closed");
+    }
+    return polygonCppPtr;
+  }
+
+  /**
+   * Creates a new GeographicLib::PolygonArea object and returns the pointer
+   * to it.
+   * @param geodesicCppPtr the ellipsoid, copied into the new object.
+   * @param polyline true for a polyline.
+   * @return The pointer to the C++ object.
+   */
+  private static native long newPolygonAreaCppObject(final long geodesicCppPtr,
+                                                     final boolean polyline);
+
+  /**
+   * Deletes a GeographicLib::PolygonArea object created by
+   * newPolygonAreaCppObject()
+   * @param polygonCppPtr the pointer to the C++ object to delete
+   */
+  private static native void deletePolygonAreaCppObject(final long polygonCppPtr);
+
+  /**
+   * The C++ object of a native instance, the cleaning action registered
+   * with the cleaner. It must not refer to the <code>PolygonArea</code>, or
+   * the instance would never become unreachable.
+   */
+  private static final class NativePolygon implements Runnable {
+    private volatile long pointer;
+
+    NativePolygon(final long pointer) {
+      this.pointer = pointer;
+    }
+
+    /**
+     * Deletes the C++ object, run at most once by the cleanable.
+     */
+    public void run() {
+      long polygonCppPtr = pointer;
+      pointer = 0;
+      deletePolygonAreaCppObject(polygonCppPtr);
+    }
+  }
+
+  /**
+   * <code>PolygonResult</code>, the result of
+   * {@link PolygonArea#compute(boolean, boolean)}.
+   *
+   * @version 1.29
+   */
+  public static final class PolygonResult {
+    private final int numberOfPoints;
+    private final double perimeter;
+    private final double area;
+
+    /**
+     * Creates a new <code>PolygonResult</code> instance.
+     *
+     * @param numberOfPoints an <code>int</code> value
+     * @param perimeter a <code>double</code> value
+     * @param area a <code>double</code> value
+     */
+    public PolygonResult(final int numberOfPoints,
+                         final double perimeter,
+                         final double area) {
+      this.numberOfPoints = numberOfPoints;
+      this.perimeter = perimeter;
+      this.area = area;
+    }
+
+    /**
+     * Get the number of vertices.
+     * @return an <code>int</code> value
+     */
+    public final int getNumberOfPoints() {
+      return numberOfPoints;
+    }
+
+    /**
+     * Get the perimeter of the polygon, or the length of the polyline
+     * (meters).
+     * @return a <code>double</code> value
+     */
+    public final double getPerimeter() {
+      return perimeter;
+    }
+
+    /**
+     * Get the area of the polygon (meters<sup>2</sup>), NaN for a polyline.
+     * @return a <code>double</code> value
+     */
+    public final double getArea() {
+      return area;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("numberOfPoints=" + numberOfPoints)
+          .append(", perimeter=" + perimeter)
+          .append(", area=" + area)
+          .toString();
+    }
+
+    /**
+     * Check if this object is equal (equivalent) to another object.
+     */
+    public boolean equals(final Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if ((obj == null) || !getClass().equals(obj.getClass())) {
+        return false;
+      }
+      PolygonResult o = (PolygonResult) obj;
+      return (numberOfPoints == o.numberOfPoints)
+          && (Double.compare(perimeter, o.perimeter) == 0)
+          && (Double.compare(area, o.area) == 0);
+    }
+
+    /**
+     * Get a hash code consistent with {@link #equals(Object)}.
+     */
+    public int hashCode() {
+      long bits = Double.doubleToLongBits(perimeter) * 31
+          + Double.doubleToLongBits(area);
+      return numberOfPoints * 31 + (int) (bits ^ (bits >>> 32));
+    }
+  } // end PolygonResult
+}
@@ -0,0 +1,694 @@
+package net.sf.geographiclib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>TrackProcessor</code> computes the segments of GPS tracks stored in
+ * a binary file of fixed-width records, without parsing the file into
+ * objects.
+ *
+ * Every input record holds a fix of a track, at least its track id (a
+ * <code>long</code>), latitude and longitude (<code>double</code>s in
+ * degrees); other fields, such as the time, are skipped. See {@link Layout}
+ * for the position of the fields. The fixes of a track must be stored
+ * consecutively and in order.
+ *
+ * The output file has one record of {@link #OUTPUT_RECORD_BYTES} bytes per
+ * input record, holding three native byte order doubles: the distance from
+ * the previous fix of the same track (meters), the azimuth of that segment
+ * at the previous fix (degrees) and the length of the track up to this fix
+ * (meters). The first fix of a track has a distance and length of 0 and a
+ * NaN azimuth.
+ *
+ * The input is memory-mapped and processed in chunks of a fixed number of
+ * records on a {@link java.util.concurrent.ForkJoinPool}. Every chunk is a
+ * single off-heap batch inverse call reading the coordinates in place
+ * from the mapping, see
+ * {@link Geodesic#genInverse(BufferColumn, BufferColumn, BufferColumn, BufferColumn, int, long, BufferColumn, BufferColumn, BufferColumn, BufferColumn, BufferColumn, BufferColumn, BufferColumn, BufferColumn)}.
+ * Tracks may span chunks: the lengths of a track continued from the
+ * previous chunk are fixed up in a second, much smaller, pass. Besides the
+ * mappings, whose pages are managed by the operating system, every worker
+ * only needs one output buffer of a chunk, so the memory used doesn't
+ * depend on the size of the file.
+ *
+ * @version 1.29
+ */
+public class TrackProcessor {
+
+  /**
+   * Default number of records in a chunk.
+   */
+  public static final int DEFAULT_CHUNK_RECORDS = 65536;
+
+  /**
+   * Size of an output record in bytes.
+   */
+  public static final int OUTPUT_RECORD_BYTES = 24;
+
+  /**
+   * Offset of the distance from the previous fix in an output record.
+   */
+  public static final int OUTPUT_DISTANCE_OFFSET = 0;
+
+  /**
+   * Offset of the azimuth at the previous fix in an output record.
+   */
+  public static final int OUTPUT_AZIMUTH_OFFSET = 8;
+
+  /**
+   * Offset of the length of the track up to the fix in an output record.
+   */
+  public static final int OUTPUT_LENGTH_OFFSET = 16;
+
+  private final Geodesic geodesic;
+  private final ForkJoinPool pool;
+  private final Layout layout;
+  private final int chunkRecords;
+
+  /**
+   * Output buffers of the workers, one chunk each.
+   */
+  private final ThreadLocal<ByteBuffer> outputBuffers;
+
+  /**
+   * Coordinates of a chunk copied in the native byte order, only used when
+   * the input is in the other byte order.
+   */
+  private final ThreadLocal<ByteBuffer> coordinateBuffers;
+
+  /**
+   * Creates a new <code>TrackProcessor</code> instance which uses the common
+   * pool, the default layout and the default chunk size.
+   *
+   * @param geodesic the ellipsoid of the coordinates.
+   */
+  public TrackProcessor(final Geodesic geodesic) {
+    this(geodesic, ForkJoinPool.commonPool(), Layout.DEFAULT,
+         DEFAULT_CHUNK_RECORDS);
+  }
+
+  /**
+   * Creates a new <code>TrackProcessor</code> instance.
+   *
+   * @param geodesic the ellipsoid of the coordinates.
+   * @param pool the pool which runs the chunks.
+   * @param layout the layout of the input records.
+   * @param chunkRecords number of records in a chunk.
+   * @exception IllegalArgumentException if an argument is null or
+   *     <code>chunkRecords</code> is out of range.
+   */
+  public TrackProcessor(final Geodesic geodesic,
+                        final ForkJoinPool pool,
+                        final Layout layout,
+                        final int chunkRecords) {
+    if (geodesic == null || pool == null || layout == null) {
+      throw new IllegalArgumentException("geodesic, pool and layout must not be null");
+    }
+    // a chunk is mapped together with the last record of the previous one
+    long maxChunkRecords = Math.min(Integer.MAX_VALUE / layout.getRecordBytes() - 1,
+                                    Integer.MAX_VALUE / OUTPUT_RECORD_BYTES);
+    if (chunkRecords < 1 || chunkRecords > maxChunkRecords) {
+      throw new IllegalArgumentException("chunkRecords (" + chunkRecords
+                                         + ") must be in [1, "
+                                         + maxChunkRecords + "]");
+    }
+    this.geodesic = geodesic;
+    this.pool = pool;
+    this.layout = layout;
+    this.chunkRecords = chunkRecords;
+    this.outputBuffers = new ThreadLocal<ByteBuffer>() {
+        protected ByteBuffer initialValue() {
+          return ByteBuffer.allocateDirect(chunkRecords * OUTPUT_RECORD_BYTES)
+              .order(ByteOrder.nativeOrder());
+        }
+      };
+    this.coordinateBuffers = new ThreadLocal<ByteBuffer>() {
+        protected ByteBuffer initialValue() {
+          return ByteBuffer.allocateDirect((chunkRecords + 1) * 2 * Double.BYTES)
+              .order(ByteOrder.nativeOrder());
+        }
+      };
+  }
+
+  /**
+   * Get the ellipsoid of the coordinates.
+   * @return a <code>Geodesic</code> value
+   */
+  public final Geodesic getGeodesic() {
+    return geodesic;
+  }
+
+  /**
+   * Get the pool which runs the chunks.
+   * @return a <code>ForkJoinPool</code> value
+   */
+  public final ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Get the layout of the input records.
+   * @return a <code>Layout</code> value
+   */
+  public final Layout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Get the number of records in a chunk.
+   * @return an <code>int</code> value
+   */
+  public final int getChunkRecords() {
+    return chunkRecords;
+  }
+
+  /**
+   * Processes the track file <code>input</code> into <code>output</code>,
+   * which is created or truncated.
+   *
+   * @param input the track file.
+   * @param output the file receiving the output records.
+   * @return statistics of the run.
+   * @exception IOException if a file can't be read or written or the size
+   *     of the input isn't a multiple of the record size.
+   */
+  public final Summary process(final Path input, final Path output)
+      throws IOException {
+    try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(output,
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.TRUNCATE_EXISTING,
+                                            StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE)) {
+      return process(in, out);
+    }
+  }
+
+  /**
+   * Processes the records of <code>input</code> into <code>output</code>.
+   * The output records are written at the same index as the input records,
+   * using positional writes, so the output channel must be readable and
+   * writable; the lengths of tracks spanning chunks are read back and
+   * rewritten.
+   *
+   * @param input the track file, opened for reading.
+   * @param output the output file, opened for reading and writing.
+   * @return statistics of the run.
+   * @exception IOException if a file can't be read or written or the size
+   *     of the input isn't a multiple of the record size.
+   */
+  public final Summary process(final FileChannel input,
+                               final FileChannel output) throws IOException {
+    if (input == null || output == null) {
+      throw new IllegalArgumentException("input and output must not be null");
+    }
+    long start = System.nanoTime();
+    long size = input.size();
+    int recordBytes = layout.getRecordBytes();
+    if (size % recordBytes != 0) {
+      throw new IOException("input size " + size
+                            + " isn't a multiple of the record size "
+                            + recordBytes);
+    }
+    long records = size / recordBytes;
+    long chunkCount = (records + chunkRecords - 1) / chunkRecords;
+    if (chunkCount > Integer.MAX_VALUE) {
+      throw new IOException(records + " records need too many chunks");
+    }
+    final Chunk[] chunks = new Chunk[(int) chunkCount];
+    for (int k = 0; k < chunks.length; ++k) {
+      long first = (long) k * chunkRecords;
+      chunks[k] = new Chunk(first, (int) Math.min(chunkRecords, records - first));
+    }
+
+    // compute the chunks independently, then carry the lengths of the
+    // tracks continuing across chunk boundaries
+    run(chunks, new ChunkAction() {
+        public void run(final Chunk chunk) throws IOException {
+          compute(input, output, chunk);
+        }
+      });
+    long tracks = 0;
+    double totalLength = 0;
+    for (int k = 0; k < chunks.length; ++k) {
+      Chunk chunk = chunks[k];
+      if (chunk.continued) {
+        Chunk previous = chunks[k - 1];
+        chunk.carry = previous.lastLength
+            + (previous.firstRunLength == previous.length ? previous.carry : 0);
+      }
+      tracks += chunk.trackStarts;
+      totalLength += chunk.totalLength;
+    }
+    run(chunks, new ChunkAction() {
+        public void run(final Chunk chunk) throws IOException {
+          if (chunk.carry != 0) {
+            carry(output, chunk);
+          }
+        }
+      });
+    return new Summary(records, tracks, chunks.length, totalLength,
+                       System.nanoTime() - start);
+  }
+
+  /**
+   * Computes the output records of a chunk, the lengths of the tracks being
+   * counted from the start of the chunk.
+   */
+  private void compute(final FileChannel input,
+                       final FileChannel output,
+                       final Chunk chunk) throws IOException {
+    int recordBytes = layout.getRecordBytes();
+    // map the last record of the previous chunk too, for the first segment
+    int previous = chunk.first > 0 ? 1 : 0;
+    int mapped = chunk.length + previous;
+    MappedByteBuffer records =
+        input.map(FileChannel.MapMode.READ_ONLY,
+                  (chunk.first - previous) * recordBytes,
+                  (long) mapped * recordBytes);
+    records.order(layout.getOrder());
+
+    BufferColumn lat1;
+    BufferColumn lon1;
+    BufferColumn lat2;
+    BufferColumn lon2;
+    if (layout.getOrder() == ByteOrder.nativeOrder()) {
+      lat1 = new BufferColumn(records, layout.getLatitudeOffset(), recordBytes);
+      lon1 = new BufferColumn(records, layout.getLongitudeOffset(), recordBytes);
+      lat2 = new BufferColumn(records, layout.getLatitudeOffset() + recordBytes,
+                              recordBytes);
+      lon2 = new BufferColumn(records, layout.getLongitudeOffset() + recordBytes,
+                              recordBytes);
+    } else {
+      ByteBuffer coordinates = coordinateBuffers.get();
+      for (int i = 0; i < mapped; ++i) {
+        int record = i * recordBytes;
+        coordinates.putDouble(2 * i * Double.BYTES,
+                              records.getDouble(record + layout.getLatitudeOffset()));
+        coordinates.putDouble((2 * i + 1) * Double.BYTES,
+                              records.getDouble(record + layout.getLongitudeOffset()));
+      }
+      lat1 = new BufferColumn(coordinates, 0, 2 * Double.BYTES);
+      lon1 = new BufferColumn(coordinates, Double.BYTES, 2 * Double.BYTES);
+      lat2 = new BufferColumn(coordinates, 2 * Double.BYTES, 2 * Double.BYTES);
+      lon2 = new BufferColumn(coordinates, 3 * Double.BYTES, 2 * Double.BYTES);
+    }
+
+    // segment i ends at mapped record i + 1, i.e. output record
+    // i + 1 - previous
+    ByteBuffer out = outputBuffers.get();
+    // absolute accesses are bounded by the limit of the previous write
+    out.clear();
+    int segmentOffset = (1 - previous) * OUTPUT_RECORD_BYTES;
+    geodesic.genInverse(lat1, lon1, lat2, lon2, mapped - 1,
+                        Geodesic.MASK_DISTANCE | Geodesic.MASK_AZIMUTH,
+                        new BufferColumn(out, segmentOffset + OUTPUT_DISTANCE_OFFSET,
+                                         OUTPUT_RECORD_BYTES),
+                        new BufferColumn(out, segmentOffset + OUTPUT_AZIMUTH_OFFSET,
+                                         OUTPUT_RECORD_BYTES),
+                        null, null, null, null, null, null);
+
+    // the segments between two tracks are discarded and the lengths summed
+    chunk.continued = previous == 1
+        && trackId(records, 0) == trackId(records, 1);
+    chunk.firstRunLength = chunk.length;
+    double length = 0;
+    for (int i = 0; i < chunk.length; ++i) {
+      int record = i * OUTPUT_RECORD_BYTES;
+      if (i + previous == 0
+          || trackId(records, i + previous) != trackId(records, i + previous - 1)) {
+        if (i > 0 && chunk.firstRunLength == chunk.length) {
+          chunk.firstRunLength = i;
+        }
+        ++chunk.trackStarts;
+        out.putDouble(record + OUTPUT_DISTANCE_OFFSET, 0);
+        out.putDouble(record + OUTPUT_AZIMUTH_OFFSET, Double.NaN);
+        length = 0;
+      } else {
+        double distance = out.getDouble(record + OUTPUT_DISTANCE_OFFSET);
+        chunk.totalLength += distance;
+        length += distance;
+      }
+      out.putDouble(record + OUTPUT_LENGTH_OFFSET, length);
+    }
+    chunk.lastLength = length;
+    write(output, out, chunk.first, chunk.length);
+  }
+
+  /**
+   * Adds the carried length to the first track of a chunk.
+   */
+  private void carry(final FileChannel output, final Chunk chunk)
+      throws IOException {
+    ByteBuffer out = outputBuffers.get();
+    out.clear().limit(chunk.firstRunLength * OUTPUT_RECORD_BYTES);
+    long position = chunk.first * OUTPUT_RECORD_BYTES;
+    while (out.hasRemaining()) {
+      if (output.read(out, position + out.position()) < 0) {
+        throw new IOException("output is shorter than expected");
+      }
+    }
+    for (int i = 0; i < chunk.firstRunLength; ++i) {
+      int index = i * OUTPUT_RECORD_BYTES + OUTPUT_LENGTH_OFFSET;
+      out.putDouble(index, out.getDouble(index) + chunk.carry);
+    }
+    write(output, out, chunk.first, chunk.firstRunLength);
+  }
+
+  /**
+   * Writes the first <code>count</code> records of <code>out</code> at
+   * output record <code>first</code>.
+   */
+  private static void write(final FileChannel output,
+                            final ByteBuffer out,
+                            final long first,
+                            final int count) throws IOException {
+    out.clear().limit(count * OUTPUT_RECORD_BYTES);
+    long position = first * OUTPUT_RECORD_BYTES;
+    while (out.hasRemaining()) {
+      output.write(out, position + out.position());
+    }
+  }
+
+  /**
+   * Reads the track id of mapped record <code>i</code>.
+   */
+  private long trackId(final ByteBuffer records, final int i) {
+    return records.getLong(i * layout.getRecordBytes()
+                           + layout.getTrackIdOffset());
+  }
+
+  /**
+   * Runs action on every chunk, in parallel if there is more than one.
+   */
+  private void run(final Chunk[] chunks, final ChunkAction action)
+      throws IOException {
+    try {
+      if (chunks.length == 1) {
+        action.run(chunks[0]);
+      } else if (chunks.length > 1) {
+        pool.invoke(new ChunkTask(action, chunks, 0, chunks.length));
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * The state of a chunk shared between the passes.
+   */
+  private static final class Chunk {
+    private final long first;
+    private final int length;
+    // the first record continues the track of the previous chunk
+    private boolean continued;
+    // number of records of the first track of the chunk
+    private int firstRunLength;
+    // length of the last track of the chunk, from the start of the chunk
+    private double lastLength;
+    // length added to the first track by the second pass
+    private double carry;
+    private long trackStarts;
+    private double totalLength;
+
+    Chunk(final long first, final int length) {
+      this.first = first;
+      this.length = length;
+    }
+  }
+
+  /**
+   * One pass over a chunk.
+   */
+  private interface ChunkAction {
+    void run(Chunk chunk) throws IOException;
+  }
+
+  /**
+   * Splits a range of chunks in halves until a single chunk is left.
+   */
+  private static final class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    // only run by the pool, never serialized
+    private final transient ChunkAction action;
+    private final transient Chunk[] chunks;
+    private final int begin;
+    private final int end;
+
+    ChunkTask(final ChunkAction action,
+              final Chunk[] chunks,
+              final int begin,
+              final int end) {
+      this.action = action;
+      this.chunks = chunks;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    protected void compute() {
+      if (end - begin == 1) {
+        try {
+          action.run(chunks[begin]);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return;
+      }
+      int middle = (begin + end) >>> 1;
+      invokeAll(new ChunkTask(action, chunks, begin, middle),
+                new ChunkTask(action, chunks, middle, end));
+    }
+  }
+
+  /**
+   * <code>Layout</code>, the position of the fields of the records of a
+   * track file.
+   *
+   * @version 1.29
+   */
+  public static final class Layout {
+
+    /**
+     * Little endian records of 32 bytes: track id (<code>long</code>), time,
+     * latitude and longitude (<code>double</code>s).
+     */
+    public static final Layout DEFAULT =
+        new Layout(32, 0, 16, 24, ByteOrder.LITTLE_ENDIAN);
+
+    private final int recordBytes;
+    private final int trackIdOffset;
+    private final int latitudeOffset;
+    private final int longitudeOffset;
+    private final ByteOrder order;
+
+    /**
+     * Creates a new <code>Layout</code> instance. Input in the native byte
+     * order is read in place, other input is copied chunk by chunk.
+     *
+     * @param recordBytes size of a record in bytes.
+     * @param trackIdOffset offset of the track id in a record.
+     * @param latitudeOffset offset of the latitude in a record.
+     * @param longitudeOffset offset of the longitude in a record.
+     * @param order byte order of the fields.
+     * @exception IllegalArgumentException if a field doesn't fit in a
+     *     record or <code>order</code> is null.
+     */
+    public Layout(final int recordBytes,
+                  final int trackIdOffset,
+                  final int latitudeOffset,
+                  final int longitudeOffset,
+                  final ByteOrder order) {
+      checkField("trackIdOffset", trackIdOffset, recordBytes);
+      checkField("latitudeOffset", latitudeOffset, recordBytes);
+      checkField("longitudeOffset", longitudeOffset, recordBytes);
+      if (order == null) {
+        throw new IllegalArgumentException("order must not be null");
+      }
+      this.recordBytes = recordBytes;
+      this.trackIdOffset = trackIdOffset;
+      this.latitudeOffset = latitudeOffset;
+      this.longitudeOffset = longitudeOffset;
+      this.order = order;
+    }
+
+    /**
+     * Validates the offset of an 8 byte field.
+     */
+    private static void checkField(final String name,
+                                   final int offset,
+                                   final int recordBytes) {
+      if (offset < 0 || offset > recordBytes - 8) {
+        throw new IllegalArgumentException(name + " (" + offset
+                                           + ") doesn't fit in a record of "
+                                           + recordBytes + " bytes");
+      }
+    }
+
+    /**
+     * Get the size of a record in bytes.
+     * @return an <code>int</code> value
+     */
+    public int getRecordBytes() {
+      return recordBytes;
+    }
+
+    /**
+     * Get the offset of the track id in a record.
+     * @return an <code>int</code> value
+     */
+    public int getTrackIdOffset() {
+      return trackIdOffset;
+    }
+
+    /**
+     * Get the offset of the latitude in a record.
+     * @return an <code>int</code> value
+     */
+    public int getLatitudeOffset() {
+      return latitudeOffset;
+    }
+
+    /**
+     * Get the offset of the longitude in a record.
+     * @return an <code>int</code> value
+     */
+    public int getLongitudeOffset() {
+      return longitudeOffset;
+    }
+
+    /**
+     * Get the byte order of the fields.
+     * @return a <code>ByteOrder</code> value
+     */
+    public ByteOrder getOrder() {
+      return order;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("recordBytes=" + recordBytes)
+          .append(", trackIdOffset=" + trackIdOffset)
+          .append(", latitudeOffset=" + latitudeOffset)
+          .append(", longitudeOffset=" + longitudeOffset)
+          .append(", order=" + order)
+          .toString();
+    }
+  } // end Layout
+
+  /**
+   * <code>Summary</code>, the statistics of one run of a
+   * <code>TrackProcessor</code>.
+   *
+   * @version 1.29
+   */
+  public static final class Summary {
+    private final long records;
+    private final long tracks;
+    private final int chunks;
+    private final double totalLength;
+    private final long elapsedNanos;
+
+    /**
+     * Creates a new <code>Summary</code> instance.
+     *
+     * @param records number of records processed.
+     * @param tracks number of tracks found.
+     * @param chunks number of chunks the file was split into.
+     * @param totalLength sum of the lengths of all the tracks (meters).
+     * @param elapsedNanos wall clock time of the run (nanoseconds).
+     */
+    public Summary(final long records,
+                   final long tracks,
+                   final int chunks,
+                   final double totalLength,
+                   final long elapsedNanos) {
+      this.records = records;
+      this.tracks = tracks;
+      this.chunks = chunks;
+      this.totalLength = totalLength;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the number of records processed.
+     * @return a <code>long</code> value
+     */
+    public long getRecords() {
+      return records;
+    }
+
+    /**
+     * Get the number of tracks found.
+     * @return a <code>long</code> value
+     */
+    public long getTracks() {
+      return tracks;
+    }
+
+    /**
+     * Get the number of chunks the file was split into.
+     * @return an <code>int</code> value
+     */
+    public int getChunks() {
+      return chunks;
+    }
+
+    /**
+     * Get the sum of the lengths of all the tracks.
+     * @return a <code>double</code> value (meters)
+     */
+    public double getTotalLength() {
+      return totalLength;
+    }
+
+    /**
+     * Get the wall clock time of the run.
+     * @return a <code>long</code> value (nanoseconds)
+     */
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /**
+     * Get the throughput of the run.
+     * @return a <code>double</code> value (records per second)
+     */
+    public double getThroughput() {
+      return elapsedNanos == 0 ? 0 : records * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Get a string representation of this object.
+     *
+     * @return a string representation of this object.
+     *
+     * @see java.lang.Object#toString
+     */
+    public String toString() {
+      return new StringBuffer("records=" + records)
+          .append(", tracks=" + tracks)
+          .append(", chunks=" + chunks)
+          .append(", totalLength=" + totalLength)
+          .append(", elapsedNanos=" + elapsedNanos)
+          .append(", throughput=" + getThroughput())
+          .toString();
+    }
+  } // end Summary
+
+} // end TrackProcessor
@@ -0,0 +1,35 @@
+#ifndef GEOGRAPHICLIB_JNI_BATCH_OUTPUT_HPP
+#define GEOGRAPHICLIB_JNI_BATCH_OUTPUT_HPP
+
+#include <jni.h>
+
+#include <GeographicLib/Constants.hpp>
+
+#include <cstddef>
+
+// Number of elements computed per pinning of the Java arrays in the batch
+// functions. GetPrimitiveArrayCritical() may hold off the garbage collector,
+// so large batches are split into chunks of this size.
+static const jint BATCH_CHUNK_SIZE = 4096;
+
+// The output bits of the Geodesic::mask values (GeographicLib keeps its
+// OUT_ALL constant private).
+static const unsigned OUT_ALL = 0x7F80U;
+
+/**
+ * Stores value into pOut[i] if the array was supplied and the quantity
+ * selected by outputBit was requested in outmask.
+ */
+static inline void StoreOutput(jdouble* pOut,
+                               jint i,
+                               unsigned outmask,
+                               unsigned outputBit,
+                               GeographicLib::Math::real value)
+{
+  if (pOut != NULL && (outmask & outputBit & OUT_ALL) != 0)
+  {
+    pOut[i] = value;
+  }
+}
+
+#endif // GEOGRAPHICLIB_JNI_BATCH_OUTPUT_HPP
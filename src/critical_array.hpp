@@ -0,0 +1,119 @@
+#ifndef GEOGRAPHICLIB_JNI_CRITICAL_ARRAY_HPP
+#define GEOGRAPHICLIB_JNI_CRITICAL_ARRAY_HPP
+
+#include <jni.h>
+
+#include <cstddef>
+
+/**
+ * Pins a (possibly NULL) Java primitive array with
+ * GetPrimitiveArrayCritical() for the lifetime of this object. No JNI calls
+ * may be made while it is alive.
+ */
+template <typename T, typename ArrayT>
+class CriticalArray
+{
+public:
+  CriticalArray(JNIEnv* pEnv, ArrayT array, jint releaseMode)
+      : mpEnv(pEnv),
+        mArray(array),
+        mReleaseMode(releaseMode),
+        mpData(NULL)
+  {
+    if (mArray != NULL)
+    {
+      mpData = static_cast<T*>(mpEnv->GetPrimitiveArrayCritical(mArray, NULL));
+    }
+  }
+
+  ~CriticalArray()
+  {
+    if (mpData != NULL)
+    {
+      mpEnv->ReleasePrimitiveArrayCritical(mArray, mpData, mReleaseMode);
+    }
+  }
+
+  T* get() const
+  {
+    return mpData;
+  }
+
+  /**
+   * False if the array wasn't NULL but couldn't be pinned.
+   */
+  bool pinned() const
+  {
+    return mArray == NULL || mpData != NULL;
+  }
+
+private:
+  // non-copyable
+  CriticalArray(const CriticalArray&);
+  CriticalArray& operator=(const CriticalArray&);
+
+  JNIEnv* mpEnv;
+  ArrayT mArray;
+  jint mReleaseMode;
+  T* mpData;
+};
+
+/**
+ * Reports the CriticalArrays of a scope which couldn't be pinned. Declared
+ * before them, it's destroyed after they are released, and only then
+ * throws an OutOfMemoryError, unless the JVM already threw an exception:
+ * no JNI call may be made while an array is pinned, and a failed output
+ * array must not be mistaken for an output which wasn't requested.
+ */
+class CriticalScope
+{
+public:
+  explicit CriticalScope(JNIEnv* pEnv)
+      : mpEnv(pEnv),
+        mFailed(false)
+  {}
+
+  ~CriticalScope()
+  {
+    if (mFailed && !mpEnv->ExceptionCheck())
+    {
+      jclass errorClass = mpEnv->FindClass("java/lang/OutOfMemoryError");
+      if (errorClass != NULL)
+      {
+        mpEnv->ThrowNew(errorClass, "GetPrimitiveArrayCritical failed");
+      }
+    }
+  }
+
+  /**
+   * Checks that every array given was pinned, returns false (and throws
+   * when this scope ends) otherwise.
+   */
+  bool pinned()
+  {
+    return !mFailed;
+  }
+
+  template <typename ArrayT, typename... RestT>
+  bool pinned(const ArrayT& array, const RestT&... rest)
+  {
+    if (!array.pinned())
+    {
+      mFailed = true;
+    }
+    return pinned(rest...);
+  }
+
+private:
+  // non-copyable
+  CriticalScope(const CriticalScope&);
+  CriticalScope& operator=(const CriticalScope&);
+
+  JNIEnv* mpEnv;
+  bool mFailed;
+};
+
+typedef CriticalArray<jdouble, jdoubleArray> CriticalDoubleArray;
+typedef CriticalArray<jint, jintArray> CriticalIntArray;
+
+#endif // GEOGRAPHICLIB_JNI_CRITICAL_ARRAY_HPP
@@ -0,0 +1,175 @@
+#include <GeographicLib/jni/geodesic_c.h>
+
+#include <GeographicLib/Geodesic.hpp>
+
+#include <exception>
+
+using GeographicLib::Geodesic;
+using GeographicLib::Math;
+
+// The output bits of the Geodesic::mask values (GeographicLib keeps its
+// OUT_ALL constant private).
+static const unsigned OUT_ALL = 0x7F80U;
+
+/**
+ * Stores value into pValues[index] if the quantity selected by outputBit was
+ * requested in outmask, 0 otherwise.
+ */
+static inline void StoreValue(double* pValues,
+                              int index,
+                              unsigned outmask,
+                              unsigned outputBit,
+                              Math::real value)
+{
+  pValues[index] = (outmask & outputBit & OUT_ALL) != 0 ? value : 0;
+}
+
+/**
+ * Solves one direct problem into pValues, see geodesic_c_gen_direct().
+ */
+static inline double GenDirect(const Geodesic* geodesic,
+                               double lat1,
+                               double lon1,
+                               double azi1,
+                               bool arcmode,
+                               double s12_a12,
+                               unsigned outmask,
+                               double* pValues)
+{
+  Math::real lat2 = 0;
+  Math::real lon2 = 0;
+  Math::real azi2 = 0;
+  Math::real s12 = 0;
+  Math::real m12 = 0;
+  Math::real M12 = 0;
+  Math::real M21 = 0;
+  Math::real S12 = 0;
+  Math::real a12 = geodesic->GenDirect(lat1, lon1, azi1, arcmode, s12_a12, outmask,
+                                       lat2, lon2, azi2, s12, m12, M12, M21, S12);
+  StoreValue(pValues, 0, outmask, Geodesic::LATITUDE, lat2);
+  StoreValue(pValues, 1, outmask, Geodesic::LONGITUDE, lon2);
+  StoreValue(pValues, 2, outmask, Geodesic::AZIMUTH, azi2);
+  StoreValue(pValues, 3, outmask, Geodesic::REDUCEDLENGTH, m12);
+  StoreValue(pValues, 4, outmask, Geodesic::GEODESICSCALE, M12);
+  StoreValue(pValues, 5, outmask, Geodesic::GEODESICSCALE, M21);
+  StoreValue(pValues, 6, outmask, Geodesic::AREA, S12);
+  // a12 is always calculated
+  pValues[7] = a12;
+  StoreValue(pValues, 8, outmask, Geodesic::DISTANCE, s12);
+  return a12;
+}
+
+/**
+ * Solves one inverse problem into pValues, see geodesic_c_gen_inverse().
+ */
+static inline double GenInverse(const Geodesic* geodesic,
+                                double lat1,
+                                double lon1,
+                                double lat2,
+                                double lon2,
+                                unsigned outmask,
+                                double* pValues)
+{
+  Math::real s12 = 0;
+  Math::real azi1 = 0;
+  Math::real azi2 = 0;
+  Math::real m12 = 0;
+  Math::real M12 = 0;
+  Math::real M21 = 0;
+  Math::real S12 = 0;
+  Math::real a12 = geodesic->GenInverse(lat1, lon1, lat2, lon2, outmask,
+                                        s12, azi1, azi2, m12, M12, M21, S12);
+  StoreValue(pValues, 0, outmask, Geodesic::DISTANCE, s12);
+  StoreValue(pValues, 1, outmask, Geodesic::AZIMUTH, azi1);
+  StoreValue(pValues, 2, outmask, Geodesic::AZIMUTH, azi2);
+  StoreValue(pValues, 3, outmask, Geodesic::REDUCEDLENGTH, m12);
+  StoreValue(pValues, 4, outmask, Geodesic::GEODESICSCALE, M12);
+  StoreValue(pValues, 5, outmask, Geodesic::GEODESICSCALE, M21);
+  StoreValue(pValues, 6, outmask, Geodesic::AREA, S12);
+  // a12 is always calculated
+  pValues[7] = a12;
+  return a12;
+}
+
+void* geodesic_c_new(double a, double f)
+{
+  try
+  {
+    return new Geodesic(a, f);
+  }
+  catch (const std::exception&)
+  {
+    // GeographicErr for a bad radius or flattening, no exception may cross
+    // the C boundary
+    return NULL;
+  }
+}
+
+void geodesic_c_delete(void* geodesic)
+{
+  delete static_cast<Geodesic*>(geodesic);
+}
+
+double geodesic_c_major_radius(const void* geodesic)
+{
+  return static_cast<const Geodesic*>(geodesic)->MajorRadius();
+}
+
+double geodesic_c_flattening(const void* geodesic)
+{
+  return static_cast<const Geodesic*>(geodesic)->Flattening();
+}
+
+double geodesic_c_ellipsoid_area(const void* geodesic)
+{
+  return static_cast<const Geodesic*>(geodesic)->EllipsoidArea();
+}
+
+double geodesic_c_gen_direct(const void* geodesic,
+                             double lat1, double lon1, double azi1,
+                             int32_t arcmode, double s12_a12,
+                             int64_t outmask, double* values)
+{
+  return GenDirect(static_cast<const Geodesic*>(geodesic),
+                   lat1, lon1, azi1, arcmode != 0, s12_a12,
+                   static_cast<unsigned>(outmask), values);
+}
+
+double geodesic_c_gen_inverse(const void* geodesic,
+                              double lat1, double lon1,
+                              double lat2, double lon2,
+                              int64_t outmask, double* values)
+{
+  return GenInverse(static_cast<const Geodesic*>(geodesic),
+                    lat1, lon1, lat2, lon2,
+                    static_cast<unsigned>(outmask), values);
+}
+
+void geodesic_c_gen_direct_batch(const void* geodesic,
+                                 int64_t count, int32_t arcmode,
+                                 int64_t outmask,
+                                 const double* input, double* output)
+{
+  const Geodesic* g = static_cast<const Geodesic*>(geodesic);
+  unsigned mask = static_cast<unsigned>(outmask);
+  for (int64_t i = 0; i < count; ++i)
+  {
+    const double* pIn = input + i * 4;
+    GenDirect(g, pIn[0], pIn[1], pIn[2], arcmode != 0, pIn[3], mask,
+              output + i * GEODESIC_C_DIRECT_VALUES);
+  }
+}
+
+void geodesic_c_gen_inverse_batch(const void* geodesic,
+                                  int64_t count, int64_t outmask,
+                                  const double* input, double* output)
+{
+  const Geodesic* g = static_cast<const Geodesic*>(geodesic);
+  unsigned mask = static_cast<unsigned>(outmask);
+  for (int64_t i = 0; i < count; ++i)
+  {
+    const double* pIn = input + i * 4;
+    GenInverse(g, pIn[0], pIn[1], pIn[2], pIn[3], mask,
+               output + i * GEODESIC_C_INVERSE_VALUES);
+  }
+}
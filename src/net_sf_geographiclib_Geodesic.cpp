@@ -1,8 +1,22 @@
 #include <GeographicLib/jni/net_sf_geographiclib_Geodesic.h>
 
 #include <GeographicLib/Geodesic.hpp>
+#include <GeographicLib/GeodesicLine.hpp>
+
+#include <algorithm>
+#include <atomic>
+#include <condition_variable>
+#include <cstring>
+#include <mutex>
+#include <system_error>
+#include <thread>
+#include <vector>
+
+#include "batch_output.hpp"
+#include "critical_array.hpp"
 
 using GeographicLib::Geodesic;
+using GeographicLib::GeodesicLine;
 using GeographicLib::Math;
 
 struct JniCache
@@ -16,10 +30,271 @@ struct JniCache
   jmethodID mConstructorMid;
 };
 
-static JniCache GEODESIC_CACHE;
 static JniCache DIRECT_RESULT_CACHE;
 static JniCache INVERSE_RESULT_CACHE;
 
+/**
+ * Loads the i'th double of a strided off-heap column. memcpy is used since
+ * the records of a mapped file aren't necessarily 8 byte aligned.
+ */
+static inline Math::real LoadStrided(jlong address, jint stride, jlong i)
+{
+  jdouble value;
+  std::memcpy(&value,
+              reinterpret_cast<const char*>(address) + i * stride,
+              sizeof(value));
+  return value;
+}
+
+/**
+ * Stores value as the i'th double of a strided off-heap column if the column
+ * was supplied (non-zero address) and the quantity selected by outputBit was
+ * requested in outmask.
+ */
+static inline void StoreStrided(jlong address,
+                                jint stride,
+                                jlong i,
+                                unsigned outmask,
+                                unsigned outputBit,
+                                Math::real value)
+{
+  if (address != 0 && (outmask & outputBit & OUT_ALL) != 0)
+  {
+    jdouble v = value;
+    std::memcpy(reinterpret_cast<char*>(address) + i * stride,
+                &v, sizeof(v));
+  }
+}
+
+// Tile shape used when computing a distance matrix. A tile's destinations
+// (2 * 256 doubles) stay in L1 cache while its rows are processed.
+static const jint MATRIX_TILE_ROWS = 16;
+static const jint MATRIX_TILE_COLS = 256;
+
+// Number of distance matrix elements computed into native scratch memory
+// before they are copied into the Java output arrays.
+static const jlong MATRIX_BAND_ELEMENTS = 1 << 20;
+
+/**
+ * A strided output column of a distance matrix, an address of 0 means the
+ * output isn't wanted.
+ */
+struct StridedColumn
+{
+  jlong mAddress;
+  jint mStride;
+};
+
+/**
+ * Rows [mRowBegin, mRowEnd) of an origin x destination distance matrix. The
+ * rows are split into tiles which worker threads claim through mNextTile;
+ * element (row, col) is written to index (row - mRowBegin) * mCols + col of
+ * the output columns.
+ */
+struct MatrixJob
+{
+  const Geodesic* mpGeodesic;
+  unsigned mOutmask;
+  const jdouble* mpLat1;
+  const jdouble* mpLon1;
+  jint mRowBegin;
+  jint mRowEnd;
+  const jdouble* mpLat2;
+  const jdouble* mpLon2;
+  jint mCols;
+  StridedColumn mS12;
+  StridedColumn mAzi1;
+  StridedColumn mAzi2;
+  jint mTilesPerRow;
+  jint mTileCount;
+  std::atomic<jint> mNextTile;
+};
+
+/**
+ * Computes tiles of job until none are left. Run by every worker thread and
+ * by the calling thread. Only uses the const GeographicLib::Geodesic, which
+ * is safe to share between threads.
+ */
+static void RunMatrixTiles(MatrixJob* pJob)
+{
+  for (;;)
+  {
+    jint tile = pJob->mNextTile.fetch_add(1);
+    if (tile >= pJob->mTileCount)
+    {
+      return;
+    }
+    jint rowBegin = pJob->mRowBegin + (tile / pJob->mTilesPerRow) * MATRIX_TILE_ROWS;
+    jint rowEnd = std::min(rowBegin + MATRIX_TILE_ROWS, pJob->mRowEnd);
+    jint colBegin = (tile % pJob->mTilesPerRow) * MATRIX_TILE_COLS;
+    jint colEnd = std::min(colBegin + MATRIX_TILE_COLS, pJob->mCols);
+
+    for (jint row = rowBegin; row < rowEnd; ++row)
+    {
+      jlong rowIndex = static_cast<jlong>(row - pJob->mRowBegin) * pJob->mCols;
+      for (jint col = colBegin; col < colEnd; ++col)
+      {
+        Math::real s12 = 0;
+        Math::real azi1 = 0;
+        Math::real azi2 = 0;
+        Math::real unused = 0;
+        pJob->mpGeodesic->GenInverse(pJob->mpLat1[row], pJob->mpLon1[row],
+                                     pJob->mpLat2[col], pJob->mpLon2[col],
+                                     pJob->mOutmask,
+                                     s12, azi1, azi2,
+                                     unused, unused, unused, unused);
+        StoreStrided(pJob->mS12.mAddress, pJob->mS12.mStride, rowIndex + col,
+                     pJob->mOutmask, Geodesic::DISTANCE, s12);
+        StoreStrided(pJob->mAzi1.mAddress, pJob->mAzi1.mStride, rowIndex + col,
+                     pJob->mOutmask, Geodesic::AZIMUTH, azi1);
+        StoreStrided(pJob->mAzi2.mAddress, pJob->mAzi2.mStride, rowIndex + col,
+                     pJob->mOutmask, Geodesic::AZIMUTH, azi2);
+      }
+    }
+  }
+}
+
+/**
+ * Number of tiles of a matrix of rows x cols elements, no more threads than
+ * that are useful.
+ */
+static jint MatrixTileCount(jint rows, jint cols)
+{
+  jint tileRows = (rows + MATRIX_TILE_ROWS - 1) / MATRIX_TILE_ROWS;
+  return tileRows * ((cols + MATRIX_TILE_COLS - 1) / MATRIX_TILE_COLS);
+}
+
+/**
+ * Splits the rows of job into tiles and resets its tile counter.
+ */
+static void PrepareMatrixJob(MatrixJob& job)
+{
+  job.mTilesPerRow = (job.mCols + MATRIX_TILE_COLS - 1) / MATRIX_TILE_COLS;
+  job.mTileCount = MatrixTileCount(job.mRowEnd - job.mRowBegin, job.mCols);
+  job.mNextTile = 0;
+}
+
+/**
+ * The worker threads of one distance matrix call. They are started once and
+ * compute the tiles of every job given to Run(), so a matrix computed in
+ * several bands doesn't start and join threads per band; the destructor
+ * stops and joins them.
+ */
+class MatrixWorkers
+{
+public:
+  /**
+   * Starts threads - 1 workers, the calling thread being the last one. If
+   * not all of them can be started the others share the work.
+   */
+  explicit MatrixWorkers(jint threads)
+      : mpJob(NULL),
+        mGeneration(0),
+        mBusy(0),
+        mStop(false)
+  {
+    try
+    {
+      for (jint i = 1; i < threads; ++i)
+      {
+        mWorkers.push_back(std::thread(&MatrixWorkers::Work, this));
+      }
+    }
+    catch (const std::system_error&)
+    {
+      // couldn't start all the threads, the ones we have (and the calling
+      // thread) pick up the remaining tiles
+    }
+  }
+
+  ~MatrixWorkers()
+  {
+    {
+      std::lock_guard<std::mutex> lock(mMutex);
+      mStop = true;
+    }
+    mWake.notify_all();
+    for (size_t i = 0; i < mWorkers.size(); ++i)
+    {
+      mWorkers[i].join();
+    }
+  }
+
+  /**
+   * Computes all tiles of job with the workers and the calling thread, and
+   * returns once none of the workers uses job any more.
+   */
+  void Run(MatrixJob& job)
+  {
+    PrepareMatrixJob(job);
+    if (!mWorkers.empty())
+    {
+      std::lock_guard<std::mutex> lock(mMutex);
+      mpJob = &job;
+      ++mGeneration;
+    }
+    mWake.notify_all();
+    RunMatrixTiles(&job);
+    if (!mWorkers.empty())
+    {
+      // a worker which didn't pick the job up by now sees a null job
+      std::unique_lock<std::mutex> lock(mMutex);
+      while (mBusy > 0)
+      {
+        mIdle.wait(lock);
+      }
+      mpJob = NULL;
+    }
+  }
+
+private:
+  MatrixWorkers(const MatrixWorkers&);
+  MatrixWorkers& operator=(const MatrixWorkers&);
+
+  /**
+   * Runs the tiles of each new job until the destructor stops the workers.
+   */
+  void Work()
+  {
+    unsigned long seen = 0;
+    std::unique_lock<std::mutex> lock(mMutex);
+    for (;;)
+    {
+      while (!mStop && mGeneration == seen)
+      {
+        mWake.wait(lock);
+      }
+      if (mStop)
+      {
+        return;
+      }
+      seen = mGeneration;
+      MatrixJob* pJob = mpJob;
+      if (pJob == NULL)
+      {
+        continue;
+      }
+      ++mBusy;
+      lock.unlock();
+      RunMatrixTiles(pJob);
+      lock.lock();
+      if (--mBusy == 0)
+      {
+        mIdle.notify_one();
+      }
+    }
+  }
+
+  std::vector<std::thread> mWorkers;
+  std::mutex mMutex;
+  std::condition_variable mWake;
+  std::condition_variable mIdle;
+  MatrixJob* mpJob;
+  unsigned long mGeneration;
+  jint mBusy;
+  bool mStop;
+};
+
 JNIEXPORT void JNICALL
 Java_net_sf_geographiclib_Geodesic_staticInit(JNIEnv* pEnv,
                                               jclass geodesicClass)
@@ -27,16 +302,6 @@ Java_net_sf_geographiclib_Geodesic_staticInit(JNIEnv* pEnv,
   jmethodID mid;
   jclass result_class;
   
-  // Get its constructor (the one that takes 2 doubles (a, f))
-  mid = pEnv->GetMethodID(geodesicClass, "<init>", "(DD)V");
-  if (pEnv->ExceptionCheck() || mid == NULL)
-  {
-    printf("Can't get MethodID for Geodesic constructor\n");
-    return;
-  }
-  GEODESIC_CACHE.mClass = (jclass)pEnv->NewGlobalRef(geodesicClass);
-  GEODESIC_CACHE.mConstructorMid = mid;
-  
   // Get the handle of the net.sf.geographiclib.Geodesic.DirectResult class
   result_class = pEnv->FindClass("net/sf/geographiclib/Geodesic$DirectResult");
   if (pEnv->ExceptionCheck() || result_class == NULL)
@@ -109,24 +374,6 @@ Java_net_sf_geographiclib_Geodesic_deleteGeodesicCppObject(JNIEnv* pEnv,
   }
 }
 
-/*
- * Class:     net_sf_geographiclib_Geodesic
- * Method:    newGeodesicWgs84Object
- * Signature: ()Lnet/sf/geographiclib/Geodesic;
- */
-JNIEXPORT jobject JNICALL
-Java_net_sf_geographiclib_Geodesic_newGeodesicWgs84Object(JNIEnv* pEnv,
-                                                          jclass geodesicClass)
-{ 
-  jdouble a = Geodesic::WGS84.MajorRadius();
-  jdouble f = Geodesic::WGS84.Flattening();
-
-  // Allocate the Geodesic
-  return pEnv->NewObject(GEODESIC_CACHE.mClass,
-                         GEODESIC_CACHE.mConstructorMid,
-                         a, f);
-}
-
 /*
  * Class:     net_sf_geographiclib_Geodesic
  * Method:    nativeDirect
@@ -323,3 +570,694 @@ Java_net_sf_geographiclib_Geodesic_nativeEllipsoidArea(JNIEnv* pEnv,
   Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
   return geodesic->EllipsoidArea();
 }
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenInverseBatch
+ * Signature: (J[D[D[D[DIIJ[D[D[D[D[D[D[D[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeGenInverseBatch(JNIEnv* pEnv,
+                                                         jclass geodesicClass,
+                                                         jlong geodesicCppPtr,
+                                                         jdoubleArray lat1Array,
+                                                         jdoubleArray lon1Array,
+                                                         jdoubleArray lat2Array,
+                                                         jdoubleArray lon2Array,
+                                                         jint offset,
+                                                         jint length,
+                                                         jlong outmask,
+                                                         jdoubleArray s12Array,
+                                                         jdoubleArray azi1Array,
+                                                         jdoubleArray azi2Array,
+                                                         jdoubleArray m12Array,
+                                                         jdoubleArray M12Array,
+                                                         jdoubleArray M21Array,
+                                                         jdoubleArray S12Array,
+                                                         jdoubleArray a12Array)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  unsigned mask = static_cast<unsigned>(outmask);
+
+  for (jint done = 0; done < length; done += BATCH_CHUNK_SIZE)
+  {
+    jint begin = offset + done;
+    jint end = begin + (length - done < BATCH_CHUNK_SIZE ?
+                        length - done : BATCH_CHUNK_SIZE);
+
+    // throws once the arrays below are released
+    CriticalScope scope(pEnv);
+    // inputs are never modified so don't copy them back
+    CriticalDoubleArray lat1(pEnv, lat1Array, JNI_ABORT);
+    CriticalDoubleArray lon1(pEnv, lon1Array, JNI_ABORT);
+    CriticalDoubleArray lat2(pEnv, lat2Array, JNI_ABORT);
+    CriticalDoubleArray lon2(pEnv, lon2Array, JNI_ABORT);
+    CriticalDoubleArray s12(pEnv, s12Array, 0);
+    CriticalDoubleArray azi1(pEnv, azi1Array, 0);
+    CriticalDoubleArray azi2(pEnv, azi2Array, 0);
+    CriticalDoubleArray m12(pEnv, m12Array, 0);
+    CriticalDoubleArray M12(pEnv, M12Array, 0);
+    CriticalDoubleArray M21(pEnv, M21Array, 0);
+    CriticalDoubleArray S12(pEnv, S12Array, 0);
+    CriticalDoubleArray a12(pEnv, a12Array, 0);
+    if (!scope.pinned(lat1, lon1, lat2, lon2, s12, azi1, azi2, m12, M12, M21,
+                      S12, a12))
+    {
+      // out of memory, scope throws if the JVM didn't
+      return;
+    }
+
+    for (jint i = begin; i < end; ++i)
+    {
+      Math::real s12_i = 0;
+      Math::real azi1_i = 0;
+      Math::real azi2_i = 0;
+      Math::real m12_i = 0;
+      Math::real M12_i = 0;
+      Math::real M21_i = 0;
+      Math::real S12_i = 0;
+      Math::real a12_i = geodesic->GenInverse(lat1.get()[i], lon1.get()[i],
+                                              lat2.get()[i], lon2.get()[i],
+                                              mask,
+                                              s12_i, azi1_i, azi2_i,
+                                              m12_i, M12_i, M21_i, S12_i);
+      StoreOutput(s12.get(), i, mask, Geodesic::DISTANCE, s12_i);
+      StoreOutput(azi1.get(), i, mask, Geodesic::AZIMUTH, azi1_i);
+      StoreOutput(azi2.get(), i, mask, Geodesic::AZIMUTH, azi2_i);
+      StoreOutput(m12.get(), i, mask, Geodesic::REDUCEDLENGTH, m12_i);
+      StoreOutput(M12.get(), i, mask, Geodesic::GEODESICSCALE, M12_i);
+      StoreOutput(M21.get(), i, mask, Geodesic::GEODESICSCALE, M21_i);
+      StoreOutput(S12.get(), i, mask, Geodesic::AREA, S12_i);
+      // a12 is always calculated
+      if (a12.get() != NULL)
+      {
+        a12.get()[i] = a12_i;
+      }
+    }
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenDirectBatch
+ * Signature: (J[D[D[DDZ[DDIIJ[D[D[D[D[D[D[D[D[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeGenDirectBatch(JNIEnv* pEnv,
+                                                        jclass geodesicClass,
+                                                        jlong geodesicCppPtr,
+                                                        jdoubleArray lat1Array,
+                                                        jdoubleArray lon1Array,
+                                                        jdoubleArray azi1Array,
+                                                        jdouble azi1Shared,
+                                                        jboolean arcmode,
+                                                        jdoubleArray s12_a12Array,
+                                                        jdouble s12_a12Shared,
+                                                        jint offset,
+                                                        jint length,
+                                                        jlong outmask,
+                                                        jdoubleArray lat2Array,
+                                                        jdoubleArray lon2Array,
+                                                        jdoubleArray azi2Array,
+                                                        jdoubleArray s12Array,
+                                                        jdoubleArray m12Array,
+                                                        jdoubleArray M12Array,
+                                                        jdoubleArray M21Array,
+                                                        jdoubleArray S12Array,
+                                                        jdoubleArray a12Array)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  unsigned mask = static_cast<unsigned>(outmask);
+
+  for (jint done = 0; done < length; done += BATCH_CHUNK_SIZE)
+  {
+    jint begin = offset + done;
+    jint end = begin + (length - done < BATCH_CHUNK_SIZE ?
+                        length - done : BATCH_CHUNK_SIZE);
+
+    // throws once the arrays below are released
+    CriticalScope scope(pEnv);
+    // inputs are never modified so don't copy them back, azi1 and s12_a12
+    // are NULL when a shared value is used for every element
+    CriticalDoubleArray lat1(pEnv, lat1Array, JNI_ABORT);
+    CriticalDoubleArray lon1(pEnv, lon1Array, JNI_ABORT);
+    CriticalDoubleArray azi1(pEnv, azi1Array, JNI_ABORT);
+    CriticalDoubleArray s12_a12(pEnv, s12_a12Array, JNI_ABORT);
+    CriticalDoubleArray lat2(pEnv, lat2Array, 0);
+    CriticalDoubleArray lon2(pEnv, lon2Array, 0);
+    CriticalDoubleArray azi2(pEnv, azi2Array, 0);
+    CriticalDoubleArray s12(pEnv, s12Array, 0);
+    CriticalDoubleArray m12(pEnv, m12Array, 0);
+    CriticalDoubleArray M12(pEnv, M12Array, 0);
+    CriticalDoubleArray M21(pEnv, M21Array, 0);
+    CriticalDoubleArray S12(pEnv, S12Array, 0);
+    CriticalDoubleArray a12(pEnv, a12Array, 0);
+    if (!scope.pinned(lat1, lon1, azi1, s12_a12, lat2, lon2, azi2, s12, m12,
+                      M12, M21, S12, a12))
+    {
+      // out of memory, scope throws if the JVM didn't
+      return;
+    }
+
+    for (jint i = begin; i < end; ++i)
+    {
+      Math::real lat2_i = 0;
+      Math::real lon2_i = 0;
+      Math::real azi2_i = 0;
+      Math::real s12_i = 0;
+      Math::real m12_i = 0;
+      Math::real M12_i = 0;
+      Math::real M21_i = 0;
+      Math::real S12_i = 0;
+      Math::real a12_i =
+          geodesic->GenDirect(lat1.get()[i], lon1.get()[i],
+                              azi1.get() != NULL ? azi1.get()[i] : azi1Shared,
+                              arcmode,
+                              s12_a12.get() != NULL ? s12_a12.get()[i] : s12_a12Shared,
+                              mask,
+                              lat2_i, lon2_i, azi2_i, s12_i,
+                              m12_i, M12_i, M21_i, S12_i);
+      StoreOutput(lat2.get(), i, mask, Geodesic::LATITUDE, lat2_i);
+      StoreOutput(lon2.get(), i, mask, Geodesic::LONGITUDE, lon2_i);
+      StoreOutput(azi2.get(), i, mask, Geodesic::AZIMUTH, azi2_i);
+      StoreOutput(s12.get(), i, mask, Geodesic::DISTANCE, s12_i);
+      StoreOutput(m12.get(), i, mask, Geodesic::REDUCEDLENGTH, m12_i);
+      StoreOutput(M12.get(), i, mask, Geodesic::GEODESICSCALE, M12_i);
+      StoreOutput(M21.get(), i, mask, Geodesic::GEODESICSCALE, M21_i);
+      StoreOutput(S12.get(), i, mask, Geodesic::AREA, S12_i);
+      // a12 is always calculated
+      if (a12.get() != NULL)
+      {
+        a12.get()[i] = a12_i;
+      }
+    }
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenInverseBuffers
+ * Signature: (JIJJIJIJIJIJIJIJIJIJIJIJIJI)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeGenInverseBuffers(JNIEnv* pEnv,
+                                                           jclass geodesicClass,
+                                                           jlong geodesicCppPtr,
+                                                           jint count,
+                                                           jlong outmask,
+                                                           jlong lat1, jint lat1Stride,
+                                                           jlong lon1, jint lon1Stride,
+                                                           jlong lat2, jint lat2Stride,
+                                                           jlong lon2, jint lon2Stride,
+                                                           jlong s12, jint s12Stride,
+                                                           jlong azi1, jint azi1Stride,
+                                                           jlong azi2, jint azi2Stride,
+                                                           jlong m12, jint m12Stride,
+                                                           jlong M12, jint M12Stride,
+                                                           jlong M21, jint M21Stride,
+                                                           jlong S12, jint S12Stride,
+                                                           jlong a12, jint a12Stride)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  unsigned mask = static_cast<unsigned>(outmask);
+
+  for (jint i = 0; i < count; ++i)
+  {
+    Math::real s12_i = 0;
+    Math::real azi1_i = 0;
+    Math::real azi2_i = 0;
+    Math::real m12_i = 0;
+    Math::real M12_i = 0;
+    Math::real M21_i = 0;
+    Math::real S12_i = 0;
+    Math::real a12_i = geodesic->GenInverse(LoadStrided(lat1, lat1Stride, i),
+                                            LoadStrided(lon1, lon1Stride, i),
+                                            LoadStrided(lat2, lat2Stride, i),
+                                            LoadStrided(lon2, lon2Stride, i),
+                                            mask,
+                                            s12_i, azi1_i, azi2_i,
+                                            m12_i, M12_i, M21_i, S12_i);
+    StoreStrided(s12, s12Stride, i, mask, Geodesic::DISTANCE, s12_i);
+    StoreStrided(azi1, azi1Stride, i, mask, Geodesic::AZIMUTH, azi1_i);
+    StoreStrided(azi2, azi2Stride, i, mask, Geodesic::AZIMUTH, azi2_i);
+    StoreStrided(m12, m12Stride, i, mask, Geodesic::REDUCEDLENGTH, m12_i);
+    StoreStrided(M12, M12Stride, i, mask, Geodesic::GEODESICSCALE, M12_i);
+    StoreStrided(M21, M21Stride, i, mask, Geodesic::GEODESICSCALE, M21_i);
+    StoreStrided(S12, S12Stride, i, mask, Geodesic::AREA, S12_i);
+    // a12 is always calculated
+    StoreStrided(a12, a12Stride, i, OUT_ALL, OUT_ALL, a12_i);
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenDirectBuffers
+ * Signature: (JIZJJIJIJIJIJIJIJIJIJIJIJIJIJI)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeGenDirectBuffers(JNIEnv* pEnv,
+                                                          jclass geodesicClass,
+                                                          jlong geodesicCppPtr,
+                                                          jint count,
+                                                          jboolean arcmode,
+                                                          jlong outmask,
+                                                          jlong lat1, jint lat1Stride,
+                                                          jlong lon1, jint lon1Stride,
+                                                          jlong azi1, jint azi1Stride,
+                                                          jlong s12_a12, jint s12_a12Stride,
+                                                          jlong lat2, jint lat2Stride,
+                                                          jlong lon2, jint lon2Stride,
+                                                          jlong azi2, jint azi2Stride,
+                                                          jlong s12, jint s12Stride,
+                                                          jlong m12, jint m12Stride,
+                                                          jlong M12, jint M12Stride,
+                                                          jlong M21, jint M21Stride,
+                                                          jlong S12, jint S12Stride,
+                                                          jlong a12, jint a12Stride)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  unsigned mask = static_cast<unsigned>(outmask);
+
+  for (jint i = 0; i < count; ++i)
+  {
+    Math::real lat2_i = 0;
+    Math::real lon2_i = 0;
+    Math::real azi2_i = 0;
+    Math::real s12_i = 0;
+    Math::real m12_i = 0;
+    Math::real M12_i = 0;
+    Math::real M21_i = 0;
+    Math::real S12_i = 0;
+    Math::real a12_i = geodesic->GenDirect(LoadStrided(lat1, lat1Stride, i),
+                                           LoadStrided(lon1, lon1Stride, i),
+                                           LoadStrided(azi1, azi1Stride, i),
+                                           arcmode,
+                                           LoadStrided(s12_a12, s12_a12Stride, i),
+                                           mask,
+                                           lat2_i, lon2_i, azi2_i, s12_i,
+                                           m12_i, M12_i, M21_i, S12_i);
+    StoreStrided(lat2, lat2Stride, i, mask, Geodesic::LATITUDE, lat2_i);
+    StoreStrided(lon2, lon2Stride, i, mask, Geodesic::LONGITUDE, lon2_i);
+    StoreStrided(azi2, azi2Stride, i, mask, Geodesic::AZIMUTH, azi2_i);
+    StoreStrided(s12, s12Stride, i, mask, Geodesic::DISTANCE, s12_i);
+    StoreStrided(m12, m12Stride, i, mask, Geodesic::REDUCEDLENGTH, m12_i);
+    StoreStrided(M12, M12Stride, i, mask, Geodesic::GEODESICSCALE, M12_i);
+    StoreStrided(M21, M21Stride, i, mask, Geodesic::GEODESICSCALE, M21_i);
+    StoreStrided(S12, S12Stride, i, mask, Geodesic::AREA, S12_i);
+    // a12 is always calculated
+    StoreStrided(a12, a12Stride, i, OUT_ALL, OUT_ALL, a12_i);
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDirectBufferAddress
+ * Signature: (Ljava/nio/Buffer;)J
+ */
+JNIEXPORT jlong JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeDirectBufferAddress(JNIEnv* pEnv,
+                                                             jclass geodesicClass,
+                                                             jobject buffer)
+{
+  return reinterpret_cast<jlong>(pEnv->GetDirectBufferAddress(buffer));
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenDirectInto
+ * Signature: (JDDDZDJ[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeGenDirectInto(JNIEnv* pEnv,
+                                                       jclass geodesicClass,
+                                                       jlong geodesicCppPtr,
+                                                       jdouble lat1,
+                                                       jdouble lon1,
+                                                       jdouble azi1,
+                                                       jboolean arcmode,
+                                                       jdouble s12_a12,
+                                                       jlong outmask,
+                                                       jdoubleArray values)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+
+  Math::real lat2 = 0;
+  Math::real lon2 = 0;
+  Math::real azi2 = 0;
+  Math::real m12 = 0;
+  Math::real M12 = 0;
+  Math::real M21 = 0;
+  Math::real S12 = 0;
+  Math::real s12 = 0;
+  Math::real a12 = geodesic->GenDirect(lat1, lon1, azi1, arcmode, s12_a12, outmask,
+                                       lat2, lon2, azi2, s12, m12, M12, M21, S12);
+
+  // same order as the DirectResult constructor arguments
+  jdouble result[] = { lat2, lon2, azi2, m12, M12, M21, S12, a12, s12 };
+  pEnv->SetDoubleArrayRegion(values, 0, sizeof(result) / sizeof(result[0]), result);
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeGenInverseInto
+ * Signature: (JDDDDJ[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeGenInverseInto(JNIEnv* pEnv,
+                                                        jclass geodesicClass,
+                                                        jlong geodesicCppPtr,
+                                                        jdouble lat1,
+                                                        jdouble lon1,
+                                                        jdouble lat2,
+                                                        jdouble lon2,
+                                                        jlong outmask,
+                                                        jdoubleArray values)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+
+  Math::real s12 = 0;
+  Math::real azi1 = 0;
+  Math::real azi2 = 0;
+  Math::real m12 = 0;
+  Math::real M12 = 0;
+  Math::real M21 = 0;
+  Math::real S12 = 0;
+  Math::real a12 = geodesic->GenInverse(lat1, lon1, lat2, lon2, outmask,
+                                        s12, azi1, azi2, m12, M12, M21, S12);
+
+  // same order as the InverseResult constructor arguments
+  jdouble result[] = { s12, azi1, azi2, m12, M12, M21, S12, a12 };
+  pEnv->SetDoubleArrayRegion(values, 0, sizeof(result) / sizeof(result[0]), result);
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDistance
+ * Signature: (JDDDD)D
+ */
+JNIEXPORT jdouble JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeDistance(JNIEnv* pEnv,
+                                                  jclass geodesicClass,
+                                                  jlong geodesicCppPtr,
+                                                  jdouble lat1,
+                                                  jdouble lon1,
+                                                  jdouble lat2,
+                                                  jdouble lon2)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+
+  Math::real s12 = 0;
+  Math::real unused = 0;
+  geodesic->GenInverse(lat1, lon1, lat2, lon2, Geodesic::DISTANCE,
+                       s12, unused, unused, unused, unused, unused, unused);
+  return s12;
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeInitialAzimuth
+ * Signature: (JDDDD)D
+ */
+JNIEXPORT jdouble JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeInitialAzimuth(JNIEnv* pEnv,
+                                                        jclass geodesicClass,
+                                                        jlong geodesicCppPtr,
+                                                        jdouble lat1,
+                                                        jdouble lon1,
+                                                        jdouble lat2,
+                                                        jdouble lon2)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+
+  Math::real azi1 = 0;
+  Math::real azi2 = 0;
+  Math::real unused = 0;
+  geodesic->GenInverse(lat1, lon1, lat2, lon2, Geodesic::AZIMUTH,
+                       unused, azi1, azi2, unused, unused, unused, unused);
+  return azi1;
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeFinalAzimuth
+ * Signature: (JDDDD)D
+ */
+JNIEXPORT jdouble JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeFinalAzimuth(JNIEnv* pEnv,
+                                                      jclass geodesicClass,
+                                                      jlong geodesicCppPtr,
+                                                      jdouble lat1,
+                                                      jdouble lon1,
+                                                      jdouble lat2,
+                                                      jdouble lon2)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+
+  Math::real azi1 = 0;
+  Math::real azi2 = 0;
+  Math::real unused = 0;
+  geodesic->GenInverse(lat1, lon1, lat2, lon2, Geodesic::AZIMUTH,
+                       unused, azi1, azi2, unused, unused, unused, unused);
+  return azi2;
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDestination
+ * Signature: (JDDDD[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeDestination(JNIEnv* pEnv,
+                                                     jclass geodesicClass,
+                                                     jlong geodesicCppPtr,
+                                                     jdouble lat1,
+                                                     jdouble lon1,
+                                                     jdouble azi1,
+                                                     jdouble s12,
+                                                     jdoubleArray latLonOut)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+
+  Math::real lat2 = 0;
+  Math::real lon2 = 0;
+  Math::real unused = 0;
+  geodesic->GenDirect(lat1, lon1, azi1, false, s12,
+                      Geodesic::LATITUDE | Geodesic::LONGITUDE,
+                      lat2, lon2, unused, unused, unused, unused, unused, unused);
+
+  jdouble result[] = { lat2, lon2 };
+  pEnv->SetDoubleArrayRegion(latLonOut, 0, 2, result);
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDistanceMatrix
+ * Signature: (J[D[D[D[DJ[D[D[DI)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeDistanceMatrix(JNIEnv* pEnv,
+                                                        jclass geodesicClass,
+                                                        jlong geodesicCppPtr,
+                                                        jdoubleArray lat1Array,
+                                                        jdoubleArray lon1Array,
+                                                        jdoubleArray lat2Array,
+                                                        jdoubleArray lon2Array,
+                                                        jlong outmask,
+                                                        jdoubleArray s12Array,
+                                                        jdoubleArray azi1Array,
+                                                        jdoubleArray azi2Array,
+                                                        jint threads)
+{
+  jint rows = pEnv->GetArrayLength(lat1Array);
+  jint cols = pEnv->GetArrayLength(lat2Array);
+
+  // copy the (small) coordinate arrays so that the worker threads never
+  // touch Java memory
+  std::vector<jdouble> lat1(rows);
+  std::vector<jdouble> lon1(rows);
+  std::vector<jdouble> lat2(cols);
+  std::vector<jdouble> lon2(cols);
+  pEnv->GetDoubleArrayRegion(lat1Array, 0, rows, &lat1[0]);
+  pEnv->GetDoubleArrayRegion(lon1Array, 0, rows, &lon1[0]);
+  pEnv->GetDoubleArrayRegion(lat2Array, 0, cols, &lat2[0]);
+  pEnv->GetDoubleArrayRegion(lon2Array, 0, cols, &lon2[0]);
+
+  unsigned mask = static_cast<unsigned>(outmask);
+  bool wantS12 = s12Array != NULL && (mask & Geodesic::DISTANCE & OUT_ALL) != 0;
+  bool wantAzi1 = azi1Array != NULL && (mask & Geodesic::AZIMUTH & OUT_ALL) != 0;
+  bool wantAzi2 = azi2Array != NULL && (mask & Geodesic::AZIMUTH & OUT_ALL) != 0;
+
+  // compute bands of rows into scratch memory and copy each band into the
+  // Java arrays, so the garbage collector is never held off
+  jint bandRows = static_cast<jint>(std::max<jlong>(1, MATRIX_BAND_ELEMENTS / cols));
+  bandRows = std::min(bandRows, rows);
+  jlong bandElements = static_cast<jlong>(bandRows) * cols;
+  std::vector<jdouble> s12(wantS12 ? bandElements : 0);
+  std::vector<jdouble> azi1(wantAzi1 ? bandElements : 0);
+  std::vector<jdouble> azi2(wantAzi2 ? bandElements : 0);
+
+  // the same workers compute every band, the calling thread copies each
+  // band out between them
+  MatrixWorkers workers(std::min(threads, MatrixTileCount(bandRows, cols)));
+  for (jint rowBegin = 0; rowBegin < rows; rowBegin += bandRows)
+  {
+    MatrixJob job;
+    job.mpGeodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+    job.mOutmask = mask;
+    job.mpLat1 = &lat1[0];
+    job.mpLon1 = &lon1[0];
+    job.mRowBegin = rowBegin;
+    job.mRowEnd = std::min(rowBegin + bandRows, rows);
+    job.mpLat2 = &lat2[0];
+    job.mpLon2 = &lon2[0];
+    job.mCols = cols;
+    job.mS12.mAddress = wantS12 ? reinterpret_cast<jlong>(&s12[0]) : 0;
+    job.mS12.mStride = sizeof(jdouble);
+    job.mAzi1.mAddress = wantAzi1 ? reinterpret_cast<jlong>(&azi1[0]) : 0;
+    job.mAzi1.mStride = sizeof(jdouble);
+    job.mAzi2.mAddress = wantAzi2 ? reinterpret_cast<jlong>(&azi2[0]) : 0;
+    job.mAzi2.mStride = sizeof(jdouble);
+    workers.Run(job);
+
+    jint start = rowBegin * cols;
+    jint count = (job.mRowEnd - rowBegin) * cols;
+    if (wantS12)
+      pEnv->SetDoubleArrayRegion(s12Array, start, count, &s12[0]);
+    if (wantAzi1)
+      pEnv->SetDoubleArrayRegion(azi1Array, start, count, &azi1[0]);
+    if (wantAzi2)
+      pEnv->SetDoubleArrayRegion(azi2Array, start, count, &azi2[0]);
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeDistanceMatrixBuffers
+ * Signature: (J[D[D[D[DJJIJIJII)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeDistanceMatrixBuffers(JNIEnv* pEnv,
+                                                               jclass geodesicClass,
+                                                               jlong geodesicCppPtr,
+                                                               jdoubleArray lat1Array,
+                                                               jdoubleArray lon1Array,
+                                                               jdoubleArray lat2Array,
+                                                               jdoubleArray lon2Array,
+                                                               jlong outmask,
+                                                               jlong s12, jint s12Stride,
+                                                               jlong azi1, jint azi1Stride,
+                                                               jlong azi2, jint azi2Stride,
+                                                               jint threads)
+{
+  jint rows = pEnv->GetArrayLength(lat1Array);
+  jint cols = pEnv->GetArrayLength(lat2Array);
+
+  // copy the (small) coordinate arrays so that the worker threads never
+  // touch Java memory
+  std::vector<jdouble> lat1(rows);
+  std::vector<jdouble> lon1(rows);
+  std::vector<jdouble> lat2(cols);
+  std::vector<jdouble> lon2(cols);
+  pEnv->GetDoubleArrayRegion(lat1Array, 0, rows, &lat1[0]);
+  pEnv->GetDoubleArrayRegion(lon1Array, 0, rows, &lon1[0]);
+  pEnv->GetDoubleArrayRegion(lat2Array, 0, cols, &lat2[0]);
+  pEnv->GetDoubleArrayRegion(lon2Array, 0, cols, &lon2[0]);
+
+  // the off-heap outputs are written in place by the worker threads
+  MatrixJob job;
+  job.mpGeodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  job.mOutmask = static_cast<unsigned>(outmask);
+  job.mpLat1 = &lat1[0];
+  job.mpLon1 = &lon1[0];
+  job.mRowBegin = 0;
+  job.mRowEnd = rows;
+  job.mpLat2 = &lat2[0];
+  job.mpLon2 = &lon2[0];
+  job.mCols = cols;
+  job.mS12.mAddress = s12;
+  job.mS12.mStride = s12Stride;
+  job.mAzi1.mAddress = azi1;
+  job.mAzi1.mStride = azi1Stride;
+  job.mAzi2.mAddress = azi2;
+  job.mAzi2.mStride = azi2Stride;
+  MatrixWorkers workers(std::min(threads, MatrixTileCount(rows, cols)));
+  workers.Run(job);
+}
+
+/*
+ * Class:     net_sf_geographiclib_Geodesic
+ * Method:    nativeRangeRings
+ * Signature: (J[D[DII[DDIZ[D[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_Geodesic_nativeRangeRings(JNIEnv* pEnv,
+                                                    jclass geodesicClass,
+                                                    jlong geodesicCppPtr,
+                                                    jdoubleArray latArray,
+                                                    jdoubleArray lonArray,
+                                                    jint offset,
+                                                    jint length,
+                                                    jdoubleArray radiiArray,
+                                                    jdouble azimuthStep,
+                                                    jint vertices,
+                                                    jboolean closed,
+                                                    jdoubleArray latOutArray,
+                                                    jdoubleArray lonOutArray)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  jint radiiCount = pEnv->GetArrayLength(radiiArray);
+  std::vector<jdouble> radii(radiiCount);
+  pEnv->GetDoubleArrayRegion(radiiArray, 0, radiiCount, &radii[0]);
+  jint azimuths = closed == JNI_TRUE ? vertices - 1 : vertices;
+  jint centerVertices = radiiCount * vertices;
+  unsigned caps = Geodesic::LATITUDE | Geodesic::LONGITUDE | Geodesic::DISTANCE_IN;
+
+  jint i = 0;
+  while (i < length)
+  {
+    // throws once the arrays below are released
+    CriticalScope scope(pEnv);
+    // inputs are never modified so don't copy them back
+    CriticalDoubleArray lat(pEnv, latArray, JNI_ABORT);
+    CriticalDoubleArray lon(pEnv, lonArray, JNI_ABORT);
+    CriticalDoubleArray latOut(pEnv, latOutArray, 0);
+    CriticalDoubleArray lonOut(pEnv, lonOutArray, 0);
+    if (!scope.pinned(lat, lon, latOut, lonOut))
+    {
+      // out of memory, scope throws if the JVM didn't
+      return;
+    }
+
+    // complete centers until the chunk is large enough, the rings of a
+    // center are always done in one go
+    jlong chunkVertices = 0;
+    while (i < length && chunkVertices < BATCH_CHUNK_SIZE)
+    {
+      jdouble* pLatOut = latOut.get() + i * centerVertices;
+      jdouble* pLonOut = lonOut.get() + i * centerVertices;
+      for (jint k = 0; k < azimuths; ++k)
+      {
+        // the line is set up once for all the radii
+        GeodesicLine line(*geodesic, lat.get()[offset + i],
+                          lon.get()[offset + i], -k * azimuthStep, caps);
+        for (jint r = 0; r < radiiCount; ++r)
+        {
+          Math::real lat2, lon2;
+          line.Position(radii[r], lat2, lon2);
+          pLatOut[r * vertices + k] = lat2;
+          pLonOut[r * vertices + k] = lon2;
+        }
+      }
+      if (closed == JNI_TRUE)
+      {
+        for (jint r = 0; r < radiiCount; ++r)
+        {
+          pLatOut[r * vertices + azimuths] = pLatOut[r * vertices];
+          pLonOut[r * vertices + azimuths] = pLonOut[r * vertices];
+        }
+      }
+      chunkVertices += centerVertices;
+      ++i;
+    }
+  }
+}
@@ -0,0 +1,349 @@
+#include <GeographicLib/jni/net_sf_geographiclib_GeodesicLine.h>
+
+#include <GeographicLib/Geodesic.hpp>
+#include <GeographicLib/GeodesicLine.hpp>
+
+#include <climits>
+#include <cmath>
+
+#include "batch_output.hpp"
+#include "critical_array.hpp"
+
+using GeographicLib::Geodesic;
+using GeographicLib::GeodesicLine;
+using GeographicLib::Math;
+
+/**
+ * Number of equal segments a leg of length s12 is split into so that none is
+ * longer than maxSegmentLength, the same formula as
+ * JavaGeodesic.densifySegments().
+ */
+static inline jint DensifySegments(Math::real s12, Math::real maxSegmentLength)
+{
+  Math::real n = std::ceil(s12 / maxSegmentLength);
+  return n >= 1 ? (n < INT_MAX ? static_cast<jint>(n) : INT_MAX) : 1;
+}
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    newGeodesicLineCppObject
+ * Signature: (JDDDJ)J
+ */
+JNIEXPORT jlong JNICALL
+Java_net_sf_geographiclib_GeodesicLine_newGeodesicLineCppObject(JNIEnv* pEnv,
+                                                                jclass lineClass,
+                                                                jlong geodesicCppPtr,
+                                                                jdouble lat1,
+                                                                jdouble lon1,
+                                                                jdouble azi1,
+                                                                jlong caps)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  // the GeodesicLine copies what it needs from the Geodesic
+  GeodesicLine* line = new GeodesicLine(*geodesic, lat1, lon1, azi1,
+                                        static_cast<unsigned>(caps));
+  return reinterpret_cast<jlong>(line);
+}
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    deleteGeodesicLineCppObject
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_GeodesicLine_deleteGeodesicLineCppObject(JNIEnv* pEnv,
+                                                                   jclass lineClass,
+                                                                   jlong lineCppPtr)
+{
+  if (lineCppPtr != 0)
+  {
+    GeodesicLine* line = reinterpret_cast<GeodesicLine*>(lineCppPtr);
+    delete line;
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeProperties
+ * Signature: (J[D)J
+ */
+JNIEXPORT jlong JNICALL
+Java_net_sf_geographiclib_GeodesicLine_nativeProperties(JNIEnv* pEnv,
+                                                        jclass lineClass,
+                                                        jlong lineCppPtr,
+                                                        jdoubleArray values)
+{
+  GeodesicLine* line = reinterpret_cast<GeodesicLine*>(lineCppPtr);
+  jdouble result[] = { line->Latitude(), line->Longitude(), line->Azimuth() };
+  pEnv->SetDoubleArrayRegion(values, 0, sizeof(result) / sizeof(result[0]), result);
+  return static_cast<jlong>(line->Capabilities());
+}
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeGenPositionInto
+ * Signature: (JZDJ[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_GeodesicLine_nativeGenPositionInto(JNIEnv* pEnv,
+                                                             jclass lineClass,
+                                                             jlong lineCppPtr,
+                                                             jboolean arcmode,
+                                                             jdouble s12_a12,
+                                                             jlong outmask,
+                                                             jdoubleArray values)
+{
+  GeodesicLine* line = reinterpret_cast<GeodesicLine*>(lineCppPtr);
+
+  Math::real lat2 = 0;
+  Math::real lon2 = 0;
+  Math::real azi2 = 0;
+  Math::real m12 = 0;
+  Math::real M12 = 0;
+  Math::real M21 = 0;
+  Math::real S12 = 0;
+  Math::real s12 = 0;
+  Math::real a12 = line->GenPosition(arcmode, s12_a12,
+                                     static_cast<unsigned>(outmask),
+                                     lat2, lon2, azi2, s12, m12, M12, M21, S12);
+
+  // same order as the DirectResult constructor arguments
+  jdouble result[] = { lat2, lon2, azi2, m12, M12, M21, S12, a12, s12 };
+  pEnv->SetDoubleArrayRegion(values, 0, sizeof(result) / sizeof(result[0]), result);
+}
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeGenPositionBatch
+ * Signature: (JZ[DIIJ[D[D[D[D[D[D[D[D[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_GeodesicLine_nativeGenPositionBatch(JNIEnv* pEnv,
+                                                              jclass lineClass,
+                                                              jlong lineCppPtr,
+                                                              jboolean arcmode,
+                                                              jdoubleArray s12_a12Array,
+                                                              jint offset,
+                                                              jint length,
+                                                              jlong outmask,
+                                                              jdoubleArray lat2Array,
+                                                              jdoubleArray lon2Array,
+                                                              jdoubleArray azi2Array,
+                                                              jdoubleArray s12Array,
+                                                              jdoubleArray m12Array,
+                                                              jdoubleArray M12Array,
+                                                              jdoubleArray M21Array,
+                                                              jdoubleArray S12Array,
+                                                              jdoubleArray a12Array)
+{
+  GeodesicLine* line = reinterpret_cast<GeodesicLine*>(lineCppPtr);
+  unsigned mask = static_cast<unsigned>(outmask);
+
+  for (jint done = 0; done < length; done += BATCH_CHUNK_SIZE)
+  {
+    jint begin = offset + done;
+    jint end = begin + (length - done < BATCH_CHUNK_SIZE ?
+                        length - done : BATCH_CHUNK_SIZE);
+
+    // throws once the arrays below are released
+    CriticalScope scope(pEnv);
+    // inputs are never modified so don't copy them back
+    CriticalDoubleArray s12_a12(pEnv, s12_a12Array, JNI_ABORT);
+    CriticalDoubleArray lat2(pEnv, lat2Array, 0);
+    CriticalDoubleArray lon2(pEnv, lon2Array, 0);
+    CriticalDoubleArray azi2(pEnv, azi2Array, 0);
+    CriticalDoubleArray s12(pEnv, s12Array, 0);
+    CriticalDoubleArray m12(pEnv, m12Array, 0);
+    CriticalDoubleArray M12(pEnv, M12Array, 0);
+    CriticalDoubleArray M21(pEnv, M21Array, 0);
+    CriticalDoubleArray S12(pEnv, S12Array, 0);
+    CriticalDoubleArray a12(pEnv, a12Array, 0);
+    if (!scope.pinned(s12_a12, lat2, lon2, azi2, s12, m12, M12, M21, S12, a12))
+    {
+      // out of memory, scope throws if the JVM didn't
+      return;
+    }
+
+    for (jint i = begin; i < end; ++i)
+    {
+      Math::real lat2_i = 0;
+      Math::real lon2_i = 0;
+      Math::real azi2_i = 0;
+      Math::real s12_i = 0;
+      Math::real m12_i = 0;
+      Math::real M12_i = 0;
+      Math::real M21_i = 0;
+      Math::real S12_i = 0;
+      Math::real a12_i = line->GenPosition(arcmode, s12_a12.get()[i], mask,
+                                           lat2_i, lon2_i, azi2_i, s12_i,
+                                           m12_i, M12_i, M21_i, S12_i);
+      StoreOutput(lat2.get(), i, mask, Geodesic::LATITUDE, lat2_i);
+      StoreOutput(lon2.get(), i, mask, Geodesic::LONGITUDE, lon2_i);
+      StoreOutput(azi2.get(), i, mask, Geodesic::AZIMUTH, azi2_i);
+      StoreOutput(s12.get(), i, mask, Geodesic::DISTANCE, s12_i);
+      StoreOutput(m12.get(), i, mask, Geodesic::REDUCEDLENGTH, m12_i);
+      StoreOutput(M12.get(), i, mask, Geodesic::GEODESICSCALE, M12_i);
+      StoreOutput(M21.get(), i, mask, Geodesic::GEODESICSCALE, M21_i);
+      StoreOutput(S12.get(), i, mask, Geodesic::AREA, S12_i);
+      // a12 is always calculated
+      if (a12.get() != NULL)
+      {
+        a12.get()[i] = a12_i;
+      }
+    }
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeDensifyLegs
+ * Signature: (J[D[DD[D[D[I)J
+ */
+JNIEXPORT jlong JNICALL
+Java_net_sf_geographiclib_GeodesicLine_nativeDensifyLegs(JNIEnv* pEnv,
+                                                         jclass lineClass,
+                                                         jlong geodesicCppPtr,
+                                                         jdoubleArray latArray,
+                                                         jdoubleArray lonArray,
+                                                         jdouble maxSegmentLength,
+                                                         jdoubleArray azi1Array,
+                                                         jdoubleArray s12Array,
+                                                         jintArray segmentsArray)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  unsigned mask = Geodesic::AZIMUTH | Geodesic::DISTANCE;
+  jint legs = pEnv->GetArrayLength(segmentsArray);
+  jlong points = 1;
+
+  for (jint begin = 0; begin < legs; begin += BATCH_CHUNK_SIZE)
+  {
+    jint end = begin + (legs - begin < BATCH_CHUNK_SIZE ?
+                        legs - begin : BATCH_CHUNK_SIZE);
+
+    // throws once the arrays below are released
+    CriticalScope scope(pEnv);
+    // inputs are never modified so don't copy them back
+    CriticalDoubleArray lat(pEnv, latArray, JNI_ABORT);
+    CriticalDoubleArray lon(pEnv, lonArray, JNI_ABORT);
+    CriticalDoubleArray azi1(pEnv, azi1Array, 0);
+    CriticalDoubleArray s12(pEnv, s12Array, 0);
+    CriticalIntArray segments(pEnv, segmentsArray, 0);
+    if (!scope.pinned(lat, lon, azi1, s12, segments))
+    {
+      // out of memory, scope throws if the JVM didn't
+      return 0;
+    }
+
+    for (jint i = begin; i < end; ++i)
+    {
+      Math::real s12_i = 0;
+      Math::real azi1_i = 0;
+      Math::real azi2_i = 0;
+      Math::real t = 0;
+      geodesic->GenInverse(lat.get()[i], lon.get()[i],
+                           lat.get()[i + 1], lon.get()[i + 1],
+                           mask, s12_i, azi1_i, azi2_i, t, t, t, t);
+      azi1.get()[i] = azi1_i;
+      s12.get()[i] = s12_i;
+      segments.get()[i] = DensifySegments(s12_i, maxSegmentLength);
+      points += segments.get()[i];
+    }
+  }
+  return points;
+}
+
+/*
+ * Class:     net_sf_geographiclib_GeodesicLine
+ * Method:    nativeDensifyPoints
+ * Signature: (J[D[D[D[D[I[D[D[I)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_GeodesicLine_nativeDensifyPoints(JNIEnv* pEnv,
+                                                           jclass lineClass,
+                                                           jlong geodesicCppPtr,
+                                                           jdoubleArray latArray,
+                                                           jdoubleArray lonArray,
+                                                           jdoubleArray azi1Array,
+                                                           jdoubleArray s12Array,
+                                                           jintArray segmentsArray,
+                                                           jdoubleArray latOutArray,
+                                                           jdoubleArray lonOutArray,
+                                                           jintArray vertexIndicesArray)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  unsigned caps = Geodesic::LATITUDE | Geodesic::LONGITUDE | Geodesic::DISTANCE_IN;
+  unsigned mask = Geodesic::LATITUDE | Geodesic::LONGITUDE;
+  jint legs = pEnv->GetArrayLength(segmentsArray);
+
+  // the position in the route is kept between the chunks, so that a leg
+  // with more points than a chunk resumes in the next one: leg, the next
+  // interpolated point k of the leg (0 before its first vertex), its line
+  // and the next output point j
+  jint leg = 0;
+  jint k = 0;
+  GeodesicLine line;
+  jint j = 0;
+  while (leg < legs)
+  {
+    // throws once the arrays below are released
+    CriticalScope scope(pEnv);
+    // inputs are never modified so don't copy them back
+    CriticalDoubleArray lat(pEnv, latArray, JNI_ABORT);
+    CriticalDoubleArray lon(pEnv, lonArray, JNI_ABORT);
+    CriticalDoubleArray azi1(pEnv, azi1Array, JNI_ABORT);
+    CriticalDoubleArray s12(pEnv, s12Array, JNI_ABORT);
+    CriticalIntArray segments(pEnv, segmentsArray, JNI_ABORT);
+    CriticalDoubleArray latOut(pEnv, latOutArray, 0);
+    CriticalDoubleArray lonOut(pEnv, lonOutArray, 0);
+    CriticalIntArray vertexIndices(pEnv, vertexIndicesArray, 0);
+    if (!scope.pinned(lat, lon, azi1, s12, segments, latOut, lonOut,
+                      vertexIndices))
+    {
+      // out of memory, scope throws if the JVM didn't
+      return;
+    }
+
+    // at most a chunk of points, plus the last vertex of the route
+    jlong chunkEnd = static_cast<jlong>(j) + BATCH_CHUNK_SIZE;
+    while (leg < legs && j < chunkEnd)
+    {
+      jint n = segments.get()[leg];
+      if (k == 0)
+      {
+        // the route vertices are copied unchanged
+        vertexIndices.get()[leg] = j;
+        latOut.get()[j] = lat.get()[leg];
+        lonOut.get()[j] = lon.get()[leg];
+        ++j;
+        k = 1;
+        if (n > 1)
+        {
+          line = GeodesicLine(*geodesic, lat.get()[leg], lon.get()[leg],
+                              azi1.get()[leg], caps);
+        }
+      }
+      for (; k < n && j < chunkEnd; ++k)
+      {
+        Math::real lat2 = 0;
+        Math::real lon2 = 0;
+        Math::real t = 0;
+        line.GenPosition(false, s12.get()[leg] * k / n, mask,
+                         lat2, lon2, t, t, t, t, t, t);
+        latOut.get()[j] = lat2;
+        lonOut.get()[j] = lon2;
+        ++j;
+      }
+      if (k >= n)
+      {
+        k = 0;
+        ++leg;
+        if (leg == legs)
+        {
+          vertexIndices.get()[leg] = j;
+          latOut.get()[j] = lat.get()[leg];
+          lonOut.get()[j] = lon.get()[leg];
+        }
+      }
+    }
+  }
+}
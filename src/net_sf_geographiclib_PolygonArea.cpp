@@ -0,0 +1,202 @@
+#include <GeographicLib/jni/net_sf_geographiclib_PolygonArea.h>
+
+#include <GeographicLib/Geodesic.hpp>
+#include <GeographicLib/PolygonArea.hpp>
+
+#include "critical_array.hpp"
+
+using GeographicLib::Geodesic;
+using GeographicLib::Math;
+using GeographicLib::PolygonArea;
+
+// Number of vertices added per pinning of the Java arrays in
+// nativeComputeRings(). GetPrimitiveArrayCritical() may hold off the garbage
+// collector, so the arrays are released between rings once this many
+// vertices were processed.
+static const jint RING_CHUNK_VERTICES = 4096;
+
+// Indices of the results written by nativeCompute(), the layout of
+// JavaPolygonArea.
+static const jint RESULT_PERIMETER = 0;
+static const jint RESULT_AREA = 1;
+static const jint RESULT_COUNT = 2;
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    newPolygonAreaCppObject
+ * Signature: (JZ)J
+ */
+JNIEXPORT jlong JNICALL
+Java_net_sf_geographiclib_PolygonArea_newPolygonAreaCppObject(JNIEnv* pEnv,
+                                                              jclass polygonClass,
+                                                              jlong geodesicCppPtr,
+                                                              jboolean polyline)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  // the PolygonArea keeps its own copy of the Geodesic
+  PolygonArea* polygon = new PolygonArea(*geodesic, polyline == JNI_TRUE);
+  return reinterpret_cast<jlong>(polygon);
+}
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    deletePolygonAreaCppObject
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_PolygonArea_deletePolygonAreaCppObject(JNIEnv* pEnv,
+                                                                 jclass polygonClass,
+                                                                 jlong polygonCppPtr)
+{
+  if (polygonCppPtr != 0)
+  {
+    PolygonArea* polygon = reinterpret_cast<PolygonArea*>(polygonCppPtr);
+    delete polygon;
+  }
+}
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeClear
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_PolygonArea_nativeClear(JNIEnv* pEnv,
+                                                  jclass polygonClass,
+                                                  jlong polygonCppPtr)
+{
+  PolygonArea* polygon = reinterpret_cast<PolygonArea*>(polygonCppPtr);
+  polygon->Clear();
+}
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeAddPoint
+ * Signature: (JDD)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_PolygonArea_nativeAddPoint(JNIEnv* pEnv,
+                                                     jclass polygonClass,
+                                                     jlong polygonCppPtr,
+                                                     jdouble lat,
+                                                     jdouble lon)
+{
+  PolygonArea* polygon = reinterpret_cast<PolygonArea*>(polygonCppPtr);
+  polygon->AddPoint(lat, lon);
+}
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeAddEdge
+ * Signature: (JDD)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_PolygonArea_nativeAddEdge(JNIEnv* pEnv,
+                                                    jclass polygonClass,
+                                                    jlong polygonCppPtr,
+                                                    jdouble azi,
+                                                    jdouble s)
+{
+  PolygonArea* polygon = reinterpret_cast<PolygonArea*>(polygonCppPtr);
+  polygon->AddEdge(azi, s);
+}
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeCompute
+ * Signature: (JZZ[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_sf_geographiclib_PolygonArea_nativeCompute(JNIEnv* pEnv,
+                                                    jclass polygonClass,
+                                                    jlong polygonCppPtr,
+                                                    jboolean reverse,
+                                                    jboolean sign,
+                                                    jdoubleArray valuesArray)
+{
+  PolygonArea* polygon = reinterpret_cast<PolygonArea*>(polygonCppPtr);
+  jdouble values[RESULT_COUNT];
+  pEnv->GetDoubleArrayRegion(valuesArray, 0, RESULT_COUNT, values);
+  Math::real perimeter = 0;
+  // left alone for a polyline
+  Math::real area = values[RESULT_AREA];
+  unsigned num = polygon->Compute(reverse == JNI_TRUE, sign == JNI_TRUE,
+                                  perimeter, area);
+  values[RESULT_PERIMETER] = perimeter;
+  values[RESULT_AREA] = area;
+  pEnv->SetDoubleArrayRegion(valuesArray, 0, RESULT_COUNT, values);
+  return static_cast<jint>(num);
+}
+
+/*
+ * Class:     net_sf_geographiclib_PolygonArea
+ * Method:    nativeComputeRings
+ * Signature: (J[D[D[IIIZZZ[D[D)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sf_geographiclib_PolygonArea_nativeComputeRings(JNIEnv* pEnv,
+                                                         jclass polygonClass,
+                                                         jlong geodesicCppPtr,
+                                                         jdoubleArray latArray,
+                                                         jdoubleArray lonArray,
+                                                         jintArray ringOffsetsArray,
+                                                         jint offset,
+                                                         jint length,
+                                                         jboolean polyline,
+                                                         jboolean reverse,
+                                                         jboolean sign,
+                                                         jdoubleArray perimeterArray,
+                                                         jdoubleArray areaArray)
+{
+  Geodesic* geodesic = reinterpret_cast<Geodesic*>(geodesicCppPtr);
+  // one PolygonArea, cleared between the rings
+  PolygonArea polygon(*geodesic, polyline == JNI_TRUE);
+  bool rev = reverse == JNI_TRUE;
+  bool sgn = sign == JNI_TRUE;
+
+  jint ring = offset;
+  jint end = offset + length;
+  while (ring < end)
+  {
+    // throws once the arrays below are released
+    CriticalScope scope(pEnv);
+    // inputs are never modified so don't copy them back
+    CriticalDoubleArray lat(pEnv, latArray, JNI_ABORT);
+    CriticalDoubleArray lon(pEnv, lonArray, JNI_ABORT);
+    CriticalIntArray ringOffsets(pEnv, ringOffsetsArray, JNI_ABORT);
+    CriticalDoubleArray perimeter(pEnv, perimeterArray, 0);
+    CriticalDoubleArray area(pEnv, areaArray, 0);
+    if (!scope.pinned(lat, lon, ringOffsets, perimeter, area))
+    {
+      // out of memory, scope throws if the JVM didn't
+      return;
+    }
+
+    // complete rings until the chunk is large enough, a ring larger than a
+    // chunk is done in one go
+    jint vertices = 0;
+    while (ring < end && vertices < RING_CHUNK_VERTICES)
+    {
+      jint first = ringOffsets.get()[ring];
+      jint last = ringOffsets.get()[ring + 1];
+      polygon.Clear();
+      for (jint j = first; j < last; ++j)
+      {
+        polygon.AddPoint(lat.get()[j], lon.get()[j]);
+      }
+      Math::real perimeter_i = 0;
+      Math::real area_i = 0;
+      polygon.Compute(rev, sgn, perimeter_i, area_i);
+      if (perimeter.get() != NULL)
+      {
+        perimeter.get()[ring] = perimeter_i;
+      }
+      if (area.get() != NULL)
+      {
+        area.get()[ring] = area_i;
+      }
+      vertices += last - first + 1;
+      ++ring;
+    }
+  }
+}
@@ -5,17 +5,16 @@
 # http://stackoverflow.com/questions/59895/can-a-bash-script-tell-what-directory-its-stored-in
 DIR="$( cd "$( dirname "$0" )" && pwd )"
 
-# Build C++ Library
+# Build C++ Library, with GeographicLib linked in for the jar when a static
+# GeographicLib is installed
 mkdir $DIR/build
 cd $DIR/build
-cmake ..
+cmake -DGEOGRAPHICLIBJNI_STATIC=ON ..
 make
 cd ..
 
-# Ensure the libGeographicJni.so is in our LD_LIBRARY_PATH
-export LD_LIBRARY_PATH=$DIR/lib:$LD_LIBRARY_PATH
-
-# Build Java
+# Build Java, the jar embeds libGeographicJni.so and LibraryLoader extracts
+# it, so nothing needs to be on LD_LIBRARY_PATH
 cd $DIR/java
 ant jar.bin
 